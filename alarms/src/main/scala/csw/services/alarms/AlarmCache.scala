@@ -0,0 +1,185 @@
+package csw.services.alarms
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.{AtomicLong, LongAdder}
+
+import akka.actor.{Actor, ActorLogging, ActorSystem}
+import csw.services.alarms.AlarmService.HealthInfo
+import redis.RedisClient
+import redis.api.pubsub.PMessage
+
+import scala.collection.JavaConverters._
+import scala.concurrent.duration._
+import scala.concurrent.{ExecutionContext, Future}
+
+object AlarmCache {
+
+  /**
+   * Entries for the alarm severity and state are reloaded after this time, even if no change was notified
+   * (in case notifications were lost while the connection to Redis was down)
+   */
+  val defaultMaxAge: FiniteDuration = 30.seconds
+
+  /**
+   * Cache hit and miss counts
+   *
+   * @param modelHits   the number of static alarm models found in the cache
+   * @param modelMisses the number of static alarm models loaded from Redis
+   * @param stateHits   the number of alarm severities and states found in the cache
+   * @param stateMisses the number of alarm severities and states loaded from Redis
+   */
+  case class Stats(modelHits: Long, modelMisses: Long, stateHits: Long, stateMisses: Long) {
+    /**
+     * The fraction of static alarm model requests served from the cache
+     */
+    def modelHitRate: Double = hitRate(modelHits, modelMisses)
+
+    /**
+     * The fraction of alarm severity and state requests served from the cache
+     */
+    def stateHitRate: Double = hitRate(stateHits, stateMisses)
+  }
+
+  private def hitRate(hits: Long, misses: Long): Double = if (hits + misses == 0) 0.0 else hits.toDouble / (hits + misses)
+
+  private case class Entry(healthInfo: HealthInfo, time: Long)
+
+  /**
+   * Creates a cache that is invalidated by keyspace notifications from the given Redis instance
+   * (using the invalidator shared by all the caches for that instance, see AlarmNotifier.addCache)
+   */
+  private[alarms] def apply(redisClient: RedisClient, maxAge: FiniteDuration = defaultMaxAge)(implicit system: ActorSystem): AlarmCache = {
+    val cache = new AlarmCache(maxAge)
+    AlarmNotifier(system).addCache(redisClient.host, redisClient.port, cache)
+    cache
+  }
+}
+
+/**
+ * The caches for one Redis instance. The caches are weakly referenced, so that they are released
+ * together with the alarm services that use them.
+ */
+private[alarms] class AlarmCaches {
+  private val caches = java.util.Collections.newSetFromMap(new java.util.WeakHashMap[AlarmCache, java.lang.Boolean]())
+
+  def add(cache: AlarmCache): Unit = caches.synchronized(caches.add(cache))
+
+  def foreach(f: AlarmCache => Unit): Unit = caches.synchronized(caches.asScala.toList).foreach(f)
+}
+
+/**
+ * An optional client side cache for the alarm data (See the cache option of AlarmService.apply).
+ *
+ * The static alarm models only change when the alarms are loaded again (with initAlarms) and are kept until then.
+ * The severity and state of an alarm are removed from the cache when a keyspace notification reports a change
+ * to their Redis keys, or when this client changes them.
+ *
+ * @param maxAge severity and state entries are reloaded after this time, even if no change was notified
+ */
+private[alarms] class AlarmCache(maxAge: FiniteDuration) {
+  import AlarmCache._
+
+  private val models = new ConcurrentHashMap[AlarmKey, AlarmModel]()
+  private val states = new ConcurrentHashMap[AlarmKey, Entry]()
+
+  // Incremented with each invalidation, so that a value loaded while the key was changed is not cached
+  private val generation = new AtomicLong
+
+  private val modelHits = new LongAdder
+  private val modelMisses = new LongAdder
+  private val stateHits = new LongAdder
+  private val stateMisses = new LongAdder
+
+  /**
+   * Returns the cached static alarm model for the key, or loads it (None if the alarm does not exist)
+   */
+  def getModel(key: AlarmKey)(load: => Future[Option[AlarmModel]])(implicit ec: ExecutionContext): Future[Option[AlarmModel]] = {
+    Option(models.get(key)) match {
+      case Some(model) =>
+        modelHits.increment()
+        Future.successful(Some(model))
+      case None =>
+        modelMisses.increment()
+        val g = generation.get()
+        load.map { opt =>
+          opt.foreach { model =>
+            if (generation.get() == g) models.put(key, model)
+          }
+          opt
+        }
+    }
+  }
+
+  /**
+   * Returns the cached severity and state for the alarm, or loads them (None if the alarm does not exist)
+   */
+  def getHealthInfo(key: AlarmKey)(load: => Future[Option[HealthInfo]])(implicit ec: ExecutionContext): Future[Option[HealthInfo]] = {
+    val now = System.currentTimeMillis()
+    Option(states.get(key)).filter(now - _.time < maxAge.toMillis) match {
+      case Some(entry) =>
+        stateHits.increment()
+        Future.successful(Some(entry.healthInfo))
+      case None =>
+        stateMisses.increment()
+        val g = generation.get()
+        load.map { opt =>
+          opt.foreach { h =>
+            if (generation.get() == g) states.put(key, Entry(h, now))
+          }
+          opt
+        }
+    }
+  }
+
+  /**
+   * Removes the severity and state of the given alarm from the cache
+   */
+  def invalidate(key: AlarmKey): Unit = {
+    generation.incrementAndGet()
+    states.remove(key)
+  }
+
+  /**
+   * Removes the static model of the given alarm from the cache
+   */
+  def invalidateModel(key: AlarmKey): Unit = {
+    generation.incrementAndGet()
+    models.remove(key)
+  }
+
+  /**
+   * Removes all entries from the cache
+   */
+  def clear(): Unit = {
+    generation.incrementAndGet()
+    models.clear()
+    states.clear()
+  }
+
+  /**
+   * Returns the hit and miss counts
+   */
+  def stats: Stats = Stats(modelHits.sum(), modelMisses.sum(), stateHits.sum(), stateMisses.sum())
+}
+
+// Invalidates the entries of the caches for one Redis instance when the corresponding Redis keys change
+private class AlarmCacheInvalidator(caches: AlarmCaches, host: String, port: Int) extends Actor with ActorLogging {
+  import AlarmNotifier._
+
+  private val modelChannelPrefix = s"$keyspacePrefix${AlarmKey.alarmKeyPrefix}"
+
+  val notifier = AlarmNotifier(context.system).router(host, port)
+  notifier ! Register(patterns(AlarmKey()) + s"$keyspacePrefix${AlarmKey().key}")
+
+  override def postStop(): Unit = {
+    notifier ! Unregister
+  }
+
+  def receive: Receive = {
+    case pm: PMessage =>
+      val key = alarmKey(pm.channel)
+      if (pm.channel.startsWith(modelChannelPrefix)) caches.foreach(_.invalidateModel(key)) else caches.foreach(_.invalidate(key))
+
+    case x => log.error(s"Received unexpected message: $x")
+  }
+}
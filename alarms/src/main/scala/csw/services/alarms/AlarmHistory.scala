@@ -0,0 +1,382 @@
+package csw.services.alarms
+
+import java.time.{LocalDate, LocalDateTime, ZoneOffset}
+
+import akka.actor.{Actor, ActorLogging, Props, Status}
+import akka.pattern.pipe
+import csw.services.alarms.AlarmModel.SeverityLevel
+import redis.RedisClient
+import redis.api.Limit
+import redis.api.pubsub.PMessage
+
+import scala.collection.mutable
+import scala.concurrent.duration._
+import scala.concurrent.{ExecutionContext, Future}
+import scala.util.{Failure, Success}
+
+/**
+ * Records the changes in alarm severity and state in Redis, so that they can be queried later (for example, for
+ * night reports).
+ *
+ * The transitions are stored in one sorted set per UTC day and component (the segment), scored by time, so that a
+ * time range is read with ZRANGEBYSCORE from the segments it covers, and a report for one component does not read the
+ * transitions of other components. For keys with wildcards in the subsystem or component, a set per day lists the
+ * components that have a segment. Segments and lists expire after the retention time.
+ * Each member is a compact string: "time|sequence|subsystem:component:name|field|value" (with any '|' or backslash in
+ * the parts escaped with a backslash). The sequence number keeps identical changes in the same millisecond from being
+ * merged into one member, and orders them.
+ *
+ * Each recorded transition takes roughly 100 bytes of Redis memory (more for long alarm names), for the whole
+ * retention time, so recording is off by default (See AlarmService.apply).
+ *
+ * The transitions are recorded from the keyspace notifications for the severity and state keys, by one recorder actor
+ * per Redis instance (See AlarmNotifier.startRecorder), so that the changes made by all clients are recorded, as well as
+ * severities that expire because they were not refreshed (Disconnected). Since each recorder writes its own copy of the
+ * history, recording should be enabled in only one process (for example, the one that runs the alarm server).
+ * The new values are read after each notification, so changes made in quick succession may be recorded as one.
+ * The recorder writes the transitions in batches, so that setting the severity does not wait for the history to be written.
+ */
+object AlarmHistory {
+
+  // Prefix for the keys of the history segments (followed by the UTC date, subsystem and component)
+  private[alarms] val historyKeyPrefix = "ahistory::"
+
+  // Prefix for the keys of the per day sets of the components that have a segment (followed by the UTC date)
+  private[alarms] val componentsKeyPrefix = s"${historyKeyPrefix}components::"
+
+  /**
+   * Time that the history is kept
+   */
+  val defaultRetention: FiniteDuration = 30.days
+
+  /**
+   * Name of the field recorded for changes in the reported severity (The state fields use the names in AlarmState)
+   */
+  val severityField = "severity"
+
+  // Max number of transitions written in one Redis transaction, and max time before they are written
+  private[alarms] val maxBatchSize = 500
+  private[alarms] val flushDelay = 100.millis
+
+  private val sep = '|'
+  private val escapeChar = '\\'
+
+  /**
+   * A recorded change in an alarm's severity or state
+   *
+   * @param timestamp the time of the change (UTC)
+   * @param alarmKey  the key of the alarm that changed
+   * @param field     "severity" or the name of the alarm state field that changed (for example, "acknowledgedState")
+   * @param value     the new value
+   * @param seq       orders the changes recorded in the same millisecond
+   */
+  case class AlarmTransition(timestamp: LocalDateTime, alarmKey: AlarmKey, field: String, value: String, seq: Long = 0) {
+    /**
+     * True if this is a change to a severity that counts as an alarm (Warning or higher)
+     */
+    def isAlarm: Boolean = field == severityField && SeverityLevel(value).exists(_.isAlarm)
+  }
+
+  /**
+   * Props for the actor that records the changes notified for all the alarms in the given Redis instance
+   */
+  private[alarms] def recorderProps(redisClient: RedisClient, retention: FiniteDuration = defaultRetention): Props =
+    Props(classOf[AlarmHistoryListener], redisClient, retention)
+
+  // Returns the key of the segment for the given day and component
+  private[alarms] def segmentKey(date: LocalDate, subsystem: String, component: String): String =
+    s"$historyKeyPrefix$date::$subsystem:$component"
+
+  // Returns the key of the set of the components ("subsystem:component") that have a segment for the given day
+  private[alarms] def componentsKey(date: LocalDate): String = s"$componentsKeyPrefix$date"
+
+  private def toMillis(t: LocalDateTime): Long = t.toInstant(ZoneOffset.UTC).toEpochMilli
+
+  private def toDateTime(millis: Long): LocalDateTime = LocalDateTime.ofEpochSecond(millis / 1000, (millis % 1000).toInt * 1000000, ZoneOffset.UTC)
+
+  private def escape(s: String): String =
+    s.replace(escapeChar.toString, s"$escapeChar$escapeChar").replace(sep.toString, s"$escapeChar$sep")
+
+  // Splits a segment member at the unescaped separators and unescapes the parts
+  private def split(s: String): List[String] = {
+    val parts = List.newBuilder[String]
+    val part = new StringBuilder
+    var i = 0
+    while (i < s.length) {
+      s.charAt(i) match {
+        case `escapeChar` if i + 1 < s.length =>
+          i += 1
+          part += s.charAt(i)
+        case `sep` =>
+          parts += part.toString
+          part.clear()
+        case c => part += c
+      }
+      i += 1
+    }
+    parts += part.toString
+    parts.result()
+  }
+
+  // Encodes a transition as a segment member
+  private[alarms] def encode(t: AlarmTransition): String = {
+    val k = t.alarmKey
+    List(toMillis(t.timestamp).toString, t.seq.toString, s"${k.subsystem}:${k.component}:${k.name}", t.field, t.value)
+      .map(escape).mkString(sep.toString)
+  }
+
+  // Decodes a segment member
+  private[alarms] def decode(s: String): AlarmTransition = split(s) match {
+    case List(millis, seq, key, field, value) =>
+      AlarmTransition(toDateTime(millis.toLong), AlarmKey(key), field, value, seq.toLong)
+    case _ =>
+      throw new IllegalArgumentException(s"Invalid alarm history entry: $s")
+  }
+
+  // Returns the days covered by the given time range
+  private def days(from: LocalDateTime, to: LocalDateTime): List[LocalDate] =
+    Iterator.iterate(from.toLocalDate)(_.plusDays(1)).takeWhile(!_.isAfter(to.toLocalDate)).toList
+
+  // Writes the recorded transitions in batches
+  private[alarms] case object Flush
+
+  // The values of the severity key ("severity" -> value) or state hash of an alarm, read after the notification
+  // with the given number (Values that were read for an earlier notification than the last ones used are ignored)
+  private[alarms] case class Loaded(redisKey: String, n: Long, time: LocalDateTime, values: Map[String, String])
+
+  // The values of the severity and state keys of all alarms when the recorder started
+  private[alarms] case class Baseline(values: Map[String, Map[String, String]])
+}
+
+/**
+ * Queries the alarm history (See the companion object)
+ *
+ * @param redisClient used to read the history
+ */
+class AlarmHistory private[alarms] (redisClient: RedisClient) {
+  import AlarmHistory._
+
+  /**
+   * Gets the recorded transitions of the alarms matching the key in the given time range
+   *
+   * @param alarmKey a key that may match multiple alarms (via wildcards, see AlarmKey.apply())
+   * @param from     the start of the time range (UTC, inclusive)
+   * @param to       the end of the time range (UTC, inclusive)
+   * @return the future transitions, ordered by time
+   */
+  def getTransitions(alarmKey: AlarmKey, from: LocalDateTime, to: LocalDateTime)(implicit ec: ExecutionContext): Future[Seq[AlarmTransition]] = {
+    val pattern = AlarmIndex.globToRegex(s"${alarmKey.subsystem}:${alarmKey.component}:${alarmKey.name}").r.pattern
+    val min = Limit(toMillis(from).toDouble)
+    val max = Limit(toMillis(to).toDouble)
+
+    segmentKeys(alarmKey, days(from, to)).flatMap { keys =>
+      if (keys.isEmpty) Future.successful(Nil)
+      else {
+        // Read all the segments in one round trip
+        val redisTransaction = redisClient.transaction()
+        val fs = keys.map(redisTransaction.zrangebyscore[String](_, min, max))
+        redisTransaction.exec()
+        Future.sequence(fs).map { segments =>
+          segments.flatten.map(decode).filter { t =>
+            val k = t.alarmKey
+            pattern.matcher(s"${k.subsystem}:${k.component}:${k.name}").matches()
+          }.sortBy(t => (toMillis(t.timestamp), t.seq))
+        }
+      }
+    }
+  }
+
+  // Returns the keys of the segments of the components matching the alarm key for the given days
+  private def segmentKeys(alarmKey: AlarmKey, dates: List[LocalDate])(implicit ec: ExecutionContext): Future[List[String]] = {
+    import AlarmIndex.hasWildcards
+    if (!hasWildcards(alarmKey.subsystem) && !hasWildcards(alarmKey.component))
+      Future.successful(dates.map(segmentKey(_, alarmKey.subsystem, alarmKey.component)))
+    else {
+      val pattern = AlarmIndex.globToRegex(s"${alarmKey.subsystem}:${alarmKey.component}").r.pattern
+      val redisTransaction = redisClient.transaction()
+      val fs = dates.map { d =>
+        redisTransaction.smembers[String](componentsKey(d)).map { components =>
+          components.filter(pattern.matcher(_).matches()).map { c =>
+            val i = c.indexOf(':')
+            segmentKey(d, c.substring(0, i), c.substring(i + 1))
+          }
+        }
+      }
+      redisTransaction.exec()
+      Future.sequence(fs).map(_.flatten)
+    }
+  }
+
+  /**
+   * Counts how often the alarms matching the key went into an alarm severity (Warning or higher) in the given time range
+   *
+   * @param alarmKey a key that may match multiple alarms (via wildcards, see AlarmKey.apply())
+   * @param from     the start of the time range (UTC, inclusive)
+   * @param to       the end of the time range (UTC, inclusive)
+   * @return the future number of alarms for each (subsystem, component) that had any
+   */
+  def countAlarms(alarmKey: AlarmKey, from: LocalDateTime, to: LocalDateTime)(implicit ec: ExecutionContext): Future[Map[(String, String), Int]] = {
+    getTransitions(alarmKey, from, to).map { transitions =>
+      transitions.filter(_.isAlarm).groupBy(t => (t.alarmKey.subsystem, t.alarmKey.component)).map(p => p._1 -> p._2.size)
+    }
+  }
+}
+
+// Records the changes notified for the severity and state keys of all alarms, comparing the new values with the
+// previous ones to find the fields that changed. The values of all alarms are read once at the start, so that
+// only changes are recorded. (The first values seen for an alarm added later are all recorded.)
+private class AlarmHistoryListener(redisClient: RedisClient, retention: FiniteDuration) extends Actor with ActorLogging {
+  import AlarmHistory._
+  import AlarmNotifier._
+  import context.dispatcher
+
+  // Keyspace notification events that change an alarm's severity or state
+  private val changeEvents = Set("set", "expired", "hset", "hmset", "del")
+
+  private val writer = context.actorOf(Props(classOf[AlarmHistoryRecorder], redisClient, retention))
+  private val notifier = AlarmNotifier(context.system).router(redisClient.host, redisClient.port)
+
+  // The last values of each severity and state key, and the number of the notification they were read for
+  private val values = mutable.Map[String, Map[String, String]]()
+  private val latest = mutable.Map[String, Long]()
+
+  // Number of notifications received, and number of transitions recorded
+  private var notifications = 0L
+  private var sequence = 0L
+
+  override def preStart(): Unit = {
+    notifier ! Register(patterns(AlarmKey()))
+    loadBaseline().map(Baseline).pipeTo(self)
+  }
+
+  override def postStop(): Unit = {
+    notifier ! Unregister
+  }
+
+  def receive: Receive = {
+    case pm: PMessage if changeEvents.contains(pm.data.utf8String) =>
+      notifications += 1
+      val time = LocalDateTime.now(ZoneOffset.UTC)
+      val redisKey = pm.channel.substring(keyspacePrefix.length)
+      val isSeverity = redisKey.startsWith(AlarmKey.severityKeyPrefix)
+      pm.data.utf8String match {
+        case "set" if isSeverity =>
+          redisClient.get[String](redisKey).map(v => Loaded(redisKey, notifications, time, severityValue(v))).pipeTo(self)
+        case "expired" | "del" if isSeverity =>
+          // An expired severity key means the alarm was Disconnected
+          update(Loaded(redisKey, notifications, time, severityValue(None)))
+        case "hset" | "hmset" =>
+          redisClient.hgetall[String](redisKey).map(Loaded(redisKey, notifications, time, _)).pipeTo(self)
+        case _ =>
+          // The alarm was removed
+          values -= redisKey
+          latest(redisKey) = notifications
+      }
+
+    case _: PMessage =>
+
+    case loaded: Loaded => update(loaded)
+
+    case Baseline(m) =>
+      // Changes notified while the baseline was loading are newer
+      m.foreach(p => if (!latest.contains(p._1)) values(p._1) = p._2)
+
+    case Status.Failure(ex) => log.error(ex, "Failed to read the alarm severity or state for the alarm history")
+
+    case x => log.error(s"Received unexpected message: $x")
+  }
+
+  private def severityValue(v: Option[String]): Map[String, String] =
+    Map(severityField -> v.getOrElse(SeverityLevel.Disconnected.name))
+
+  // Records the fields that changed (ignoring values read for an earlier notification than the last ones used)
+  private def update(loaded: Loaded): Unit = {
+    if (!latest.get(loaded.redisKey).exists(_ > loaded.n) && loaded.values.nonEmpty) {
+      val old = values.getOrElse(loaded.redisKey, Map.empty)
+      val alarmKey = AlarmKey(loaded.redisKey)
+      loaded.values.foreach {
+        case (field, value) =>
+          if (!old.get(field).contains(value)) {
+            writer ! AlarmTransition(loaded.time, alarmKey, field, value, sequence)
+            sequence += 1
+          }
+      }
+      values(loaded.redisKey) = loaded.values
+      latest(loaded.redisKey) = loaded.n
+    }
+  }
+
+  // Reads the severity and state of all alarms
+  private def loadBaseline(): Future[Map[String, Map[String, String]]] = {
+    AlarmIndex.resolve(redisClient, AlarmKey()).flatMap { keys =>
+      Future.sequence(keys.grouped(maxBatchSize).toList.map { list =>
+        val redisTransaction = redisClient.transaction()
+        val fs = list.map { k =>
+          redisTransaction.get[String](k.severityKey).zip(redisTransaction.hgetall[String](k.stateKey)).map {
+            case (sev, state) => List(k.severityKey -> severityValue(sev), k.stateKey -> state)
+          }
+        }
+        redisTransaction.exec()
+        Future.sequence(fs)
+      }).map(_.flatten.flatten.toMap)
+    }
+  }
+}
+
+// Collects the transitions and writes them to the history segments in batches
+private class AlarmHistoryRecorder(redisClient: RedisClient, retention: FiniteDuration) extends Actor with ActorLogging {
+  import AlarmHistory._
+  import context.dispatcher
+
+  def receive: Receive = waiting
+
+  // No transitions waiting to be written
+  def waiting: Receive = {
+    case t: AlarmTransition =>
+      context.system.scheduler.scheduleOnce(flushDelay, self, Flush)
+      context.become(collecting(List(t), 1))
+
+    case Flush =>
+
+    case x => log.error(s"Received unexpected message: $x")
+  }
+
+  // Collecting transitions (most recent first) until the next Flush message
+  def collecting(transitions: List[AlarmTransition], count: Int): Receive = {
+    case t: AlarmTransition =>
+      val list = t :: transitions
+      if (count + 1 >= maxBatchSize) {
+        write(list.reverse)
+        context.become(waiting)
+      } else context.become(collecting(list, count + 1))
+
+    case Flush =>
+      write(transitions.reverse)
+      context.become(waiting)
+
+    case x => log.error(s"Received unexpected message: $x")
+  }
+
+  // Writes the transitions to the segments for their days and components, adds the components to the lists for
+  // the days and sets both to expire after the retention time
+  private def write(transitions: List[AlarmTransition]): Unit = {
+    val ttl = retention.toSeconds + 1.day.toSeconds
+    val redisTransaction = redisClient.transaction()
+    transitions.groupBy(t => (t.timestamp.toLocalDate, t.alarmKey.subsystem, t.alarmKey.component)).foreach {
+      case ((day, subsystem, component), list) =>
+        val key = segmentKey(day, subsystem, component)
+        redisTransaction.zadd(key, list.map(t => (t.timestamp.toInstant(ZoneOffset.UTC).toEpochMilli.toDouble, encode(t))): _*)
+        redisTransaction.expire(key, ttl)
+    }
+    transitions.groupBy(_.timestamp.toLocalDate).foreach {
+      case (day, list) =>
+        val key = componentsKey(day)
+        redisTransaction.sadd(key, list.map(t => s"${t.alarmKey.subsystem}:${t.alarmKey.component}").distinct: _*)
+        redisTransaction.expire(key, ttl)
+    }
+    redisTransaction.exec().onComplete {
+      case Success(_)  =>
+      case Failure(ex) => log.error(ex, s"Failed to record ${transitions.size} alarm transitions")
+    }
+  }
+}
@@ -0,0 +1,208 @@
+package csw.services.alarms
+
+import redis.RedisClient
+import redis.commands.Sets
+
+import scala.concurrent.{ExecutionContext, Future}
+
+/**
+ * Maintains Redis sets that index the alarm keys per subsystem and per subsystem:component,
+ * so that wildcard alarm keys can be resolved without the Redis KEYS command, which blocks
+ * the Redis instance while it walks the whole keyspace.
+ *
+ * The members of the index sets are the alarm keys without the prefix ("subsystem:component:name").
+ * Alarm keys whose subsystem contains wildcards, or alarms loaded before the index existed,
+ * are resolved with the cursor based SCAN command instead.
+ */
+object AlarmIndex {
+  // Prefix for the index sets
+  private[alarms] val indexKeyPrefix = "aindex::"
+
+  // Set when the index was built (by initAlarms or rebuild), otherwise the SCAN fallback is used
+  private[alarms] val indexVersionKey = "aindex-version"
+
+  // Incremented if the layout of the index changes, so that an older index is not used
+  private[alarms] val indexVersion = "1"
+
+  // Number of keys to request with each SCAN command
+  private val scanCount = 1000
+
+  /**
+   * The result of comparing the index with the alarms stored in Redis
+   *
+   * @param alarmCount the number of alarms found with SCAN
+   * @param missing    alarms that are not in the index
+   * @param stale      index entries for alarms that do not exist
+   */
+  case class IndexReport(alarmCount: Int, missing: Seq[AlarmKey], stale: Seq[AlarmKey]) {
+    /**
+     * True if the index matches the stored alarms
+     */
+    def ok: Boolean = missing.isEmpty && stale.isEmpty
+  }
+
+  /**
+   * Returns the key of the index set for the given subsystem
+   */
+  private[alarms] def subsystemIndexKey(subsystem: String): String = s"$indexKeyPrefix$subsystem"
+
+  /**
+   * Returns the key of the index set for the given subsystem and component
+   */
+  private[alarms] def componentIndexKey(subsystem: String, component: String): String = s"$indexKeyPrefix$subsystem:$component"
+
+  // The alarm key without the "alarm::" prefix, as stored in the index sets
+  private def member(alarmKey: AlarmKey): String = alarmKey.key.substring(AlarmKey.alarmKeyPrefix.length)
+
+  // True if the string contains Redis glob characters
+  private[alarms] def hasWildcards(s: String): Boolean = s.exists(c => c == '*' || c == '?' || c == '[' || c == '\\')
+
+  /**
+   * Converts a Redis glob style pattern (with *, ?, [...] and \ escapes) to a regular expression
+   */
+  private[alarms] def globToRegex(glob: String): String = {
+    val sb = new StringBuilder
+    var i = 0
+    var inClass = false
+    while (i < glob.length) {
+      val c = glob.charAt(i)
+      if (inClass) {
+        if (c == ']') {
+          inClass = false
+          sb.append(']')
+        } else if (c == '\\' && i + 1 < glob.length) {
+          i += 1
+          sb.append(classChar(glob.charAt(i)))
+        } else if (c == '-') sb.append('-')
+        else sb.append(classChar(c))
+      } else c match {
+        case '*' => sb.append(".*")
+        case '?' => sb.append('.')
+        case '[' =>
+          inClass = true
+          sb.append('[')
+          if (i + 1 < glob.length && glob.charAt(i + 1) == '^') {
+            i += 1
+            sb.append('^')
+          }
+        case '\\' if i + 1 < glob.length =>
+          i += 1
+          sb.append(java.util.regex.Pattern.quote(glob.charAt(i).toString))
+        case _ => sb.append(java.util.regex.Pattern.quote(c.toString))
+      }
+      i += 1
+    }
+    if (inClass) sb.append(']')
+    sb.toString()
+  }
+
+  // Quotes a character inside a regex character class
+  private def classChar(c: Char): String = if (c.isLetterOrDigit) c.toString else "\\" + c
+
+  /**
+   * Adds the given alarm to the index sets (in the given transaction or pipeline)
+   */
+  private[alarms] def add(commands: Sets, alarmKey: AlarmKey): Seq[Future[Long]] = {
+    val m = member(alarmKey)
+    List(
+      commands.sadd(subsystemIndexKey(alarmKey.subsystem), m),
+      commands.sadd(componentIndexKey(alarmKey.subsystem, alarmKey.component), m)
+    )
+  }
+
+  /**
+   * Returns the keys matching the given pattern, using the cursor based SCAN command
+   */
+  private[alarms] def scan(redisClient: RedisClient, pattern: String)(implicit ec: ExecutionContext): Future[Seq[String]] = {
+    def loop(cursor: Int, found: Vector[String]): Future[Seq[String]] = {
+      redisClient.scan(cursor, Some(scanCount), Some(pattern)).flatMap { c =>
+        val all = found ++ c.data
+        if (c.index == 0) Future.successful(all.distinct) else loop(c.index, all)
+      }
+    }
+    loop(0, Vector.empty)
+  }
+
+  /**
+   * Returns the keys of the alarms matching the given (possibly wildcard) alarm key.
+   * The index is used if the subsystem has no wildcards, otherwise the keys are found with SCAN.
+   */
+  private[alarms] def resolve(redisClient: RedisClient, alarmKey: AlarmKey)(implicit ec: ExecutionContext): Future[Seq[AlarmKey]] = {
+    if (hasWildcards(alarmKey.subsystem)) scanAlarmKeys(redisClient, alarmKey)
+    else {
+      redisClient.get[String](indexVersionKey).flatMap {
+        case Some(`indexVersion`) =>
+          val (setKey, pattern) = if (hasWildcards(alarmKey.component))
+            (subsystemIndexKey(alarmKey.subsystem), s"${alarmKey.component}:${alarmKey.name}")
+          else
+            (componentIndexKey(alarmKey.subsystem, alarmKey.component), alarmKey.name)
+          val regex = globToRegex(pattern).r
+          redisClient.smembers[String](setKey).map { members =>
+            members.map(AlarmKey(_)).filter { k =>
+              val rest = if (hasWildcards(alarmKey.component)) s"${k.component}:${k.name}" else k.name
+              regex.pattern.matcher(rest).matches()
+            }
+          }
+        case _ =>
+          AlarmService.logger.debug(s"No alarm index found: Using SCAN to resolve $alarmKey")
+          scanAlarmKeys(redisClient, alarmKey)
+      }
+    }
+  }
+
+  // Resolves the alarm key using SCAN
+  private def scanAlarmKeys(redisClient: RedisClient, alarmKey: AlarmKey)(implicit ec: ExecutionContext): Future[Seq[AlarmKey]] =
+    scan(redisClient, alarmKey.key).map(_.map(AlarmKey(_)))
+
+  /**
+   * Deletes the index and builds it again from the alarms stored in Redis
+   *
+   * @return the future number of alarms indexed
+   */
+  private[alarms] def rebuild(redisClient: RedisClient)(implicit ec: ExecutionContext): Future[Int] = {
+    for {
+      _ <- delete(redisClient)
+      keys <- scan(redisClient, s"${AlarmKey.alarmKeyPrefix}*")
+      _ <- {
+        val transaction = redisClient.transaction()
+        val fs = keys.map(AlarmKey(_)).flatMap(add(transaction, _))
+        val f = transaction.set(indexVersionKey, indexVersion)
+        transaction.exec()
+        Future.sequence(f :: fs.toList)
+      }
+    } yield keys.size
+  }
+
+  /**
+   * Deletes the index sets (Alarm keys are resolved with SCAN until the index is built again)
+   */
+  private[alarms] def delete(redisClient: RedisClient)(implicit ec: ExecutionContext): Future[Unit] = {
+    for {
+      _ <- redisClient.del(indexVersionKey)
+      keys <- scan(redisClient, s"$indexKeyPrefix*")
+      _ <- if (keys.nonEmpty) redisClient.del(keys: _*) else Future.successful(0L)
+    } yield ()
+  }
+
+  /**
+   * Compares the index with the alarms stored in Redis
+   */
+  private[alarms] def verify(redisClient: RedisClient)(implicit ec: ExecutionContext): Future[IndexReport] = {
+    for {
+      keys <- scan(redisClient, s"${AlarmKey.alarmKeyPrefix}*").map(_.map(AlarmKey(_)).toSet)
+      indexKeys <- scan(redisClient, s"$indexKeyPrefix*")
+      members <- Future.sequence(indexKeys.map(k => redisClient.smembers[String](k).map(k -> _)))
+    } yield {
+      // Each alarm must be in both its subsystem and its component set
+      val indexed = members.flatMap {
+        case (setKey, m) => m.map(AlarmKey(_)).map(k => (k, setKey))
+      }.toSet
+      val found = indexed.map(_._1).toSet
+      val missing = keys.filter { k =>
+        !indexed.contains((k, subsystemIndexKey(k.subsystem))) || !indexed.contains((k, componentIndexKey(k.subsystem, k.component)))
+      }
+      val stale = found -- keys
+      IndexReport(keys.size, missing.toList.sortBy(_.key), stale.toList.sortBy(_.key))
+    }
+  }
+}
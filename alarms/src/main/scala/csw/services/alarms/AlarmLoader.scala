@@ -0,0 +1,87 @@
+package csw.services.alarms
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.typesafe.scalalogging.Logger
+import csw.services.alarms.AlarmModel.SeverityLevel
+import org.slf4j.LoggerFactory
+
+import scala.concurrent.{ExecutionContext, Future}
+
+/**
+ * Loads alarms into the Alarm Service Redis instance in bulk (See AlarmServiceAdmin.initAlarms).
+ *
+ * The alarms are written in chunks: the static alarm data, initial alarm state, index entries and initial
+ * severity of all the alarms in a chunk are sent in one Redis transaction, without reading anything back first.
+ * Only a limited number of chunks are in progress at once, so that a large configuration does not queue
+ * an unlimited number of commands in the Redis client.
+ */
+object AlarmLoader {
+  private val logger = Logger(LoggerFactory.getLogger(getClass))
+
+  /**
+   * Default number of alarms written in one Redis transaction
+   */
+  val defaultChunkSize = 500
+
+  /**
+   * Default max number of chunks being written at once
+   */
+  val defaultParallelism = 4
+
+  /**
+   * Reports the progress while loading alarms
+   *
+   * @param loaded the number of alarms loaded so far
+   * @param total  the total number of alarms to load
+   */
+  case class Progress(loaded: Int, total: Int)
+
+  /**
+   * Writes the given alarms to Redis
+   *
+   * @param asi         the alarm service implementation (used to set the initial severity)
+   * @param alarms      the alarms to load
+   * @param progress    called after each chunk has been written
+   * @param chunkSize   number of alarms written in one Redis transaction
+   * @param parallelism max number of chunks being written at once
+   * @return a future indicating when the operation has completed
+   */
+  private[alarms] def load(asi: AlarmServiceImpl, alarms: List[AlarmModel], progress: Progress => Unit,
+                           chunkSize: Int = defaultChunkSize, parallelism: Int = defaultParallelism)(implicit ec: ExecutionContext): Future[Unit] = {
+    val chunks = alarms.grouped(chunkSize).toVector
+    val total = alarms.size
+    val nextChunk = new AtomicInteger(0)
+    val loaded = new AtomicInteger(0)
+
+    // Each worker writes one chunk at a time, until there are none left
+    def worker(): Future[Unit] = {
+      val i = nextChunk.getAndIncrement()
+      if (i >= chunks.size) Future.successful(())
+      else loadChunk(asi, chunks(i)).flatMap { _ =>
+        progress(Progress(loaded.addAndGet(chunks(i).size), total))
+        worker()
+      }
+    }
+
+    Future.sequence(List.fill(math.max(1, parallelism))(worker())).map(_ => ())
+  }
+
+  // Writes the given alarms in one transaction
+  private def loadChunk(asi: AlarmServiceImpl, alarms: List[AlarmModel])(implicit ec: ExecutionContext): Future[Unit] = {
+    val redisTransaction = asi.redisClient.transaction()
+    val initialState = AlarmState()
+    val fList = alarms.flatMap { alarm =>
+      val alarmKey = AlarmKey(alarm)
+      logger.debug(s"Adding alarm: subsystem: ${alarm.subsystem}, component: ${alarm.component}, ${alarm.name}")
+      val small = AlarmModelSmall(alarm.severityLevels, alarm.acknowledge, alarm.latched)
+      List(
+        redisTransaction.hmset(alarmKey.key, alarm.asMap()),
+        redisTransaction.hmset(alarmKey.stateKey, initialState.asMap())
+      ) ++ AlarmIndex.add(redisTransaction, alarmKey) ++
+        asi.setSeverity(redisTransaction, alarmKey, small, initialState, SeverityLevel.Disconnected)
+    }
+    val f = redisTransaction.exec()
+    Future.sequence(f :: fList).map(_ => ())
+  }
+}
@@ -228,6 +228,14 @@ object AlarmModel extends ByteStringDeserializerDefault {
    */
   case class AlarmStatus(timestamp: LocalDateTime, alarmKey: AlarmKey, currentSeverity: CurrentSeverity, state: AlarmState)
 
+  /**
+   * Message sent to a monitor's subscriber actor with the alarm changes collected during one batch interval
+   * (See AlarmMonitorSettings.batchInterval)
+   *
+   * @param alarms the changes, in the order they were received
+   */
+  case class AlarmStatusBatch(alarms: List[AlarmStatus])
+
   /**
    * Combines an alarm key (which may use wildcards to match a system, subsystem or component)
    * with a health value, which is calculated from all the alarms matching the given alarm key.
@@ -1,13 +1,10 @@
 package csw.services.alarms
 
-import java.net.InetSocketAddress
 import java.time.{Clock, LocalDateTime}
 
 import akka.actor.{Actor, ActorLogging, ActorRef, Props}
-import csw.services.alarms.AlarmModel.{AlarmStatus, Health, HealthStatus}
-import redis.{ByteStringDeserializer, ByteStringSerializerLowPriority}
-import redis.actors.RedisSubscriberActor
-import redis.api.pubsub.{Message, PMessage, PUNSUBSCRIBE, UNSUBSCRIBE}
+import csw.services.alarms.AlarmModel.{AlarmStatus, AlarmStatusBatch, Health, HealthStatus}
+import redis.api.pubsub.PMessage
 
 import scala.util.{Failure, Success}
 import AlarmMonitorActor._
@@ -15,14 +12,18 @@ import AlarmMonitorWorkorActor._
 import csw.services.alarms.AlarmService.HealthInfo
 import csw.services.alarms.AlarmState.{ActivationState, ShelvedState}
 
+import scala.collection.mutable
 import scala.concurrent.Future
+import scala.concurrent.duration._
 
 /**
  * An actor that monitors selected subsystem or component health and notifies a method or
  * another actor of changes in the health status.
  */
 object AlarmMonitorActor {
-  private val keyEventPrefix = "__keyevent@0__:"
+
+  // Keyspace notification events that may change an alarm's severity or state
+  private val changeEvents = Set("set", "expired", "hset", "hmset", "del")
 
   /**
    * Used to create the actor.
@@ -30,82 +31,83 @@ object AlarmMonitorActor {
    * @param alarmService used to get an alarm's severity and state
    * @param alarmKey     key matching all the alarms for a subsystem or component, etc.
    * @param subscriber   an optional actor that will receive HealthStatus and AlarmStatus messages
+   *                     (or AlarmStatusBatch messages, if settings.batchInterval is greater than zero)
+   * @param notifyAlarm  an optional function that will be called with each AlarmStatus
    * @param notifyHealth an optional function that will be called with HealthStatus messages
    * @param notifyAll    if true, all severity changes are reported (for example, for logging), otherwise
    *                     only the relevant changes in alarms are reported, for alarms that are not shelved and not out of service,
    *                     and where the latched severity or calculated health actually changed
+   * @param healthRollup kept up to date with the health of the monitored alarms, per subsystem and component
+   * @param notifyAlarms an optional function that will be called with the list of AlarmStatus changes in each batch
+   * @param settings     controls the coalescing of notifications (default: none)
+   * @param counters     counts the changes and the notifications sent
    */
   def props(
     alarmService: AlarmService,
     alarmKey:     AlarmKey,
-    subscriber:   Option[ActorRef]             = None,
-    notifyAlarm:  Option[AlarmStatus => Unit]  = None,
-    notifyHealth: Option[HealthStatus => Unit] = None,
-    notifyAll:    Boolean                      = false
+    subscriber:   Option[ActorRef]                   = None,
+    notifyAlarm:  Option[AlarmStatus => Unit]        = None,
+    notifyHealth: Option[HealthStatus => Unit]       = None,
+    notifyAll:    Boolean                            = false,
+    healthRollup: HealthRollup                       = new HealthRollup,
+    notifyAlarms: Option[List[AlarmStatus] => Unit] = None,
+    settings:     AlarmMonitorSettings               = AlarmMonitorSettings(),
+    counters:     AlarmMonitorCounters               = new AlarmMonitorCounters
   ): Props = {
+    // A callback for single alarms is called once for each alarm in a batch
+    val alarmCallback = notifyAlarms.orElse(notifyAlarm.map(f => (list: List[AlarmStatus]) => list.foreach(f)))
     Props(classOf[AlarmMonitorActor], alarmService.asInstanceOf[AlarmServiceImpl], alarmKey, subscriber,
-      notifyAlarm, notifyHealth, notifyAll)
+      alarmCallback, notifyHealth, notifyAll, healthRollup, settings, counters)
   }
 }
 
-// Subscribes to changes in alarm severity for alarms matching the key and notifies the listeners on
-// changes in health
+// Subscribes to changes in alarm severity and state for alarms matching the key and notifies the listeners on
+// changes in health. The keyspace notifications are received through the AlarmNotifier, which shares one
+// Redis subscription between all monitors.
 private class AlarmMonitorActor(
   alarmService: AlarmServiceImpl,
   alarmKey:     AlarmKey,
   subscriber:   Option[ActorRef],
-  notifyAlarm:  Option[AlarmStatus => Unit],
+  notifyAlarms: Option[List[AlarmStatus] => Unit],
   notifyHealth: Option[HealthStatus => Unit],
-  notifyAll:    Boolean
-) extends RedisSubscriberActor(
-  address = new InetSocketAddress(alarmService.redisClient.host, alarmService.redisClient.port),
-  channels = Seq.empty,
-  patterns = List("__key*__:*", alarmKey.severityKey),
-  authPassword = None,
-  onConnectStatus = (b: Boolean) => {}
-)
-    with ByteStringSerializerLowPriority {
+  notifyAll:    Boolean,
+  healthRollup: HealthRollup,
+  settings:     AlarmMonitorSettings,
+  counters:     AlarmMonitorCounters
+) extends Actor with ActorLogging {
 
   import context.dispatcher
 
   // Use a worker actor to keep track of the alarm severities and states, calculate health and notify listeners
-  var worker = context.actorOf(AlarmMonitorWorkorActor.props(alarmService, alarmKey, subscriber, notifyAlarm, notifyHealth, notifyAll))
+  var worker = context.actorOf(AlarmMonitorWorkorActor.props(alarmService, alarmKey, subscriber, notifyAlarms, notifyHealth,
+    notifyAll, healthRollup, settings, counters))
+
+  // Routes the notifications for the severity and state keys matching the alarm key to this actor
+  val notifier = AlarmNotifier(context.system).router(alarmService.redisClient.host, alarmService.redisClient.port)
+  notifier ! AlarmNotifier.Register(AlarmNotifier.patterns(alarmKey))
 
   // Initialize the complete map once at startup, and then keep it up to date by subscribing to the Redis key pattern
   initAlarmMap()
 
   // Unsubscribe on actor stop
   override def postStop(): Unit = {
-    super.postStop()
-    if (patternsSubscribed.nonEmpty) {
-      write(PUNSUBSCRIBE(patternsSubscribed.toSeq: _*).toByteString)
-      log.debug(s"Unsubscribed to patterns ${patternsSubscribed.mkString(", ")}")
-    }
+    notifier ! AlarmNotifier.Unregister
   }
 
-  override def onMessage(m: Message): Unit = {
-    log.error(s"Unexpected call to onMessage with message: $m")
-  }
-
-  override def onPMessage(pm: PMessage): Unit = {
-    val formatter = implicitly[ByteStringDeserializer[String]]
-
-    if (pm.channel.startsWith(s"${keyEventPrefix}expired") || pm.channel.startsWith(s"${keyEventPrefix}set")) {
-      // Key was set, data is the severity key name
-      val key = AlarmKey(formatter.deserialize(pm.data))
-      val s = pm.channel.substring(keyEventPrefix.length)
-      log.debug(s"key $s: $key")
-      val f = for {
-        sev <- alarmService.getSeverity(key)
-        state <- alarmService.getAlarmState(key)
-      } yield {
-        worker ! HealthInfo(key, sev, state)
+  def receive: Receive = {
+    case pm: PMessage if changeEvents.contains(pm.data.utf8String) =>
+      // The channel contains the severity or state key and the message is the command (set, hset, expired, ...)
+      val key = AlarmNotifier.alarmKey(pm.channel)
+      log.debug(s"key ${pm.data.utf8String}: $key")
+      // Gets the severity and state in one round trip
+      alarmService.getHealthInfo(List(key)).onComplete {
+        case Success(list) => list.foreach(worker ! _)
+        case Failure(t)    => log.error(t, s"Failed to get severity for key: $key")
       }
-      f.onComplete {
-        case Failure(t) => log.error(t, s"Failed to get severity for key: $key")
-        case _          =>
-      }
-    }
+
+    case _: PMessage =>
+
+    case x => log.error(s"Received unexpected message: $x")
   }
 
   // Update the alarmMap at startup to avoid any false alarms while waiting for alarms to come in.
@@ -124,49 +126,80 @@ private object AlarmMonitorWorkorActor {
   // Initial map with alarm data
   case class InitialMap(alarmMap: Map[AlarmKey, HealthInfo])
 
+  // Timer messages used to deliver coalesced notifications
+  private case object FlushAlarms
+  private case object FlushHealth
+  private case object CheckFlapping
+
   /**
    * Used to create the actor.
    *
    * @param alarmService reference to alarm service instance
    * @param alarmKey     key matching all the alarms for a subsystem or component, etc.
    * @param subscriber   an optional actor that will receive HealthStatus messages
+   * @param notifyAlarms an optional function that will be called with lists of AlarmStatus changes
    * @param notifyHealth an optional function that will be called with HealthStatus messages
    * @param notifyAll    if true, all severity changes are reported (for example, for logging), otherwise
    *                     only the relevant changes in alarms are reported, for alarms that are not shelved and not out of service,
    *                     and where the latched severity or calculated health actually changed
+   * @param healthRollup updated incrementally with each change in an alarm's severity or state
+   * @param settings     controls the coalescing of notifications
+   * @param counters     counts the changes and the notifications sent
    */
   def props(
     alarmService: AlarmServiceImpl,
     alarmKey:     AlarmKey,
     subscriber:   Option[ActorRef],
-    notifyAlarm:  Option[AlarmStatus => Unit],
+    notifyAlarms: Option[List[AlarmStatus] => Unit],
     notifyHealth: Option[HealthStatus => Unit],
-    notifyAll:    Boolean
+    notifyAll:    Boolean,
+    healthRollup: HealthRollup,
+    settings:     AlarmMonitorSettings,
+    counters:     AlarmMonitorCounters
   ): Props = {
-    Props(classOf[AlarmMonitorWorkorActor], alarmService, alarmKey, subscriber, notifyAlarm, notifyHealth, notifyAll)
+    Props(classOf[AlarmMonitorWorkorActor], alarmService, alarmKey, subscriber, notifyAlarms, notifyHealth, notifyAll,
+      healthRollup, settings, counters)
   }
 }
 
 // Manages a map of alarm severity and state, calculates health when something changes
-// and notifies the listeners when the health value changes
+// and notifies the listeners when the health value changes.
+// During alarm storms, the notifications are coalesced as configured in the settings: health changes are reported
+// at most once per health interval, alarm changes are delivered in batches and flapping alarms are held back.
 private class AlarmMonitorWorkorActor(
     alarmService:    AlarmServiceImpl,
     alarmKeyPattern: AlarmKey,
     subscriber:      Option[ActorRef],
-    notifyAlarm:     Option[AlarmStatus => Unit],
+    notifyAlarms:    Option[List[AlarmStatus] => Unit],
     notifyHealth:    Option[HealthStatus => Unit],
-    notifyAll:       Boolean
+    notifyAll:       Boolean,
+    healthRollup:    HealthRollup,
+    settings:        AlarmMonitorSettings,
+    counters:        AlarmMonitorCounters
 ) extends Actor with ActorLogging {
 
   import context.dispatcher
 
+  // The last health reported to the listeners
   var healthOpt: Option[Health] = None
 
+  // Time the health was last reported and whether a FlushHealth message is scheduled
+  var lastHealthTime = 0L
+  var healthFlushScheduled = false
+
+  // Alarm changes waiting to be delivered in the next batch (most recent first)
+  var pendingAlarms: List[AlarmStatus] = Nil
+
+  // Recent change times for each alarm (used for flap detection) and the latest status of the flapping alarms
+  val changeTimes = mutable.HashMap[AlarmKey, List[Long]]()
+  val flapping = mutable.LinkedHashMap[AlarmKey, AlarmStatus]()
+
   // Expect an initial map containing all the alarms we are tracking
   override def receive: Receive = {
     case InitialMap(alarmMap) =>
       context.become(working(alarmMap))
-      updateHealth(alarmMap)
+      alarmMap.values.foreach(h => healthRollup.update(None, Some(h)))
+      updateHealth()
 
     case x => log.debug(s"Ignoring message since not ready: $x")
   }
@@ -177,32 +210,105 @@ private class AlarmMonitorWorkorActor(
   // expect updates to the alarm severity or state, then calculate the new health value
   private def working(alarmMap: Map[AlarmKey, HealthInfo]): Receive = {
     case h @ HealthInfo(alarmKey, severityLevel, alarmState) =>
-      val update = if (alarmMap.contains(alarmKey)) {
-        val healthInfo = alarmMap(alarmKey)
-        healthInfo.currentSeverity != h.currentSeverity || healthInfo.alarmState != h.alarmState
-      } else false
+      val oldInfo = alarmMap.get(alarmKey)
+      val update = oldInfo.exists(healthInfo => healthInfo.currentSeverity != h.currentSeverity || healthInfo.alarmState != h.alarmState)
       if (update) {
-        val newMap = alarmMap + (alarmKey -> h)
-        context.become(working(newMap))
-        updateHealth(newMap)
+        counters.addChange()
+        context.become(working(alarmMap + (alarmKey -> h)))
+        healthRollup.update(oldInfo, Some(h))
+        updateHealth()
         if (notifyAll || (alarmState.shelvedState == ShelvedState.Normal && alarmState.activationState == ActivationState.Normal))
-          notifyListeners(AlarmStatus(timestamp(), alarmKey, severityLevel, alarmState))
+          alarmChanged(AlarmStatus(timestamp(), alarmKey, severityLevel, alarmState))
       }
+
+    case FlushHealth =>
+      healthFlushScheduled = false
+      updateHealth()
+
+    case FlushAlarms =>
+      flushAlarms()
+
+    case CheckFlapping =>
+      checkFlapping()
   }
 
-  // Calculate the health from the alarm data and notify the listeners if something changed
-  private def updateHealth(alarmMap: Map[AlarmKey, HealthInfo]): Unit = {
-    val health = alarmService.getHealth(alarmMap)
+  // Get the health from the incrementally updated counts and notify the listeners if something changed
+  // (but not more often than once per health interval)
+  private def updateHealth(): Unit = {
+    val health = healthRollup.health
 
     // Notify listeners if the health changed
     if (healthOpt.isEmpty || healthOpt.get != health) {
-      healthOpt = Some(health)
-      notifyListeners(HealthStatus(timestamp(), alarmKeyPattern, health))
+      val wait = lastHealthTime + settings.healthInterval.toMillis - System.currentTimeMillis()
+      if (wait <= 0) {
+        healthOpt = Some(health)
+        lastHealthTime = System.currentTimeMillis()
+        notifyListeners(HealthStatus(timestamp(), alarmKeyPattern, health))
+      } else if (!healthFlushScheduled) {
+        healthFlushScheduled = true
+        context.system.scheduler.scheduleOnce(wait.millis, self, FlushHealth)
+      }
+    }
+  }
+
+  // Called for each change in an alarm that should be reported: holds back flapping alarms
+  private def alarmChanged(alarmStatus: AlarmStatus): Unit = {
+    val key = alarmStatus.alarmKey
+    if (settings.flapThreshold <= 0) {
+      deliver(alarmStatus)
+    } else {
+      val now = System.currentTimeMillis()
+      val times = (now :: changeTimes.getOrElse(key, Nil).takeWhile(now - _ < settings.flapWindow.toMillis)).take(settings.flapThreshold + 1)
+      changeTimes(key) = times
+      if (flapping.contains(key) || times.size > settings.flapThreshold) {
+        if (!flapping.contains(key)) {
+          log.warning(s"Alarm $key is flapping: holding back notifications until it is stable for ${settings.flapWindow}")
+          if (flapping.isEmpty) context.system.scheduler.scheduleOnce(settings.flapWindow, self, CheckFlapping)
+        }
+        flapping(key) = alarmStatus
+        counters.setFlapping(flapping.size)
+        counters.addSuppressed(1)
+      } else deliver(alarmStatus)
+    }
+  }
+
+  // Reports the latest status of the alarms that stopped flapping
+  private def checkFlapping(): Unit = {
+    val now = System.currentTimeMillis()
+    val stable = flapping.keys.filter(k => changeTimes.get(k).forall(t => t.isEmpty || now - t.head >= settings.flapWindow.toMillis)).toList
+    stable.foreach { key =>
+      log.info(s"Alarm $key is no longer flapping")
+      changeTimes -= key
+      deliver(flapping.remove(key).get)
+    }
+    counters.setFlapping(flapping.size)
+    if (flapping.nonEmpty) context.system.scheduler.scheduleOnce(settings.flapWindow, self, CheckFlapping)
+  }
+
+  // Delivers the alarm change now, or adds it to the current batch
+  private def deliver(alarmStatus: AlarmStatus): Unit = {
+    if (!settings.batching) {
+      notifyListeners(List(alarmStatus))
+    } else {
+      if (pendingAlarms.isEmpty) context.system.scheduler.scheduleOnce(settings.batchInterval, self, FlushAlarms)
+      pendingAlarms = alarmStatus :: pendingAlarms
+      if (pendingAlarms.size >= settings.maxBatchSize) flushAlarms()
+    }
+  }
+
+  // Delivers the current batch of alarm changes
+  // (A FlushAlarms message scheduled for a batch that was delivered early just delivers the next batch sooner)
+  private def flushAlarms(): Unit = {
+    if (pendingAlarms.nonEmpty) {
+      val list = pendingAlarms.reverse
+      pendingAlarms = Nil
+      notifyListeners(list)
     }
   }
 
   // Notify the subscribers of a change in the health
   private def notifyListeners(healthStatus: HealthStatus): Unit = {
+    counters.addHealthNotification()
     subscriber.foreach(_ ! healthStatus)
 
     // Run callback in a future and report any errors
@@ -216,14 +322,18 @@ private class AlarmMonitorWorkorActor(
     }
   }
 
-  // Notify the subscribers of a change in the severity of an alarm
-  private def notifyListeners(alarmStatus: AlarmStatus): Unit = {
-    subscriber.foreach(_ ! alarmStatus)
+  // Notify the subscribers of changes in the severity of alarms
+  private def notifyListeners(alarms: List[AlarmStatus]): Unit = {
+    counters.addAlarmNotifications(alarms.size)
+    subscriber.foreach { actorRef =>
+      if (settings.batching) actorRef ! AlarmStatusBatch(alarms)
+      else alarms.foreach(actorRef ! _)
+    }
 
     // Run callback in a future and report any errors
-    notifyAlarm.foreach { f =>
+    notifyAlarms.foreach { f =>
       Future {
-        f(alarmStatus)
+        f(alarms)
       }.onComplete {
         case Failure(ex) => log.error("Alarm notification callback failed: ", ex)
         case _           =>
@@ -231,4 +341,3 @@ private class AlarmMonitorWorkorActor(
     }
   }
 }
-
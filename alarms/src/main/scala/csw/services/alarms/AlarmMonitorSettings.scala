@@ -0,0 +1,106 @@
+package csw.services.alarms
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+
+import com.typesafe.config.Config
+
+import scala.concurrent.duration._
+
+object AlarmMonitorSettings {
+
+  /**
+   * Reads the settings from the csw.services.alarms.monitor section of the given config
+   * (for example, system.settings.config: See reference.conf for the default values)
+   */
+  def apply(config: Config): AlarmMonitorSettings = {
+    val c = config.getConfig("csw.services.alarms.monitor")
+    def duration(path: String): FiniteDuration = c.getDuration(path, TimeUnit.MILLISECONDS).millis
+    AlarmMonitorSettings(
+      healthInterval = duration("health-interval"),
+      batchInterval = duration("batch-interval"),
+      maxBatchSize = c.getInt("max-batch-size"),
+      flapThreshold = c.getInt("flap-threshold"),
+      flapWindow = duration("flap-window")
+    )
+  }
+}
+
+/**
+ * Controls how an alarm monitor coalesces its notifications when many alarms change at once
+ * (for example, after a power glitch). The default values turn off all coalescing, so that each change is
+ * reported as it happens.
+ *
+ * @param healthInterval min time between HealthStatus notifications: changes in between are reported once,
+ *                       with the latest health, at the end of the interval
+ * @param batchInterval  if greater than zero, AlarmStatus changes are collected for this time and delivered together
+ *                       (as an AlarmStatusBatch message to a subscriber actor, or as a list to a callback)
+ * @param maxBatchSize   a batch is delivered early when it reaches this size
+ * @param flapThreshold  if greater than zero, an alarm that changes more than this many times within flapWindow is
+ *                       flapping: further changes are counted, but not reported, until the alarm has been stable
+ *                       for flapWindow, when its latest status is reported
+ * @param flapWindow     the time window used for flap detection
+ */
+case class AlarmMonitorSettings(
+  healthInterval: FiniteDuration = Duration.Zero,
+  batchInterval:  FiniteDuration = Duration.Zero,
+  maxBatchSize:   Int            = 1000,
+  flapThreshold:  Int            = 0,
+  flapWindow:     FiniteDuration = 10.seconds
+) {
+  /**
+   * True if AlarmStatus changes are delivered in batches
+   */
+  def batching: Boolean = batchInterval > Duration.Zero
+}
+
+/**
+ * Counts the changes seen and the notifications sent by an alarm monitor (See AlarmMonitor.counters).
+ * The values may be read from any thread.
+ */
+class AlarmMonitorCounters {
+  private val _changes = new AtomicLong
+  private val _alarmNotifications = new AtomicLong
+  private val _healthNotifications = new AtomicLong
+  private val _suppressed = new AtomicLong
+  private val _flapping = new AtomicInteger
+
+  /**
+   * The number of changes in the severity or state of the monitored alarms
+   */
+  def changes: Long = _changes.get()
+
+  /**
+   * The number of AlarmStatus values delivered (counting each item of a batch)
+   */
+  def alarmNotifications: Long = _alarmNotifications.get()
+
+  /**
+   * The number of HealthStatus values delivered
+   */
+  def healthNotifications: Long = _healthNotifications.get()
+
+  /**
+   * The number of AlarmStatus values not delivered because the alarm was flapping
+   */
+  def suppressed: Long = _suppressed.get()
+
+  /**
+   * The number of alarms that are currently flapping
+   */
+  def flapping: Int = _flapping.get()
+
+  private[alarms] def addChange(): Unit = _changes.incrementAndGet()
+
+  private[alarms] def addAlarmNotifications(n: Int): Unit = _alarmNotifications.addAndGet(n)
+
+  private[alarms] def addHealthNotification(): Unit = _healthNotifications.incrementAndGet()
+
+  private[alarms] def addSuppressed(n: Int): Unit = _suppressed.addAndGet(n)
+
+  private[alarms] def setFlapping(n: Int): Unit = _flapping.set(n)
+
+  override def toString: String =
+    s"changes: $changes, alarm notifications: $alarmNotifications, health notifications: $healthNotifications, " +
+      s"suppressed: $suppressed, flapping: $flapping"
+}
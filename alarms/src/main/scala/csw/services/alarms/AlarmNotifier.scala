@@ -0,0 +1,159 @@
+package csw.services.alarms
+
+import java.net.InetSocketAddress
+import java.util.concurrent.ConcurrentHashMap
+
+import akka.actor.{Actor, ActorLogging, ActorRef, ExtendedActorSystem, Extension, ExtensionId, ExtensionIdProvider, Props, Terminated}
+import redis.RedisClient
+import redis.actors.RedisSubscriberActor
+import redis.api.pubsub.{Message, PMessage, PSUBSCRIBE, PUNSUBSCRIBE}
+
+/**
+ * Shares one Redis keyspace notification subscription between all the alarm monitors in an actor system
+ * that use the same Redis instance.
+ *
+ * Each monitor registers the keyspace channel patterns for the severity and state keys matching its alarm key.
+ * The notifier subscribes only to those patterns (once, no matter how many monitors use them) and
+ * forwards each notification to the monitors that registered the pattern that matched.
+ * The alarm history recorder (See startRecorder) and the cache invalidator (See addCache) also receive their
+ * notifications from here.
+ */
+object AlarmNotifier extends ExtensionId[AlarmNotifier] with ExtensionIdProvider {
+
+  // Prefix of the keyspace notification channels (The message is the name of the command, such as set, hset or expired)
+  private[alarms] val keyspacePrefix = "__keyspace@0__:"
+
+  /**
+   * Message sent by a monitor to receive the notifications for the given channel patterns
+   */
+  case class Register(patterns: Set[String])
+
+  /**
+   * Message sent by a monitor to stop receiving notifications (Also done automatically when the monitor stops)
+   */
+  case object Unregister
+
+  /**
+   * Returns the keyspace channel patterns for the severity and state keys that match the given alarm key
+   */
+  def patterns(alarmKey: AlarmKey): Set[String] =
+    Set(s"$keyspacePrefix${alarmKey.severityKey}", s"$keyspacePrefix${alarmKey.stateKey}")
+
+  /**
+   * Returns the alarm key for the given keyspace notification channel
+   */
+  def alarmKey(channel: String): AlarmKey = AlarmKey(channel.substring(keyspacePrefix.length))
+
+  override def lookup(): AlarmNotifier.type = AlarmNotifier
+
+  override def createExtension(system: ExtendedActorSystem): AlarmNotifier = new AlarmNotifier(system)
+}
+
+/**
+ * Holds the notification router actor for each Redis instance used in the actor system
+ */
+class AlarmNotifier(system: ExtendedActorSystem) extends Extension {
+  private val routers = new ConcurrentHashMap[(String, Int), ActorRef]()
+  private val recorders = new ConcurrentHashMap[(String, Int), ActorRef]()
+  private val caches = new ConcurrentHashMap[(String, Int), AlarmCaches]()
+
+  /**
+   * Returns the actor that routes the keyspace notifications of the given Redis instance
+   * (Send it a Register message to receive PMessage notifications)
+   */
+  def router(host: String, port: Int): ActorRef = {
+    routers.computeIfAbsent((host, port), new java.util.function.Function[(String, Int), ActorRef] {
+      override def apply(k: (String, Int)): ActorRef =
+        system.actorOf(Props(classOf[AlarmNotificationRouter], host, port))
+    })
+  }
+
+  /**
+   * Starts recording the changes in the severity and state of all the alarms in the given Redis instance
+   * in the alarm history, if not already started (See [[AlarmHistory]])
+   */
+  def startRecorder(host: String, port: Int): Unit = {
+    recorders.computeIfAbsent((host, port), new java.util.function.Function[(String, Int), ActorRef] {
+      override def apply(k: (String, Int)): ActorRef =
+        system.actorOf(AlarmHistory.recorderProps(RedisClient(host, port)(system)))
+    })
+  }
+
+  /**
+   * Adds a cache to be invalidated by the keyspace notifications of the given Redis instance.
+   * One invalidator actor per Redis instance is shared by all the caches (See [[AlarmCache]]).
+   */
+  private[alarms] def addCache(host: String, port: Int, cache: AlarmCache): Unit = {
+    caches.computeIfAbsent((host, port), new java.util.function.Function[(String, Int), AlarmCaches] {
+      override def apply(k: (String, Int)): AlarmCaches = {
+        val c = new AlarmCaches
+        system.actorOf(Props(classOf[AlarmCacheInvalidator], c, host, port))
+        c
+      }
+    }).add(cache)
+  }
+}
+
+// Keeps track of the monitors registered for each pattern and forwards the notifications received by the subscriber
+private class AlarmNotificationRouter(host: String, port: Int) extends Actor with ActorLogging {
+  import AlarmNotifier._
+
+  // Created when the first monitor registers
+  private var subscriber: Option[ActorRef] = None
+
+  def receive: Receive = working(Map.empty)
+
+  // monitors: the monitors registered for each pattern
+  def working(monitors: Map[String, Set[ActorRef]]): Receive = {
+    case Register(patterns) =>
+      val newPatterns = patterns.filterNot(monitors.contains)
+      context.watch(sender())
+      val m = patterns.foldLeft(monitors) { (m, p) => m + (p -> (m.getOrElse(p, Set.empty) + sender())) }
+      context.become(working(m))
+      if (newPatterns.nonEmpty) subscribe(newPatterns)
+
+    case Unregister =>
+      context.unwatch(sender())
+      unregister(monitors, sender())
+
+    case Terminated(actorRef) =>
+      unregister(monitors, actorRef)
+
+    case pm: PMessage =>
+      monitors.get(pm.patternMatched).foreach(_.foreach(_ ! pm))
+
+    case x => log.error(s"Received unexpected message: $x")
+  }
+
+  private def subscribe(patterns: Set[String]): Unit = subscriber match {
+    case Some(actorRef) => actorRef ! PSUBSCRIBE(patterns.toSeq: _*)
+    case None =>
+      subscriber = Some(context.actorOf(Props(classOf[AlarmNotificationSubscriber], host, port, patterns.toSeq)
+        .withDispatcher("rediscala.rediscala-client-worker-dispatcher")))
+  }
+
+  // Removes the monitor and unsubscribes from the patterns that no other monitor uses
+  private def unregister(monitors: Map[String, Set[ActorRef]], actorRef: ActorRef): Unit = {
+    val m = monitors.map(p => p._1 -> (p._2 - actorRef))
+    val (unused, used) = m.partition(_._2.isEmpty)
+    context.become(working(used))
+    if (unused.nonEmpty) subscriber.foreach(_ ! PUNSUBSCRIBE(unused.keys.toSeq: _*))
+  }
+}
+
+// Subscribes to the Redis keyspace notifications and passes them on to the router
+private class AlarmNotificationSubscriber(host: String, port: Int, patterns: Seq[String])
+    extends RedisSubscriberActor(
+      address = new InetSocketAddress(host, port),
+      channels = Seq.empty,
+      patterns = patterns,
+      authPassword = None,
+      onConnectStatus = (b: Boolean) => {}
+    ) {
+
+  override def onMessage(m: Message): Unit = {
+    log.error(s"Unexpected call to onMessage with message: $m")
+  }
+
+  override def onPMessage(pm: PMessage): Unit = context.parent ! pm
+}
@@ -4,6 +4,7 @@ import akka.actor.{Actor, ActorLogging, Props}
 import csw.services.alarms.AlarmModel.SeverityLevel
 
 import scala.concurrent.duration._
+import scala.util.Random
 
 /**
  * An actor that continuously sets the severity of an alarm to a given value,
@@ -19,10 +20,13 @@ object AlarmRefreshActor {
   case class SetSeverity(alarms: Map[AlarmKey, SeverityLevel], setNow: Boolean)
 
   /**
-   * Message sent by timer to tell actor to republish the alarm severities
+   * Message sent by timer to tell actor to republish the alarm severities (of the next slice)
    */
   case object Publish
 
+  // The number of slices the refresh period is divided into (a slice of the alarms is refreshed in each)
+  private val slices = 5
+
   /**
    * Used to start the actor.
    *
@@ -35,6 +39,9 @@ object AlarmRefreshActor {
   }
 }
 
+// Refreshes the alarms in slices: Each alarm is assigned to one of the slices, and one slice is refreshed
+// with each tick, so that the refresh period is covered by evenly spaced, smaller batches. The ticks start after
+// a random delay, so that components started at the same time do not refresh their alarms at the same time.
 private class AlarmRefreshActor(alarmService: AlarmService, initialMap: Map[AlarmKey, SeverityLevel])
     extends Actor with ActorLogging {
 
@@ -42,25 +49,38 @@ private class AlarmRefreshActor(alarmService: AlarmService, initialMap: Map[Alar
   import context.dispatcher
 
   val delay = alarmService.asInstanceOf[AlarmServiceImpl].refreshSecs.seconds
-  context.system.scheduler.schedule(Duration.Zero, delay, self, Publish)
+  val interval = delay / slices
+  val timer = context.system.scheduler.schedule((interval.toMillis * Random.nextDouble()).toLong.millis, interval, self, Publish)
+
+  // The index of the slice to refresh next
+  var slice = 0
+
+  // Publish the initial severities right away
+  publish(initialMap)
+
+  override def postStop(): Unit = timer.cancel()
 
   def receive: Receive = working(initialMap)
 
   def working(map: Map[AlarmKey, SeverityLevel]): Receive = {
     case SetSeverity(m, setNow) =>
       context.become(working(map ++ m))
-      if (setNow) {
-        for ((a, s) <- m) {
-          alarmService.setSeverity(a, s)
-        }
-      }
+      if (setNow) publish(m)
 
     case Publish =>
-      for ((a, s) <- map) {
-        alarmService.setSeverity(a, s)
-      }
+      publish(map.filter(p => sliceOf(p._1) == slice))
+      slice = (slice + 1) % slices
 
     case x => log.error(s"Received unexpected message: $x")
   }
 
+  // Sets the severities with one bulk request
+  private def publish(m: Map[AlarmKey, SeverityLevel]): Unit = {
+    if (m.nonEmpty) alarmService.setSeverities(m).onFailure {
+      case ex => log.error(ex, "Failed to refresh alarm severities")
+    }
+  }
+
+  // Returns the slice of the refresh period that the alarm is assigned to
+  private def sliceOf(alarmKey: AlarmKey): Int = (alarmKey.hashCode & Int.MaxValue) % slices
 }
@@ -1,7 +1,7 @@
 package csw.services.alarms
 
 import akka.actor.{ActorRef, ActorRefFactory, ActorSystem, PoisonPill}
-import akka.util.Timeout
+import akka.util.{ByteString, Timeout}
 import com.typesafe.scalalogging.Logger
 import csw.services.alarms.AlarmModel.{AlarmStatus, CurrentSeverity, Health, HealthStatus, SeverityLevel}
 import csw.services.alarms.AlarmState.{AcknowledgedState, ActivationState, LatchedState, ShelvedState}
@@ -10,6 +10,9 @@ import csw.services.loc.Connection.TcpConnection
 import csw.services.loc.LocationService.ResolvedTcpLocation
 import org.slf4j.LoggerFactory
 import redis._
+import redis.api.scripting.RedisScript
+import redis.commands.TransactionBuilder
+import redis.protocol.{MultiBulk, RedisReply, Integer => RedisInteger}
 
 import scala.concurrent.{Await, Future}
 
@@ -66,16 +69,22 @@ object AlarmService {
    *
    * @param asName      name used to register the Redis instance with the Location Service (default: "Alarm Service")
    * @param autoRefresh  if true, keep refreshing the severity of alarms after setSeverity is called (using the AlarmRefreshActor)
+   * @param cache        if true, cache the alarm data read by this client (See [[AlarmCache]])
+   * @param recordHistory if true, record the changes in all alarms in the alarm history (See [[AlarmHistory]]).
+   *                      Off by default, since the history takes Redis memory for each change, for 30 days.
+   *                      Only one process should enable it, since each one records its own copy.
    * @return a new AlarmService instance
    */
-  def apply(asName: String = defaultName, autoRefresh: Boolean = false)(implicit system: ActorSystem, timeout: Timeout): Future[AlarmService] = {
+  def apply(asName: String = defaultName, autoRefresh: Boolean = false, cache: Boolean = false,
+            recordHistory: Boolean = false)(implicit system: ActorSystem, timeout: Timeout): Future[AlarmService] = {
     import system.dispatcher
     for {
       redisClient <- locateAlarmService(asName)
       ok <- redisClient.configSet("notify-keyspace-events", "KEA")
     } yield {
       if (!ok) logger.error("redis configSet notify-keyspace-events failed")
-      AlarmServiceImpl(redisClient, autoRefresh)
+      if (recordHistory) AlarmNotifier(system).startRecorder(redisClient.host, redisClient.port)
+      AlarmServiceImpl(redisClient, autoRefresh, if (cache) Some(AlarmCache(redisClient)) else None)
     }
   }
 
@@ -86,9 +95,14 @@ object AlarmService {
    * @param host        the Redis host name or IP address
    * @param port        the Redis port
    * @param autoRefresh  if true, keep refreshing the severity of alarms after setSeverity is called (using the AlarmRefreshActor)
+   * @param cache        if true, cache the alarm data read by this client (See [[AlarmCache]])
+   * @param recordHistory if true, record the changes in all alarms in the alarm history (See [[AlarmHistory]]).
+   *                      Off by default, since the history takes Redis memory for each change, for 30 days.
+   *                      Only one process should enable it, since each one records its own copy.
    * @return a new AlarmService instance
    */
-  def get(host: String = "127.0.0.1", port: Int = 6379, autoRefresh: Boolean = false)(implicit system: ActorSystem, timeout: Timeout): AlarmService = {
+  def get(host: String = "127.0.0.1", port: Int = 6379, autoRefresh: Boolean = false, cache: Boolean = false,
+          recordHistory: Boolean = false)(implicit system: ActorSystem, timeout: Timeout): AlarmService = {
     val redisClient = RedisClient(host, port)
     try {
       val ok = Await.result(redisClient.configSet("notify-keyspace-events", "KEA"), timeout.duration)
@@ -96,7 +110,8 @@ object AlarmService {
     } catch {
       case ex: Exception => logger.error("redis configSet notify-keyspace-events failed", ex)
     }
-    AlarmServiceImpl(redisClient, autoRefresh)
+    if (recordHistory) AlarmNotifier(system).startRecorder(redisClient.host, redisClient.port)
+    AlarmServiceImpl(redisClient, autoRefresh, if (cache) Some(AlarmCache(redisClient)) else None)
   }
 
   /**
@@ -114,9 +129,19 @@ object AlarmService {
      * @return
      */
     def actorRef: ActorRef
+
+    /**
+     * The current health of the monitored alarms, per subsystem and component (kept up to date by the monitoring actor)
+     */
+    def healthRollup: HealthRollup
+
+    /**
+     * Counts the changes seen and the notifications sent or held back by the monitoring actor
+     */
+    def counters: AlarmMonitorCounters
   }
 
-  private[alarms] case class AlarmMonitorImpl(actorRef: ActorRef) extends AlarmMonitor {
+  private[alarms] case class AlarmMonitorImpl(actorRef: ActorRef, healthRollup: HealthRollup, counters: AlarmMonitorCounters) extends AlarmMonitor {
     override def stop(): Unit = {
       actorRef ! PoisonPill
     }
@@ -140,6 +165,15 @@ trait AlarmService {
    * @return a future indicating when the operation has completed
    */
   def setSeverity(alarmKey: AlarmKey, severity: SeverityLevel): Future[Unit]
+
+  /**
+   * Sets and publishes the severity levels for the given alarms.
+   * The alarms are read and updated atomically in Redis, by one script call for up to 500 alarms, instead of two round trips per alarm.
+   *
+   * @param severities a map from alarm key to the new value of the severity
+   * @return a future indicating when the operation has completed (fails if any of the alarms were not found)
+   */
+  def setSeverities(severities: Map[AlarmKey, SeverityLevel]): Future[Unit]
 }
 
 /**
@@ -147,13 +181,62 @@ trait AlarmService {
  *
  * @param redisClient used to access the Redis instance used by the Alarm Service
  * @param autoRefresh  if true, keep refreshing the severity of alarms after setSeverity is called (using the AlarmRefreshActor)
+ * @param cache        an optional client side cache for the alarm models, severities and states read
+ *                     (invalidated by keyspace notifications)
  */
-private[alarms] case class AlarmServiceImpl(redisClient: RedisClient, autoRefresh: Boolean)(implicit system: ActorRefFactory, timeout: Timeout)
+private[alarms] case class AlarmServiceImpl(redisClient: RedisClient, autoRefresh: Boolean, cache: Option[AlarmCache] = None)(implicit system: ActorRefFactory, timeout: Timeout)
     extends AlarmService with ByteStringSerializerLowPriority {
 
   import AlarmService._
   import system.dispatcher
 
+  // Max number of alarms read or updated in one Redis transaction or script (See getHealthInfo, setSeverities)
+  private val batchSize = 500
+
+  // Sets the severities of a batch of alarms and updates their latched and acknowledged states, like setSeverity().
+  // KEYS: the alarm key, state key and severity key of each alarm, ARGV: the expiry time of the severity keys in
+  // seconds, followed by the severity of each alarm. Returns for each alarm: 1 if set, 2 if set, but the severity
+  // is not one of the alarm's severity levels, or 0 if the alarm was not found.
+  private val setSeveritiesScript = {
+    import AlarmModel.F
+    import AlarmState._
+    import SeverityLevel._
+    val levels = List(Disconnected, Indeterminate, Okay, Warning, Major, Critical).map(l => s"${l.name} = ${l.level}").mkString(", ")
+    RedisScript(
+      s"""
+         |local levels = { $levels }
+         |local result = {}
+         |for i = 1, #ARGV - 1 do
+         |  local key, stateKey, severityKey = KEYS[3 * i - 2], KEYS[3 * i - 1], KEYS[3 * i]
+         |  local severity = ARGV[i + 1]
+         |  local model = redis.call('HMGET', key, '${F.severityLevels}', '${F.acknowledge}', '${F.latched}')
+         |  local state = redis.call('HMGET', stateKey, '$latchedStateField', '$latchedSeverityField', '$acknowledgedStateField')
+         |  if not (model[1] and model[2] and model[3] and state[1] and state[2] and state[3]) then
+         |    result[i] = 0
+         |  else
+         |    redis.call('SET', severityKey, severity, 'EX', ARGV[1])
+         |    local level = levels[severity] or ${Disconnected.level}
+         |    local isAlarm = level > 0
+         |    if model[3] == 'true' and isAlarm then
+         |      if state[1] == '${LatchedState.Normal.name}' then
+         |        redis.call('HSET', stateKey, '$latchedStateField', '${LatchedState.NeedsReset.name}')
+         |        if state[2] ~= severity then redis.call('HSET', stateKey, '$latchedSeverityField', severity) end
+         |      elseif level > (levels[state[2]] or ${Disconnected.level}) then
+         |        redis.call('HSET', stateKey, '$latchedSeverityField', severity)
+         |      end
+         |    end
+         |    if model[2] == 'true' and isAlarm and state[3] == '${AcknowledgedState.Normal.name}' then
+         |      redis.call('HSET', stateKey, '$acknowledgedStateField', '${AcknowledgedState.NeedsAcknowledge.name}')
+         |    end
+         |    local listed = string.find(':' .. model[1] .. ':', ':' .. severity .. ':', 1, true)
+         |    if listed or severity == '${Disconnected.name}' then result[i] = 1 else result[i] = 2 end
+         |  end
+         |end
+         |return result
+         |""".stripMargin
+    )
+  }
+
   // Alarm severity should be reset every refreshSecs seconds to avoid being expired (after three missed refreshes).
   // (Allow override with system property for testing)
   val refreshSecs: Int = Option(System.getProperty("csw.services.alarms.refreshSecs")).getOrElse(s"$defaultRefreshSecs").toInt
@@ -161,31 +244,44 @@ private[alarms] case class AlarmServiceImpl(redisClient: RedisClient, autoRefres
   // Actor used to keep refreshing the alarm severity
   lazy val alarmRefreshActor: ActorRef = system.actorOf(AlarmRefreshActor.props(this, Map.empty[AlarmKey, SeverityLevel]))
 
+  // Reads the alarm history (recorded by the AlarmHistoryListener, if started, see AlarmService.apply)
+  private[alarms] lazy val history: AlarmHistory = new AlarmHistory(redisClient)
+
   def getAlarms(alarmKey: AlarmKey): Future[Seq[AlarmModel]] = {
-    val pattern = alarmKey.key
-    redisClient.keys(pattern).flatMap { keys =>
-      Future.sequence(keys.map(getAlarm)).map(_.flatten)
+    AlarmIndex.resolve(redisClient, alarmKey).flatMap { keys =>
+      Future.sequence(keys.map(getCachedAlarm)).map(_.flatten)
     }
   }
 
   def getAlarm(key: AlarmKey): Future[AlarmModel] = {
-    getAlarm(key.key).map { opt =>
+    getCachedAlarm(key).map { opt =>
       if (opt.isEmpty) {
         throw new RuntimeException(s"No alarm was found for key $key")
       } else opt.get
     }
   }
 
-  // Gets the abbreviated alarm model for the given key
-  private def getAlarmSmall(key: AlarmKey): Future[AlarmModelSmall] = {
-    import AlarmModel.F
-    redisClient.hmget(key.key, F.severityLevels, F.acknowledge, F.latched).map(AlarmModelSmall(_)).map { opt =>
-      if (opt.isEmpty) {
-        throw new RuntimeException(s"No alarm was found for key $key")
-      } else opt.get
+  // Gets the alarm model from the cache, if enabled, otherwise from Redis
+  private def getCachedAlarm(key: AlarmKey): Future[Option[AlarmModel]] = cache match {
+    case Some(c) => c.getModel(key)(getAlarm(key.key))
+    case None    => getAlarm(key.key)
+  }
+
+  // Gets the alarm severity and state from the cache, if enabled, otherwise from Redis
+  private def getCachedHealthInfo(key: AlarmKey): Future[Option[HealthInfo]] = {
+    def load = getHealthInfo(List(key)).map(_.headOption)
+    cache match {
+      case Some(c) => c.getHealthInfo(key)(load)
+      case None    => load
     }
   }
 
+  // Removes the given alarms from the cache once the future (that changes them) completes
+  private def invalidate[A](keys: Iterable[AlarmKey])(f: Future[A]): Future[A] = cache match {
+    case Some(c) => f.andThen { case _ => keys.foreach(c.invalidate) }
+    case None    => f
+  }
+
   /**
    * Gets the alarm object matching the given key from Redis
    *
@@ -197,29 +293,56 @@ private[alarms] case class AlarmServiceImpl(redisClient: RedisClient, autoRefres
   }
 
   def getAlarmState(key: AlarmKey): Future[AlarmState] = {
+    if (cache.isEmpty) loadAlarmState(key)
+    else getCachedHealthInfo(key).map { opt =>
+      if (opt.isEmpty) throw new RuntimeException(s"Alarm state for $key not found.")
+      opt.get.alarmState
+    }
+  }
+
+  // Gets the alarm state from Redis (Used when changing the state, so that a cached value is not used)
+  private def loadAlarmState(key: AlarmKey): Future[AlarmState] = {
     redisClient.hgetall(key.stateKey).map { map =>
       if (map.isEmpty) throw new RuntimeException(s"Alarm state for $key not found.")
       AlarmState(map)
     }
   }
 
-  override def setSeverity(alarmKey: AlarmKey, severity: SeverityLevel): Future[Unit] = {
-    val f1 = getAlarmSmall(alarmKey)
-    val f2 = getAlarmState(alarmKey)
-    val futureResult = for {
-      alarm <- f1
-      alarmState <- f2
-      result <- setSeverity(alarmKey, alarm, alarmState, severity)
-    } yield result
+  override def setSeverity(alarmKey: AlarmKey, severity: SeverityLevel): Future[Unit] =
+    setSeverities(Map(alarmKey -> severity))
+
+  override def setSeverities(severities: Map[AlarmKey, SeverityLevel]): Future[Unit] = {
+    val exSeconds = refreshSecs * maxMissedRefresh
+    val futureResult = Future.sequence(severities.toList.grouped(batchSize).toList.map { list =>
+      // Read the model and state and write the severities and state changes of all the alarms in one script,
+      // which Redis runs atomically, so that a concurrent change to the state (for example, an acknowledge)
+      // is not overwritten based on the state read before it
+      list.foreach(p => logger.debug(s"Setting severity for ${p._1} to ${p._2}"))
+      val keys = list.flatMap(p => List(p._1.key, p._1.stateKey, p._1.severityKey))
+      val args = exSeconds.toString :: list.map(_._2.name)
+      redisClient.evalshaOrEval[RedisReply](setSeveritiesScript, keys, args).map {
+        case MultiBulk(Some(results)) =>
+          val codes = list.zip(results.map { case i: RedisInteger => i.toLong; case _ => 0L })
+          codes.foreach {
+            case ((k, sev), 2L) => logger.warn(s"Alarm $k is not listed as supporting severity level $sev")
+            case _              =>
+          }
+          val missing = codes.collect { case ((k, _), 0L) => k }
+          if (missing.nonEmpty) throw new RuntimeException(s"No alarm was found for key ${missing.mkString(", ")}")
+        case x => throw new RuntimeException(s"Unexpected reply from the set severities script: $x")
+      }
+    }).map(_ => ())
 
     if (autoRefresh)
-      alarmRefreshActor ! AlarmRefreshActor.SetSeverity(Map(alarmKey -> severity), setNow = false)
+      alarmRefreshActor ! AlarmRefreshActor.SetSeverity(severities, setNow = false)
 
-    futureResult
+    invalidate(severities.keys)(futureResult)
   }
 
-  // Sets the severity of the alarm, if allowed based on the alarm state
-  private def setSeverity(alarmKey: AlarmKey, alarm: AlarmModelSmall, alarmState: AlarmState, severity: SeverityLevel): Future[Unit] = {
+  // Adds the commands to set the severity of the alarm to the given transaction, if allowed based on the alarm state
+  // (Used by AlarmLoader, with the state it writes in the same transaction. setSeverities does the same in a script.)
+  private[alarms] def setSeverity(redisTransaction: TransactionBuilder, alarmKey: AlarmKey, alarm: AlarmModelSmall,
+                                  alarmState: AlarmState, severity: SeverityLevel): List[Future[Any]] = {
 
     // Check that the severity is listed in the spec (XXX Should this throw an exception?)
     if (severity != SeverityLevel.Disconnected && !alarm.severityLevels.contains(severity))
@@ -237,8 +360,6 @@ private[alarms] case class AlarmServiceImpl(redisClient: RedisClient, autoRefres
     val s = if (latchedSeverity != severity) s" (latched: $latchedSeverity)" else ""
     logger.debug(s"Setting severity for $alarmKey to $severity$s")
 
-    val redisTransaction = redisClient.transaction()
-
     // Set the severity key to the component's reported severity, so we have a record of that
     val f1 = redisTransaction.set(alarmKey.severityKey, severity.name, exSeconds = Some(refreshSecs * maxMissedRefresh))
 
@@ -260,43 +381,62 @@ private[alarms] case class AlarmServiceImpl(redisClient: RedisClient, autoRefres
       redisTransaction.hset(alarmKey.stateKey, AlarmState.acknowledgedStateField, AcknowledgedState.NeedsAcknowledge.name)
     } else Future.successful(true)
 
-    val f5 = redisTransaction.exec()
-
-    Future.sequence(List(f1, f2, f3, f4, f5)).map(_ => ())
+    List(f1, f2, f3, f4)
   }
 
   def getSeverity(alarmKey: AlarmKey): Future[CurrentSeverity] = {
-    for {
-      alarm <- getAlarmSmall(alarmKey)
-      alarmState <- getAlarmState(alarmKey)
-      reportedSeverity <- getReportedSeverity(alarmKey)
-    } yield {
-      getSeverity(alarmKey, alarm, alarmState, reportedSeverity)
+    getCachedHealthInfo(alarmKey).map { opt =>
+      if (opt.isEmpty) throw new RuntimeException(s"No alarm was found for key $alarmKey")
+      opt.get.currentSeverity
     }
   }
 
-  // Returns the severity level reported by the component, or Disconnected, if the value timed out
-  private def getReportedSeverity(alarmKey: AlarmKey): Future[SeverityLevel] = {
-    for {
-      exists <- redisClient.exists(alarmKey.severityKey)
-      sevStrOpt <- if (exists) redisClient.get[String](alarmKey.severityKey) else Future.successful(None)
-    } yield {
-      sevStrOpt.flatMap(SeverityLevel(_)).getOrElse(SeverityLevel.Disconnected)
+  /**
+   * Gets the severity and state of the given alarms. The commands for up to batchSize alarms are sent
+   * in one Redis transaction, and the transactions are pipelined, so that only one round trip is needed.
+   *
+   * @param alarmKeys the keys for the alarms (no wildcards)
+   * @return the future health info for each of the alarms that exists, in the given order
+   */
+  private[alarms] def getHealthInfo(alarmKeys: Seq[AlarmKey]): Future[Seq[HealthInfo]] = {
+    val fs = alarmKeys.grouped(batchSize).toList.map { keys =>
+      val redisTransaction = redisClient.transaction()
+      val results = keys.map { k =>
+        (k, redisTransaction.get[String](k.severityKey), redisTransaction.hgetall[ByteString](k.stateKey))
+      }
+      redisTransaction.exec()
+      Future.sequence(results.map {
+        case (k, f1, f2) =>
+          for {
+            sevStrOpt <- f1
+            stateMap <- f2
+          } yield {
+            if (stateMap.isEmpty) None
+            else {
+              val reportedSeverity = sevStrOpt.flatMap(SeverityLevel(_)).getOrElse(SeverityLevel.Disconnected)
+              val alarmState = AlarmState(stateMap)
+              Some(HealthInfo(k, getSeverity(reportedSeverity, alarmState), alarmState))
+            }
+          }
+      })
     }
+    Future.sequence(fs).map(_.flatten.flatten)
   }
 
   // Returns the reported and calculated severity levels, taking latching into account.
-  private def getSeverity(alarmKey: AlarmKey, alarm: AlarmModelSmall, alarmState: AlarmState,
-                          reportedSeverity: SeverityLevel): CurrentSeverity = {
+  // (The severity key expires if it is not refreshed, in which case the reported severity is Disconnected)
+  private def getSeverity(reportedSeverity: SeverityLevel, alarmState: AlarmState): CurrentSeverity = {
     val latchedSeverity = if (alarmState.latchedState == LatchedState.Normal) reportedSeverity else alarmState.latchedSeverity
     CurrentSeverity(reportedSeverity, latchedSeverity)
   }
 
   def acknowledgeAlarm(alarmKey: AlarmKey): Future[Unit] = {
-    for {
-      alarmState <- getAlarmState(alarmKey)
-      result <- acknowledgeAlarm(alarmKey, alarmState)
-    } yield result
+    invalidate(List(alarmKey)) {
+      for {
+        alarmState <- loadAlarmState(alarmKey)
+        result <- acknowledgeAlarm(alarmKey, alarmState)
+      } yield result
+    }
   }
 
   // acknowledge the given alarm
@@ -309,10 +449,12 @@ private[alarms] case class AlarmServiceImpl(redisClient: RedisClient, autoRefres
   }
 
   def resetAlarm(alarmKey: AlarmKey): Future[Unit] = {
-    for {
-      alarmState <- getAlarmState(alarmKey)
-      result <- resetAlarm(alarmKey, alarmState)
-    } yield result
+    invalidate(List(alarmKey)) {
+      for {
+        alarmState <- loadAlarmState(alarmKey)
+        result <- resetAlarm(alarmKey, alarmState)
+      } yield result
+    }
   }
 
   def acknowledgeAndResetAlarm(alarmKey: AlarmKey): Future[Unit] = {
@@ -328,7 +470,7 @@ private[alarms] case class AlarmServiceImpl(redisClient: RedisClient, autoRefres
     f.map(_ => ())
   }
 
-  def setShelvedState(alarmKey: AlarmKey, shelvedState: ShelvedState): Future[Unit] = {
+  def setShelvedState(alarmKey: AlarmKey, shelvedState: ShelvedState): Future[Unit] = invalidate(List(alarmKey)) {
     for {
       exists <- redisClient.exists(alarmKey.stateKey)
       if exists
@@ -339,8 +481,7 @@ private[alarms] case class AlarmServiceImpl(redisClient: RedisClient, autoRefres
     }
   }
 
-  def setActivationState(alarmKey: AlarmKey, activationState: ActivationState): Future[Unit] = {
-
+  def setActivationState(alarmKey: AlarmKey, activationState: ActivationState): Future[Unit] = invalidate(List(alarmKey)) {
     for {
       exists <- redisClient.exists(alarmKey.stateKey)
       if exists
@@ -357,18 +498,9 @@ private[alarms] case class AlarmServiceImpl(redisClient: RedisClient, autoRefres
 
   // Returns a future map from alarm key to health info for each alarm key matching the given alarm key pattern
   private[alarms] def getHealthInfoMap(alarmKey: AlarmKey): Future[Map[AlarmKey, HealthInfo]] = {
-    val pattern = alarmKey.key
-    redisClient.keys(pattern).map(_.map(AlarmKey(_))).flatMap { alarmKeys =>
-      if (alarmKeys.isEmpty) throw new RuntimeException("Can't get health information: No alarms matched $alarmKey")
-      val fs = alarmKeys.map { k =>
-        for {
-          sev <- getSeverity(k)
-          state <- getAlarmState(k)
-        } yield {
-          k -> HealthInfo(k, sev, state)
-        }
-      }
-      Future.sequence(fs).map(_.toMap)
+    AlarmIndex.resolve(redisClient, alarmKey).flatMap { alarmKeys =>
+      if (alarmKeys.isEmpty) throw new RuntimeException(s"Can't get health information: No alarms matched $alarmKey")
+      getHealthInfo(alarmKeys).map(_.map(h => h.alarmKey -> h).toMap)
     }
   }
 
@@ -377,27 +509,28 @@ private[alarms] case class AlarmServiceImpl(redisClient: RedisClient, autoRefres
   // least one alarm with Major severity, it’s health is Ill. If the component has at least one alarm with
   // Critical severity, it’s health is Bad. Additionally, if the component’s severity is Disconnected or
   // Indeterminate, it’s health is also Bad.
-  private[alarms] def getHealth(alarmMap: Map[AlarmKey, HealthInfo]): Health = {
-    def active(h: HealthInfo): Boolean = h.alarmState.shelvedState == ShelvedState.Normal && h.alarmState.activationState == ActivationState.Normal
+  // (The monitor actor keeps a HealthRollup up to date instead of calling this for each change)
+  private[alarms] def getHealth(alarmMap: Map[AlarmKey, HealthInfo]): Health = HealthRollup(alarmMap.values).health
 
-    val severityLevels = alarmMap.values.filter(active).map(_.currentSeverity.latched).toList
+  def monitorAlarms(alarmKey: AlarmKey, subscriber: ActorRef, notifyAll: Boolean): AlarmMonitor =
+    monitorAlarmBatches(alarmKey, subscriber, notifyAll, AlarmMonitorSettings())
 
-    if (severityLevels.contains(SeverityLevel.Critical) || severityLevels.contains(SeverityLevel.Disconnected) || severityLevels.contains(SeverityLevel.Indeterminate))
-      Health.Bad
-    else if (severityLevels.contains(SeverityLevel.Major))
-      Health.Ill
-    else Health.Good
-  }
+  def monitorAlarms(alarmKey: AlarmKey, notifyAlarm: AlarmStatus => Unit, notifyHealth: HealthStatus => Unit, notifyAll: Boolean): AlarmMonitor =
+    startMonitor(alarmKey, None, Some((alarms: List[AlarmStatus]) => alarms.foreach(notifyAlarm)), Some(notifyHealth), notifyAll, AlarmMonitorSettings())
 
-  def monitorAlarms(alarmKey: AlarmKey, subscriber: ActorRef, notifyAll: Boolean): AlarmMonitor = {
-    val actorRef = system.actorOf(AlarmMonitorActor.props(this, alarmKey, Some(subscriber), None, None, notifyAll)
-      .withDispatcher("rediscala.rediscala-client-worker-dispatcher"))
-    AlarmMonitorImpl(actorRef)
-  }
+  def monitorAlarmBatches(alarmKey: AlarmKey, subscriber: ActorRef, notifyAll: Boolean, settings: AlarmMonitorSettings): AlarmMonitor =
+    startMonitor(alarmKey, Some(subscriber), None, None, notifyAll, settings)
+
+  def monitorAlarmBatches(alarmKey: AlarmKey, notifyAlarms: List[AlarmStatus] => Unit, notifyHealth: HealthStatus => Unit,
+                          notifyAll: Boolean, settings: AlarmMonitorSettings): AlarmMonitor =
+    startMonitor(alarmKey, None, Some(notifyAlarms), Some(notifyHealth), notifyAll, settings)
 
-  def monitorAlarms(alarmKey: AlarmKey, notifyAlarm: AlarmStatus => Unit, notifyHealth: HealthStatus => Unit, notifyAll: Boolean): AlarmMonitor = {
-    val actorRef = system.actorOf(AlarmMonitorActor.props(this, alarmKey, None, Some(notifyAlarm), Some(notifyHealth), notifyAll)
-      .withDispatcher("rediscala.rediscala-client-worker-dispatcher"))
-    AlarmMonitorImpl(actorRef)
+  private def startMonitor(alarmKey: AlarmKey, subscriber: Option[ActorRef], notifyAlarms: Option[List[AlarmStatus] => Unit],
+                           notifyHealth: Option[HealthStatus => Unit], notifyAll: Boolean, settings: AlarmMonitorSettings): AlarmMonitor = {
+    val healthRollup = new HealthRollup
+    val counters = new AlarmMonitorCounters
+    val actorRef = system.actorOf(AlarmMonitorActor.props(this, alarmKey, subscriber, None, notifyHealth, notifyAll, healthRollup,
+      notifyAlarms, settings, counters).withDispatcher("rediscala.rediscala-client-worker-dispatcher"))
+    AlarmMonitorImpl(actorRef, healthRollup, counters)
   }
 }
@@ -1,15 +1,14 @@
 package csw.services.alarms
 
 import java.io._
+import java.time.LocalDateTime
 
 import akka.actor.{ActorRef, ActorRefFactory}
 import com.typesafe.config.{Config, ConfigFactory, ConfigResolveOptions}
-import com.typesafe.scalalogging.Logger
-import csw.services.alarms.AlarmModel.{AlarmStatus, CurrentSeverity, Health, HealthStatus, SeverityLevel}
+import csw.services.alarms.AlarmModel.{AlarmStatus, CurrentSeverity, Health, HealthStatus}
 import csw.services.alarms.AlarmState.{ActivationState, ShelvedState}
 import csw.services.alarms.AscfValidation.Problem
 import csw.services.trackLocation.TrackLocation
-import org.slf4j.LoggerFactory
 import AlarmService._
 
 import scala.concurrent.{ExecutionContext, Future}
@@ -60,6 +59,17 @@ trait AlarmServiceAdmin {
    */
   def initAlarms(inputFile: File, reset: Boolean = false): Future[List[Problem]]
 
+  /**
+   * Initialize the alarm data in the database using the given file, reporting the progress.
+   * The alarms are written in pipelined chunks (See [[AlarmLoader]]).
+   *
+   * @param inputFile the alarm service config file containing info about all the alarms
+   * @param reset     if true, delete the current alarms before importing
+   * @param progress  called after each chunk of alarms has been written
+   * @return a future list of problems that occurred while validating the config file or ingesting the data into the database
+   */
+  def initAlarms(inputFile: File, reset: Boolean, progress: AlarmLoader.Progress => Unit): Future[List[Problem]]
+
   /**
    * Alarm severity should be reset every refreshSecs seconds to avoid being expired (after three missed refreshes)
    */
@@ -98,6 +108,14 @@ trait AlarmServiceAdmin {
    */
   def getSeverity(alarmKey: AlarmKey): Future[CurrentSeverity]
 
+  /**
+   * Gets the severity levels for the given alarms, using a single round trip to Redis
+   *
+   * @param alarmKeys the keys for the alarms (no wildcards)
+   * @return a future map from alarm key to severity level, for each alarm that was found
+   */
+  def getSeverities(alarmKeys: Seq[AlarmKey]): Future[Map[AlarmKey, CurrentSeverity]]
+
   /**
    * Acknowledges the given alarm, if needed.
    *
@@ -176,6 +194,77 @@ trait AlarmServiceAdmin {
    */
   def monitorAlarms(alarmKey: AlarmKey, notifyAlarm: AlarmStatus => Unit, notifyHealth: HealthStatus => Unit, notifyAll: Boolean): AlarmMonitor
 
+  /**
+   * Starts monitoring the health of the system, subsystem or component, coalescing the notifications
+   * when many alarms change at once, as configured in the given settings
+   *
+   * @param alarmKey     an AlarmKey matching the set of alarms for a component, subsystem or all subsystems, etc.
+   * @param subscriber   an actor that will receive HealthStatus messages and AlarmStatusBatch messages
+   *                     (or AlarmStatus messages, if settings.batchInterval is zero)
+   * @param notifyAll    if true, all severity changes are reported, otherwise only the relevant changes
+   *                     (See the monitorAlarms methods)
+   * @param settings     controls the coalescing of notifications (See AlarmMonitorSettings(system.settings.config))
+   * @return an object containing the actorRef for the subscriber actor (kill the actor to stop monitoring)
+   */
+  def monitorAlarmBatches(alarmKey: AlarmKey, subscriber: ActorRef, notifyAll: Boolean, settings: AlarmMonitorSettings): AlarmMonitor
+
+  /**
+   * Starts monitoring the health of the system, subsystem or component, coalescing the notifications
+   * when many alarms change at once, as configured in the given settings
+   *
+   * @param alarmKey     an AlarmKey matching the set of alarms for a component, subsystem or all subsystems, etc.
+   * @param notifyAlarms a function that will be called with the list of AlarmStatus changes in each batch
+   * @param notifyHealth a function that will be called with a HealthStatus object when the total health changes
+   *                     (at most once per settings.healthInterval)
+   * @param notifyAll    if true, all severity changes are reported, otherwise only the relevant changes
+   *                     (See the monitorAlarms methods)
+   * @param settings     controls the coalescing of notifications (See AlarmMonitorSettings(system.settings.config))
+   * @return an object containing the actorRef for the subscriber actor (kill the actor to stop monitoring)
+   */
+  def monitorAlarmBatches(alarmKey: AlarmKey, notifyAlarms: List[AlarmStatus] => Unit, notifyHealth: HealthStatus => Unit,
+                          notifyAll: Boolean, settings: AlarmMonitorSettings): AlarmMonitor
+
+  /**
+   * Deletes the alarm index sets (used to resolve wildcard alarm keys) and builds them again from the stored alarms.
+   * While the index is being rebuilt, alarm keys are resolved with the (slower) Redis SCAN command.
+   *
+   * @return the future number of alarms indexed
+   */
+  def rebuildIndex(): Future[Int]
+
+  /**
+   * Compares the alarm index sets with the stored alarms
+   *
+   * @return a future report listing the alarms missing from the index and the stale index entries
+   */
+  def verifyIndex(): Future[AlarmIndex.IndexReport]
+
+  /**
+   * Returns the hit and miss counts of the client side cache, or None if the cache is not enabled
+   * (See the cache option of AlarmService.apply)
+   */
+  def cacheStats: Option[AlarmCache.Stats]
+
+  /**
+   * Gets the recorded changes in severity and state of the matching alarms in the given time range
+   *
+   * @param alarmKey a key that may match multiple alarms (via wildcards, see AlarmKey.apply())
+   * @param from     the start of the time range (UTC, inclusive)
+   * @param to       the end of the time range (UTC, inclusive)
+   * @return the future list of transitions, ordered by time
+   */
+  def getHistory(alarmKey: AlarmKey, from: LocalDateTime, to: LocalDateTime): Future[Seq[AlarmHistory.AlarmTransition]]
+
+  /**
+   * Counts how often the matching alarms went into an alarm severity (Warning or higher) in the given time range
+   *
+   * @param alarmKey a key that may match multiple alarms (via wildcards, see AlarmKey.apply())
+   * @param from     the start of the time range (UTC, inclusive)
+   * @param to       the end of the time range (UTC, inclusive)
+   * @return the future number of alarms for each (subsystem, component) that had any
+   */
+  def countAlarms(alarmKey: AlarmKey, from: LocalDateTime, to: LocalDateTime): Future[Map[(String, String), Int]]
+
   /**
    * Shuts down the the database server (For use in test cases that started the database themselves)
    */
@@ -192,7 +281,6 @@ private[alarms] case class AlarmServiceAdminImpl(asi: AlarmServiceImpl)(implicit
 
   import system.dispatcher
 
-  private val logger = Logger(LoggerFactory.getLogger(getClass))
   val redisClient = asi.redisClient
 
   // If reset is true, deletes all alarm data in Redis. (Note: DEL does not take wildcards!)
@@ -205,14 +293,18 @@ private[alarms] case class AlarmServiceAdminImpl(asi: AlarmServiceImpl)(implicit
       val pattern1 = s"${AlarmKey.alarmKeyPrefix}*"
       val pattern2 = s"${AlarmKey.severityKeyPrefix}*"
       val pattern3 = s"${AlarmKey.alarmStateKeyPrefix}*"
-      val f1 = redisClient.keys(pattern1).flatMap(deleteKeys)
-      val f2 = redisClient.keys(pattern2).flatMap(deleteKeys)
-      val f3 = redisClient.keys(pattern3).flatMap(deleteKeys)
-      Future.sequence(List(f1, f2, f3)).map(_ => ())
+      val f1 = AlarmIndex.scan(redisClient, pattern1).flatMap(deleteKeys)
+      val f2 = AlarmIndex.scan(redisClient, pattern2).flatMap(deleteKeys)
+      val f3 = AlarmIndex.scan(redisClient, pattern3).flatMap(deleteKeys)
+      val f4 = AlarmIndex.delete(redisClient)
+      Future.sequence(List(f1, f2, f3, f4)).map(_ => ())
     } else Future.successful(())
   }
 
-  override def initAlarms(inputFile: File, reset: Boolean): Future[List[Problem]] = {
+  override def initAlarms(inputFile: File, reset: Boolean): Future[List[Problem]] =
+    initAlarms(inputFile, reset, _ => ())
+
+  override def initAlarms(inputFile: File, reset: Boolean, progress: AlarmLoader.Progress => Unit): Future[List[Problem]] = {
     import net.ceedubs.ficus.Ficus._
     // Use JSON schema to validate the file
     val inputConfig = ConfigFactory.parseFile(inputFile).resolve(ConfigResolveOptions.noSystem())
@@ -224,23 +316,22 @@ private[alarms] case class AlarmServiceAdminImpl(asi: AlarmServiceImpl)(implicit
       val alarmConfigs = inputConfig.as[List[Config]]("alarms")
       val alarms = alarmConfigs.map(AlarmModel(_))
       // Reset the db if requested, then initialize the alarm db (Nil means return No problems...)
-      checkReset(reset).flatMap(_ => initAlarms(alarms).map(_ => Nil))
+      for {
+        _ <- checkReset(reset)
+        indexed <- redisClient.exists(AlarmIndex.indexVersionKey)
+        _ <- AlarmLoader.load(asi, alarms, progress)
+        _ <- updateIndex(indexed || reset)
+      } yield {
+        asi.cache.foreach(_.clear())
+        Nil
+      }
     }
   }
 
-  // Initialize the Redis db with the given list of alarms
-  private def initAlarms(alarms: List[AlarmModel]): Future[Unit] = {
-    val fList = alarms.map { alarm =>
-      val alarmKey = AlarmKey(alarm)
-      logger.debug(s"Adding alarm: subsystem: ${alarm.subsystem}, component: ${alarm.component}, ${alarm.name}")
-      // store the static alarm data, alarm state, and the initial severity in redis
-      for {
-        _ <- redisClient.hmset(alarmKey.key, alarm.asMap())
-        _ <- redisClient.hmset(alarmKey.stateKey, AlarmState().asMap())
-        _ <- asi.setSeverity(alarmKey, SeverityLevel.Disconnected)
-      } yield ()
-    }
-    Future.sequence(fList).map(_ => ())
+  // Marks the index as complete, if it contains all the alarms, otherwise (alarms loaded before the index existed) rebuilds it
+  private def updateIndex(complete: Boolean): Future[Unit] = {
+    if (complete) redisClient.set(AlarmIndex.indexVersionKey, AlarmIndex.indexVersion).map(_ => ())
+    else AlarmIndex.rebuild(redisClient).map(_ => ())
   }
 
   override def refreshSecs: Int = asi.refreshSecs
@@ -253,6 +344,9 @@ private[alarms] case class AlarmServiceAdminImpl(asi: AlarmServiceImpl)(implicit
 
   override def getSeverity(alarmKey: AlarmKey): Future[CurrentSeverity] = asi.getSeverity(alarmKey)
 
+  override def getSeverities(alarmKeys: Seq[AlarmKey]): Future[Map[AlarmKey, CurrentSeverity]] =
+    asi.getHealthInfo(alarmKeys).map(_.map(h => h.alarmKey -> h.currentSeverity).toMap)
+
   override def acknowledgeAlarm(alarmKey: AlarmKey): Future[Unit] = asi.acknowledgeAlarm(alarmKey)
 
   override def resetAlarm(alarmKey: AlarmKey): Future[Unit] = asi.resetAlarm(alarmKey)
@@ -269,6 +363,25 @@ private[alarms] case class AlarmServiceAdminImpl(asi: AlarmServiceImpl)(implicit
 
   override def monitorAlarms(alarmKey: AlarmKey, notifyAlarm: (AlarmStatus) => Unit, notifyHealth: (HealthStatus) => Unit, notifyAll: Boolean): AlarmMonitor = asi.monitorAlarms(alarmKey, notifyAlarm, notifyHealth, notifyAll)
 
+  override def monitorAlarmBatches(alarmKey: AlarmKey, subscriber: ActorRef, notifyAll: Boolean, settings: AlarmMonitorSettings): AlarmMonitor =
+    asi.monitorAlarmBatches(alarmKey, subscriber, notifyAll, settings)
+
+  override def monitorAlarmBatches(alarmKey: AlarmKey, notifyAlarms: List[AlarmStatus] => Unit, notifyHealth: HealthStatus => Unit,
+                                   notifyAll: Boolean, settings: AlarmMonitorSettings): AlarmMonitor =
+    asi.monitorAlarmBatches(alarmKey, notifyAlarms, notifyHealth, notifyAll, settings)
+
+  override def rebuildIndex(): Future[Int] = AlarmIndex.rebuild(redisClient)
+
+  override def verifyIndex(): Future[AlarmIndex.IndexReport] = AlarmIndex.verify(redisClient)
+
+  override def cacheStats: Option[AlarmCache.Stats] = asi.cache.map(_.stats)
+
+  override def getHistory(alarmKey: AlarmKey, from: LocalDateTime, to: LocalDateTime): Future[Seq[AlarmHistory.AlarmTransition]] =
+    asi.history.getTransitions(alarmKey, from, to)
+
+  override def countAlarms(alarmKey: AlarmKey, from: LocalDateTime, to: LocalDateTime): Future[Map[(String, String), Int]] =
+    asi.history.countAlarms(alarmKey, from, to)
+
   override def shutdown(): Future[Unit] = {
     val f = redisClient.shutdown()
     redisClient.stop()
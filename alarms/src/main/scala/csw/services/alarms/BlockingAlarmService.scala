@@ -41,4 +41,12 @@ case class BlockingAlarmService(alarmService: AlarmService)(implicit val timeout
   def setSeverity(alarmKey: AlarmKey, severity: SeverityLevel): Unit =
     Await.result(alarmService.setSeverity(alarmKey, severity), timeout.duration)
 
+  /**
+   * Sets and publishes the severity levels for the given alarms (using one bulk request)
+   *
+   * @param severities a map from alarm key to the new value of the severity
+   */
+  def setSeverities(severities: Map[AlarmKey, SeverityLevel]): Unit =
+    Await.result(alarmService.setSeverities(severities), timeout.duration)
+
 }
@@ -1,6 +1,7 @@
 package csw.services.alarms
 
 import java.io._
+import java.time.LocalDateTime
 
 import akka.actor.{ActorRef, ActorRefFactory}
 import akka.util.Timeout
@@ -38,6 +39,17 @@ case class BlockingAlarmServiceAdmin(alarmAdmin: AlarmServiceAdmin)(implicit sys
   def initAlarms(inputFile: File, reset: Boolean = false): List[Problem] =
     Await.result(alarmAdmin.initAlarms(inputFile, reset), timeout.duration)
 
+  /**
+   * Initialize the alarm data in the database using the given file, reporting the progress
+   *
+   * @param inputFile the alarm service config file containing info about all the alarms
+   * @param reset     if true, delete the current alarms before importing
+   * @param progress  called after each chunk of alarms has been written
+   * @return a list of problems that occurred while validating the config file or ingesting the data into the database
+   */
+  def initAlarms(inputFile: File, reset: Boolean, progress: AlarmLoader.Progress => Unit): List[Problem] =
+    Await.result(alarmAdmin.initAlarms(inputFile, reset, progress), timeout.duration)
+
   /**
    * Gets the alarm information from the database for any matching alarms
    *
@@ -72,6 +84,15 @@ case class BlockingAlarmServiceAdmin(alarmAdmin: AlarmServiceAdmin)(implicit sys
   def getSeverity(alarmKey: AlarmKey): CurrentSeverity =
     Await.result(alarmAdmin.getSeverity(alarmKey), timeout.duration)
 
+  /**
+   * Gets the severity levels for the given alarms, using a single round trip to Redis
+   *
+   * @param alarmKeys the keys for the alarms (no wildcards)
+   * @return a map from alarm key to severity level, for each alarm that was found
+   */
+  def getSeverities(alarmKeys: Seq[AlarmKey]): Map[AlarmKey, CurrentSeverity] =
+    Await.result(alarmAdmin.getSeverities(alarmKeys), timeout.duration)
+
   /**
    * Acknowledges the given alarm, if needed.
    *
@@ -152,6 +173,76 @@ case class BlockingAlarmServiceAdmin(alarmAdmin: AlarmServiceAdmin)(implicit sys
   def monitorAlarms(alarmKey: AlarmKey, notifyAlarm: AlarmStatus => Unit, notifyHealth: HealthStatus => Unit, notifyAll: Boolean): AlarmMonitor =
     alarmAdmin.monitorAlarms(alarmKey, notifyAlarm, notifyHealth, notifyAll)
 
+  /**
+   * Starts monitoring the health of the system, subsystem or component, coalescing the notifications
+   * when many alarms change at once, as configured in the given settings
+   *
+   * @param alarmKey     an AlarmKey matching the set of alarms for a component, subsystem or all subsystems, etc.
+   * @param subscriber   an actor that will receive HealthStatus messages and AlarmStatusBatch messages
+   *                     (or AlarmStatus messages, if settings.batchInterval is zero)
+   * @param notifyAll    if true, all severity changes are reported, otherwise only the relevant changes
+   * @param settings     controls the coalescing of notifications
+   * @return an object containing the actorRef for the subscriber actor (kill the actor to stop monitoring)
+   */
+  def monitorAlarmBatches(alarmKey: AlarmKey, subscriber: ActorRef, notifyAll: Boolean, settings: AlarmMonitorSettings): AlarmMonitor =
+    alarmAdmin.monitorAlarmBatches(alarmKey, subscriber, notifyAll, settings)
+
+  /**
+   * Starts monitoring the health of the system, subsystem or component, coalescing the notifications
+   * when many alarms change at once, as configured in the given settings
+   *
+   * @param alarmKey     an AlarmKey matching the set of alarms for a component, subsystem or all subsystems, etc.
+   * @param notifyAlarms a function that will be called with the list of AlarmStatus changes in each batch
+   * @param notifyHealth a function that will be called with a HealthStatus object when the total health changes
+   * @param notifyAll    if true, all severity changes are reported, otherwise only the relevant changes
+   * @param settings     controls the coalescing of notifications
+   * @return an object containing the actorRef for the subscriber actor (kill the actor to stop monitoring)
+   */
+  def monitorAlarmBatches(alarmKey: AlarmKey, notifyAlarms: List[AlarmStatus] => Unit, notifyHealth: HealthStatus => Unit,
+                          notifyAll: Boolean, settings: AlarmMonitorSettings): AlarmMonitor =
+    alarmAdmin.monitorAlarmBatches(alarmKey, notifyAlarms, notifyHealth, notifyAll, settings)
+
+  /**
+   * Deletes the alarm index sets (used to resolve wildcard alarm keys) and builds them again from the stored alarms
+   *
+   * @return the number of alarms indexed
+   */
+  def rebuildIndex(): Int = Await.result(alarmAdmin.rebuildIndex(), timeout.duration)
+
+  /**
+   * Compares the alarm index sets with the stored alarms
+   *
+   * @return a report listing the alarms missing from the index and the stale index entries
+   */
+  def verifyIndex(): AlarmIndex.IndexReport = Await.result(alarmAdmin.verifyIndex(), timeout.duration)
+
+  /**
+   * Returns the hit and miss counts of the client side cache, or None if the cache is not enabled
+   */
+  def cacheStats: Option[AlarmCache.Stats] = alarmAdmin.cacheStats
+
+  /**
+   * Gets the recorded changes in severity and state of the matching alarms in the given time range
+   *
+   * @param alarmKey a key that may match multiple alarms (via wildcards, see AlarmKey.apply())
+   * @param from     the start of the time range (UTC, inclusive)
+   * @param to       the end of the time range (UTC, inclusive)
+   * @return the list of transitions, ordered by time
+   */
+  def getHistory(alarmKey: AlarmKey, from: LocalDateTime, to: LocalDateTime): Seq[AlarmHistory.AlarmTransition] =
+    Await.result(alarmAdmin.getHistory(alarmKey, from, to), timeout.duration)
+
+  /**
+   * Counts how often the matching alarms went into an alarm severity (Warning or higher) in the given time range
+   *
+   * @param alarmKey a key that may match multiple alarms (via wildcards, see AlarmKey.apply())
+   * @param from     the start of the time range (UTC, inclusive)
+   * @param to       the end of the time range (UTC, inclusive)
+   * @return the number of alarms for each (subsystem, component) that had any
+   */
+  def countAlarms(alarmKey: AlarmKey, from: LocalDateTime, to: LocalDateTime): Map[(String, String), Int] =
+    Await.result(alarmAdmin.countAlarms(alarmKey, from, to), timeout.duration)
+
   /**
    * Shuts down the the database server (For use in test cases that started the database themselves)
    */
@@ -0,0 +1,127 @@
+package csw.services.alarms
+
+import csw.services.alarms.AlarmModel.{Health, SeverityLevel}
+import csw.services.alarms.AlarmService.HealthInfo
+import csw.services.alarms.AlarmState.{ActivationState, ShelvedState}
+
+import scala.collection.mutable
+
+object HealthRollup {
+
+  // All severity levels, ordered by level (Disconnected is -2)
+  private val levelOffset = 2
+  private val levelCount = 6
+
+  // Severity levels that make the health Bad
+  private val badLevels = List(SeverityLevel.Critical, SeverityLevel.Disconnected, SeverityLevel.Indeterminate)
+
+  /**
+   * Returns a roll-up of the health of the given alarms
+   */
+  private[alarms] def apply(healthInfo: Iterable[HealthInfo]): HealthRollup = {
+    val rollup = new HealthRollup
+    healthInfo.foreach(h => rollup.update(None, Some(h)))
+    rollup
+  }
+
+  // Alarms that are shelved or out of service do not count for the health
+  private def active(h: HealthInfo): Boolean =
+    h.alarmState.shelvedState == ShelvedState.Normal && h.alarmState.activationState == ActivationState.Normal
+
+  // Counts the alarms and the active alarms per latched severity level, for the observatory, a subsystem or a component
+  private class SeverityCounts {
+    private val counts = new Array[Int](levelCount)
+    var alarms = 0
+
+    def add(h: HealthInfo, n: Int): Unit = {
+      alarms += n
+      if (active(h)) counts(h.currentSeverity.latched.level + levelOffset) += n
+    }
+
+    def count(severity: SeverityLevel): Int = counts(severity.level + levelOffset)
+
+    // See AlarmServiceImpl.getHealth(alarmMap)
+    def health: Health =
+      if (badLevels.exists(count(_) != 0)) Health.Bad
+      else if (count(SeverityLevel.Major) != 0) Health.Ill
+      else Health.Good
+  }
+}
+
+/**
+ * Maintains the health of the observatory and of each subsystem and component, based on the latched severity
+ * of the active alarms (alarms that are not shelved or out of service).
+ *
+ * The number of active alarms for each severity level is counted per subsystem and component, and the counts are
+ * updated with the old and new values of each alarm that changes, so that both updates and queries take
+ * constant time, independent of the number of alarms. The methods may be called from any thread.
+ */
+class HealthRollup {
+  import HealthRollup._
+
+  private val all = new SeverityCounts
+  private val subsystems = mutable.HashMap[String, SeverityCounts]()
+  private val components = mutable.HashMap[(String, String), SeverityCounts]()
+
+  /**
+   * Updates the counts for an alarm whose severity or state changed
+   *
+   * @param oldInfo the previous severity and state of the alarm, or None, if the alarm is new
+   * @param newInfo the current severity and state of the alarm, or None, if the alarm was removed
+   */
+  private[alarms] def update(oldInfo: Option[HealthInfo], newInfo: Option[HealthInfo]): Unit = synchronized {
+    oldInfo.foreach(add(_, -1))
+    newInfo.foreach(add(_, 1))
+  }
+
+  private def add(h: HealthInfo, n: Int): Unit = {
+    val k = h.alarmKey
+    all.add(h, n)
+    val s = subsystems.getOrElseUpdate(k.subsystem, new SeverityCounts)
+    s.add(h, n)
+    if (s.alarms == 0) subsystems -= k.subsystem
+    val c = components.getOrElseUpdate((k.subsystem, k.component), new SeverityCounts)
+    c.add(h, n)
+    if (c.alarms == 0) components -= ((k.subsystem, k.component))
+  }
+
+  /**
+   * The health based on all alarms
+   */
+  def health: Health = synchronized(all.health)
+
+  /**
+   * Returns the health of the given subsystem, or None if there are no alarms for it
+   */
+  def subsystemHealth(subsystem: String): Option[Health] = synchronized(subsystems.get(subsystem).map(_.health))
+
+  /**
+   * Returns the health of the given component, or None if there are no alarms for it
+   */
+  def componentHealth(subsystem: String, component: String): Option[Health] =
+    synchronized(components.get((subsystem, component)).map(_.health))
+
+  /**
+   * Returns the health of each subsystem that has alarms
+   */
+  def subsystemsHealth: Map[String, Health] = synchronized(subsystems.map(p => p._1 -> p._2.health).toMap)
+
+  /**
+   * Returns the health of each component of the given subsystem
+   */
+  def componentsHealth(subsystem: String): Map[String, Health] = synchronized {
+    components.collect {
+      case ((s, c), counts) if s == subsystem => c -> counts.health
+    }.toMap
+  }
+
+  /**
+   * Returns the number of active alarms with the given latched severity
+   */
+  def count(severity: SeverityLevel): Int = synchronized(all.count(severity))
+
+  /**
+   * The total number of alarms (including shelved and out of service alarms)
+   */
+  def alarmCount: Int = synchronized(all.alarms)
+}
@@ -0,0 +1,75 @@
+package csw.services.alarms
+
+import csw.services.alarms.AlarmModel.{AlarmType, CurrentSeverity, SeverityLevel}
+import csw.services.alarms.AlarmService.HealthInfo
+import org.scalatest.FunSuite
+
+import scala.concurrent.duration._
+import scala.concurrent.{Await, Future}
+import scala.concurrent.ExecutionContext.Implicits.global
+
+/**
+ * Tests the client side alarm cache (does not require Redis)
+ */
+class AlarmCacheTests extends FunSuite {
+
+  private val key = AlarmKey("TCS", "tcsPk", "cpuExceededAlarm")
+  private val levels = List(SeverityLevel.Indeterminate, SeverityLevel.Okay, SeverityLevel.Warning, SeverityLevel.Major, SeverityLevel.Critical)
+  private val model = AlarmModel("TCS", "tcsPk", "cpuExceededAlarm", "test", "in computer...", AlarmType.Absolute,
+    levels, "too fast...", "slow it down...", acknowledge = true, latched = true)
+
+  private def info(sev: SeverityLevel): HealthInfo = HealthInfo(key, CurrentSeverity(sev, sev), AlarmState())
+
+  private def get[A](f: Future[A]): A = Await.result(f, 5.seconds)
+
+  test("Test alarm model cache") {
+    val cache = new AlarmCache(AlarmCache.defaultMaxAge)
+    var loads = 0
+    def load = { loads += 1; Future.successful(Some(model)) }
+
+    assert(get(cache.getModel(key)(load)).contains(model))
+    assert(get(cache.getModel(key)(load)).contains(model))
+    assert(loads == 1)
+
+    // Missing alarms are not cached
+    assert(get(cache.getModel(AlarmKey("TCS", "tcsPk", "xxx"))(Future.successful(None))).isEmpty)
+
+    cache.invalidateModel(key)
+    assert(get(cache.getModel(key)(load)).contains(model))
+    assert(loads == 2)
+
+    val stats = cache.stats
+    assert(stats.modelHits == 1)
+    assert(stats.modelMisses == 3)
+    assert(stats.modelHitRate == 0.25)
+  }
+
+  test("Test alarm state cache") {
+    val cache = new AlarmCache(AlarmCache.defaultMaxAge)
+    var severity: SeverityLevel = SeverityLevel.Okay
+    def load = Future.successful(Some(info(severity)))
+
+    assert(get(cache.getHealthInfo(key)(load)).map(_.currentSeverity.reported).contains(SeverityLevel.Okay))
+    severity = SeverityLevel.Major
+    assert(get(cache.getHealthInfo(key)(load)).map(_.currentSeverity.reported).contains(SeverityLevel.Okay))
+
+    cache.invalidate(key)
+    assert(get(cache.getHealthInfo(key)(load)).map(_.currentSeverity.reported).contains(SeverityLevel.Major))
+    assert(cache.stats.stateHits == 1)
+    assert(cache.stats.stateMisses == 2)
+
+    cache.clear()
+    severity = SeverityLevel.Critical
+    assert(get(cache.getHealthInfo(key)(load)).map(_.currentSeverity.reported).contains(SeverityLevel.Critical))
+  }
+
+  test("Test alarm state max age") {
+    val cache = new AlarmCache(Duration.Zero)
+    var loads = 0
+    def load = { loads += 1; Future.successful(Some(info(SeverityLevel.Okay))) }
+    get(cache.getHealthInfo(key)(load))
+    get(cache.getHealthInfo(key)(load))
+    assert(loads == 2)
+    assert(cache.stats.stateHitRate == 0.0)
+  }
+}
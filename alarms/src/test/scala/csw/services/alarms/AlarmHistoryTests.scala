@@ -0,0 +1,42 @@
+package csw.services.alarms
+
+import java.time.{LocalDate, LocalDateTime}
+
+import csw.services.alarms.AlarmHistory.AlarmTransition
+import org.scalatest.FunSuite
+
+/**
+ * Tests the encoding of the alarm history (does not require Redis)
+ */
+class AlarmHistoryTests extends FunSuite {
+  private val key = AlarmKey("nfiraos", "nfiraos.cc.trombone", "tromboneAxisHighLimitAlarm")
+  private val time = LocalDateTime.of(2017, 3, 1, 22, 15, 30, 123000000)
+
+  test("Test encoding and decoding transitions") {
+    val t = AlarmTransition(time, key, AlarmHistory.severityField, "Critical", 42)
+    assert(AlarmHistory.decode(AlarmHistory.encode(t)) == t)
+    assert(t.isAlarm)
+    assert(!t.copy(value = "Okay").isAlarm)
+  }
+
+  test("Test encoding and decoding names and values that contain the separator") {
+    val t = AlarmTransition(time, AlarmKey("nfiraos", "nfiraos.cc|trombone", "limit\\|alarm|"), AlarmHistory.severityField, "a|b\\", 1)
+    assert(AlarmHistory.decode(AlarmHistory.encode(t)) == t)
+    intercept[IllegalArgumentException](AlarmHistory.decode("1|2|nfiraos:cc:alarm|severity"))
+  }
+
+  test("Test that identical changes in the same millisecond are kept apart") {
+    val t1 = AlarmTransition(time, key, AlarmHistory.severityField, "Major", 1)
+    val t2 = t1.copy(seq = 2)
+    assert(AlarmHistory.encode(t1) != AlarmHistory.encode(t2))
+  }
+
+  test("Test that each component has its own segment") {
+    val date = LocalDate.of(2017, 3, 1)
+    val k1 = AlarmHistory.segmentKey(date, "nfiraos", "nfiraos.cc.trombone")
+    val k2 = AlarmHistory.segmentKey(date, "nfiraos", "nfiraos.cc.m1")
+    assert(k1 != k2)
+    assert(k1.startsWith(AlarmHistory.historyKeyPrefix))
+    assert(!k1.startsWith(AlarmHistory.componentsKeyPrefix))
+  }
+}
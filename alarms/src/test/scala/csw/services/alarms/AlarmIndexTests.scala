@@ -0,0 +1,31 @@
+package csw.services.alarms
+
+import org.scalatest.FunSuite
+
+/**
+ * Tests matching alarm names against Redis glob patterns, as done when resolving wildcard keys with the alarm index
+ */
+class AlarmIndexTests extends FunSuite {
+  private def matches(glob: String, s: String): Boolean = AlarmIndex.globToRegex(glob).r.pattern.matcher(s).matches()
+
+  test("Test glob patterns") {
+    assert(matches("*", "cpuExceededAlarm"))
+    assert(matches("cpu*", "cpuExceededAlarm"))
+    assert(!matches("cpu*", "memExceededAlarm"))
+    assert(matches("tcs?k", "tcsPk"))
+    assert(matches("[ab]*", "bAlarm"))
+    assert(!matches("[^ab]*", "bAlarm"))
+    assert(matches("[a-c]x", "bx"))
+    assert(matches("a\\*b", "a*b"))
+    assert(!matches("a\\*b", "axb"))
+    // Regex characters are not special in globs
+    assert(matches("a.b(1)", "a.b(1)"))
+    assert(!matches("a.b", "axb"))
+  }
+
+  test("Test wildcard detection") {
+    assert(AlarmIndex.hasWildcards("*"))
+    assert(AlarmIndex.hasWildcards("tcs[12]"))
+    assert(!AlarmIndex.hasWildcards("nfiraos"))
+  }
+}
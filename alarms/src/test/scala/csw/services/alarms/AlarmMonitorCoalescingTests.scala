@@ -0,0 +1,83 @@
+package csw.services.alarms
+
+import akka.actor.ActorSystem
+import akka.testkit.{TestKit, TestProbe}
+import csw.services.alarms.AlarmModel.{AlarmStatus, AlarmStatusBatch, CurrentSeverity, HealthStatus, SeverityLevel}
+import csw.services.alarms.AlarmMonitorWorkorActor.InitialMap
+import csw.services.alarms.AlarmService.HealthInfo
+import org.scalatest.{BeforeAndAfterAll, FunSuiteLike}
+
+import scala.concurrent.duration._
+
+/**
+ * Tests the coalescing of alarm monitor notifications (does not require Redis: the alarm changes are sent
+ * directly to the monitor's worker actor)
+ */
+class AlarmMonitorCoalescingTests extends TestKit(ActorSystem("AlarmMonitorCoalescingTests")) with FunSuiteLike with BeforeAndAfterAll {
+
+  override protected def afterAll(): Unit = TestKit.shutdownActorSystem(system)
+
+  private val keys = (1 to 10).map(i => AlarmKey("TCS", "tcsPk", s"alarm$i"))
+
+  private def info(key: AlarmKey, sev: SeverityLevel): HealthInfo = HealthInfo(key, CurrentSeverity(sev, sev), AlarmState())
+
+  // Starts a worker actor with all alarms Okay and returns the probe that receives the notifications
+  private def startWorker(settings: AlarmMonitorSettings, counters: AlarmMonitorCounters) = {
+    val probe = TestProbe()
+    val worker = system.actorOf(AlarmMonitorWorkorActor.props(null, AlarmKey("TCS"), Some(probe.ref), None, None,
+      notifyAll = false, new HealthRollup, settings, counters))
+    worker ! InitialMap(keys.map(k => k -> info(k, SeverityLevel.Okay)).toMap)
+    probe.expectMsgType[HealthStatus]
+    (worker, probe)
+  }
+
+  test("Test batched alarm notifications and health interval") {
+    val counters = new AlarmMonitorCounters
+    val settings = AlarmMonitorSettings(healthInterval = 1.second, batchInterval = 200.millis)
+    val (worker, probe) = startWorker(settings, counters)
+
+    // A storm: all alarms change at once
+    keys.foreach(k => worker ! info(k, SeverityLevel.Major))
+    keys.foreach(k => worker ! info(k, SeverityLevel.Critical))
+
+    // The alarm changes arrive in one batch and the health is reported once, with the latest value
+    val msgs = probe.receiveWhile(2.seconds, 1500.millis) {
+      case b: AlarmStatusBatch => b
+      case h: HealthStatus     => h
+    }
+    val batches = msgs.collect { case b: AlarmStatusBatch => b }
+    val health = msgs.collect { case h: HealthStatus => h }
+    assert(batches.map(_.alarms.size).sum == 20)
+    assert(batches.size == 1)
+    assert(health.size == 1)
+    assert(health.head.health == AlarmModel.Health.Bad)
+    assert(counters.changes == 20)
+    assert(counters.alarmNotifications == 20)
+    system.stop(worker)
+  }
+
+  test("Test flap detection") {
+    val counters = new AlarmMonitorCounters
+    val settings = AlarmMonitorSettings(flapThreshold = 3, flapWindow = 500.millis)
+    val (worker, probe) = startWorker(settings, counters)
+    val key = keys.head
+
+    // The alarm oscillates: the first three changes are reported, the rest are held back
+    (1 to 5).foreach { _ =>
+      worker ! info(key, SeverityLevel.Warning)
+      worker ! info(key, SeverityLevel.Okay)
+    }
+    val statuses = probe.receiveWhile(1.second, 300.millis) {
+      case a: AlarmStatus => a
+    }
+    assert(statuses.size == 3)
+    assert(counters.suppressed == 7)
+    assert(counters.flapping == 1)
+
+    // Once stable, the latest status is reported
+    val last = probe.expectMsgType[AlarmStatus](2.seconds)
+    assert(last.alarmKey == key && last.currentSeverity.reported == SeverityLevel.Okay)
+    assert(counters.flapping == 0)
+    system.stop(worker)
+  }
+}
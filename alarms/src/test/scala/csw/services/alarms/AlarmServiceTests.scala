@@ -1,6 +1,8 @@
 package csw.services.alarms
 
 import java.nio.file.Paths
+import java.time.{LocalDateTime, ZoneOffset}
+import java.util.concurrent.ConcurrentLinkedQueue
 
 import akka.actor.ActorSystem
 import akka.testkit.TestKit
@@ -12,6 +14,7 @@ import csw.services.alarms.AscfValidation.Problem
 import csw.services.loc.LocationService
 import org.scalatest.{BeforeAndAfterAll, FunSuiteLike}
 
+import scala.collection.JavaConverters._
 import scala.concurrent.duration._
 import scala.concurrent.Await
 import scala.util.Try
@@ -40,7 +43,7 @@ class AlarmServiceTests extends TestKit(AlarmServiceTests.system) with FunSuiteL
   val ascf = Paths.get(url.toURI).toFile
 
   // Get the alarm service by looking up the name with the location service.
-  val alarmService = Await.result(AlarmService(), timeout.duration)
+  val alarmService = Await.result(AlarmService(recordHistory = true), timeout.duration)
 
   // Used to initialize the list of alarms used in the test
   val alarmAdmin = AlarmServiceAdmin(alarmService)
@@ -95,6 +98,12 @@ class AlarmServiceTests extends TestKit(AlarmServiceTests.system) with FunSuiteL
     println(s"nfiraos map: $map2")
     assert(map2.size == 2)
 
+    // The index sets used to resolve wildcard keys should match the alarms
+    assert(Await.result(alarmAdmin.verifyIndex(), timeout.duration).ok)
+    assert(Await.result(alarmAdmin.rebuildIndex(), timeout.duration) == alarms.size)
+    val map3 = Await.result(alarmService.asInstanceOf[AlarmServiceImpl].getHealthInfoMap(AlarmKey(Some("nfiraos"), Some("*"), Some("*"))), timeout.duration)
+    assert(map3.keySet == map2.keySet)
+
     // For testing callback
     var callbackSev: CurrentSeverity = CurrentSeverity(SeverityLevel.Disconnected, SeverityLevel.Disconnected)
     var callbackHealth: Option[Health] = None
@@ -119,6 +128,7 @@ class AlarmServiceTests extends TestKit(AlarmServiceTests.system) with FunSuiteL
     val key3 = AlarmKey("nfiraos", "nfiraos.cc.trombone", "tromboneAxisLowLimitAlarm")
     val badKey = AlarmKey("XXX", "xxx", "xxx")
 
+    val historyStart = LocalDateTime.now(ZoneOffset.UTC)
     val alarmMonitor = alarmAdmin.monitorAlarms(key1, printAlarmStatus, printHealthStatus, notifyAll = false)
     Thread.sleep(shortDelayMs) // make sure actor has started
 
@@ -127,6 +137,8 @@ class AlarmServiceTests extends TestKit(AlarmServiceTests.system) with FunSuiteL
 
     // alarm is latched, so stays at critical
     assert(Await.result(alarmAdmin.getSeverity(key1), timeout.duration) == CurrentSeverity(SeverityLevel.Disconnected, SeverityLevel.Critical))
+    assert(Await.result(alarmAdmin.getSeverities(List(key1, badKey)), timeout.duration) ==
+      Map(key1 -> CurrentSeverity(SeverityLevel.Disconnected, SeverityLevel.Critical)))
     assert(callbackSev == CurrentSeverity(SeverityLevel.Disconnected, SeverityLevel.Critical))
 
     Await.ready(alarmService.setSeverity(key1, SeverityLevel.Warning), timeout.duration)
@@ -213,9 +225,32 @@ class AlarmServiceTests extends TestKit(AlarmServiceTests.system) with FunSuiteL
     assert(callbackHealth.contains(Health.Bad))
     assert(Await.result(alarmAdmin.getHealth(nfKey), timeout.duration) == Health.Bad)
 
+    // Set both severities with one bulk request (after resetting the latched Critical severity)
+    Await.ready(alarmAdmin.acknowledgeAndResetAlarm(key3), timeout.duration)
+    Await.ready(alarmService.setSeverities(Map(key2 -> SeverityLevel.Okay, key3 -> SeverityLevel.Okay)), timeout.duration)
+    Thread.sleep(shortDelayMs) // Give redis time to notify the callback
+    assert(callbackHealth.contains(Health.Good))
+    assert(healthMonitor.healthRollup.subsystemHealth("nfiraos").contains(Health.Good))
+
+    // The changes above should have been recorded in the alarm history
+    Thread.sleep(shortDelayMs) // Give the recorder time to write the history
+    val historyEnd = LocalDateTime.now(ZoneOffset.UTC)
+    val history = Await.result(alarmAdmin.getHistory(key1, historyStart, historyEnd), timeout.duration)
+    assert(history.forall(_.alarmKey == key1))
+    assert(history.exists(t => t.field == AlarmHistory.severityField && t.value == SeverityLevel.Critical.name))
+    // The expired severity keys are recorded as Disconnected
+    assert(history.exists(t => t.field == AlarmHistory.severityField && t.value == SeverityLevel.Disconnected.name))
+    assert(history.exists(t => t.field == "shelvedState" && t.value == ShelvedState.Shelved.name))
+    assert(history.exists(t => t.field == "activationState" && t.value == ActivationState.OutOfService.name))
+    assert(history.zip(history.drop(1)).forall(p => !p._2.timestamp.isBefore(p._1.timestamp)))
+    val counts = Await.result(alarmAdmin.countAlarms(AlarmKey(subsystemOpt = Some("nfiraos")), historyStart, historyEnd), timeout.duration)
+    assert(counts.get(("nfiraos", "nfiraos.cc.trombone")).exists(_ >= 2))
+    assert(counts.keySet.forall(_._1 == "nfiraos"))
+
     // Test error conditions: Try to set an alarm that does not exist
     assert(Try(Await.result(alarmAdmin.getAlarm(badKey), timeout.duration)).isFailure)
     assert(Try(Await.result(alarmService.setSeverity(badKey, SeverityLevel.Critical), timeout.duration)).isFailure)
+    assert(Try(Await.result(alarmService.setSeverities(Map(key1 -> SeverityLevel.Okay, badKey -> SeverityLevel.Critical)), timeout.duration)).isFailure)
     assert(Try(Await.result(alarmAdmin.getSeverity(badKey), timeout.duration)).isFailure)
     assert(Try(Await.result(alarmAdmin.acknowledgeAndResetAlarm(badKey), timeout.duration)).isFailure)
     assert(Try(Await.result(alarmAdmin.getHealth(badKey), timeout.duration)).isFailure)
@@ -225,4 +260,22 @@ class AlarmServiceTests extends TestKit(AlarmServiceTests.system) with FunSuiteL
     // Stop the actors monitoring the alarm and health
     healthMonitor.stop()
   }
+
+  test("Test reloading the alarms with progress reporting") {
+    val alarmCount = Await.result(alarmAdmin.getAlarms(AlarmKey()), timeout.duration).size
+    // The callback may be called from several threads, since chunks are loaded concurrently
+    val progress = new ConcurrentLinkedQueue[AlarmLoader.Progress]()
+    val problems = Await.result(alarmAdmin.initAlarms(ascf, reset = true, p => progress.add(p)), timeout.duration)
+    Problem.printProblems(problems)
+    assert(Problem.errorCount(problems) == 0)
+
+    // Progress is reported after each chunk, up to the total number of alarms
+    val reported = progress.asScala.toList
+    assert(reported.nonEmpty)
+    assert(reported.forall(_.total == alarmCount))
+    assert(reported.map(_.loaded).max == alarmCount)
+    assert(reported.map(_.loaded).distinct.size == reported.size)
+    assert(Await.result(alarmAdmin.getAlarms(AlarmKey()), timeout.duration).size == alarmCount)
+    assert(Await.result(alarmAdmin.verifyIndex(), timeout.duration).ok)
+  }
 }
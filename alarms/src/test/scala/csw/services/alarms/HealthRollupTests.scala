@@ -0,0 +1,54 @@
+package csw.services.alarms
+
+import csw.services.alarms.AlarmModel.{CurrentSeverity, Health, SeverityLevel}
+import csw.services.alarms.AlarmService.HealthInfo
+import csw.services.alarms.AlarmState.ShelvedState
+import org.scalatest.FunSuite
+
+/**
+ * Tests the incrementally maintained health roll-up (does not require Redis)
+ */
+class HealthRollupTests extends FunSuite {
+
+  private def info(key: AlarmKey, sev: SeverityLevel, state: AlarmState = AlarmState()): HealthInfo =
+    HealthInfo(key, CurrentSeverity(sev, sev), state)
+
+  private val key1 = AlarmKey("TCS", "tcsPk", "cpuExceededAlarm")
+  private val key2 = AlarmKey("TCS", "tcsPk", "cpuIdleAlarm")
+  private val key3 = AlarmKey("NFIRAOS", "envCtrl", "minTemperature")
+
+  test("Test health roll-up") {
+    val h1 = info(key1, SeverityLevel.Okay)
+    val h2 = info(key2, SeverityLevel.Warning)
+    val h3 = info(key3, SeverityLevel.Okay)
+    val rollup = HealthRollup(List(h1, h2, h3))
+    assert(rollup.health == Health.Good)
+    assert(rollup.alarmCount == 3)
+
+    val h1b = info(key1, SeverityLevel.Major)
+    rollup.update(Some(h1), Some(h1b))
+    assert(rollup.health == Health.Ill)
+    assert(rollup.subsystemHealth("TCS").contains(Health.Ill))
+    assert(rollup.componentHealth("NFIRAOS", "envCtrl").contains(Health.Good))
+    assert(rollup.subsystemsHealth == Map("TCS" -> Health.Ill, "NFIRAOS" -> Health.Good))
+    assert(rollup.count(SeverityLevel.Major) == 1)
+
+    val h3b = info(key3, SeverityLevel.Disconnected)
+    rollup.update(Some(h3), Some(h3b))
+    assert(rollup.health == Health.Bad)
+    assert(rollup.componentsHealth("NFIRAOS") == Map("envCtrl" -> Health.Bad))
+
+    // Shelved alarms do not count
+    val h3c = info(key3, SeverityLevel.Disconnected, AlarmState(shelvedState = ShelvedState.Shelved))
+    rollup.update(Some(h3b), Some(h3c))
+    assert(rollup.health == Health.Ill)
+    assert(rollup.subsystemHealth("NFIRAOS").contains(Health.Good))
+
+    // The result should be the same as calculating the health from scratch
+    assert(rollup.health == HealthRollup(List(h1b, h2, h3c)).health)
+
+    rollup.update(Some(h3c), None)
+    assert(rollup.subsystemHealth("NFIRAOS").isEmpty)
+    assert(rollup.alarmCount == 2)
+  }
+}
@@ -0,0 +1,157 @@
+package csw.services.apps.alarmBenchmark
+
+import java.io.{File, FileOutputStream, PrintStream}
+
+import akka.actor.ActorSystem
+import akka.util.Timeout
+import csw.services.alarms.AlarmService
+import csw.services.apps.alarmBenchmark.AlarmBenchmarkRunner.BenchmarkSettings
+import csw.services.apps.alarmBenchmark.AscfGenerator.AscfSettings
+import redis.RedisClient
+
+import scala.concurrent.duration._
+
+/**
+ * A command line application that measures how the alarm service scales to tens of thousands of alarms.
+ * It loads a generated alarm config file, starts simulated components that refresh their alarms and M alarm monitors,
+ * then changes the severity of a set of "hot" alarms at the given rate. The results are written as a JSON object.
+ */
+object AlarmBenchmark extends App {
+
+  /**
+   * Command line options ("alarmbenchmark --help" prints a usage message with descriptions of all the options)
+   */
+  private case class Options(
+    alarms:       Int          = 10000,
+    subsystems:   Int          = 20,
+    components:   Int          = 10,
+    monitors:     Int          = 10,
+    hotAlarms:    Int          = 1000,
+    noRefresh:    Boolean      = false,
+    refreshSecs:  Option[Int]  = None,
+    rate:         Int          = 1000,
+    maxInFlight:  Int          = 100,
+    durationSecs: Int          = 30,
+    warmupSecs:   Int          = 5,
+    host:         String       = "127.0.0.1",
+    port:         Int          = 6379,
+    reset:        Boolean      = false,
+    ascf:         Option[File] = None,
+    output:       Option[File] = None
+  )
+
+  private val parser = new scopt.OptionParser[Options]("alarmbenchmark") {
+    head("alarmbenchmark", System.getProperty("CSW_VERSION"))
+
+    opt[Int]("alarms") valueName "<n>" action { (x, c) =>
+      c.copy(alarms = x)
+    } text "The number of generated alarms (default: 10000)"
+
+    opt[Int]("subsystems") valueName "<n>" action { (x, c) =>
+      c.copy(subsystems = x)
+    } text "The number of subsystems the alarms are spread over (default: 20)"
+
+    opt[Int]("components") valueName "<n>" action { (x, c) =>
+      c.copy(components = x)
+    } text "The number of components in each subsystem (default: 10)"
+
+    opt[Int]("monitors") valueName "<n>" action { (x, c) =>
+      c.copy(monitors = x)
+    } text "The number of alarm monitors, each monitoring the alarms of one subsystem (default: 10)"
+
+    opt[Int]("hot-alarms") valueName "<n>" action { (x, c) =>
+      c.copy(hotAlarms = x)
+    } text "The number of alarms whose severity is changed by the benchmark (default: 1000)"
+
+    opt[Unit]("no-refresh") action { (_, c) =>
+      c.copy(noRefresh = true)
+    } text "Do not start the simulated components that refresh the other alarms"
+
+    opt[Int]("refresh-secs") valueName "<secs>" action { (x, c) =>
+      c.copy(refreshSecs = Some(x))
+    } text "The alarm refresh interval used by the simulated components (default: csw.services.alarms.refreshSecs property or 5)"
+
+    opt[Int]("rate") valueName "<n>" action { (x, c) =>
+      c.copy(rate = x)
+    } text "The total rate of severity changes per second (default: 1000, 0 means as fast as possible)"
+
+    opt[Int]("max-in-flight") valueName "<n>" action { (x, c) =>
+      c.copy(maxInFlight = x)
+    } text "The max number of incomplete setSeverity requests (default: 100)"
+
+    opt[Int]("duration") valueName "<secs>" action { (x, c) =>
+      c.copy(durationSecs = x)
+    } text "The number of seconds to measure (default: 30)"
+
+    opt[Int]("warmup") valueName "<secs>" action { (x, c) =>
+      c.copy(warmupSecs = x)
+    } text "The number of seconds to change severities before measuring (default: 5)"
+
+    opt[String]("host") valueName "<host>" action { (x, c) =>
+      c.copy(host = x)
+    } text "The Redis host for the alarm service (default: 127.0.0.1)"
+
+    opt[Int]("port") valueName "<port>" action { (x, c) =>
+      c.copy(port = x)
+    } text "The Redis port for the alarm service (default: 6379)"
+
+    opt[Unit]("reset") action { (_, c) =>
+      c.copy(reset = true)
+    } text "Delete ALL existing alarm data in Redis before loading the generated alarms"
+
+    opt[File]("ascf") valueName "<file>" action { (x, c) =>
+      c.copy(ascf = Some(x))
+    } text "Write the generated alarm service config file to the given file (default: a temporary file)"
+
+    opt[File]("output") valueName "<file>" action { (x, c) =>
+      c.copy(output = Some(x))
+    } text "Append the results (one JSON object per line) to the given file (default: stdout)"
+
+    help("help")
+    version("version")
+  }
+
+  parser.parse(args, Options()) match {
+    case Some(options) =>
+      try {
+        run(options)
+        System.exit(0)
+      } catch {
+        case e: Throwable =>
+          e.printStackTrace()
+          System.exit(1)
+      }
+    case None => System.exit(1)
+  }
+
+  private def run(options: Options): Unit = {
+    // Must be set before the alarm service is created
+    options.refreshSecs.foreach(secs => System.setProperty("csw.services.alarms.refreshSecs", secs.toString))
+
+    implicit val system = ActorSystem("AlarmBenchmark")
+    implicit val timeout = Timeout(60.seconds)
+    val alarmService = AlarmService.get(options.host, options.port)
+    val redisClient = RedisClient(options.host, options.port)
+
+    val settings = BenchmarkSettings(
+      AscfSettings(options.alarms, options.subsystems, options.components),
+      options.monitors, options.hotAlarms, !options.noRefresh, options.rate, options.maxInFlight,
+      options.durationSecs.seconds, options.warmupSecs.seconds, options.reset
+    )
+    val file = options.ascf.getOrElse {
+      val f = File.createTempFile("alarmbenchmark", ".conf")
+      f.deleteOnExit()
+      f
+    }
+
+    val out = options.output.map(f => new PrintStream(new FileOutputStream(f, true))).getOrElse(System.out)
+    try {
+      val result = new AlarmBenchmarkRunner(alarmService, redisClient, settings).run(file)
+      out.println(result.toJson.compactPrint)
+      out.flush()
+    } finally {
+      if (out != System.out) out.close()
+      system.terminate()
+    }
+  }
+}
@@ -0,0 +1,338 @@
+package csw.services.apps.alarmBenchmark
+
+import java.io.File
+import java.util.concurrent.{ConcurrentHashMap, Semaphore}
+import java.util.concurrent.atomic.LongAdder
+import java.util.concurrent.locks.LockSupport
+
+import akka.actor.{ActorRef, ActorSystem, PoisonPill}
+import com.typesafe.scalalogging.LazyLogging
+import csw.services.alarms.AlarmModel.{AlarmStatus, HealthStatus, SeverityLevel}
+import csw.services.alarms.AlarmService.AlarmMonitor
+import csw.services.alarms.AscfValidation.Problem
+import csw.services.alarms.{AlarmKey, AlarmRefreshActor, AlarmService, AlarmServiceAdmin}
+import csw.services.apps.alarmBenchmark.AscfGenerator.AscfSettings
+import csw.util.metrics.{HistogramSnapshot, LatencyHistogram}
+import redis.RedisClient
+import spray.json._
+
+import scala.concurrent.Await
+import scala.concurrent.duration._
+import scala.util.{Failure, Success}
+
+object AlarmBenchmarkRunner {
+
+  /**
+   * Settings for one benchmark run
+   *
+   * @param ascf        describes the generated alarms
+   * @param monitors    number of alarm monitors (monitor i monitors subsystem i modulo the number of subsystems)
+   * @param hotAlarms   number of alarms whose severity is changed by the workload (spread over all subsystems);
+   *                    the other alarms are refreshed by simulated components using the AlarmRefreshActor
+   * @param refresh     if true, start the simulated components that refresh the other alarms
+   * @param rate        the total rate of severity changes per second (0 means as fast as possible)
+   * @param maxInFlight max number of incomplete setSeverity requests
+   * @param duration    the time to measure
+   * @param warmup      the time to run the workload before measuring
+   * @param reset       if true, delete all existing alarm data before loading the generated alarms
+   */
+  case class BenchmarkSettings(
+    ascf:        AscfSettings   = AscfSettings(),
+    monitors:    Int            = 10,
+    hotAlarms:   Int            = 1000,
+    refresh:     Boolean        = true,
+    rate:        Int            = 1000,
+    maxInFlight: Int            = 100,
+    duration:    FiniteDuration = 30.seconds,
+    warmup:      FiniteDuration = 5.seconds,
+    reset:       Boolean        = false
+  )
+
+  /**
+   * The results of a benchmark run
+   *
+   * @param settings          the settings used for the run
+   * @param initSecs          the time taken by initAlarms to load the generated alarms
+   * @param refreshedAlarms   number of alarms refreshed by the simulated components
+   * @param elapsedSecs       the measured time
+   * @param updates           number of completed setSeverity calls
+   * @param updateFailures    number of failed setSeverity calls
+   * @param notifications     number of AlarmStatus notifications received (by all monitors)
+   * @param latency           time from calling setSeverity to receiving the notification, in ns
+   * @param healthTime        time taken by getHealth for all alarms, in ns
+   * @param redisCpuSecs      Redis CPU time (user + system) used during the measured time
+   * @param redisMemoryBytes  memory used by Redis at the end of the run
+   */
+  case class BenchmarkResult(
+      settings:         BenchmarkSettings,
+      initSecs:         Double,
+      refreshedAlarms:  Int,
+      elapsedSecs:      Double,
+      updates:          Long,
+      updateFailures:   Long,
+      notifications:    Long,
+      latency:          HistogramSnapshot,
+      healthTime:       HistogramSnapshot,
+      redisCpuSecs:     Double,
+      redisMemoryBytes: Long
+  ) {
+
+    /**
+     * Returns the result in JSON format
+     */
+    def toJson: JsObject = {
+      def millis(h: HistogramSnapshot) = JsObject(
+        "count" -> JsNumber(h.count),
+        "mean" -> JsNumber(h.mean / 1.0e6),
+        "p50" -> JsNumber(h.p50 / 1.0e6),
+        "p99" -> JsNumber(h.p99 / 1.0e6),
+        "p99.9" -> JsNumber(h.p999 / 1.0e6),
+        "max" -> JsNumber(h.max / 1.0e6)
+      )
+      JsObject(
+        "alarms" -> JsNumber(settings.ascf.alarms),
+        "subsystems" -> JsNumber(settings.ascf.subsystems),
+        "components" -> JsNumber(settings.ascf.components),
+        "monitors" -> JsNumber(settings.monitors),
+        "hotAlarms" -> JsNumber(settings.hotAlarms),
+        "refreshedAlarms" -> JsNumber(refreshedAlarms),
+        "targetRate" -> JsNumber(settings.rate),
+        "initSecs" -> JsNumber(initSecs),
+        "elapsedSecs" -> JsNumber(elapsedSecs),
+        "updates" -> JsNumber(updates),
+        "updateFailures" -> JsNumber(updateFailures),
+        "updateRate" -> JsNumber(updates / elapsedSecs),
+        "notifications" -> JsNumber(notifications),
+        "notificationRate" -> JsNumber(notifications / elapsedSecs),
+        "latencyMillis" -> millis(latency),
+        "healthMillis" -> millis(healthTime),
+        "redisCpuSecs" -> JsNumber(redisCpuSecs),
+        "redisCpuPercent" -> JsNumber(100.0 * redisCpuSecs / elapsedSecs),
+        "redisMemoryBytes" -> JsNumber(redisMemoryBytes)
+      )
+    }
+  }
+
+  /**
+   * Returns the fields of the given section of the Redis INFO command output
+   */
+  def redisInfo(redisClient: RedisClient, section: String): Map[String, String] = {
+    val info = Await.result(redisClient.info(section), 10.seconds)
+    info.split("\r?\n").toList.flatMap { line =>
+      line.split(":", 2) match {
+        case Array(k, v) => Some(k -> v.trim)
+        case _           => None
+      }
+    }.toMap
+  }
+}
+
+/**
+ * Runs an alarm service benchmark: loads a generated set of alarms, starts simulated components that refresh
+ * their alarm severities, starts the alarm monitors and then changes the severity of the "hot" alarms at the
+ * given rate, while measuring the notification latency and the time needed to calculate the overall health.
+ *
+ * @param alarmService the alarm service to test
+ * @param redisClient  used to read the Redis CPU and memory statistics
+ * @param settings     the settings for the run
+ */
+class AlarmBenchmarkRunner(alarmService: AlarmService, redisClient: RedisClient, settings: AlarmBenchmarkRunner.BenchmarkSettings)(implicit system: ActorSystem)
+    extends LazyLogging {
+
+  import AlarmBenchmarkRunner._
+  import system.dispatcher
+
+  private val alarmAdmin = AlarmServiceAdmin(alarmService)
+  private val keys = AscfGenerator.alarmKeys(settings.ascf)
+
+  // The alarms changed by the workload, spread evenly over the generated alarms (and so over the subsystems)
+  private val hotKeys = {
+    val n = math.max(1, math.min(settings.hotAlarms, keys.size))
+    (0 until n).map(i => keys(i * keys.size / n))
+  }
+
+  private val latency = new LatencyHistogram
+  private val healthTime = new LatencyHistogram
+  private val notifications = new LongAdder
+  private val updates = new LongAdder
+  private val updateFailures = new LongAdder
+
+  // The severity last set for each hot alarm and the time it was set (from System.nanoTime)
+  private val sent = new ConcurrentHashMap[AlarmKey, (SeverityLevel, Long)]()
+
+  @volatile private var recording = false
+  @volatile private var running = false
+
+  private var refreshActors: Seq[ActorRef] = Nil
+  private var monitors: Seq[AlarmMonitor] = Nil
+
+  /**
+   * Generates the ASCF file and loads it with initAlarms
+   *
+   * @param file the file to write the generated alarms to
+   * @return the time taken by initAlarms in seconds
+   */
+  def init(file: File): Double = {
+    AscfGenerator.write(file, settings.ascf)
+    val start = System.nanoTime()
+    val problems = Await.result(alarmAdmin.initAlarms(file, settings.reset), Duration.Inf)
+    val secs = (System.nanoTime() - start) / 1.0e9
+    if (Problem.errorCount(problems) != 0) {
+      Problem.printProblems(problems)
+      throw new RuntimeException(s"Failed to load the generated alarms from $file")
+    }
+    logger.debug(s"Loaded ${settings.ascf.alarms} alarms in $secs seconds")
+    secs
+  }
+
+  /**
+   * Starts one simulated component for each generated component, which keeps the severity of its alarms
+   * (except for the hot alarms) at Okay, using the AlarmRefreshActor
+   *
+   * @return the number of alarms refreshed
+   */
+  def startRefresh(): Int = {
+    val hot = hotKeys.toSet
+    val refreshed = keys.filterNot(hot.contains)
+    refreshActors = refreshed.groupBy(k => (k.subsystem, k.component)).values.toList.map { componentKeys =>
+      system.actorOf(AlarmRefreshActor.props(alarmService, componentKeys.map(_ -> SeverityLevel.Okay).toMap))
+    }
+    refreshed.size
+  }
+
+  // Called by the monitors for each change in an alarm's severity
+  private def alarmChanged(alarmStatus: AlarmStatus): Unit = {
+    if (recording) {
+      notifications.increment()
+      val s = sent.get(alarmStatus.alarmKey)
+      if (s != null && s._1 == alarmStatus.currentSeverity.reported) latency.record(System.nanoTime() - s._2)
+    }
+  }
+
+  private def healthChanged(healthStatus: HealthStatus): Unit = {}
+
+  /**
+   * Starts the alarm monitors: monitor i monitors the alarms of subsystem i (modulo the number of subsystems)
+   */
+  def startMonitors(): Unit = {
+    val subsystems = AscfGenerator.subsystems(settings.ascf)
+    monitors = (0 until settings.monitors).map { i =>
+      alarmAdmin.monitorAlarms(AlarmKey(subsystemOpt = Some(subsystems(i % subsystems.size))), alarmChanged _, healthChanged _, notifyAll = true)
+    }
+  }
+
+  /**
+   * Stops the simulated components and the monitors
+   */
+  def stop(): Unit = {
+    refreshActors.foreach(_ ! PoisonPill)
+    refreshActors = Nil
+    monitors.foreach(_.stop())
+    monitors = Nil
+  }
+
+  // Changes the severity of the hot alarms in turn (alternating between Warning and Okay) at the given rate
+  private class WorkloadThread(rate: Double) extends Thread("alarm-workload") {
+    private val inFlight = new Semaphore(settings.maxInFlight)
+    private val intervalNanos = if (rate > 0) (1.0e9 / rate).toLong else 0L
+    private val toggles = new Array[Int](hotKeys.size)
+
+    override def run(): Unit = {
+      var next = System.nanoTime()
+      var i = 0
+      while (running) {
+        inFlight.acquire()
+        val key = hotKeys(i)
+        val severity = if (toggles(i) % 2 == 0) SeverityLevel.Warning else SeverityLevel.Okay
+        toggles(i) += 1
+        i = (i + 1) % hotKeys.size
+        val rec = recording
+        sent.put(key, (severity, System.nanoTime()))
+        alarmService.setSeverity(key, severity).onComplete { r =>
+          inFlight.release()
+          if (rec) r match {
+            case Success(_) => updates.increment()
+            case Failure(_) => updateFailures.increment()
+          }
+        }
+        if (intervalNanos > 0) {
+          next += intervalNanos
+          val sleep = next - System.nanoTime()
+          if (sleep > 0) LockSupport.parkNanos(sleep)
+        }
+      }
+      // Wait for outstanding requests
+      inFlight.acquire(settings.maxInFlight)
+    }
+  }
+
+  // Measures the time needed to get the health of all the alarms, once a second
+  private class HealthThread extends Thread("alarm-health") {
+    override def run(): Unit = {
+      while (running) {
+        val start = System.nanoTime()
+        val ok = scala.util.Try(Await.result(alarmAdmin.getHealth(AlarmKey()), 60.seconds)).isSuccess
+        if (recording && ok) healthTime.record(System.nanoTime() - start)
+        Thread.sleep(1000)
+      }
+    }
+  }
+
+  // Returns the Redis CPU time used so far (user + system, in seconds)
+  private def redisCpuSecs(): Double = {
+    val info = redisInfo(redisClient, "cpu")
+    List("used_cpu_user", "used_cpu_sys").flatMap(info.get).map(_.toDouble).sum
+  }
+
+  /**
+   * Runs the complete benchmark: loads the alarms, starts the simulated components and monitors,
+   * changes the hot alarm severities for the warmup time plus the duration and returns the results.
+   *
+   * @param file the file to write the generated alarms to
+   */
+  def run(file: File): BenchmarkResult = {
+    val initSecs = init(file)
+    val refreshedAlarms = if (settings.refresh) startRefresh() else 0
+    startMonitors()
+    try {
+      // Give the monitors time to read the initial severities of their alarms
+      Thread.sleep(2000)
+      running = true
+      val threads = List(new WorkloadThread(settings.rate.toDouble), new HealthThread)
+      threads.foreach(_.start())
+      Thread.sleep(settings.warmup.toMillis)
+
+      latency.reset()
+      healthTime.reset()
+      notifications.reset()
+      updates.reset()
+      updateFailures.reset()
+      val cpuStart = redisCpuSecs()
+      recording = true
+      val start = System.nanoTime()
+      Thread.sleep(settings.duration.toMillis)
+      // Take all the counts at the end of the measured time, so that the rates are computed over the same interval
+      // (Notifications still in flight are balanced by those for updates made during the warmup)
+      recording = false
+      val elapsedSecs = (System.nanoTime() - start) / 1.0e9
+      val updateCount = updates.sum()
+      val failureCount = updateFailures.sum()
+      val notificationCount = notifications.sum()
+      val latencySnapshot = latency.snapshot()
+      val healthTimeSnapshot = healthTime.snapshot()
+      val cpuSecs = redisCpuSecs() - cpuStart
+
+      running = false
+      threads.foreach(_.join())
+
+      val memory = redisInfo(redisClient, "memory").get("used_memory").map(_.toLong).getOrElse(0L)
+      val r = BenchmarkResult(settings, initSecs, refreshedAlarms, elapsedSecs, updateCount, failureCount,
+        notificationCount, latencySnapshot, healthTimeSnapshot, cpuSecs, memory)
+      logger.debug(s"Benchmark result: $r")
+      r
+    } finally {
+      running = false
+      stop()
+    }
+  }
+}
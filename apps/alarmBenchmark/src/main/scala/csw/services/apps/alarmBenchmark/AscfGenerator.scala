@@ -0,0 +1,80 @@
+package csw.services.apps.alarmBenchmark
+
+import java.io.{File, PrintWriter}
+
+import csw.services.alarms.AlarmKey
+
+/**
+ * Generates synthetic Alarm Service Config Files (ASCF) for the benchmark
+ */
+object AscfGenerator {
+
+  /**
+   * Describes the generated alarms
+   *
+   * @param alarms     the total number of alarms
+   * @param subsystems the number of subsystems the alarms are spread over
+   * @param components the number of components in each subsystem
+   */
+  case class AscfSettings(alarms: Int = 10000, subsystems: Int = 20, components: Int = 10) {
+    require(alarms > 0 && subsystems > 0 && components > 0, "The number of alarms, subsystems and components must be positive")
+  }
+
+  // The subsystem, component and alarm names used for the alarm with the given index
+  private def subsystem(i: Int, s: AscfSettings): String = f"BENCH${i % s.subsystems}%02d"
+
+  private def component(i: Int, s: AscfSettings): String = f"${subsystem(i, s)}.comp${i / s.subsystems % s.components}%03d"
+
+  private def name(i: Int): String = s"alarm$i"
+
+  /**
+   * Returns the key of the alarm with the given index (0 until settings.alarms)
+   */
+  def alarmKey(i: Int, settings: AscfSettings): AlarmKey = AlarmKey(subsystem(i, settings), component(i, settings), name(i))
+
+  /**
+   * Returns the keys of all the generated alarms
+   */
+  def alarmKeys(settings: AscfSettings): IndexedSeq[AlarmKey] = (0 until settings.alarms).map(alarmKey(_, settings))
+
+  /**
+   * Returns the names of the generated subsystems
+   */
+  def subsystems(settings: AscfSettings): IndexedSeq[String] = (0 until settings.subsystems).map(subsystem(_, settings))
+
+  /**
+   * Writes an ASCF file with the given number of alarms.
+   * Every other alarm is latched and must be acknowledged.
+   *
+   * @param file     the file to write
+   * @param settings describes the alarms
+   */
+  def write(file: File, settings: AscfSettings): Unit = {
+    val out = new PrintWriter(file)
+    try {
+      out.println("// Synthetic Alarm Service Config File generated by alarmbenchmark")
+      out.println("alarms = [")
+      for (i <- 0 until settings.alarms) {
+        val latched = i % 2 == 0
+        out.println(
+          s"""  {
+             |    subsystem = ${subsystem(i, settings)}
+             |    component = "${component(i, settings)}"
+             |    name = ${name(i)}
+             |    description = "Benchmark alarm $i"
+             |    location = "rack ${i % 100}"
+             |    alarmType = Absolute
+             |    severityLevels = [Indeterminate, Okay, Warning, Major, Critical]
+             |    probableCause = "simulated"
+             |    operatorResponse = "none"
+             |    acknowledge = $latched
+             |    latched = $latched
+             |  }""".stripMargin
+        )
+      }
+      out.println("]")
+    } finally {
+      out.close()
+    }
+  }
+}
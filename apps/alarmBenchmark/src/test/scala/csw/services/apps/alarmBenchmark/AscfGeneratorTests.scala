@@ -0,0 +1,36 @@
+package csw.services.apps.alarmBenchmark
+
+import java.io.File
+
+import csw.services.alarms.AscfValidation
+import csw.services.alarms.AscfValidation.Problem
+import csw.services.apps.alarmBenchmark.AscfGenerator.AscfSettings
+import org.scalatest.FunSuite
+
+/**
+ * Tests the generated alarm service config files (does not require Redis)
+ */
+class AscfGeneratorTests extends FunSuite {
+  private val settings = AscfSettings(alarms = 100, subsystems = 4, components = 5)
+
+  test("Test that the generated file is valid") {
+    val file = File.createTempFile("AscfGeneratorTests", ".conf")
+    try {
+      AscfGenerator.write(file, settings)
+      val problems = AscfValidation.validate(file)
+      problems.foreach(p => println(p.toString))
+      assert(Problem.errorCount(problems) == 0)
+    } finally {
+      file.delete()
+    }
+  }
+
+  test("Test the distribution of the generated alarms") {
+    val keys = AscfGenerator.alarmKeys(settings)
+    assert(keys.size == 100)
+    assert(keys.distinct.size == 100)
+    assert(keys.map(_.subsystem).distinct.sorted == AscfGenerator.subsystems(settings).sorted)
+    assert(keys.groupBy(_.subsystem).values.forall(_.size == 25))
+    assert(keys.groupBy(k => (k.subsystem, k.component)).size == 20)
+  }
+}
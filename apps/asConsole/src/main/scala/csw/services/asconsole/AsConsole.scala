@@ -1,6 +1,7 @@
 package csw.services.asconsole
 
 import java.io.File
+import java.util.concurrent.atomic.AtomicReference
 
 import akka.actor.ActorSystem
 import akka.util.Timeout
@@ -200,7 +201,17 @@ object AsConsole extends App {
   // Handle the --init option
   private def init(alarmService: AlarmService, file: File, options: Options): Unit = {
     val admin = AlarmServiceAdmin(alarmService)
-    val problems = Await.result(admin.initAlarms(file, options.delete), timeout.duration)
+    // Large configurations may take longer than the default timeout: wait as long as each chunk of alarms
+    // is loaded within the timeout, so that the total time allowed grows with the number of alarms
+    val deadline = new AtomicReference(timeout.duration.fromNow)
+    def progress(p: AlarmLoader.Progress): Unit = {
+      println(s"Loaded ${p.loaded} of ${p.total} alarms")
+      deadline.set(timeout.duration.fromNow)
+    }
+    val f = admin.initAlarms(file, options.delete, progress _)
+    while (!f.isCompleted && deadline.get.hasTimeLeft()) Thread.sleep(100)
+    if (!f.isCompleted) error(s"Timed out initializing the Alarm Service with $file (no progress for ${timeout.duration})")
+    val problems = Await.result(f, timeout.duration)
     Problem.printProblems(problems)
     if (Problem.errorCount(problems) != 0) error(s"Failed to initialize Alarm Service with $file")
   }
@@ -0,0 +1,148 @@
+package csw.services.esconsole
+
+import akka.actor.ActorSystem
+import akka.util.Timeout
+import ch.qos.logback.classic._
+import csw.services.events._
+import csw.services.loc.LocationService
+import org.slf4j.LoggerFactory
+
+import scala.concurrent.Await
+import scala.concurrent.duration._
+
+/**
+ * A command line application that locates the Redis instances used for the Event and Telemetry Services
+ * (using the Location Service, or the given host and port) and reports on the memory used per subsystem and prefix.
+ */
+object EsConsole extends App {
+  LocationService.initInterface()
+
+  // Needed for use with Futures
+  implicit val system = ActorSystem("EsConsole")
+
+  // Timeout when waiting for a future
+  implicit val timeout = Timeout(60.seconds)
+
+  /**
+   * Command line options ("esconsole --help" prints a usage message with descriptions of all the options)
+   * See val parser below for descriptions of the options.
+   */
+  private case class Options(
+    esName:     Option[String] = None, // Event Service name
+    tsName:     Option[String] = None, // Telemetry Service name
+    host:       Option[String] = None,
+    port:       Int            = 6379,
+    events:     Boolean        = false,
+    telemetry:  Boolean        = false,
+    maxKeys:    Int            = KeyspaceReport.Options().maxKeys,
+    maxHistory: Long           = KeyspaceReport.Options().maxHistory,
+    top:        Int            = 20,
+    logLevel:   Option[String] = Some("OFF"),
+    noExit:     Boolean        = false
+  )
+
+  // Parses the command line options
+  private val parser = new scopt.OptionParser[Options]("esconsole") {
+    head("esconsole", System.getProperty("CSW_VERSION"))
+
+    opt[String]("es-name") valueName "<name>" action { (x, c) =>
+      c.copy(esName = Some(x))
+    } text "The name that was used to register the Event Service Redis instance (Default: 'Event Service')"
+
+    opt[String]("ts-name") valueName "<name>" action { (x, c) =>
+      c.copy(tsName = Some(x))
+    } text "The name that was used to register the Telemetry Service Redis instance (Default: 'Telemetry Service')"
+
+    opt[String]("host") valueName "<host>" action { (x, c) =>
+      c.copy(host = Some(x))
+    } text "Connect to the Redis instance on the given host, instead of using the location service"
+
+    opt[Int]("port") valueName "<port>" action { (x, c) =>
+      c.copy(port = x)
+    } text "When used with --host, the Redis port (Default: 6379)"
+
+    opt[Unit]("events") action { (_, c) =>
+      c.copy(events = true)
+    } text "Prints a report on the memory used by the Event Service"
+
+    opt[Unit]("telemetry") action { (_, c) =>
+      c.copy(telemetry = true)
+    } text "Prints a report on the memory used by the Telemetry Service (Default: both reports are printed)"
+
+    opt[Int]("max-keys") valueName "<count>" action { (x, c) =>
+      c.copy(maxKeys = x)
+    } text s"The max number of keys to examine (Default: ${KeyspaceReport.Options().maxKeys})"
+
+    opt[Long]("max-history") valueName "<count>" action { (x, c) =>
+      c.copy(maxHistory = x)
+    } text s"Warn about telemetry histories longer than this (Default: ${KeyspaceReport.Options().maxHistory})"
+
+    opt[Int]("top") valueName "<count>" action { (x, c) =>
+      c.copy(top = x)
+    } text "The number of prefixes to list, largest first (Default: 20)"
+
+    opt[Unit]("no-exit") action { (_, c) =>
+      c.copy(noExit = true)
+    } text "For testing: prevents application from exiting the JVM"
+
+    opt[String]("log") valueName "<log-level>" action { (x, c) =>
+      c.copy(logLevel = Some(x))
+    } text "For testing: Sets the log level (default: OFF, choices: TRACE, DEBUG, INFO, WARN, ERROR, OFF)"
+
+    help("help")
+    version("version")
+  }
+
+  // Parse the command line options
+  parser.parse(args, Options()) match {
+    case Some(options) =>
+      try {
+        run(options)
+      } catch {
+        case e: Throwable =>
+          e.printStackTrace()
+          System.exit(1)
+      }
+    case None => System.exit(1)
+  }
+
+  // Prints the selected reports
+  private def run(options: Options): Unit = {
+    options.logLevel.foreach(setLogLevel)
+
+    val reportOptions = KeyspaceReport.Options(maxKeys = options.maxKeys, maxHistory = options.maxHistory)
+    val both = !options.events && !options.telemetry
+
+    if (options.events || both) {
+      val eventService = options.host match {
+        case Some(host) => EventService.get(host, options.port)
+        case None       => Await.result(EventService(options.esName.getOrElse(EventService.defaultName)), timeout.duration)
+      }
+      val report = Await.result(EventServiceAdmin(eventService).keyspaceReport(reportOptions), timeout.duration)
+      println(report.format(options.top))
+      println()
+    }
+
+    if (options.telemetry || both) {
+      val telemetryService = options.host match {
+        case Some(host) => TelemetryService.get(host, options.port)
+        case None       => Await.result(TelemetryService(options.tsName.getOrElse(TelemetryService.defaultName)), timeout.duration)
+      }
+      val report = Await.result(TelemetryServiceAdmin(telemetryService).keyspaceReport(reportOptions), timeout.duration)
+      println(report.format(options.top))
+    }
+
+    if (!options.noExit) {
+      system.terminate()
+      System.exit(0)
+    }
+  }
+
+  private def setLogLevel(level: String): Unit = {
+    import ch.qos.logback.classic.Logger
+    val l = Level.toLevel(level, Level.OFF)
+    println(s"Setting log level to $level ($l)")
+    LoggerFactory.getLogger("root").asInstanceOf[Logger].setLevel(l)
+    LoggerFactory.getLogger("csw").asInstanceOf[Logger].setLevel(l)
+  }
+}
@@ -0,0 +1,144 @@
+package csw.services.apps.eventBenchmark
+
+import akka.actor.{ActorSystem, PoisonPill, Props}
+import csw.services.events.{Event, EventService, TelemetryService}
+import csw.util.config.Events.StatusEvent
+
+import scala.concurrent.{ExecutionContext, Future}
+
+/**
+ * Publishes events for one simulated publisher
+ */
+trait BenchmarkPublisher {
+  /**
+   * Publishes the event
+   *
+   * @return a future that completes when the event was written
+   */
+  def publish(event: StatusEvent)(implicit ec: ExecutionContext): Future[Unit]
+
+  /**
+   * Releases any resources held by the publisher
+   */
+  def close(): Unit = {}
+}
+
+/**
+ * Defines the event service implementation under test
+ */
+trait BenchmarkTarget {
+  /**
+   * A name for the target, used in the benchmark output
+   */
+  def name: String
+
+  /**
+   * Returns a new publisher for the given prefix
+   */
+  def publisher(prefix: String): BenchmarkPublisher
+
+  /**
+   * Subscribes the callback to the given prefixes
+   *
+   * @return a function that stops the subscription
+   */
+  def subscribe(prefixes: Seq[String], callback: StatusEvent => Unit): () => Unit
+}
+
+object BenchmarkTarget {
+
+  /**
+   * The names of the available targets
+   */
+  val names = List(EventTarget.name, TelemetryTarget.name, HornetqTarget.name)
+
+  /**
+   * Benchmarks the Redis based EventService
+   */
+  case class EventTarget(eventService: EventService)(implicit system: ActorSystem) extends BenchmarkTarget {
+    override val name: String = EventTarget.name
+
+    override def publisher(prefix: String): BenchmarkPublisher = new BenchmarkPublisher {
+      override def publish(event: StatusEvent)(implicit ec: ExecutionContext): Future[Unit] = eventService.publish(event)
+    }
+
+    override def subscribe(prefixes: Seq[String], callback: StatusEvent => Unit): () => Unit = {
+      val f: Event => Unit = {
+        case e: StatusEvent => callback(e)
+        case _              =>
+      }
+      val monitor = eventService.subscribe(f, postLastEvents = false, prefixes: _*)
+      () => monitor.stop()
+    }
+  }
+
+  object EventTarget {
+    val name = "event"
+  }
+
+  /**
+   * Benchmarks the Redis based TelemetryService
+   */
+  case class TelemetryTarget(telemetryService: TelemetryService)(implicit system: ActorSystem) extends BenchmarkTarget {
+    override val name: String = TelemetryTarget.name
+
+    override def publisher(prefix: String): BenchmarkPublisher = new BenchmarkPublisher {
+      override def publish(event: StatusEvent)(implicit ec: ExecutionContext): Future[Unit] = telemetryService.publish(event)
+    }
+
+    override def subscribe(prefixes: Seq[String], callback: StatusEvent => Unit): () => Unit = {
+      val monitor = telemetryService.subscribe(callback, postLastEvents = false, prefixes: _*)
+      () => monitor.stop()
+    }
+  }
+
+  object TelemetryTarget {
+    val name = "telemetry"
+  }
+
+  /**
+   * Benchmarks the legacy HornetQ based event service (event_old), waiting for the server to acknowledge each event
+   *
+   * @param host        the HornetQ server host
+   * @param port        the HornetQ server port
+   * @param useEmbedded if true, use the HornetQ server embedded in this JVM
+   */
+  case class HornetqTarget(host: String, port: Int, useEmbedded: Boolean)(implicit system: ActorSystem) extends BenchmarkTarget {
+    import csw.services.event_old
+
+    override val name: String = HornetqTarget.name
+
+    override def publisher(prefix: String): BenchmarkPublisher = new BenchmarkPublisher {
+      // Block on send, so that publish returns once the server acknowledged the event, as for the Redis targets
+      private val eventService = event_old.EventService(prefix, host, port, useEmbedded,
+        event_old.EventService.ProducerSettings(blockOnSend = true))
+
+      // Note: The publish blocks the publisher thread until the server acknowledged the event
+      override def publish(event: StatusEvent)(implicit ec: ExecutionContext): Future[Unit] =
+        Future.fromTry(scala.util.Try(eventService.publish(event)))
+
+      override def close(): Unit = eventService.close()
+    }
+
+    override def subscribe(prefixes: Seq[String], callback: StatusEvent => Unit): () => Unit = {
+      val actorRef = system.actorOf(Props(new HornetqSubscriber(prefixes, callback)))
+      () => actorRef ! PoisonPill
+    }
+  }
+
+  object HornetqTarget {
+    val name = "hornetq"
+  }
+
+  // Subscriber actor for the legacy HornetQ based event service
+  private class HornetqSubscriber(prefixes: Seq[String], callback: StatusEvent => Unit)
+      extends csw.services.event_old.EventSubscriber {
+
+    subscribe(prefixes: _*)
+
+    override def receive: Receive = {
+      case e: StatusEvent => callback(e)
+      case _              =>
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package csw.services.apps.eventBenchmark
+
+import java.io.{File, FileOutputStream, PrintStream}
+
+import akka.actor.ActorSystem
+import csw.services.apps.eventBenchmark.BenchmarkTarget.{EventTarget, HornetqTarget, TelemetryTarget}
+import csw.services.apps.eventBenchmark.EventBenchmarkRunner.{BenchmarkSettings, Payload}
+import csw.services.event_old
+import csw.services.events.{EventService, EventServiceSettings, TelemetryService}
+import csw.services.loc.LocationService
+
+import scala.concurrent.duration._
+
+/**
+ * A command line application that measures the throughput, latency and GC behavior of the event services.
+ * It starts N simulated publishers and M subscribers and sweeps the given event services, payload types,
+ * payload sizes and publish rates. The results are written as one JSON object per line.
+ */
+object EventBenchmark extends App {
+  LocationService.initInterface()
+
+  /**
+   * Command line options ("eventbenchmark --help" prints a usage message with descriptions of all the options)
+   */
+  private case class Options(
+    targets:         List[String] = List(EventTarget.name),
+    publishers:      Int          = 1,
+    subscribers:     Int          = 1,
+    payloads:        List[String] = List(Payload.ScalarPayload.name),
+    arraySizes:      List[Int]    = List(1024),
+    matrixSizes:     List[Int]    = List(128),
+    rates:           List[Int]    = List(1000),
+    durationSecs:    Int          = 10,
+    warmupSecs:      Int          = 2,
+    redisHost:       Option[String] = None,
+    redisPort:       Option[Int]    = None,
+    hornetqHost:     String       = "127.0.0.1",
+    hornetqPort:     Int          = 5445,
+    embeddedHornetq: Boolean      = false,
+    output:          Option[File] = None
+  )
+
+  private val parser = new scopt.OptionParser[Options]("eventbenchmark") {
+    head("eventbenchmark", System.getProperty("CSW_VERSION"))
+
+    opt[Seq[String]]("targets") valueName "<name>,..." action { (x, c) =>
+      c.copy(targets = x.toList)
+    } text s"The event services to test (default: event, choices: ${BenchmarkTarget.names.mkString(", ")})"
+
+    opt[Int]("publishers") valueName "<n>" action { (x, c) =>
+      c.copy(publishers = x)
+    } text "The number of simulated publishers, each publishing to its own prefix (default: 1)"
+
+    opt[Int]("subscribers") valueName "<n>" action { (x, c) =>
+      c.copy(subscribers = x)
+    } text "The number of subscribers, each subscribing to all publisher prefixes (default: 1)"
+
+    opt[Seq[String]]("payloads") valueName "<type>,..." action { (x, c) =>
+      c.copy(payloads = x.toList)
+    } text s"The payload types to publish (default: scalar, choices: ${Payload.all.map(_.name).mkString(", ")})"
+
+    opt[Seq[Int]]("array-sizes") valueName "<n>,..." action { (x, c) =>
+      c.copy(arraySizes = x.toList)
+    } text "The number of elements in the DoubleArrayItem payloads (default: 1024)"
+
+    opt[Seq[Int]]("matrix-sizes") valueName "<n>,..." action { (x, c) =>
+      c.copy(matrixSizes = x.toList)
+    } text "The number of rows and columns in the DoubleMatrixItem payloads (default: 128)"
+
+    opt[Seq[Int]]("rates") valueName "<n>,..." action { (x, c) =>
+      c.copy(rates = x.toList)
+    } text "The total publish rates in events/sec (default: 1000, 0 means as fast as possible)"
+
+    opt[Int]("duration") valueName "<secs>" action { (x, c) =>
+      c.copy(durationSecs = x)
+    } text "The number of seconds to measure for each run (default: 10)"
+
+    opt[Int]("warmup") valueName "<secs>" action { (x, c) =>
+      c.copy(warmupSecs = x)
+    } text "The number of seconds to publish before measuring (default: 2)"
+
+    opt[String]("redis-host") valueName "<host>" action { (x, c) =>
+      c.copy(redisHost = Some(x))
+    } text "The Redis host for the event and telemetry services (default: csw.redis.hostname setting)"
+
+    opt[Int]("redis-port") valueName "<port>" action { (x, c) =>
+      c.copy(redisPort = Some(x))
+    } text "The Redis port for the event and telemetry services (default: csw.redis.port setting)"
+
+    opt[String]("hornetq-host") valueName "<host>" action { (x, c) =>
+      c.copy(hornetqHost = x)
+    } text "The HornetQ host for the legacy event service (default: 127.0.0.1)"
+
+    opt[Int]("hornetq-port") valueName "<port>" action { (x, c) =>
+      c.copy(hornetqPort = x)
+    } text "The HornetQ port for the legacy event service (default: 5445)"
+
+    opt[Unit]("embedded-hornetq") action { (_, c) =>
+      c.copy(embeddedHornetq = true)
+    } text "Start an embedded HornetQ server in this JVM for the legacy event service"
+
+    opt[File]("output") valueName "<file>" action { (x, c) =>
+      c.copy(output = Some(x))
+    } text "Append the results (one JSON object per line) to the given file (default: stdout)"
+
+    help("help")
+    version("version")
+  }
+
+  parser.parse(args, Options()) match {
+    case Some(options) =>
+      try {
+        run(options)
+        System.exit(0)
+      } catch {
+        case e: Throwable =>
+          e.printStackTrace()
+          System.exit(1)
+      }
+    case None => System.exit(1)
+  }
+
+  // Returns a list of settings for each combination of the command line options
+  private def sweep(options: Options): List[BenchmarkSettings] = {
+    for {
+      payloadName <- options.payloads
+      payload = Payload(payloadName).getOrElse(throw new IllegalArgumentException(s"Unknown payload type: $payloadName"))
+      size <- payload match {
+        case Payload.ScalarPayload => List(1)
+        case Payload.ArrayPayload  => options.arraySizes
+        case Payload.MatrixPayload => options.matrixSizes
+      }
+      rate <- options.rates
+    } yield BenchmarkSettings(options.publishers, options.subscribers, payload, size, rate,
+      options.durationSecs.seconds, options.warmupSecs.seconds)
+  }
+
+  private def run(options: Options): Unit = {
+    implicit val system = ActorSystem("EventBenchmark")
+    val settings = EventServiceSettings(system)
+    val host = options.redisHost.getOrElse(settings.redisHostname)
+    val port = options.redisPort.getOrElse(settings.redisPort)
+    if (options.targets.contains(HornetqTarget.name) && options.embeddedHornetq) event_old.EventService.startEmbeddedHornetQ()
+
+    val out = options.output.map(f => new PrintStream(new FileOutputStream(f, true))).getOrElse(System.out)
+    try {
+      for (name <- options.targets) {
+        val target = name match {
+          case EventTarget.name     => EventTarget(EventService.get(host, port))
+          case TelemetryTarget.name => TelemetryTarget(TelemetryService.get(host, port))
+          case HornetqTarget.name   => HornetqTarget(options.hornetqHost, options.hornetqPort, options.embeddedHornetq)
+          case x                    => throw new IllegalArgumentException(s"Unknown target: $x")
+        }
+        for (s <- sweep(options)) {
+          val result = new EventBenchmarkRunner(target, s).run()
+          out.println(result.toJson.compactPrint)
+          out.flush()
+        }
+      }
+    } finally {
+      if (out != System.out) out.close()
+      system.terminate()
+    }
+  }
+}
@@ -0,0 +1,339 @@
+package csw.services.apps.eventBenchmark
+
+import java.lang.management.ManagementFactory
+import java.time.Instant
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.LongAdder
+import java.util.concurrent.locks.LockSupport
+
+import akka.actor.ActorSystem
+import com.typesafe.scalalogging.LazyLogging
+import csw.util.config.ConfigSerializer._
+import csw.util.config.Events.StatusEvent
+import csw.util.config._
+import csw.util.metrics.{HistogramSnapshot, LatencyHistogram}
+import spray.json._
+
+import scala.collection.JavaConverters._
+import scala.concurrent.duration._
+import scala.util.{Failure, Success}
+
+object EventBenchmarkRunner {
+
+  /**
+   * The type of data published in each event
+   */
+  sealed trait Payload {
+    def name: String
+
+    /**
+     * Returns an item of the given size (number of array elements, or rows and columns of a matrix)
+     */
+    def item(size: Int): Item[_]
+  }
+
+  object Payload {
+    private val scalarKey = DoubleKey("value")
+    private val arrayKey = DoubleArrayKey("array")
+    private val matrixKey = DoubleMatrixKey("matrix")
+
+    // A single double value (size is ignored)
+    case object ScalarPayload extends Payload {
+      override val name = "scalar"
+
+      override def item(size: Int): Item[_] = scalarKey.set(1.0)
+    }
+
+    // A DoubleArrayItem with size elements
+    case object ArrayPayload extends Payload {
+      override val name = "array"
+
+      override def item(size: Int): Item[_] = arrayKey.set(DoubleArray(Array.fill(size)(1.0)))
+    }
+
+    // A DoubleMatrixItem with size x size elements
+    case object MatrixPayload extends Payload {
+      override val name = "matrix"
+
+      override def item(size: Int): Item[_] = matrixKey.set(DoubleMatrix(Array.fill(size, size)(1.0)))
+    }
+
+    val all = List(ScalarPayload, ArrayPayload, MatrixPayload)
+
+    def apply(name: String): Option[Payload] = all.find(_.name == name)
+  }
+
+  /**
+   * Settings for one benchmark run
+   *
+   * @param publishers  number of simulated publishers (each publishes to its own prefix)
+   * @param subscribers number of subscribers (each subscribes to the prefixes of all publishers)
+   * @param payload     the type of data in each event
+   * @param size        the array size, or number of matrix rows and columns (ignored for scalars)
+   * @param rate        the total publish rate in events/sec for all publishers (0 means as fast as possible)
+   * @param duration    the time to measure
+   * @param warmup      the time to publish before measuring
+   * @param maxInFlight max number of incomplete publish requests per publisher
+   */
+  case class BenchmarkSettings(
+    publishers:  Int            = 1,
+    subscribers: Int            = 1,
+    payload:     Payload        = Payload.ScalarPayload,
+    size:        Int            = 1,
+    rate:        Int            = 1000,
+    duration:    FiniteDuration = 10.seconds,
+    warmup:      FiniteDuration = 2.seconds,
+    maxInFlight: Int            = 1000
+  )
+
+  /**
+   * Garbage collector activity during a run
+   *
+   * @param collections   number of collections
+   * @param collectionMs  total time spent collecting
+   * @param heapUsedBytes heap used at the end of the run
+   */
+  case class GcStats(collections: Long, collectionMs: Long, heapUsedBytes: Long)
+
+  object GcStats {
+    // Returns the current total count and time of all garbage collectors
+    def current(): GcStats = {
+      val beans = ManagementFactory.getGarbageCollectorMXBeans.asScala
+      GcStats(
+        beans.map(b => math.max(b.getCollectionCount, 0L)).sum,
+        beans.map(b => math.max(b.getCollectionTime, 0L)).sum,
+        ManagementFactory.getMemoryMXBean.getHeapMemoryUsage.getUsed
+      )
+    }
+
+    // Returns the activity between the two samples
+    def diff(start: GcStats, end: GcStats): GcStats =
+      GcStats(end.collections - start.collections, end.collectionMs - start.collectionMs, end.heapUsedBytes)
+  }
+
+  /**
+   * The results of a benchmark run
+   *
+   * @param target          the name of the event service implementation
+   * @param settings        the settings used for the run
+   * @param eventBytes      the size of one serialized event
+   * @param elapsedSecs     the measured time
+   * @param published       number of events published
+   * @param publishFailures number of failed publish requests
+   * @param received        number of events received (by all subscribers)
+   * @param latency         end to end latency in ns
+   * @param gc              garbage collector activity
+   */
+  case class BenchmarkResult(
+      target:          String,
+      settings:        BenchmarkSettings,
+      eventBytes:      Int,
+      elapsedSecs:     Double,
+      published:       Long,
+      publishFailures: Long,
+      received:        Long,
+      latency:         HistogramSnapshot,
+      gc:              GcStats
+  ) {
+
+    /**
+     * Returns the result in JSON format
+     */
+    def toJson: JsObject = {
+      def micros(ns: Long) = JsNumber(ns / 1000.0)
+      JsObject(
+        "target" -> JsString(target),
+        "publishers" -> JsNumber(settings.publishers),
+        "subscribers" -> JsNumber(settings.subscribers),
+        "payload" -> JsString(settings.payload.name),
+        "size" -> JsNumber(settings.size),
+        "eventBytes" -> JsNumber(eventBytes),
+        "targetRate" -> JsNumber(settings.rate),
+        "elapsedSecs" -> JsNumber(elapsedSecs),
+        "published" -> JsNumber(published),
+        "publishFailures" -> JsNumber(publishFailures),
+        "publishRate" -> JsNumber(published / elapsedSecs),
+        "received" -> JsNumber(received),
+        "receiveRate" -> JsNumber(received / elapsedSecs),
+        "latencyMicros" -> JsObject(
+          "count" -> JsNumber(latency.count),
+          "mean" -> JsNumber(latency.mean / 1000.0),
+          "p50" -> micros(latency.p50),
+          "p99" -> micros(latency.p99),
+          "p99.9" -> micros(latency.p999),
+          "max" -> micros(latency.max)
+        ),
+        "gc" -> JsObject(
+          "collections" -> JsNumber(gc.collections),
+          "collectionMs" -> JsNumber(gc.collectionMs),
+          "heapUsedBytes" -> JsNumber(gc.heapUsedBytes)
+        )
+      )
+    }
+  }
+
+  // The System.nanoTime() when the event was published (used for the latency when publishing and subscribing in one JVM)
+  private val sentNanosKey = LongKey("sentNanos")
+
+  /**
+   * Returns the prefixes used by the given number of publishers
+   */
+  def prefixes(publishers: Int): Seq[String] = (1 to publishers).map(i => s"bench.pub$i")
+}
+
+/**
+ * Runs an event service benchmark with simulated publishers and subscribers.
+ * The publish and subscribe sides can also be run separately (for example, in different JVMs).
+ *
+ * @param target    the event service implementation to test
+ * @param settings  the settings for the run
+ * @param wallClock if true, measure the latency from the event time, which has millisecond resolution on Java 8
+ *                  (needed when the publishers run in another JVM), otherwise from the System.nanoTime()
+ *                  stamp that the publishers add to each event
+ */
+class EventBenchmarkRunner(target: BenchmarkTarget, settings: EventBenchmarkRunner.BenchmarkSettings, wallClock: Boolean = false)(implicit system: ActorSystem)
+    extends LazyLogging {
+
+  import EventBenchmarkRunner._
+  import system.dispatcher
+
+  private val prefixList = prefixes(settings.publishers)
+  private val item = settings.payload.item(settings.size)
+
+  private val latency = new LatencyHistogram
+  private val received = new LongAdder
+  private val published = new LongAdder
+  private val publishFailures = new LongAdder
+
+  @volatile private var recording = false
+  @volatile private var gcStart = GcStats.current()
+  @volatile private var publishing = false
+  private var subscriptions: Seq[() => Unit] = Nil
+
+  // Called by the subscribers for each event
+  private def eventReceived(event: StatusEvent): Unit = {
+    if (recording) {
+      received.increment()
+      if (wallClock) latency.record(java.time.Duration.between(event.eventTime.time, Instant.now).toNanos)
+      else event.get(sentNanosKey).foreach(sent => latency.record(System.nanoTime() - sent.head))
+    }
+  }
+
+  /**
+   * Starts the subscribers
+   */
+  def startSubscribers(): Unit = {
+    subscriptions = (1 to settings.subscribers).map(_ => target.subscribe(prefixList, eventReceived))
+  }
+
+  /**
+   * Stops the subscribers
+   */
+  def stopSubscribers(): Unit = {
+    subscriptions.foreach(_())
+    subscriptions = Nil
+  }
+
+  // Returns a new event for the given prefix
+  private def event(prefix: String): StatusEvent = StatusEvent(prefix).madd(item, sentNanosKey.set(System.nanoTime()))
+
+  /**
+   * Clears the counters, samples the garbage collector stats and starts recording
+   */
+  def startRecording(): Unit = {
+    latency.reset()
+    received.reset()
+    published.reset()
+    publishFailures.reset()
+    gcStart = GcStats.current()
+    recording = true
+  }
+
+  /**
+   * Stops recording
+   */
+  def stopRecording(): Unit = recording = false
+
+  // Simulates a publisher that publishes events for the given prefix at the given rate
+  private class PublisherThread(prefix: String, rate: Double) extends Thread(s"publisher-$prefix") {
+    private val publisher = target.publisher(prefix)
+    private val inFlight = new Semaphore(settings.maxInFlight)
+    private val intervalNanos = if (rate > 0) (1.0e9 / rate).toLong else 0L
+
+    override def run(): Unit = {
+      var next = System.nanoTime()
+      while (publishing) {
+        inFlight.acquire()
+        val rec = recording
+        publisher.publish(event(prefix)).onComplete { r =>
+          inFlight.release()
+          if (rec) r match {
+            case Success(_) => published.increment()
+            case Failure(_) => publishFailures.increment()
+          }
+        }
+        if (intervalNanos > 0) {
+          next += intervalNanos
+          val sleep = next - System.nanoTime()
+          if (sleep > 0) LockSupport.parkNanos(sleep)
+        }
+      }
+      // Wait for outstanding requests before closing
+      inFlight.acquire(settings.maxInFlight)
+      publisher.close()
+    }
+  }
+
+  /**
+   * Publishes events from all publishers for the warmup time plus the duration, then stops the publishers.
+   * If record is true, recording is started after the warmup time and stopped after the duration.
+   *
+   * @return the measured time in seconds
+   */
+  def publish(record: Boolean): Double = {
+    val ratePerPublisher = settings.rate.toDouble / settings.publishers
+    publishing = true
+    val threads = prefixList.map(new PublisherThread(_, ratePerPublisher))
+    threads.foreach(_.start())
+    Thread.sleep(settings.warmup.toMillis)
+    if (record) startRecording()
+    val start = System.nanoTime()
+    Thread.sleep(settings.duration.toMillis)
+    val elapsedSecs = (System.nanoTime() - start) / 1.0e9
+    publishing = false
+    threads.foreach(_.join())
+    elapsedSecs
+  }
+
+  /**
+   * Returns the results recorded so far, with the garbage collector activity since recording started
+   *
+   * @param elapsedSecs the measured time
+   */
+  def result(elapsedSecs: Double): BenchmarkResult = {
+    val eventBytes = write(event(prefixList.head)).length
+    BenchmarkResult(target.name, settings, eventBytes, elapsedSecs, published.sum(), publishFailures.sum(),
+      received.sum(), latency.snapshot(), GcStats.diff(gcStart, GcStats.current()))
+  }
+
+  /**
+   * Runs the complete benchmark in this JVM: Starts the subscribers, publishes events and returns the results.
+   *
+   * @param drainTime time to wait for subscribers to receive outstanding events after publishing stopped
+   */
+  def run(drainTime: FiniteDuration = 1.second): BenchmarkResult = {
+    startSubscribers()
+    try {
+      // Give the subscribers time to connect
+      Thread.sleep(1000)
+      val elapsedSecs = publish(record = true)
+      Thread.sleep(drainTime.toMillis)
+      stopRecording()
+      val r = result(elapsedSecs)
+      logger.debug(s"Benchmark result: $r")
+      r
+    } finally {
+      stopSubscribers()
+    }
+  }
+}
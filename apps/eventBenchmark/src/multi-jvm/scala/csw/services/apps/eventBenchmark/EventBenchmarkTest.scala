@@ -0,0 +1,79 @@
+package csw.services.apps.eventBenchmark
+
+import akka.remote.testconductor.RoleName
+import akka.remote.testkit._
+import akka.testkit.ImplicitSender
+import csw.services.apps.eventBenchmark.BenchmarkTarget.EventTarget
+import csw.services.apps.eventBenchmark.EventBenchmarkRunner.{BenchmarkSettings, Payload}
+import csw.services.events.EventService
+import csw.services.loc.LocationService
+
+import scala.concurrent.duration._
+
+/**
+ * Runs the event service benchmark with the publishers and subscribers in separate JVMs (See the sbt-multi-jvm plugin).
+ * This test requires a local Redis server (see the csw.redis settings).
+ */
+object EventBenchmarkConfig extends MultiNodeConfig {
+  LocationService.initInterface()
+
+  val publisher: RoleName = role("publisher")
+
+  val subscriber: RoleName = role("subscriber")
+
+  // Note: The "multinode.host" system property needs to be set to empty so that the MultiNodeSpec
+  // base class below will use the actual host name.
+  System.setProperty("multinode.host", "")
+}
+
+class EventBenchmarkMultiJvmPublisher extends EventBenchmarkSpec
+
+class EventBenchmarkMultiJvmSubscriber extends EventBenchmarkSpec
+
+class EventBenchmarkSpec extends MultiNodeSpec(EventBenchmarkConfig) with STMultiNodeSpec with ImplicitSender {
+
+  import EventBenchmarkConfig._
+
+  override def initialParticipants: Int = roles.size
+
+  private val settingsList = for {
+    (payload, size) <- List((Payload.ScalarPayload, 1), (Payload.ArrayPayload, 1024), (Payload.MatrixPayload, 32))
+  } yield BenchmarkSettings(publishers = 2, subscribers = 2, payload = payload, size = size, rate = 1000,
+    duration = 5.seconds, warmup = 0.seconds)
+
+  "The event service benchmark" must {
+
+    "wait for all nodes to enter a barrier" in {
+      enterBarrier("startup")
+    }
+
+    "measure the latency between publishers and subscribers in different JVMs" in {
+      for ((settings, i) <- settingsList.zipWithIndex) {
+        // The publishers are in another JVM, so the latency is measured with the wall clock
+        val runner = new EventBenchmarkRunner(EventTarget(EventService.get()), settings, wallClock = true)
+
+        runOn(subscriber) {
+          runner.startSubscribers()
+          Thread.sleep(1000)
+          runner.startRecording()
+          enterBarrier(s"subscribed-$i")
+          enterBarrier(s"published-$i")
+          Thread.sleep(1000)
+          runner.stopRecording()
+          runner.stopSubscribers()
+          val result = runner.result(settings.duration.toMillis / 1000.0)
+          println(result.toJson.compactPrint)
+          assert(result.received > 0)
+        }
+
+        runOn(publisher) {
+          enterBarrier(s"subscribed-$i")
+          runner.publish(record = false)
+          enterBarrier(s"published-$i")
+        }
+
+        enterBarrier(s"done-$i")
+      }
+    }
+  }
+}
@@ -1,7 +1,10 @@
 package csw.services.event_old
 
-import csw.util.config.ConfigSerializer._
-import org.hornetq.api.core.TransportConfiguration
+import java.io.{ObjectOutputStream, OutputStream}
+import java.util.concurrent.{ArrayBlockingQueue, TimeUnit, TimeoutException}
+import java.util.concurrent.atomic.LongAdder
+
+import org.hornetq.api.core.{HornetQBuffer, Message, TransportConfiguration}
 import org.hornetq.api.core.client._
 import org.hornetq.core.remoting.impl.invm.{InVMConnectorFactory, InVMAcceptorFactory}
 import org.hornetq.core.remoting.impl.netty.{NettyAcceptorFactory, NettyConnectorFactory}
@@ -39,6 +42,20 @@ object EventService {
     }
   }
 
+  /**
+   * Settings for publishing events
+   *
+   * @param sessions               the number of HornetQ sessions (each with its own producer) used to publish events.
+   *                               Sessions are single threaded, so this is the number of threads that can publish at once.
+   * @param blockOnSend            if true, each send waits for the server to acknowledge the message,
+   *                               otherwise messages are sent without waiting (fire and forget)
+   * @param confirmationWindowSize if greater than 0, the server confirms the sent messages asynchronously,
+   *                               each time this many bytes were received (-1 to disable confirmations)
+   * @param sessionTimeout         how long publish waits for a free session before failing with a TimeoutException
+   */
+  case class ProducerSettings(sessions: Int = 4, blockOnSend: Boolean = false, confirmationWindowSize: Int = 1024 * 1024,
+                              sessionTimeout: FiniteDuration = 5.seconds)
+
   /**
    * Connects to a HornetQ server using the given settings.
    */
@@ -55,7 +72,8 @@ object EventService {
    * an embedded (in this jvm) server, otherwise use the host and port settings to connect to
    * an external Hornetq server.
    */
-  private[event_old] def connectToHornetQ(host: String, port: Int, useEmbedded: Boolean): EventServiceInfo = {
+  private[event_old] def connectToHornetQ(host: String, port: Int, useEmbedded: Boolean,
+                                          producerSettings: Option[ProducerSettings] = None): EventServiceInfo = {
     val serverLocator = if (useEmbedded) {
       HornetQClient.createServerLocatorWithoutHA(
         new TransportConfiguration(classOf[InVMConnectorFactory].getName)
@@ -74,6 +92,11 @@ object EventService {
     //    serverLocator.setProducerWindowSize(-1)
     //    serverLocator.setConsumerWindowSize(-1)
 
+    producerSettings.foreach { ps =>
+      serverLocator.setBlockOnNonDurableSend(ps.blockOnSend)
+      serverLocator.setConfirmationWindowSize(ps.confirmationWindowSize)
+    }
+
     val sf = serverLocator.createSessionFactory
     val session = sf.createSession
     session.start()
@@ -116,7 +139,18 @@ object EventService {
   def apply(prefix: String, settings: EventServiceSettings): EventService =
     EventService(prefix, settings.eventServiceHostname.getOrElse("127.0.0.1"),
       settings.eventServicePort.getOrElse(5445),
-      settings.useEmbeddedHornetq)
+      settings.useEmbeddedHornetq,
+      settings.producerSettings)
+
+  // A session and its producer (HornetQ sessions are single threaded, so each is used by one thread at a time)
+  private[event_old] case class ProducerSession(session: ClientSession, producer: ClientProducer)
+
+  // Writes directly to a message body, so that events are not first serialized to a separate array
+  private class BodyOutputStream(buf: HornetQBuffer) extends OutputStream {
+    override def write(b: Int): Unit = buf.writeByte(b.toByte)
+
+    override def write(b: Array[Byte], off: Int, len: Int): Unit = buf.writeBytes(b, off, len)
+  }
 }
 
 /**
@@ -126,33 +160,86 @@ object EventService {
  * @param host        the server host (default: localhost: 127.0.0.1)
  * @param port        the server port (default: 5445)
  * @param useEmbedded if true (default) start the server, otherwise look for one already running
+ * @param producerSettings the number of sessions used to publish and whether sends are asynchronous
  * @deprecated use Redis based classes from the csw events project
  */
 @Deprecated
-case class EventService(prefix: String, host: String = "127.0.0.1", port: Int = 5445, useEmbedded: Boolean = false) {
+case class EventService(prefix: String, host: String = "127.0.0.1", port: Int = 5445, useEmbedded: Boolean = false,
+                        producerSettings: EventService.ProducerSettings = EventService.ProducerSettings()) {
 
   import EventService._
 
-  private val hq = connectToHornetQ(host, port, useEmbedded)
-  private val producer = hq.session.createProducer(prefix)
+  private val hq = connectToHornetQ(host, port, useEmbedded, Some(producerSettings))
+  private val sent = new LongAdder
+  private val confirmed = new LongAdder
+
+  // The sessions used to publish: Each publish takes a session from the pool and returns it when done
+  private val sessions = hq.session +: (1 until math.max(producerSettings.sessions, 1)).map { _ =>
+    val session = hq.sf.createSession
+    session.start()
+    session
+  }
+  private val pool = new ArrayBlockingQueue[ProducerSession](sessions.size)
+  sessions.foreach { session =>
+    if (producerSettings.confirmationWindowSize > 0) session.setSendAcknowledgementHandler(new SendAcknowledgementHandler {
+      override def sendAcknowledged(message: Message): Unit = confirmed.increment()
+    })
+    pool.put(ProducerSession(session, session.createProducer(prefix)))
+  }
 
   /**
    * Publishes the given event (channel is the event prefix).
+   * Throws a TimeoutException if no session is free within the producer settings' session timeout.
    *
    * @param event  the event to publish
    * @param expire time to live for event
    */
-  def publish(event: Event, expire: FiniteDuration = 1.second): Unit = {
-    val message = hq.session.createMessage(false)
-    val buf = message.getBodyBuffer
-    buf.clear()
-    buf.writeBytes(write(event))
-    message.setExpiration(System.currentTimeMillis() + expire.toMillis)
-    producer.send(message)
+  def publish(event: Event, expire: FiniteDuration = 1.second): Unit = withSession(send(_, event, expire))
+
+  /**
+   * Publishes the given events, in order, using the same session
+   * (cheaper than publishing them one at a time, when publishing from several threads).
+   *
+   * @param events the events to publish
+   * @param expire time to live for the events
+   */
+  def publish(events: Seq[Event], expire: FiniteDuration): Unit = withSession { ps =>
+    events.foreach(send(ps, _, expire))
   }
 
+  /**
+   * The number of events sent to the server
+   */
+  def sentCount: Long = sent.sum()
+
+  /**
+   * The number of sent events that the server has confirmed (only if the confirmation window size is greater than 0)
+   */
+  def confirmedCount: Long = confirmed.sum()
+
   /**
    * Closes the connection to the Hornetq server
    */
-  def close(): Unit = hq.close()
+  def close(): Unit = {
+    sessions.tail.foreach(_.close())
+    hq.close()
+  }
+
+  // Runs f with a session from the pool (waiting up to the session timeout for one, if all are in use by other threads)
+  private[event_old] def withSession(f: ProducerSession => Unit): Unit = {
+    val ps = pool.poll(producerSettings.sessionTimeout.toMillis, TimeUnit.MILLISECONDS)
+    if (ps == null)
+      throw new TimeoutException(s"No event service session was free within ${producerSettings.sessionTimeout}: $prefix not published")
+    try f(ps) finally pool.put(ps)
+  }
+
+  private def send(ps: ProducerSession, event: Event, expire: FiniteDuration): Unit = {
+    val message = ps.session.createMessage(false)
+    val out = new ObjectOutputStream(new BodyOutputStream(message.getBodyBuffer))
+    out.writeObject(event)
+    out.close()
+    message.setExpiration(System.currentTimeMillis() + expire.toMillis)
+    ps.producer.send(message)
+    sent.increment()
+  }
 }
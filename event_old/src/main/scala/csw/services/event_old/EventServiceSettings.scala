@@ -3,6 +3,8 @@ package csw.services.event_old
 import akka.actor.{ActorSystem, Extension, ExtensionKey}
 import net.ceedubs.ficus.Ficus._
 
+import scala.concurrent.duration.FiniteDuration
+
 object EventServiceSettings extends ExtensionKey[EventServiceSettings]
 
 /**
@@ -13,5 +15,13 @@ case class EventServiceSettings(system: ActorSystem) extends Extension {
   val eventServiceHostname: Option[String] = config.as[Option[String]]("csw.event-service.hostname")
   val eventServicePort: Option[Int] = config.as[Option[Int]]("csw.event-service.port")
   val useEmbeddedHornetq: Boolean = config.as[Option[Boolean]]("csw.event-service.use-embedded-hornetq").getOrElse(false)
+
+  private val defaultProducerSettings = EventService.ProducerSettings()
+  val producerSettings: EventService.ProducerSettings = EventService.ProducerSettings(
+    config.as[Option[Int]]("csw.event-service.producer.sessions").getOrElse(defaultProducerSettings.sessions),
+    config.as[Option[Boolean]]("csw.event-service.producer.block-on-send").getOrElse(defaultProducerSettings.blockOnSend),
+    config.as[Option[Int]]("csw.event-service.producer.confirmation-window-size").getOrElse(defaultProducerSettings.confirmationWindowSize),
+    config.as[Option[FiniteDuration]]("csw.event-service.producer.session-timeout").getOrElse(defaultProducerSettings.sessionTimeout)
+  )
 }
 
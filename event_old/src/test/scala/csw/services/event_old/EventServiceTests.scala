@@ -0,0 +1,134 @@
+package csw.services.event_old
+
+import java.util.concurrent.{CountDownLatch, TimeoutException}
+
+import akka.actor._
+import akka.testkit.{ImplicitSender, TestKit}
+import csw.services.event_old.EventService.ProducerSettings
+import csw.services.event_old.EventServiceTests._
+import csw.util.config.Events.SystemEvent
+import csw.util.config._
+import org.scalatest.concurrent.Eventually
+import org.scalatest.time.{Seconds, Span}
+import org.scalatest.{BeforeAndAfterAll, DoNotDiscover, FunSuiteLike}
+
+import scala.concurrent.duration._
+import scala.concurrent.{Await, Future}
+
+object EventServiceTests {
+  val eventNum = IntKey("eventNum")
+
+  val prefix = "tcs.test.eventServiceTests"
+
+  case object Ready
+
+  // Subscribes to the test prefix and forwards the received events to the given actor
+  class ForwardingSubscriber(target: ActorRef) extends Actor with ActorLogging with EventSubscriber {
+    subscribe(prefix)
+
+    override def receive: Receive = {
+      case Ready        => sender() ! Ready
+      case event: Event => target ! event
+    }
+  }
+}
+
+/**
+ * Tests the session pool, batch publish and confirmation counters of the HornetQ based event service
+ */
+@DoNotDiscover
+class EventServiceTests extends TestKit(ActorSystem("Test")) with ImplicitSender with FunSuiteLike
+    with BeforeAndAfterAll with Eventually {
+
+  implicit override val patienceConfig = PatienceConfig(timeout = Span(5, Seconds))
+
+  import system.dispatcher
+
+  val settings = EventServiceSettings(system)
+  if (settings.useEmbeddedHornetq) {
+    // Start an embedded HornetQ server, so no need to have it running externally!
+    EventService.startEmbeddedHornetQ()
+  }
+
+  override def afterAll(): Unit = {
+    TestKit.shutdownActorSystem(system)
+  }
+
+  private def newEventService(producerSettings: ProducerSettings): EventService =
+    EventService(prefix, settings.eventServiceHostname.getOrElse("127.0.0.1"), settings.eventServicePort.getOrElse(5445),
+      settings.useEmbeddedHornetq, producerSettings)
+
+  private def event(num: Int): Event = SystemEvent(prefix).add(eventNum.set(num))
+
+  test("Test publishing from more threads than there are sessions") {
+    val eventService = newEventService(ProducerSettings(sessions = 2))
+    try {
+      val futures = (0 until 8).map { t =>
+        Future((0 until 50).foreach(i => eventService.publish(event(t * 50 + i))))
+      }
+      Await.result(Future.sequence(futures), 30.seconds)
+      assert(eventService.sentCount == 400)
+    } finally eventService.close()
+  }
+
+  test("Test that publish fails when no session is free") {
+    val eventService = newEventService(ProducerSettings(sessions = 1, sessionTimeout = 100.millis))
+    val inUse = new CountDownLatch(1)
+    val release = new CountDownLatch(1)
+    try {
+      // Keep the only session busy
+      val busy = Future(eventService.withSession { _ =>
+        inUse.countDown()
+        release.await()
+      })
+      inUse.await()
+      intercept[TimeoutException](eventService.publish(event(0)))
+      assert(eventService.sentCount == 0)
+
+      // The session is returned to the pool when done
+      release.countDown()
+      Await.result(busy, 5.seconds)
+      eventService.publish(event(1))
+      assert(eventService.sentCount == 1)
+    } finally eventService.close()
+  }
+
+  test("Test batch publish") {
+    val subscriber = system.actorOf(Props(classOf[ForwardingSubscriber], self))
+    subscriber ! Ready
+    expectMsg(Ready)
+
+    val eventService = newEventService(ProducerSettings(sessions = 2))
+    try {
+      eventService.publish((0 until 10).map(event), 10.seconds)
+      assert(eventService.sentCount == 10)
+      // The events of a batch are received in order
+      (0 until 10).foreach { i =>
+        val e = expectMsgType[SystemEvent](5.seconds)
+        assert(e(eventNum).head == i)
+      }
+    } finally {
+      eventService.close()
+      system.stop(subscriber)
+    }
+  }
+
+  test("Test confirmation counters") {
+    // Confirm after every message
+    val eventService = newEventService(ProducerSettings(confirmationWindowSize = 1))
+    try {
+      (0 until 20).foreach(i => eventService.publish(event(i)))
+      assert(eventService.sentCount == 20)
+      eventually(assert(eventService.confirmedCount == 20))
+    } finally eventService.close()
+
+    // No confirmations if the window is disabled
+    val unconfirmed = newEventService(ProducerSettings(confirmationWindowSize = -1))
+    try {
+      (0 until 20).foreach(i => unconfirmed.publish(event(i)))
+      assert(unconfirmed.sentCount == 20)
+      Thread.sleep(500)
+      assert(unconfirmed.confirmedCount == 0)
+    } finally unconfirmed.close()
+  }
+}
@@ -0,0 +1,213 @@
+package csw.services.events
+
+import java.io.{File, FileNotFoundException, InputStream}
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.{Files, StandardCopyOption, StandardOpenOption}
+import java.security.MessageDigest
+
+import akka.util.ByteString
+import csw.services.apps.configServiceAnnex.ConfigServiceAnnexClient
+
+import scala.concurrent.duration._
+import scala.concurrent.{ExecutionContext, Future}
+import scala.util.Failure
+
+/**
+ * A content addressed store for large event payloads (See [[OffloadingEventService]]).
+ * Each blob is identified by the SHA-1 hash of its contents (the same ids used by the config service annex).
+ */
+trait BlobStore {
+  /**
+   * Stores the given data
+   *
+   * @return the future id of the blob (SHA-1 hash of the data)
+   */
+  def put(data: ByteString)(implicit ec: ExecutionContext): Future[String]
+
+  /**
+   * Returns the contents of the blob with the given id
+   * (The buffer may be a memory mapped file, so that it can be read without copying)
+   */
+  def get(id: String)(implicit ec: ExecutionContext): Future[ByteBuffer]
+}
+
+object BlobStore {
+
+  /**
+   * Returns the SHA-1 hash of the given data as a hex string
+   */
+  def sha1(data: ByteString): String = {
+    val md = MessageDigest.getInstance("SHA-1")
+    data.asByteBuffers.foreach(b => md.update(b))
+    md.digest().map(b => f"${b & 0xff}%02x").mkString
+  }
+
+  /**
+   * An InputStream that reads from a ByteBuffer (for example, a memory mapped file) without copying it first
+   */
+  class ByteBufferInputStream(buffer: ByteBuffer) extends InputStream {
+    override def read(): Int = if (buffer.hasRemaining) buffer.get() & 0xff else -1
+
+    override def read(b: Array[Byte], off: Int, len: Int): Int = {
+      if (len == 0) 0
+      else if (!buffer.hasRemaining) -1
+      else {
+        val n = math.min(len, buffer.remaining())
+        buffer.get(b, off, n)
+        n
+      }
+    }
+
+    override def available(): Int = buffer.remaining()
+  }
+}
+
+/**
+ * A blob store using files in a local (or shared) directory. The blobs are read using memory mapped files,
+ * so subscribers on the same host as the publisher read the data directly from the page cache.
+ * Like the config service annex, the files are stored under dir/xx/yyy..., where xxyyy... is the SHA-1 hash.
+ *
+ * Blobs that were not stored for longer than maxAge are deleted, and the oldest blobs are deleted when the
+ * total size is larger than maxBytes (checked at most every evictionInterval, when a blob is stored).
+ * Subscribers that receive an event whose blobs were deleted get a [[OffloadingEventService.ResolveFailed]] message.
+ *
+ * @param dir              the directory in which to store the blobs
+ * @param maxBytes         the max total size of the stored blobs
+ * @param maxAge           blobs older than this are deleted
+ * @param ioContext        if defined, used for the hashing and the blocking file I/O instead of the caller's execution context
+ *                         (for example, a dispatcher reserved for blocking operations)
+ * @param evictionInterval min time between checks for blobs to delete
+ */
+class FileBlobStore(
+    val dir:          File,
+    val maxBytes:     Long                     = Long.MaxValue,
+    val maxAge:       Duration                 = Duration.Inf,
+    ioContext:        Option[ExecutionContext] = None,
+    evictionInterval: FiniteDuration           = 10.seconds
+) extends BlobStore {
+
+  // Time (System.nanoTime) of the last check for blobs to delete
+  private var lastEviction = System.nanoTime()
+
+  /**
+   * Returns the file used to store the blob with the given id
+   */
+  def fileFor(id: String): File = new File(new File(dir, id.take(2)), id.drop(2))
+
+  /**
+   * Returns true if the blob with the given id is in the store
+   */
+  def contains(id: String): Boolean = fileFor(id).exists()
+
+  /**
+   * Returns the execution context used for the file I/O (ioContext, if defined, otherwise the given one)
+   */
+  def ioExecutionContext(ec: ExecutionContext): ExecutionContext = ioContext.getOrElse(ec)
+
+  override def put(data: ByteString)(implicit ec: ExecutionContext): Future[String] = Future {
+    val id = BlobStore.sha1(data)
+    val file = fileFor(id)
+    // A blob that is stored again is kept for another maxAge
+    if (file.exists()) file.setLastModified(System.currentTimeMillis())
+    else {
+      file.getParentFile.mkdirs()
+      // Write to a temp file first, so that readers never see a partial blob
+      val tmp = File.createTempFile(id, ".tmp", file.getParentFile)
+      val channel = FileChannel.open(tmp.toPath, StandardOpenOption.WRITE)
+      try {
+        data.asByteBuffers.foreach { buf =>
+          while (buf.hasRemaining) channel.write(buf)
+        }
+      } finally {
+        channel.close()
+      }
+      Files.move(tmp.toPath, file.toPath, StandardCopyOption.ATOMIC_MOVE)
+    }
+    if (evictionDue()) evict()
+    id
+  }(ioExecutionContext(ec))
+
+  override def get(id: String)(implicit ec: ExecutionContext): Future[ByteBuffer] = Future {
+    val file = fileFor(id)
+    if (!file.exists()) throw new FileNotFoundException(s"Blob $id not found in $dir")
+    val channel = FileChannel.open(file.toPath, StandardOpenOption.READ)
+    try {
+      channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+    } finally {
+      channel.close()
+    }
+  }(ioExecutionContext(ec))
+
+  // Returns true if it is time to check for blobs to delete
+  private def evictionDue(): Boolean = (maxBytes != Long.MaxValue || maxAge.isFinite) && synchronized {
+    val now = System.nanoTime()
+    val due = now - lastEviction >= evictionInterval.toNanos
+    if (due) lastEviction = now
+    due
+  }
+
+  /**
+   * Deletes the blobs older than maxAge, then the oldest blobs until the total size is at most maxBytes
+   * (A blob's age is the time since it was last stored)
+   *
+   * @return the number of blobs deleted
+   */
+  def evict(): Int = synchronized {
+    val files = Option(dir.listFiles()).getOrElse(Array.empty[File]).filter(_.isDirectory)
+      .flatMap(d => Option(d.listFiles()).getOrElse(Array.empty[File]))
+      .filter(f => f.isFile && !f.getName.endsWith(".tmp"))
+      .map(f => (f, f.lastModified(), f.length()))
+      .sortBy(_._2)
+    val minTime = if (maxAge.isFinite) System.currentTimeMillis() - maxAge.toMillis else Long.MinValue
+    var total = files.map(_._3).sum
+    var deleted = 0
+    for ((file, time, size) <- files) {
+      if ((time < minTime || total > maxBytes) && file.delete()) {
+        total -= size
+        deleted += 1
+      }
+    }
+    deleted
+  }
+}
+
+/**
+ * A blob store that uses the config service annex server to share the blobs between hosts.
+ * Blobs are written to (and read from) a local cache directory and uploaded to the annex server.
+ * Blobs that are not in the cache are downloaded from the annex server when first needed.
+ *
+ * @param cache the local cache for the blobs
+ */
+class AnnexBlobStore(val cache: FileBlobStore) extends BlobStore {
+
+  override def put(data: ByteString)(implicit ec: ExecutionContext): Future[String] = {
+    for {
+      id <- cache.put(data)
+      exists <- ConfigServiceAnnexClient.head(id)
+      _ <- if (exists) Future.successful(id) else ConfigServiceAnnexClient.post(cache.fileFor(id))
+    } yield id
+  }
+
+  override def get(id: String)(implicit ec: ExecutionContext): Future[ByteBuffer] = {
+    val io = cache.ioExecutionContext(ec)
+    // Check the cache and create the temp file for the download on the cache's I/O execution context
+    Future {
+      val file = cache.fileFor(id)
+      if (file.exists()) None
+      else {
+        file.getParentFile.mkdirs()
+        Some((file, File.createTempFile(id, ".tmp", file.getParentFile)))
+      }
+    }(io).flatMap {
+      case None => cache.get(id)
+      case Some((file, tmp)) =>
+        ConfigServiceAnnexClient.get(id, tmp).map { f =>
+          Files.move(f.toPath, file.toPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+        }(io).andThen {
+          // Don't leave partial downloads in the cache directory
+          case Failure(_) => tmp.delete()
+        }(io).flatMap(_ => cache.get(id))
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package csw.services.events
+
+import akka.actor.{ActorRef, ActorRefFactory, ActorSystem}
+import csw.services.events.TelemetryService.TelemetryMonitor
+import csw.util.config.Events.StatusEvent
+
+import scala.concurrent.{ExecutionContext, Future}
+
+object CachingTelemetryService {
+  /**
+   * Returns a telemetry service that answers get() from a local cache for subscribed prefixes, using the
+   * csw.events.last-value-cache settings in the config file (See [[LastValueCache]])
+   *
+   * @param ts     the underlying telemetry service
+   * @param system the actor system, used to access the config settings and create the cache subscriber
+   */
+  def apply(ts: TelemetryService)(implicit system: ActorSystem): CachingTelemetryService =
+    new CachingTelemetryService(ts, LastValueCache(system))
+
+  // Keeps track of the prefixes subscribed through the monitor, so that they can be released when it stops
+  // (or when the subscription ends without a call to stop)
+  // (forwarder is the actor that stores the events in the cache before passing them to an actor subscriber)
+  private class CachingTelemetryMonitor(monitor: TelemetryMonitor, service: CachingTelemetryService, forwarder: Option[ActorRef])(implicit system: ActorRefFactory) extends TelemetryMonitor {
+    private var prefixes = Set[String]()
+    private var stopped = false
+
+    // Releases the prefixes if the subscription actor (or the actor subscriber) terminates without stop() being called
+    private val watcher = system.actorOf(LastValueCache.watcherProps(monitor.actorRef :: forwarder.toList, () => stop()))
+
+    private[events] def track(p: Seq[String]): Unit = synchronized {
+      if (!stopped) {
+        val added = p.filterNot(prefixes.contains).distinct
+        prefixes ++= added
+        service.addPrefixes(added)
+      }
+    }
+
+    override def actorRef: ActorRef = monitor.actorRef
+
+    override def stop(): Unit = synchronized {
+      if (!stopped) {
+        stopped = true
+        monitor.stop()
+        forwarder.foreach(system.stop)
+        system.stop(watcher)
+        service.removePrefixes(prefixes.toList)
+        prefixes = Set.empty
+      }
+    }
+
+    override def subscribe(p: String*): Unit = {
+      monitor.subscribe(p: _*)
+      track(p)
+    }
+
+    override def unsubscribe(p: String*): Unit = synchronized {
+      monitor.unsubscribe(p: _*)
+      val removed = p.filter(prefixes.contains).distinct
+      prefixes --= removed
+      service.removePrefixes(removed)
+    }
+  }
+}
+
+/**
+ * A telemetry service with a per JVM last value cache (See [[LastValueCache]]).
+ * While any subscription made through this service covers a prefix, the cache is kept current by the
+ * events received by that subscription (no extra Redis subscription is made), and get() for the prefix is
+ * answered from memory. Other prefixes are fetched from Redis. Subscriptions with an [[EventFilter]] do not
+ * receive every event, so they are not used to keep the cache current.
+ * The cache hit and miss counts are included in the metrics.
+ *
+ * @param ts     the underlying telemetry service
+ * @param cache  the cache to use
+ * @param system used to fetch events from Redis
+ */
+class CachingTelemetryService(val ts: TelemetryService, val cache: LastValueCache)(implicit system: ActorRefFactory) extends TelemetryService {
+  import CachingTelemetryService._
+
+  ts.metrics.addLastValueCache(cache)
+
+  // Called when a subscription is made for the given prefixes
+  private[events] def addPrefixes(prefixes: Seq[String]): Unit = cache.addSubscription(prefixes)
+
+  // Called when the subscription for the given prefixes is removed
+  private[events] def removePrefixes(prefixes: Seq[String]): Unit = cache.removeSubscription(prefixes)
+
+  private def track(monitor: TelemetryMonitor, prefixes: Seq[String], forwarder: Option[ActorRef] = None)(implicit _system: ActorRefFactory): TelemetryMonitor = {
+    val m = new CachingTelemetryMonitor(monitor, this, forwarder)
+    m.track(prefixes)
+    m
+  }
+
+  // Subscribes the actor through a forwarder that stores the received events in the cache
+  private def subscribeActor(subscriber: ActorRef, postLastEvents: Boolean, prefixes: Seq[String])(implicit _system: ActorRefFactory): TelemetryMonitor = {
+    val forwarder = _system.actorOf(LastValueCache.forwarderProps(cache, subscriber))
+    track(ts.subscribe(forwarder, postLastEvents, prefixes: _*), prefixes, Some(forwarder))
+  }
+
+  override def publish(status: StatusEvent, history: Int = 0)(implicit ec: ExecutionContext): Future[Unit] = ts.publish(status, history)
+
+  override def subscribe(subscriber: ActorRef, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor =
+    subscribeActor(subscriber, postLastEvents, prefixes)
+
+  override def subscribe(callback: StatusEvent => Unit, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor =
+    track(ts.subscribe((e: StatusEvent) => { cache.update(e); callback(e) }, postLastEvents, prefixes: _*), prefixes)
+
+  override def subscribeWithFilter(subscriber: ActorRef, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor =
+    ts.subscribeWithFilter(subscriber, filter, postLastEvents, prefixes: _*)
+
+  override def subscribeWithFilter(callback: StatusEvent => Unit, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor =
+    ts.subscribeWithFilter(callback, filter, postLastEvents, prefixes: _*)
+
+  override def get(prefix: String): Future[Option[StatusEvent]] = cache.get(prefix) match {
+    case Some(status: StatusEvent) => Future.successful(Some(status))
+    case _ =>
+      import system.dispatcher
+      val f = ts.get(prefix)
+      f.foreach(_.foreach(cache.refresh))
+      f
+  }
+
+  override def getHistory(prefix: String, n: Int): Future[Seq[StatusEvent]] = ts.getHistory(prefix, n)
+
+  override def delete(prefixes: String*)(implicit ec: ExecutionContext): Future[Unit] = {
+    cache.invalidate(prefixes)
+    ts.delete(prefixes: _*)
+  }
+
+  override def metrics: EventServiceMetrics = ts.metrics
+
+  /**
+   * Clears the cache and removes it from the metrics (The subscriptions made through this service are not stopped)
+   */
+  def stop(): Unit = {
+    cache.clear()
+    ts.metrics.removeLastValueCache(cache)
+  }
+}
@@ -0,0 +1,291 @@
+package csw.services.events
+
+import csw.util.config.Choice
+import csw.util.config.Configurations.ConfigData
+import csw.util.config.Events.{ObserveEvent, StatusEvent, SystemEvent}
+
+object EventFilter {
+
+  /**
+   * Parses the given filter expression (See [[EventFilter]] for the syntax)
+   *
+   * @param expression the filter expression
+   * @throws IllegalArgumentException if the expression is not valid
+   */
+  def apply(expression: String): EventFilter = new EventFilter(expression, new Parser(expression).parse())
+
+  // Returns the items in the event
+  private[events] def eventItems(event: Event): ConfigData = event match {
+    case e: StatusEvent  => e.items
+    case e: ObserveEvent => e.items
+    case e: SystemEvent  => e.items
+  }
+
+  // -- Expression tree --
+
+  // Looks up the first value of the items in an event by key name, when needed by the expression
+  // (instead of converting all the items for each event)
+  private[events] class ItemLookup(items: ConfigData) {
+    private def find(keyName: String) = items.find(i => i.keyName == keyName && i.size > 0)
+
+    // Returns the first value of the item with the given key name, or null if there is no such item
+    def value(keyName: String): Any = find(keyName).map(i => toExprValue(i.head)).orNull
+
+    def contains(keyName: String): Boolean = find(keyName).isDefined
+  }
+
+  // A node in the parsed expression. The value is a Double, String, Boolean, or null, if an item is missing.
+  private[events] sealed trait Expr {
+    def eval(items: ItemLookup): Any
+  }
+
+  private case class Literal(value: Any) extends Expr {
+    override def eval(items: ItemLookup): Any = value
+  }
+
+  // The first value of the item with the given key name
+  private case class ItemRef(keyName: String) extends Expr {
+    override def eval(items: ItemLookup): Any = items.value(keyName)
+  }
+
+  private case class Exists(keyName: String) extends Expr {
+    override def eval(items: ItemLookup): Any = items.contains(keyName)
+  }
+
+  private case class Abs(e: Expr) extends Expr {
+    override def eval(items: ItemLookup): Any = e.eval(items) match {
+      case d: Double => math.abs(d)
+      case _         => null
+    }
+  }
+
+  private case class Not(e: Expr) extends Expr {
+    override def eval(items: ItemLookup): Any = !isTrue(e.eval(items))
+  }
+
+  private case class And(a: Expr, b: Expr) extends Expr {
+    override def eval(items: ItemLookup): Any = isTrue(a.eval(items)) && isTrue(b.eval(items))
+  }
+
+  private case class Or(a: Expr, b: Expr) extends Expr {
+    override def eval(items: ItemLookup): Any = isTrue(a.eval(items)) || isTrue(b.eval(items))
+  }
+
+  private case class Arithmetic(op: Char, a: Expr, b: Expr) extends Expr {
+    override def eval(items: ItemLookup): Any = (a.eval(items), b.eval(items)) match {
+      case (x: Double, y: Double) => op match {
+        case '+' => x + y
+        case '-' => x - y
+        case '*' => x * y
+        case '/' => x / y
+      }
+      case _ => null
+    }
+  }
+
+  private case class Compare(op: String, a: Expr, b: Expr) extends Expr {
+    override def eval(items: ItemLookup): Any = (a.eval(items), b.eval(items)) match {
+      case (null, _) | (_, null)  => false
+      case (x: Double, y: Double) => test(java.lang.Double.compare(x, y))
+      case (x: String, y: String) => test(x.compareTo(y))
+      case (x, y) => op match {
+        case "==" => x == y
+        case "!=" => x != y
+        case _    => false
+      }
+    }
+
+    private def test(c: Int): Boolean = op match {
+      case "==" => c == 0
+      case "!=" => c != 0
+      case "<"  => c < 0
+      case "<=" => c <= 0
+      case ">"  => c > 0
+      case ">=" => c >= 0
+    }
+  }
+
+  private def isTrue(value: Any): Boolean = value == true
+
+  // Converts an item value to one of the types used in expressions
+  private def toExprValue(value: Any): Any = value match {
+    case n: Number  => n.doubleValue()
+    case c: Choice  => c.name
+    case b: Boolean => b
+    case c: Char    => c.toString
+    case s: String  => s
+    case x          => x
+  }
+
+  // -- Parser --
+
+  private class Parser(s: String) {
+    private var pos = 0
+
+    private def error(msg: String) = throw new IllegalArgumentException(s"Invalid event filter '$s' at position $pos: $msg")
+
+    private def skipSpace(): Unit = while (pos < s.length && s(pos).isWhitespace) pos += 1
+
+    // Returns true and skips the given token, if it is next
+    private def accept(token: String): Boolean = {
+      skipSpace()
+      if (s.startsWith(token, pos)) {
+        pos += token.length
+        true
+      } else false
+    }
+
+    private def expect(token: String): Unit = if (!accept(token)) error(s"expected '$token'")
+
+    def parse(): Expr = {
+      val e = or()
+      skipSpace()
+      if (pos < s.length) error("unexpected input")
+      e
+    }
+
+    private def or(): Expr = {
+      var e = and()
+      while (accept("||")) e = Or(e, and())
+      e
+    }
+
+    private def and(): Expr = {
+      var e = not()
+      while (accept("&&")) e = And(e, not())
+      e
+    }
+
+    private def not(): Expr = {
+      skipSpace()
+      if (s.startsWith("!", pos) && !s.startsWith("!=", pos)) {
+        pos += 1
+        Not(not())
+      } else comparison()
+    }
+
+    private def comparison(): Expr = {
+      val a = sum()
+      val op = List("==", "!=", "<=", ">=", "<", ">").find(accept)
+      op.map(Compare(_, a, sum())).getOrElse(a)
+    }
+
+    private def sum(): Expr = {
+      var e = term()
+      var done = false
+      while (!done) {
+        if (accept("+")) e = Arithmetic('+', e, term())
+        else if (accept("-")) e = Arithmetic('-', e, term())
+        else done = true
+      }
+      e
+    }
+
+    private def term(): Expr = {
+      var e = unary()
+      var done = false
+      while (!done) {
+        if (accept("*")) e = Arithmetic('*', e, unary())
+        else if (accept("/")) e = Arithmetic('/', e, unary())
+        else done = true
+      }
+      e
+    }
+
+    private def unary(): Expr = if (accept("-")) Arithmetic('-', Literal(0.0), unary()) else primary()
+
+    private def primary(): Expr = {
+      skipSpace()
+      if (pos >= s.length) error("unexpected end of expression")
+      val c = s(pos)
+      if (accept("(")) {
+        val e = or()
+        expect(")")
+        e
+      } else if (c == '\'' || c == '"') {
+        pos += 1
+        val end = s.indexOf(c, pos)
+        if (end < 0) error("unterminated string")
+        val str = s.substring(pos, end)
+        pos = end + 1
+        Literal(str)
+      } else if (c.isDigit || c == '.') {
+        val start = pos
+        while (pos < s.length && (s(pos).isDigit || s(pos) == '.' || s(pos) == 'e' || s(pos) == 'E' ||
+          ((s(pos) == '-' || s(pos) == '+') && (s(pos - 1) == 'e' || s(pos - 1) == 'E')))) pos += 1
+        try Literal(s.substring(start, pos).toDouble) catch {
+          case _: NumberFormatException => error("invalid number")
+        }
+      } else if (c == '`') {
+        ItemRef(keyName())
+      } else if (c.isLetter || c == '_') {
+        // abs and exists are only functions when followed by '(', otherwise they are key names
+        identifier() match {
+          case "true"  => Literal(true)
+          case "false" => Literal(false)
+          case "abs" if accept("(") =>
+            val e = or()
+            expect(")")
+            Abs(e)
+          case "exists" if accept("(") =>
+            skipSpace()
+            val name = keyName()
+            expect(")")
+            Exists(name)
+          case name => ItemRef(name)
+        }
+      } else error(s"unexpected character '$c'")
+    }
+
+    private def identifier(): String = {
+      val start = pos
+      while (pos < s.length && (s(pos).isLetterOrDigit || s(pos) == '_' || s(pos) == '.')) pos += 1
+      s.substring(start, pos)
+    }
+
+    // A key name, or any key name quoted with backquotes (for example, `true` or `az-1`)
+    private def keyName(): String = {
+      val name = if (pos < s.length && s(pos) == '`') {
+        pos += 1
+        val end = s.indexOf('`', pos)
+        if (end < 0) error("unterminated quoted key name")
+        val str = s.substring(pos, end)
+        pos = end + 1
+        str
+      } else identifier()
+      if (name.isEmpty) error("expected a key name")
+      name
+    }
+  }
+}
+
+/**
+ * A filter used to select which events are delivered to a subscriber, based on the values of the items in the event.
+ * The filter is evaluated in the subscriber's Redis connection actor, right after the event is deserialized,
+ * so events that do not match are never queued for the subscriber.
+ *
+ * The expression syntax is similar to Scala or Java boolean expressions:
+ *  - Item values are referenced by key name (the first value of the item is used). Numeric values are
+ *    compared as doubles, choices as strings (the choice name). Key names that are not identifiers, or are
+ *    true or false, can be quoted with backquotes: `true`, `az-1`.
+ *  - Literals: numbers, 'strings' or "strings", true, false
+ *  - Operators: + - * / == != < <= > >= && || ! and parentheses
+ *  - Functions: abs(expr), exists(keyName)
+ *  - A comparison with a missing item is false.
+ *
+ * For example: {{{abs(az - demandAz) > 0.5 || mode == 'slew'}}}
+ *
+ * @param expression the filter expression
+ */
+class EventFilter private (val expression: String, expr: EventFilter.Expr) extends Serializable {
+  import EventFilter._
+
+  /**
+   * Returns true if the event matches the filter
+   */
+  def accept(event: Event): Boolean = {
+    isTrue(expr.eval(new ItemLookup(eventItems(event))))
+  }
+
+  override def toString: String = expression
+}
@@ -12,7 +12,7 @@ import redis.{ByteStringFormatter, RedisClient}
 
 import scala.annotation.varargs
 import scala.concurrent.{ExecutionContext, Future}
-import scala.util.Failure
+import scala.util.{Failure, Success}
 
 object EventService {
 
@@ -26,6 +26,11 @@ object EventService {
    */
   val defaultScope = "event"
 
+  /**
+   * The name used for the event service metrics (See [[EventServiceMetrics]])
+   */
+  val metricsName = "EventService"
+
   /**
    * Returns the EventService ComponentId for the given, or default name
    */
@@ -74,7 +79,7 @@ object EventService {
     for {
       redisClient <- locateEventService(name)
     } yield {
-      EventServiceImpl(redisClient, defaultScope)
+      newEventService(redisClient, 0)
     }
   }
 
@@ -91,13 +96,19 @@ object EventService {
    * Returns an EventService instance using the Redis instance at the given host and port,
    * using the default "127.0.0.1:6379 if not given.
    *
-   * @param host the Redis host name or IP address
-   * @param port the Redis port
+   * @param host     the Redis host name or IP address
+   * @param port     the Redis port
+   * @param poolSize the number of connections used to publish events (0 means use the csw.events.publisher-pool.size setting)
    * @return a new EventService instance
    */
-  def get(host: String = "127.0.0.1", port: Int = 6379)(implicit system: ActorSystem): EventService = {
-    val redisClient = RedisClient(host, port)
-    EventServiceImpl(redisClient, defaultScope)
+  def get(host: String = "127.0.0.1", port: Int = 6379, poolSize: Int = 0)(implicit system: ActorSystem): EventService =
+    newEventService(RedisClient(host, port), poolSize)
+
+  // Returns a new EventService that publishes using a pool of the given size (0 means use the configured size)
+  private def newEventService(redisClient: RedisClient, poolSize: Int)(implicit system: ActorSystem): EventService = {
+    val pool = RedisPublisherPool(redisClient, RedisPublisherPool.poolSize(poolSize, system), PriorityLanes.publisherConnectionEnabled(system))
+    EventServiceImpl(redisClient, defaultScope, EventServiceMetrics(metricsName, system), Some(pool), Some(PublishQueue(system)),
+      PriorityLanes.subscribersEnabled(system))
   }
 
   /**
@@ -192,6 +203,36 @@ trait EventService {
   @varargs
   def subscribe(callback: Event => Unit, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor
 
+  /**
+   * Subscribes an actor to events matching the given prefixes and filter.
+   * The filter is evaluated once per event, right after it is received from Redis, so that the subscriber
+   * is only sent the events that match (See [[EventFilter]]).
+   *
+   * @param subscriber an actor to receive Event messages
+   * @param filter     only events matching the filter are sent to the subscriber
+   * @param postLastEvents if true, the subscriber receives the last known values of any subscribed events first
+   *                   (if they match the filter)
+   * @param prefixes   one or more prefixes of events, may include wildcard
+   * @return an object containing an actorRef that can be used to subscribe and unsubscribe or stop the actor
+   */
+  @varargs
+  def subscribeWithFilter(subscriber: ActorRef, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor
+
+  /**
+   * Subscribes a callback function to events matching the given prefixes and filter.
+   * The filter is evaluated once per event, right after it is received from Redis, so that the callback
+   * is only called for the events that match (See [[EventFilter]]).
+   *
+   * @param callback   an callback which will be called with Event objects (in another thread)
+   * @param filter     only events matching the filter are passed to the callback
+   * @param postLastEvents if true, the callback receives the last known values of any subscribed events first
+   *                   (if they match the filter)
+   * @param prefixes   one or more prefixes of events, may include wildcard
+   * @return an object containing an actorRef that can be used to subscribe and unsubscribe or stop the actor
+   */
+  @varargs
+  def subscribeWithFilter(callback: Event => Unit, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor
+
   /**
    * Creates an EventMonitorActor and subscribes the given actor to it.
    * The return value can be used to stop the actor or subscribe and unsubscribe to events.
@@ -211,6 +252,20 @@ trait EventService {
    * @return an object containing an actorRef that can be used to subscribe and unsubscribe or stop the actor
    */
   def createEventMonitor(callback: Event => Unit, postLastEvents: Boolean)(implicit _system: ActorRefFactory): EventMonitor = subscribe(callback, postLastEvents)
+
+  /**
+   * Gets the last published value for the given event prefix
+   *
+   * @param prefix the prefix (key) for the event to get
+   * @return the event, if (and when) found
+   */
+  def get(prefix: String): Future[Option[Event]]
+
+  /**
+   * Returns the publish and subscribe metrics for this event service instance
+   * (Implementations that do not keep their own metrics return [[EventServiceMetrics.shared]])
+   */
+  def metrics: EventServiceMetrics = EventServiceMetrics.shared
 }
 
 private[events] object EventServiceImpl {
@@ -220,11 +275,8 @@ private[events] object EventServiceImpl {
       ByteString(write(e))
     }
 
-    def deserialize(bs: ByteString): Event = {
-      val ar = Array.ofDim[Byte](bs.length)
-      bs.asByteBuffer.get(ar)
-      read[Event](ar)
-    }
+    // Reads directly from the ByteString's buffers, since copying large events (such as images) to an array is expensive
+    def deserialize(bs: ByteString): Event = read[Event](bs.iterator.asInputStream)
   }
 
   // Implement value returned from subscribe method
@@ -254,9 +306,12 @@ private[events] object EventServiceImpl {
       subscriber:     Option[ActorRef],
       callback:       Option[Event => Unit],
       eventService:   EventServiceImpl,
-      postLastEvents: Boolean
-    ): Props =
-      Props(classOf[EventMonitorActor], subscriber, callback, eventService, postLastEvents)
+      postLastEvents: Boolean,
+      filter:         Option[EventFilter]
+    ): Props = {
+      val props = Props(classOf[EventMonitorActor], subscriber, callback, eventService, postLastEvents, filter)
+      if (eventService.priorityLanes) props.withMailbox(PriorityLanes.mailboxName) else props
+    }
 
     // Message sent to subscribe to more prefixes
     case class Subscribe(prefixes: String*)
@@ -270,20 +325,31 @@ private[events] object EventServiceImpl {
       subscriber:     Option[ActorRef],
       callback:       Option[Event => Unit],
       eventService:   EventServiceImpl,
-      postLastEvents: Boolean
+      postLastEvents: Boolean,
+      filter:         Option[EventFilter]
   ) extends EventSubscriber(eventService.redisClient.host, eventService.redisClient.port) {
 
     import context.dispatcher
     import EventMonitorActor._
 
+    // Used to run the callbacks for ObserveEvents and SystemEvents, so that they are not delayed by telemetry callbacks
+    private val priorityDispatcher =
+      if (eventService.priorityLanes) context.system.dispatchers.lookup(PriorityLanes.dispatcherName) else context.dispatcher
+
     subscriber.foreach(context.watch)
 
+    override protected def metrics: Option[EventServiceMetrics] = Some(eventService.metrics)
+
+    override protected def eventFilter: Option[EventFilter] = filter
+
     def receive: Receive = {
       // Stop if the subscriber terminates
       case Terminated(actorRef) =>
         context.stop(self)
 
       case event: Event =>
+        eventService.metrics(event.prefix).recordReceive(event)
+        eventService.metrics.recordLaneLatency(event)
         notifySubscribers(event)
 
       case s: Subscribe =>
@@ -292,7 +358,7 @@ private[events] object EventServiceImpl {
           for {
             currentEvents <- Future.sequence(s.prefixes.map(eventService.get)).map(_.flatten)
           } {
-            currentEvents.foreach(notifySubscribers)
+            currentEvents.filter(e => filter.forall(_.accept(e))).foreach(notifySubscribers)
             subscribe(s.prefixes: _*)
           }
         } else {
@@ -307,9 +373,10 @@ private[events] object EventServiceImpl {
     private def notifySubscribers(event: Event): Unit = {
       subscriber.foreach(_ ! event)
       callback.foreach { f =>
+        val ec = if (PriorityLanes.isHighPriority(event)) priorityDispatcher else context.dispatcher
         Future {
           f(event)
-        }.onComplete {
+        }(ec).onComplete {
           case Failure(ex) => log.error("Event callback failed: ", ex)
           case _           =>
         }
@@ -324,11 +391,38 @@ private[events] object EventServiceImpl {
  *
  * @param redisClient used to talk to Redis
  * @param scope a string used to make the keys unique for this class (for example: "event")
+ * @param metrics used to record publish and subscribe metrics for this instance
+ * @param publisherPool optional pool of connections used to publish events (default: publish using redisClient)
+ * @param publishQueue optional bound on the number of events waiting to be written to Redis (default: no bound)
+ * @param priorityLanes if true, subscribers process and run the callbacks for high priority events first (See [[PriorityLanes]])
  */
-private[events] case class EventServiceImpl(redisClient: RedisClient, scope: String) extends EventService {
+private[events] case class EventServiceImpl(redisClient: RedisClient, scope: String,
+                                            metrics:       EventServiceMetrics        = EventServiceMetrics(EventService.metricsName),
+                                            publisherPool: Option[RedisPublisherPool] = None,
+                                            publishQueue:  Option[PublishQueue]       = None,
+                                            priorityLanes: Boolean                    = false)
+    extends EventService {
 
   import EventServiceImpl._
 
+  /**
+   * The connections used to publish events (each prefix is always published on the same connection)
+   */
+  val publishers: RedisPublisherPool = publisherPool.getOrElse(RedisPublisherPool(redisClient))
+  metrics.addPublisherPool(publishers)
+
+  /**
+   * The events waiting to be written to Redis
+   */
+  val queue: PublishQueue = publishQueue.getOrElse(PublishQueue.unbounded)
+  metrics.addPublishQueue(queue)
+
+  /**
+   * The high priority events (ObserveEvents and SystemEvents) waiting to be written to Redis
+   */
+  val highPriorityQueue: PublishQueue = publishQueue.map(PublishQueue.highPriority).getOrElse(PublishQueue.unbounded)
+  metrics.addPublishQueue(highPriorityQueue)
+
   private def scopedKey(key: String) = {
     if (key.startsWith(scope)) key else s"$scope:$key"
   }
@@ -338,23 +432,42 @@ private[events] case class EventServiceImpl(redisClient: RedisClient, scope: Str
     val formatter = implicitly[ByteStringFormatter[Event]]
     val bs = formatter.serialize(event)
     val key = scopedKey(event.prefix)
-    Future.sequence(List(redisClient.publish(key, bs), redisClient.set(key, bs))).map(_ => ())
+    val prefixMetrics = metrics(event.prefix)
+    prefixMetrics.recordPublish(bs.length)
+    val start = System.nanoTime()
+    val highPriority = PriorityLanes.isHighPriority(event)
+    val f = (if (highPriority) highPriorityQueue else queue).submit(event.prefix) {
+      publishers.execute(event.prefix, highPriority) { client =>
+        Future.sequence(List(client.publish(key, bs), client.set(key, bs))).map(_ => ())
+      }
+    }
+    f.onComplete {
+      case Success(_) => prefixMetrics.recordRoundTrip(System.nanoTime() - start)
+      case Failure(_) => prefixMetrics.recordPublishFailed()
+    }
+    f
   }
 
-  override def subscribe(subscriber: ActorRef, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor = {
-    val actorRef = _system.actorOf(EventMonitorActor.props(Some(subscriber), None, this, postLastEvents))
-    val monitor = EventMonitorImpl(actorRef, scope)
-    monitor.subscribe(prefixes.map(scopedKey): _*)
-    monitor
-  }
+  override def subscribe(subscriber: ActorRef, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor =
+    newMonitor(Some(subscriber), None, None, postLastEvents, prefixes)
+
+  override def subscribe(callback: Event => Unit, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor =
+    newMonitor(None, Some(callback), None, postLastEvents, prefixes)
+
+  override def subscribeWithFilter(subscriber: ActorRef, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor =
+    newMonitor(Some(subscriber), None, Some(filter), postLastEvents, prefixes)
+
+  override def subscribeWithFilter(callback: Event => Unit, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor =
+    newMonitor(None, Some(callback), Some(filter), postLastEvents, prefixes)
 
-  override def subscribe(callback: Event => Unit, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor = {
-    val actorRef = _system.actorOf(EventMonitorActor.props(None, Some(callback), this, postLastEvents))
+  private def newMonitor(subscriber: Option[ActorRef], callback: Option[Event => Unit], filter: Option[EventFilter],
+                         postLastEvents: Boolean, prefixes: Seq[String])(implicit _system: ActorRefFactory): EventMonitor = {
+    val actorRef = _system.actorOf(EventMonitorActor.props(subscriber, callback, this, postLastEvents, filter))
     val monitor = EventMonitorImpl(actorRef, scope)
     monitor.subscribe(prefixes.map(scopedKey): _*)
     monitor
   }
 
   // gets the current value for the given prefix
-  def get(prefix: String): Future[Option[Event]] = redisClient.get(scopedKey(prefix))
+  override def get(prefix: String): Future[Option[Event]] = redisClient.get(scopedKey(prefix))
 }
@@ -35,6 +35,15 @@ object EventServiceAdmin {
 
   def apply(eventService: EventService)(implicit system: ActorRefFactory): EventServiceAdmin =
     EventServiceAdminImpl(eventService)
+
+  // Returns the Redis based services used by the given event service (one for each shard)
+  private[events] def impls(eventService: EventService): Seq[EventServiceImpl] = eventService match {
+    case es: EventServiceImpl       => List(es)
+    case es: CachingEventService    => impls(es.es)
+    case es: OffloadingEventService => impls(es.es)
+    case es: ShardedEventService    => es.shards.flatMap(impls)
+    case es                         => throw new IllegalArgumentException(s"Unsupported event service: ${es.getClass.getName}")
+  }
 }
 
 /**
@@ -42,7 +51,7 @@ object EventServiceAdmin {
  */
 trait EventServiceAdmin {
   /**
-   * For use in testing: Deletes all keys in all databases in the Redis instance
+   * For use in testing: Deletes all keys in all databases in the Redis instance (in each shard, if sharded)
    */
   def reset(): Future[Unit]
 
@@ -50,6 +59,13 @@ trait EventServiceAdmin {
    * Shuts down the the database server (For use in test cases that started the database themselves)
    */
   def shutdown(): Future[Unit]
+
+  /**
+   * Scans the event keys in Redis and reports the memory used per subsystem and prefix
+   *
+   * @param options limits the number of keys examined and sets the thresholds for warnings
+   */
+  def keyspaceReport(options: KeyspaceReport.Options = KeyspaceReport.Options()): Future[KeyspaceReport]
 }
 
 /**
@@ -62,16 +78,24 @@ private[events] case class EventServiceAdminImpl(eventService: EventService)(imp
 
   import system.dispatcher
 
-  val redisClient = eventService.asInstanceOf[EventServiceImpl].redisClient
+  // The Redis based services used by the event service (one for each shard)
+  private val impls = EventServiceAdmin.impls(eventService)
 
   override def reset(): Future[Unit] = {
-    redisClient.flushall().map(_ => ())
+    Future.sequence(impls.map(_.redisClient.flushall())).map(_ => ())
   }
 
   override def shutdown(): Future[Unit] = {
-    val f = redisClient.shutdown()
-    redisClient.stop()
-    f.map(_ => ()).recover { case _ => () }
+    eventService.metrics.close()
+    Future.sequence(impls.map { es =>
+      es.publishers.close()
+      val f = es.redisClient.shutdown()
+      es.redisClient.stop()
+      f.map(_ => ()).recover { case _ => () }
+    }).map(_ => ())
   }
+
+  override def keyspaceReport(options: KeyspaceReport.Options): Future[KeyspaceReport] =
+    Future.sequence(impls.map(es => KeyspaceReport(es.redisClient, es.scope, options))).map(KeyspaceReport.merge)
 }
 
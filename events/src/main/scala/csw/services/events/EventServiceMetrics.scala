@@ -0,0 +1,534 @@
+package csw.services.events
+
+import java.lang.management.ManagementFactory
+import java.time.{Duration, Instant}
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong, LongAdder}
+import javax.management.ObjectName
+
+import akka.actor.ActorSystem
+import com.typesafe.scalalogging.Logger
+import csw.services.events.LastValueCache.LastValueCacheSnapshot
+import csw.services.events.PublishQueue.PublishQueueSnapshot
+import csw.services.events.RedisPublisherPool.PublisherPoolSnapshot
+import csw.util.config.Events.{ObserveEvent, StatusEvent, SystemEvent}
+import csw.util.metrics.{HistogramSnapshot, LatencyHistogram}
+import org.slf4j.LoggerFactory
+
+import scala.collection.JavaConverters._
+import scala.collection.concurrent.TrieMap
+import scala.util.control.NonFatal
+
+object EventServiceMetrics {
+  private val logger = Logger(LoggerFactory.getLogger(EventServiceMetrics.getClass))
+
+  // Used to give each service instance a unique JMX name
+  private val instanceCounter = new AtomicInteger(0)
+
+  /**
+   * The JMX domain used to register the per prefix MXBeans
+   */
+  val jmxDomain = "csw.services.events"
+
+  /**
+   * Creates a metrics object for the given service, using the csw.events.metrics settings from the config file
+   *
+   * @param serviceName a name for the service (for example: "EventService" or "TelemetryService")
+   * @param system      the actor system, used to access the config settings
+   */
+  def apply(serviceName: String, system: ActorSystem): EventServiceMetrics =
+    new EventServiceMetrics(serviceName, system.settings.config.getBoolean("csw.events.metrics.jmx"))
+
+  /**
+   * Creates a metrics object for the given service that is not registered with JMX
+   *
+   * @param serviceName a name for the service (for example: "EventService" or "TelemetryService")
+   */
+  def apply(serviceName: String): EventServiceMetrics = new EventServiceMetrics(serviceName, jmxEnabled = false)
+
+  /**
+   * A metrics object that is not registered with JMX, shared by the service implementations that do not keep their own metrics
+   */
+  lazy val shared: EventServiceMetrics = apply("Shared")
+
+  // Max age of the snapshot used to answer the JMX attribute getters (a JMX client reads the attributes one at a time)
+  private[events] val jmxSnapshotMaxAgeNanos = 1000L * 1000 * 1000
+
+  // Returns the time the event was created
+  private[events] def eventTime(event: Event): Instant = event match {
+    case e: StatusEvent  => e.eventTime.time
+    case e: ObserveEvent => e.eventTime.time
+    case e: SystemEvent  => e.eventTime.time
+  }
+
+  /**
+   * JMX view of the metrics for a single prefix (times are in microseconds)
+   */
+  trait PrefixMetricsMXBean {
+    def getPrefix: String
+    def getPublishCount: Long
+    def getPublishRate: Double
+    def getPublishedBytes: Long
+    def getRedisRoundTripP50Micros: Long
+    def getRedisRoundTripP99Micros: Long
+    def getRedisRoundTripMaxMicros: Long
+    def getReceiveCount: Long
+    def getLatencyP50Micros: Long
+    def getLatencyP99Micros: Long
+    def getLatencyP999Micros: Long
+    def getLatencyMaxMicros: Long
+    def getQueueDepth: Long
+    def getDroppedCount: Long
+    def getSuppressedCount: Long
+    def getFilterErrorCount: Long
+    def getPublishFailedCount: Long
+    def reset(): Unit
+  }
+
+  /**
+   * JMX view of a pool of publisher connections (See [[RedisPublisherPool]])
+   */
+  trait PublisherPoolMXBean {
+    def getHost: String
+    def getPort: Int
+    def getSize: Int
+    def getHealthyConnections: Int
+    def getInFlightCommands: Int
+    def getCommandCount: Long
+    def getFailureCount: Long
+    def getPriorityLane: Boolean
+  }
+
+  /**
+   * JMX view of the end to end latency of the high and normal priority lanes (See [[PriorityLanes]]), in microseconds
+   */
+  trait LaneMetricsMXBean {
+    def getHighPriorityCount: Long
+    def getHighPriorityLatencyP50Micros: Long
+    def getHighPriorityLatencyP99Micros: Long
+    def getHighPriorityLatencyMaxMicros: Long
+    def getNormalPriorityCount: Long
+    def getNormalPriorityLatencyP50Micros: Long
+    def getNormalPriorityLatencyP99Micros: Long
+    def getNormalPriorityLatencyMaxMicros: Long
+  }
+
+  /**
+   * JMX view of a last value cache (See [[LastValueCache]])
+   */
+  trait LastValueCacheMXBean {
+    def getSize: Int
+    def getMaxEntries: Int
+    def getTtlMillis: Long
+    def getHitCount: Long
+    def getMissCount: Long
+    def getEvictionCount: Long
+    def getExpirationCount: Long
+  }
+
+  /**
+   * JMX view of the bounded queue of events waiting to be written to Redis (See [[PublishQueue]])
+   */
+  trait PublishQueueMXBean {
+    def getCapacity: Int
+    def getOverflowPolicy: String
+    def getDepth: Int
+    def getHighWaterMark: Int
+    def getDroppedCount: Long
+    def getRejectedCount: Long
+    def resetHighWaterMark(): Unit
+  }
+
+  /**
+   * A snapshot of the metrics for one prefix
+   *
+   * @param prefix          the event prefix
+   * @param publishCount    number of events published for the prefix
+   * @param publishRate     recent publish rate in events per second
+   * @param publishedBytes  total size of the serialized events that were published
+   * @param redisRoundTrip  time in ns from publish until Redis acknowledged the write
+   * @param receiveCount    number of events received by subscribers in this JVM
+   * @param latency         end to end latency in ns (time received minus the event time)
+   * @param queueDepth      number of events received from Redis, but not yet processed by a subscriber
+   * @param droppedCount    number of received events that were dropped (could not be delivered to a subscriber)
+   * @param suppressedCount number of events that were not published, since they were filtered out (See [[TelemetryFilter]])
+   * @param filterErrorCount number of received events that were not delivered, since the subscriber's [[EventFilter]] failed
+   * @param publishFailedCount number of events that were not published, since the write to Redis failed or the [[PublishQueue]] was full
+   */
+  case class PrefixMetricsSnapshot(
+    prefix:          String,
+    publishCount:    Long,
+    publishRate:     Double,
+    publishedBytes:  Long,
+    redisRoundTrip:  HistogramSnapshot,
+    receiveCount:    Long,
+    latency:         HistogramSnapshot,
+    queueDepth:      Long,
+    droppedCount:    Long,
+    suppressedCount: Long              = 0,
+    filterErrorCount: Long             = 0,
+    publishFailedCount: Long           = 0
+  )
+
+  /**
+   * A snapshot of the metrics for all prefixes used with one service instance
+   *
+   * @param serviceName the name of the service
+   * @param instanceId  a unique id for the service instance in this JVM
+   * @param timestamp   the time the snapshot was taken
+   * @param prefixes    map from prefix to the metrics for the prefix
+   * @param publisherPools the state of the publisher connection pools (one per Redis instance)
+   * @param lastValueCaches the state of the last value caches used with the service
+   * @param lanes       map from priority lane name to the end to end latency of the events received in the lane
+   * @param publishQueues the state of the queues of events waiting to be written to Redis (one per Redis instance)
+   */
+  case class EventServiceMetricsSnapshot(serviceName: String, instanceId: Int, timestamp: Instant, prefixes: Map[String, PrefixMetricsSnapshot],
+                                         publisherPools:  Seq[PublisherPoolSnapshot]   = Nil,
+                                         lastValueCaches: Seq[LastValueCacheSnapshot]  = Nil,
+                                         lanes:           Map[String, HistogramSnapshot] = Map.empty,
+                                         publishQueues:   Seq[PublishQueueSnapshot]     = Nil) {
+    /**
+     * Java API: Returns the metrics for each prefix
+     */
+    def getPrefixes: java.util.Map[String, PrefixMetricsSnapshot] = prefixes.asJava
+
+    /**
+     * Java API: Returns the state of the publisher connection pools
+     */
+    def getPublisherPools: java.util.List[PublisherPoolSnapshot] = publisherPools.asJava
+
+    /**
+     * Java API: Returns the state of the last value caches
+     */
+    def getLastValueCaches: java.util.List[LastValueCacheSnapshot] = lastValueCaches.asJava
+
+    /**
+     * Java API: Returns the latency of each priority lane
+     */
+    def getLanes: java.util.Map[String, HistogramSnapshot] = lanes.asJava
+
+    /**
+     * Java API: Returns the state of the publish queues
+     */
+    def getPublishQueues: java.util.List[PublishQueueSnapshot] = publishQueues.asJava
+  }
+}
+
+/**
+ * Computes the recent rate of some event, in events per second.
+ * The rate is updated once the given window has elapsed (lazily, when the rate is read).
+ */
+private[events] class RateMeter(windowNanos: Long = 10L * 1000 * 1000 * 1000) {
+  private val counter = new LongAdder
+  private var windowStart = System.nanoTime()
+  private var windowStartCount = 0L
+  private var lastRate = -1.0
+
+  def mark(): Unit = counter.increment()
+
+  def count: Long = counter.sum()
+
+  def rate: Double = synchronized {
+    val now = System.nanoTime()
+    val c = counter.sum()
+    val elapsed = now - windowStart
+    if (elapsed >= windowNanos || lastRate < 0) {
+      val r = if (elapsed > 0) (c - windowStartCount) * 1.0e9 / elapsed else 0.0
+      if (elapsed >= windowNanos) {
+        lastRate = r
+        windowStart = now
+        windowStartCount = c
+      }
+      if (lastRate < 0) r else lastRate
+    } else lastRate
+  }
+
+  def reset(): Unit = synchronized {
+    counter.reset()
+    windowStart = System.nanoTime()
+    windowStartCount = 0L
+    lastRate = -1.0
+  }
+}
+
+/**
+ * Holds the most recent value returned by the given function for up to maxAgeNanos, so that the JMX attribute getters
+ * share one snapshot of the metrics instead of copying the histograms once per attribute
+ */
+private[events] class CachedSnapshot[T](maxAgeNanos: Long)(f: => T) {
+  @volatile private var cached: Option[(Long, T)] = None
+
+  def get: T = {
+    val now = System.nanoTime()
+    cached match {
+      case Some((time, value)) if now - time < maxAgeNanos => value
+      case _ =>
+        val value = f
+        cached = Some((now, value))
+        value
+    }
+  }
+
+  def invalidate(): Unit = cached = None
+}
+
+/**
+ * Holds the publish and subscribe metrics for a single event prefix
+ *
+ * @param prefix the event prefix
+ */
+class PrefixMetrics private[events] (prefix: String) extends EventServiceMetrics.PrefixMetricsMXBean {
+  import EventServiceMetrics._
+
+  private val published = new RateMeter
+  private val publishedBytes = new LongAdder
+  private val received = new LongAdder
+  private val dropped = new LongAdder
+  private val suppressed = new LongAdder
+  private val filterErrors = new LongAdder
+  private val publishFailed = new LongAdder
+  private val queued = new AtomicLong
+  private val redisRoundTrip = new LatencyHistogram
+  private val latency = new LatencyHistogram
+
+  /**
+   * Records that an event was published
+   *
+   * @param bytes the size of the serialized event
+   */
+  def recordPublish(bytes: Int): Unit = {
+    published.mark()
+    publishedBytes.add(bytes)
+  }
+
+  /**
+   * Records the time it took for Redis to complete a publish
+   *
+   * @param nanos the round trip time in ns
+   */
+  def recordRoundTrip(nanos: Long): Unit = redisRoundTrip.record(nanos)
+
+  /**
+   * Records that an event was received from Redis and queued for a subscriber
+   */
+  def recordQueued(): Unit = queued.incrementAndGet()
+
+  /**
+   * Records that a queued event was received by a subscriber
+   *
+   * @param event the event that was received
+   */
+  def recordReceive(event: Event): Unit = {
+    queued.decrementAndGet()
+    received.increment()
+    latency.record(Duration.between(eventTime(event), Instant.now).toNanos)
+  }
+
+  /**
+   * Records that a received event was dropped
+   */
+  def recordDropped(): Unit = dropped.increment()
+
+  /**
+   * Records that an event was not published, since it was filtered out
+   */
+  def recordSuppressed(): Unit = suppressed.increment()
+
+  /**
+   * Records that a received event was not delivered, since the subscriber's event filter failed
+   */
+  def recordFilterError(): Unit = filterErrors.increment()
+
+  /**
+   * Records that an event was not published, since the write to Redis failed or the publish queue rejected it
+   */
+  def recordPublishFailed(): Unit = publishFailed.increment()
+
+  /**
+   * Returns a snapshot of the current values
+   */
+  def snapshot(): PrefixMetricsSnapshot = PrefixMetricsSnapshot(prefix, published.count, published.rate,
+    publishedBytes.sum(), redisRoundTrip.snapshot(), received.sum(), latency.snapshot(), queued.get, dropped.sum(), suppressed.sum(), filterErrors.sum(),
+    publishFailed.sum())
+
+  // Used to answer the JMX attribute getters
+  private val jmxSnapshot = new CachedSnapshot(jmxSnapshotMaxAgeNanos)(snapshot())
+
+  override def getPrefix: String = prefix
+  override def getPublishCount: Long = jmxSnapshot.get.publishCount
+  override def getPublishRate: Double = jmxSnapshot.get.publishRate
+  override def getPublishedBytes: Long = jmxSnapshot.get.publishedBytes
+  override def getRedisRoundTripP50Micros: Long = jmxSnapshot.get.redisRoundTrip.p50 / 1000
+  override def getRedisRoundTripP99Micros: Long = jmxSnapshot.get.redisRoundTrip.p99 / 1000
+  override def getRedisRoundTripMaxMicros: Long = jmxSnapshot.get.redisRoundTrip.max / 1000
+  override def getReceiveCount: Long = jmxSnapshot.get.receiveCount
+  override def getLatencyP50Micros: Long = jmxSnapshot.get.latency.p50 / 1000
+  override def getLatencyP99Micros: Long = jmxSnapshot.get.latency.p99 / 1000
+  override def getLatencyP999Micros: Long = jmxSnapshot.get.latency.p999 / 1000
+  override def getLatencyMaxMicros: Long = jmxSnapshot.get.latency.max / 1000
+  override def getQueueDepth: Long = jmxSnapshot.get.queueDepth
+  override def getDroppedCount: Long = jmxSnapshot.get.droppedCount
+  override def getSuppressedCount: Long = jmxSnapshot.get.suppressedCount
+  override def getFilterErrorCount: Long = jmxSnapshot.get.filterErrorCount
+  override def getPublishFailedCount: Long = jmxSnapshot.get.publishFailedCount
+
+  // Note: The queue depth is not reset, since it reflects the current state
+  override def reset(): Unit = {
+    jmxSnapshot.invalidate()
+    published.reset()
+    publishedBytes.reset()
+    received.reset()
+    dropped.reset()
+    suppressed.reset()
+    filterErrors.reset()
+    publishFailed.reset()
+    redisRoundTrip.reset()
+    latency.reset()
+  }
+}
+
+/**
+ * Collects publish and subscribe metrics, per prefix, for one event or telemetry service instance.
+ * If jmxEnabled is true, an MXBean is registered for each prefix under the
+ * [[EventServiceMetrics.jmxDomain]] domain.
+ *
+ * @param serviceName a name for the service (for example: "EventService" or "TelemetryService")
+ * @param jmxEnabled  if true, register the metrics for each prefix with the platform MBean server
+ */
+class EventServiceMetrics(val serviceName: String, jmxEnabled: Boolean) extends EventServiceMetrics.LaneMetricsMXBean {
+  import EventServiceMetrics._
+
+  /**
+   * A unique id for this service instance in the JVM
+   */
+  val instanceId: Int = instanceCounter.incrementAndGet()
+
+  private val prefixMap = TrieMap[String, PrefixMetrics]()
+  private val pools = TrieMap[RedisPublisherPool, ObjectName]()
+  private val poolCounter = new AtomicInteger(0)
+  private val queues = TrieMap[PublishQueue, ObjectName]()
+  private val queueCounter = new AtomicInteger(0)
+  private val caches = TrieMap[LastValueCache, ObjectName]()
+  private val cacheCounter = new AtomicInteger(0)
+  private val highPriorityLatency = new LatencyHistogram
+  private val normalPriorityLatency = new LatencyHistogram
+  private val lanesName = new ObjectName(s"$jmxDomain:type=$serviceName,instance=$instanceId,name=lanes")
+
+  if (jmxEnabled) register(this, lanesName)
+
+  /**
+   * Returns the metrics for the given prefix (creating them, if needed)
+   */
+  def apply(prefix: String): PrefixMetrics = {
+    prefixMap.get(prefix) match {
+      case Some(m) => m
+      case None =>
+        val m = new PrefixMetrics(prefix)
+        prefixMap.putIfAbsent(prefix, m) match {
+          case Some(existing) => existing
+          case None =>
+            if (jmxEnabled) register(m, objectName(prefix))
+            m
+        }
+    }
+  }
+
+  /**
+   * Records the end to end latency of a received event in its priority lane (See [[PriorityLanes]])
+   */
+  def recordLaneLatency(event: Event): Unit = {
+    val histogram = if (PriorityLanes.isHighPriority(event)) highPriorityLatency else normalPriorityLatency
+    histogram.record(Duration.between(eventTime(event), Instant.now).toNanos)
+  }
+
+  // Used to answer the JMX attribute getters: (high priority, normal priority) latency
+  private val jmxLanes = new CachedSnapshot(jmxSnapshotMaxAgeNanos)((highPriorityLatency.snapshot(), normalPriorityLatency.snapshot()))
+
+  override def getHighPriorityCount: Long = jmxLanes.get._1.count
+  override def getHighPriorityLatencyP50Micros: Long = jmxLanes.get._1.p50 / 1000
+  override def getHighPriorityLatencyP99Micros: Long = jmxLanes.get._1.p99 / 1000
+  override def getHighPriorityLatencyMaxMicros: Long = jmxLanes.get._1.max / 1000
+  override def getNormalPriorityCount: Long = jmxLanes.get._2.count
+  override def getNormalPriorityLatencyP50Micros: Long = jmxLanes.get._2.p50 / 1000
+  override def getNormalPriorityLatencyP99Micros: Long = jmxLanes.get._2.p99 / 1000
+  override def getNormalPriorityLatencyMaxMicros: Long = jmxLanes.get._2.max / 1000
+
+  /**
+   * Adds a publisher connection pool, so that its state is included in the metrics
+   */
+  private[events] def addPublisherPool(pool: RedisPublisherPool): Unit = {
+    val name = new ObjectName(s"$jmxDomain:type=$serviceName,instance=$instanceId,name=publisherPool${poolCounter.incrementAndGet()}")
+    if (pools.putIfAbsent(pool, name).isEmpty && jmxEnabled) register(pool, name)
+  }
+
+  /**
+   * Adds a publish queue, so that its depth and drop counts are included in the metrics
+   */
+  private[events] def addPublishQueue(queue: PublishQueue): Unit = {
+    val name = new ObjectName(s"$jmxDomain:type=$serviceName,instance=$instanceId,name=publishQueue${queueCounter.incrementAndGet()}")
+    if (queues.putIfAbsent(queue, name).isEmpty && jmxEnabled) register(queue, name)
+  }
+
+  /**
+   * Adds a last value cache, so that its hit and miss counts are included in the metrics
+   */
+  private[events] def addLastValueCache(cache: LastValueCache): Unit = {
+    val name = new ObjectName(s"$jmxDomain:type=$serviceName,instance=$instanceId,name=lastValueCache${cacheCounter.incrementAndGet()}")
+    if (caches.putIfAbsent(cache, name).isEmpty && jmxEnabled) register(cache, name)
+  }
+
+  /**
+   * Removes a last value cache that is no longer used
+   */
+  private[events] def removeLastValueCache(cache: LastValueCache): Unit =
+    caches.remove(cache).foreach(name => if (jmxEnabled) unregister(name))
+
+  /**
+   * Returns a snapshot of the metrics for all prefixes
+   */
+  def snapshot(): EventServiceMetricsSnapshot =
+    EventServiceMetricsSnapshot(serviceName, instanceId, Instant.now, prefixMap.map(p => p._1 -> p._2.snapshot()).toMap,
+      pools.keys.map(_.snapshot()).toList, caches.keys.map(_.snapshot()).toList,
+      Map(PriorityLanes.high -> highPriorityLatency.snapshot(), PriorityLanes.normal -> normalPriorityLatency.snapshot()),
+      queues.keys.map(_.snapshot()).toList)
+
+  /**
+   * Resets the metrics for all prefixes
+   */
+  def reset(): Unit = {
+    prefixMap.values.foreach(_.reset())
+    highPriorityLatency.reset()
+    normalPriorityLatency.reset()
+    jmxLanes.invalidate()
+  }
+
+  /**
+   * Unregisters any MXBeans registered for this service instance
+   */
+  def close(): Unit = if (jmxEnabled) {
+    prefixMap.keys.foreach(p => unregister(objectName(p)))
+    pools.values.foreach(unregister)
+    queues.values.foreach(unregister)
+    caches.values.foreach(unregister)
+    unregister(lanesName)
+  }
+
+  private def objectName(prefix: String): ObjectName =
+    new ObjectName(s"$jmxDomain:type=$serviceName,instance=$instanceId,prefix=${ObjectName.quote(prefix)}")
+
+  private def register(bean: AnyRef, name: ObjectName): Unit = {
+    try {
+      ManagementFactory.getPlatformMBeanServer.registerMBean(bean, name)
+    } catch {
+      case NonFatal(ex) => logger.warn(s"Failed to register $serviceName metrics $name with JMX", ex)
+    }
+  }
+
+  private def unregister(name: ObjectName): Unit = {
+    try {
+      val server = ManagementFactory.getPlatformMBeanServer
+      if (server.isRegistered(name)) server.unregisterMBean(name)
+    } catch {
+      case NonFatal(ex) => logger.warn(s"Failed to unregister $serviceName metrics $name with JMX", ex)
+    }
+  }
+}
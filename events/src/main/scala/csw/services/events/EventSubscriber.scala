@@ -10,6 +10,7 @@ import redis.ByteStringFormatter
 import redis.protocol.{MultiBulk, RedisReply}
 
 import scala.annotation.varargs
+import scala.util.control.NonFatal
 import EventServiceImpl._
 
 /**
@@ -18,9 +19,19 @@ import EventServiceImpl._
  */
 private[events] abstract class EventSubscriber(redisHost: String, redisPort: Int) extends Actor with ActorLogging {
 
-  private lazy val redis = context.actorOf(SubscribeActor.props(self, redisHost, redisPort)
+  private lazy val redis = context.actorOf(SubscribeActor.props(self, redisHost, redisPort, metrics, eventFilter)
     .withDispatcher(SubscribeActor.dispatcherName))
 
+  /**
+   * If defined, used to record the queue depth and dropped events for this subscriber
+   */
+  protected def metrics: Option[EventServiceMetrics] = None
+
+  /**
+   * If defined, only events matching the filter are sent to this actor
+   */
+  protected def eventFilter: Option[EventFilter] = None
+
   /**
    * Subscribes this actor to events with the given prefixes.
    * Each prefix may be followed by a '*' wildcard to subscribe to all matching events.
@@ -85,8 +96,9 @@ abstract class JAbstractSubscriber(redisHost: String, redisPort: Int) extends Ab
 // -- Implementation --
 
 private object SubscribeActor {
-  def props(subscriber: ActorRef, redisHost: String, redisPort: Int): Props =
-    Props(new SubscribeActor(subscriber, redisHost, redisPort))
+  def props(subscriber: ActorRef, redisHost: String, redisPort: Int, metrics: Option[EventServiceMetrics] = None,
+            filter: Option[EventFilter] = None): Props =
+    Props(new SubscribeActor(subscriber, redisHost, redisPort, metrics, filter))
 
   val dispatcherName = "rediscala.rediscala-client-worker-dispatcher"
 }
@@ -94,7 +106,8 @@ private object SubscribeActor {
 // The actor that receives the messages from Redis.
 // Note we could extend RedisSubscriberActor, but I'm doing it this way, so we can
 // customize the type of the message received if needed (RedisSubscriberActor forces Message(String)).
-private class SubscribeActor(subscriber: ActorRef, redisHost: String, redisPort: Int)
+private class SubscribeActor(subscriber: ActorRef, redisHost: String, redisPort: Int, metrics: Option[EventServiceMetrics],
+                             filter: Option[EventFilter])
     extends RedisWorkerIO(new InetSocketAddress(redisHost, redisPort), (_: Boolean) => ()) with DecodeReplies {
 
   /**
@@ -129,19 +142,45 @@ private class SubscribeActor(subscriber: ActorRef, redisHost: String, redisPort:
   }
 
   override def onDecodedReply(reply: RedisReply) {
-    val formatter = implicitly[ByteStringFormatter[Event]]
-
     reply match {
       case MultiBulk(Some(list)) if list.length == 3 && list.head.toByteString.utf8String == "message" =>
-        val event = formatter.deserialize(list(2).toByteString)
-        subscriber ! event
+        forward(list(1).toByteString, list(2).toByteString)
       case MultiBulk(Some(list)) if list.length == 4 && list.head.toByteString.utf8String == "pmessage" =>
-        val event = formatter.deserialize(list(3).toByteString)
-        subscriber ! event
+        forward(list(2).toByteString, list(3).toByteString)
       case _ => // subscribe or psubscribe
     }
   }
 
+  // Deserializes the event and sends it to the subscriber, if it matches the filter
+  private def forward(channel: ByteString, data: ByteString): Unit = {
+    val formatter = implicitly[ByteStringFormatter[Event]]
+    try {
+      val event = formatter.deserialize(data)
+      if (accept(event)) {
+        metrics.foreach(_(event.prefix).recordQueued())
+        subscriber ! event
+      }
+    } catch {
+      case NonFatal(ex) =>
+        // The channel is the scoped key (for example: "event:tcs.mcs")
+        val key = channel.utf8String
+        log.error(ex, s"Failed to deserialize event received on $key")
+        metrics.foreach(_(key.substring(key.indexOf(':') + 1)).recordDropped())
+    }
+  }
+
+  // Returns true if the event matches the filter (An event for which the filter fails is not delivered)
+  private def accept(event: Event): Boolean = {
+    try {
+      filter.forall(_.accept(event))
+    } catch {
+      case NonFatal(ex) =>
+        log.error(ex, s"Failed to evaluate event filter '${filter.get}' for ${event.prefix}")
+        metrics.foreach(_(event.prefix).recordFilterError())
+        false
+    }
+  }
+
   override def onDataReceivedOnClosingConnection(dataByteString: ByteString): Unit = decodeReplies(dataByteString)
 
   override def onClosingConnectionClosed(): Unit = {}
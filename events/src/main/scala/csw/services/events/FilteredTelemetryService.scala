@@ -0,0 +1,69 @@
+package csw.services.events
+
+import akka.actor.{ActorRef, ActorRefFactory, ActorSystem}
+import csw.services.events.TelemetryService.TelemetryMonitor
+import csw.util.config.Events.StatusEvent
+
+import scala.concurrent.{ExecutionContext, Future}
+
+object FilteredTelemetryService {
+  /**
+   * Returns a telemetry service that filters the published events using the csw.events.telemetry-filter
+   * settings in the config file (See [[TelemetryFilter]] for the format)
+   *
+   * @param ts     the underlying telemetry service
+   * @param system the actor system, used to access the config settings
+   */
+  def apply(ts: TelemetryService)(implicit system: ActorSystem): FilteredTelemetryService =
+    FilteredTelemetryService(ts, TelemetryFilter(system.settings.config.getConfig("csw.events.telemetry-filter")))
+}
+
+/**
+ * A telemetry service that only publishes events whose values changed by more than a deadband,
+ * limits the publish rate and publishes a heartbeat when values do not change (See [[TelemetryFilter]]).
+ * The number of suppressed events is recorded in the metrics for each prefix.
+ * An event becomes the value that later events are compared with as soon as it is accepted, so that the events
+ * published while it is being written to Redis are filtered as well. If the publish fails, the filter is rolled back,
+ * so that a retry is not suppressed.
+ * Note that the heartbeat is only checked when a new event is published (See [[TelemetryFilter]]).
+ *
+ * @param ts     the underlying telemetry service
+ * @param filter decides which events are published
+ */
+case class FilteredTelemetryService(ts: TelemetryService, filter: TelemetryFilter) extends TelemetryService {
+
+  override def publish(status: StatusEvent, history: Int = 0)(implicit ec: ExecutionContext): Future[Unit] = {
+    val nanoTime = System.nanoTime()
+    if (filter.accept(status, nanoTime)) {
+      val f = ts.publish(status, history)
+      f.failed.foreach(_ => filter.rollback(status, nanoTime))
+      f
+    } else {
+      ts.metrics(status.prefix).recordSuppressed()
+      Future.successful(())
+    }
+  }
+
+  override def subscribe(subscriber: ActorRef, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor =
+    ts.subscribe(subscriber, postLastEvents, prefixes: _*)
+
+  override def subscribe(callback: StatusEvent => Unit, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor =
+    ts.subscribe(callback, postLastEvents, prefixes: _*)
+
+  override def subscribeWithFilter(subscriber: ActorRef, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor =
+    ts.subscribeWithFilter(subscriber, filter, postLastEvents, prefixes: _*)
+
+  override def subscribeWithFilter(callback: StatusEvent => Unit, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor =
+    ts.subscribeWithFilter(callback, filter, postLastEvents, prefixes: _*)
+
+  override def get(prefix: String): Future[Option[StatusEvent]] = ts.get(prefix)
+
+  override def getHistory(prefix: String, n: Int): Future[Seq[StatusEvent]] = ts.getHistory(prefix, n)
+
+  override def delete(prefixes: String*)(implicit ec: ExecutionContext): Future[Unit] = {
+    filter.reset(prefixes: _*)
+    ts.delete(prefixes: _*)
+  }
+
+  override def metrics: EventServiceMetrics = ts.metrics
+}
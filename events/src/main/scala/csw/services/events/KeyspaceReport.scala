@@ -0,0 +1,162 @@
+package csw.services.events
+
+import akka.util.ByteString
+import redis.RedisClient
+
+import scala.concurrent.{ExecutionContext, Future}
+
+object KeyspaceReport {
+
+  /**
+   * Options for a keyspace report
+   *
+   * @param maxKeys         stop after examining this many keys (the report is then based on a sample of the keyspace)
+   * @param scanCount       the number of keys to request with each SCAN command
+   * @param listSampleSize  the number of elements read from each history list to estimate its size
+   * @param maxHistory      history lists longer than this are reported as not trimmed
+   * @param maxValueBytes   values (or list elements) larger than this are reported as oversized
+   */
+  case class Options(maxKeys: Int = 100000, scanCount: Int = 1000, listSampleSize: Int = 10,
+                     maxHistory: Long = 1000, maxValueBytes: Long = 1024 * 1024)
+
+  // Approximate Redis memory overhead per key and per list element, used to estimate the memory used
+  private val keyOverhead = 64L
+  private val listElementOverhead = 24L
+
+  /**
+   * The memory used by one event prefix (one Redis key)
+   *
+   * @param prefix          the event prefix
+   * @param redisType       the Redis type of the key ("string" for events, "list" for telemetry history)
+   * @param valueBytes      the size of the serialized event(s)
+   * @param listLength      for lists, the number of events in the history, otherwise 1
+   * @param estimatedMemory estimate of the Redis memory used for the key, in bytes
+   */
+  case class PrefixUsage(prefix: String, redisType: String, valueBytes: Long, listLength: Long, estimatedMemory: Long) {
+    /**
+     * The subsystem of the prefix (the part before the first dot)
+     */
+    def subsystem: String = prefix.takeWhile(_ != '.')
+  }
+
+  /**
+   * The memory used by the prefixes of one subsystem
+   *
+   * @param subsystem       the subsystem
+   * @param keyCount        the number of keys (prefixes)
+   * @param valueBytes      the total size of the serialized events
+   * @param listLength      the total number of events stored in history lists
+   * @param estimatedMemory estimate of the Redis memory used, in bytes
+   */
+  case class SubsystemUsage(subsystem: String, keyCount: Int, valueBytes: Long, listLength: Long, estimatedMemory: Long)
+
+  // Combines the reports for the shards of a sharded service
+  private[events] def merge(reports: Seq[KeyspaceReport]): KeyspaceReport =
+    KeyspaceReport(reports.head.scope, reports.flatMap(_.prefixes).sortBy(-_.estimatedMemory), reports.exists(_.sampled),
+      reports.head.options)
+
+  /**
+   * Scans the keys of the given scope (for example "event" or "telem") and returns a report on their memory usage
+   */
+  private[events] def apply(redisClient: RedisClient, scope: String, options: Options)(implicit ec: ExecutionContext): Future[KeyspaceReport] = {
+    val pattern = s"$scope:*"
+
+    // Scans until the cursor is 0 again or maxKeys keys were examined
+    def scan(cursor: Int, found: Vector[PrefixUsage]): Future[(Vector[PrefixUsage], Boolean)] = {
+      redisClient.scan(cursor, Some(options.scanCount), Some(pattern)).flatMap { c =>
+        val keys = c.data.take(options.maxKeys - found.size)
+        Future.sequence(keys.map(keyUsage)).flatMap { usage =>
+          val all = found ++ usage.flatten
+          val complete = c.index == 0
+          if (complete || all.size >= options.maxKeys) Future.successful((all, complete)) else scan(c.index, all)
+        }
+      }
+    }
+
+    // Returns the usage for the given key (None if it was deleted in the meantime)
+    def keyUsage(key: String): Future[Option[PrefixUsage]] = {
+      val prefix = key.substring(scope.length + 1)
+      redisClient.`type`(key).flatMap {
+        case "string" =>
+          redisClient.strlen(key).map(n => Some(PrefixUsage(prefix, "string", n, 1, keyOverhead + key.length + n)))
+        case "list" =>
+          for {
+            length <- redisClient.llen(key)
+            sample <- redisClient.lrange[ByteString](key, 0, options.listSampleSize - 1)
+          } yield {
+            val avg = if (sample.isEmpty) 0L else sample.map(_.length.toLong).sum / sample.size
+            val bytes = avg * length
+            Some(PrefixUsage(prefix, "list", bytes, length, keyOverhead + key.length + bytes + length * listElementOverhead))
+          }
+        case "none" => Future.successful(None)
+        case t      => Future.successful(Some(PrefixUsage(prefix, t, 0, 0, keyOverhead + key.length)))
+      }
+    }
+
+    scan(0, Vector.empty).map {
+      case (usage, complete) => KeyspaceReport(scope, usage.sortBy(-_.estimatedMemory), !complete, options)
+    }
+  }
+}
+
+/**
+ * A report on the Redis memory used by the events of one scope (event or telemetry), per prefix and per subsystem.
+ * The sizes of history lists are estimated from a sample of their elements.
+ *
+ * @param scope    the scope of the keys ("event" or "telem")
+ * @param prefixes the usage of each prefix, largest first
+ * @param sampled  true if the scan stopped before all keys were examined (See Options.maxKeys)
+ * @param options  the options used to create the report
+ */
+case class KeyspaceReport(scope: String, prefixes: Seq[KeyspaceReport.PrefixUsage], sampled: Boolean, options: KeyspaceReport.Options) {
+  import KeyspaceReport._
+
+  /**
+   * The usage per subsystem, largest first
+   */
+  lazy val subsystems: Seq[SubsystemUsage] = prefixes.groupBy(_.subsystem).map {
+    case (subsystem, p) =>
+      SubsystemUsage(subsystem, p.size, p.map(_.valueBytes).sum, p.map(_.listLength).sum, p.map(_.estimatedMemory).sum)
+  }.toList.sortBy(-_.estimatedMemory)
+
+  /**
+   * History lists that are longer than Options.maxHistory (the publisher is not trimming them,
+   * or uses a large history)
+   */
+  def untrimmedLists: Seq[PrefixUsage] = prefixes.filter(p => p.redisType == "list" && p.listLength > options.maxHistory)
+
+  /**
+   * Prefixes whose events are larger than Options.maxValueBytes (on average, for lists)
+   */
+  def oversizedValues: Seq[PrefixUsage] =
+    prefixes.filter(p => p.listLength > 0 && p.valueBytes / p.listLength > options.maxValueBytes)
+
+  /**
+   * The total estimated memory used by the keys in the report
+   */
+  def estimatedMemory: Long = prefixes.map(_.estimatedMemory).sum
+
+  /**
+   * Returns the report as text, showing the given number of the largest prefixes
+   */
+  def format(maxPrefixes: Int = 20): String = {
+    val sb = new StringBuilder
+    val sampleNote = if (sampled) s" (sample of ${prefixes.size} keys)" else ""
+    sb.append(s"Keyspace report for '$scope': ${prefixes.size} keys, about ${estimatedMemory / 1024} KiB$sampleNote\n\n")
+    sb.append(f"${"Subsystem"}%-12s ${"Keys"}%8s ${"Events"}%10s ${"Value KiB"}%12s ${"Memory KiB"}%12s\n")
+    subsystems.foreach { s =>
+      sb.append(f"${s.subsystem}%-12s ${s.keyCount}%8d ${s.listLength}%10d ${s.valueBytes / 1024}%12d ${s.estimatedMemory / 1024}%12d\n")
+    }
+    sb.append(f"\n${"Prefix"}%-40s ${"Type"}%-6s ${"Events"}%10s ${"Value KiB"}%12s ${"Memory KiB"}%12s\n")
+    prefixes.take(maxPrefixes).foreach { p =>
+      sb.append(f"${p.prefix}%-40s ${p.redisType}%-6s ${p.listLength}%10d ${p.valueBytes / 1024}%12d ${p.estimatedMemory / 1024}%12d\n")
+    }
+    untrimmedLists.foreach { p =>
+      sb.append(s"\nWarning: History for ${p.prefix} has ${p.listLength} events (more than ${options.maxHistory}): Is it being trimmed?")
+    }
+    oversizedValues.foreach { p =>
+      sb.append(s"\nWarning: Events for ${p.prefix} are about ${p.valueBytes / p.listLength / 1024} KiB each (more than ${options.maxValueBytes / 1024} KiB)")
+    }
+    sb.toString()
+  }
+}
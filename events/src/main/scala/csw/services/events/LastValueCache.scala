@@ -0,0 +1,237 @@
+package csw.services.events
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
+
+import akka.actor.{Actor, ActorRef, ActorSystem, Props, Terminated}
+
+import scala.collection.mutable
+import scala.concurrent.duration._
+
+object LastValueCache {
+
+  /**
+   * Creates a cache using the csw.events.last-value-cache settings from the config file
+   */
+  def apply(system: ActorSystem): LastValueCache = {
+    val config = system.settings.config.getConfig("csw.events.last-value-cache")
+    new LastValueCache(config.getInt("max-entries"),
+      FiniteDuration(config.getDuration("ttl", TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS))
+  }
+
+  /**
+   * A snapshot of the state of a last value cache
+   *
+   * @param size        the number of cached events
+   * @param hits        the number of calls to get that were answered from the cache
+   * @param misses      the number of calls to get that had to go to Redis
+   * @param evictions   the number of events removed to keep the cache within its size limit
+   * @param expirations the number of events fetched from Redis that were not used, since they were older than the TTL
+   */
+  case class LastValueCacheSnapshot(size: Int, hits: Long, misses: Long, evictions: Long, expirations: Long) {
+    /**
+     * The fraction of calls to get that were answered from the cache
+     */
+    def hitRatio: Double = if (hits + misses == 0) 0.0 else hits.toDouble / (hits + misses)
+  }
+
+  // Returns the prefix without the scope (for example: "telem:tcs.mcs" -> "tcs.mcs")
+  private[events] def unscoped(prefix: String): String = prefix.substring(prefix.indexOf(':') + 1)
+
+  // A cached event, the time it was stored and whether it was received from a subscription (rather than fetched from Redis)
+  private case class Entry(event: Event, nanoTime: Long, fromSubscription: Boolean)
+
+  /**
+   * Props for an actor that stores the events received by a subscription in the cache and forwards them to the
+   * subscriber, so that the cache is kept current by the subscriber's own Redis subscription
+   */
+  private[events] def forwarderProps(cache: LastValueCache, subscriber: ActorRef): Props =
+    Props(new LastValueCacheForwarder(cache, subscriber))
+
+  private class LastValueCacheForwarder(cache: LastValueCache, subscriber: ActorRef) extends Actor {
+    context.watch(subscriber)
+
+    override def receive: Receive = {
+      case event: Event =>
+        cache.update(event)
+        subscriber.forward(event)
+      case Terminated(`subscriber`) => context.stop(self)
+      case x                        => subscriber.forward(x)
+    }
+  }
+
+  /**
+   * Props for an actor that calls onTerminated (once) when any of the watched actors terminates
+   */
+  private[events] def watcherProps(watched: List[ActorRef], onTerminated: () => Unit): Props =
+    Props(new SubscriptionWatcher(watched, onTerminated))
+
+  private class SubscriptionWatcher(watched: List[ActorRef], onTerminated: () => Unit) extends Actor {
+    watched.foreach(context.watch)
+
+    override def receive: Receive = {
+      case Terminated(_) =>
+        onTerminated()
+        context.stop(self)
+    }
+  }
+}
+
+/**
+ * A per JVM cache of the last value of each subscribed event prefix, used by [[CachingEventService]]
+ * and [[CachingTelemetryService]] to answer get() without a Redis round trip.
+ *
+ * Only prefixes that match an active subscription are cached, since only those are kept current by
+ * the subscriptions' event streams (The caching services store the events received by their subscribers).
+ * A cached event is only used until the TTL has passed since it was stored, whether it was received from a
+ * subscription or fetched from Redis by get(), so that a subscription that silently stopped delivering events
+ * (for example, while the Redis connection was reconnecting) can not keep a stale value in the cache.
+ * The least recently used events are removed when there are more than maxEntries.
+ *
+ * @param maxEntries the max number of prefixes to cache
+ * @param ttl        cached events stored longer ago than this are not used (get() fetches them from Redis again)
+ */
+class LastValueCache(val maxEntries: Int, val ttl: FiniteDuration) extends EventServiceMetrics.LastValueCacheMXBean {
+  import LastValueCache._
+
+  private val ttlNanos = ttl.toNanos
+
+  private val hits = new LongAdder
+  private val misses = new LongAdder
+  private val evictions = new LongAdder
+  private val expirations = new LongAdder
+
+  // Access ordered, so that the least recently used entry is evicted first
+  private val entries = new java.util.LinkedHashMap[String, Entry](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: java.util.Map.Entry[String, Entry]): Boolean = {
+      val remove = size() > maxEntries
+      if (remove) evictions.increment()
+      remove
+    }
+  }
+
+  // Subscription prefix or pattern -> number of subscribers
+  private val subscriptions = mutable.Map[String, Int]()
+
+  // The subscribed patterns, without the trailing '*' (for example: "tcs.pk.*" -> "tcs.pk.")
+  private val patternPrefixes = mutable.Set[String]()
+
+  /**
+   * Adds a subscriber for the given prefixes (which may end with a '*' wildcard)
+   *
+   * @return the prefixes that had no subscribers before
+   */
+  def addSubscription(prefixes: Seq[String]): Seq[String] = synchronized {
+    prefixes.map(unscoped).filter { p =>
+      val count = subscriptions.getOrElse(p, 0)
+      subscriptions(p) = count + 1
+      if (count == 0 && ShardRing.isPattern(p)) patternPrefixes += p.dropRight(1)
+      count == 0
+    }
+  }
+
+  /**
+   * Removes a subscriber for the given prefixes. When a prefix has no more subscribers,
+   * the cached events that are no longer covered by a subscription are removed.
+   *
+   * @return the prefixes that no longer have any subscribers
+   */
+  def removeSubscription(prefixes: Seq[String]): Seq[String] = synchronized {
+    val removed = prefixes.map(unscoped).filter { p =>
+      subscriptions.get(p) match {
+        case Some(count) if count > 1 =>
+          subscriptions(p) = count - 1
+          false
+        case Some(_) =>
+          subscriptions.remove(p)
+          if (ShardRing.isPattern(p)) patternPrefixes -= p.dropRight(1)
+          true
+        case None => false
+      }
+    }
+    if (removed.nonEmpty) {
+      val it = entries.keySet().iterator()
+      while (it.hasNext) if (!isSubscribed(it.next())) it.remove()
+    }
+    removed
+  }
+
+  /**
+   * Returns true if the given prefix matches an active subscription
+   */
+  def isSubscribed(prefix: String): Boolean = synchronized {
+    val p = unscoped(prefix)
+    // Looks up each leading part of the prefix in the patterns, rather than matching every pattern
+    subscriptions.contains(p) || (patternPrefixes.nonEmpty && (0 to p.length).exists(i => patternPrefixes.contains(p.substring(0, i))))
+  }
+
+  /**
+   * Stores an event received from a subscription (When several subscriptions cover the prefix, an event
+   * older than the cached one is ignored)
+   */
+  def update(event: Event): Unit = synchronized {
+    if (isSubscribed(event.prefix)) {
+      val entry = entries.get(event.prefix)
+      if (entry == null || !entry.fromSubscription ||
+        !EventServiceMetrics.eventTime(event).isBefore(EventServiceMetrics.eventTime(entry.event)))
+        entries.put(event.prefix, Entry(event, System.nanoTime(), fromSubscription = true))
+    }
+  }
+
+  /**
+   * Stores an event fetched from Redis, unless a newer one was received from a subscription in the meantime
+   */
+  def refresh(event: Event): Unit = synchronized {
+    if (isSubscribed(event.prefix)) {
+      val entry = entries.get(event.prefix)
+      if (entry == null || expired(entry)) entries.put(event.prefix, Entry(event, System.nanoTime(), fromSubscription = false))
+    }
+  }
+
+  /**
+   * Returns the cached event for the given prefix, if it is subscribed and the event was stored within the TTL
+   * (and records a hit or miss)
+   */
+  def get(prefix: String): Option[Event] = synchronized {
+    val p = unscoped(prefix)
+    val result = Option(entries.get(p)) match {
+      case Some(entry) if expired(entry) =>
+        expirations.increment()
+        None
+      case Some(entry) => Some(entry.event)
+      case None        => None
+    }
+    if (result.isDefined) hits.increment() else misses.increment()
+    result
+  }
+
+  /**
+   * Removes the cached events for the given prefixes
+   */
+  def invalidate(prefixes: Seq[String]): Unit = synchronized {
+    prefixes.map(unscoped).foreach(p => entries.remove(p))
+  }
+
+  /**
+   * Removes all cached events (the subscriptions are kept)
+   */
+  def clear(): Unit = synchronized {
+    entries.clear()
+  }
+
+  private def expired(entry: Entry): Boolean = System.nanoTime() - entry.nanoTime > ttlNanos
+
+  /**
+   * Returns a snapshot of the current state of the cache
+   */
+  def snapshot(): LastValueCacheSnapshot =
+    LastValueCacheSnapshot(getSize, getHitCount, getMissCount, getEvictionCount, getExpirationCount)
+
+  override def getSize: Int = synchronized(entries.size())
+  override def getMaxEntries: Int = maxEntries
+  override def getTtlMillis: Long = ttl.toMillis
+  override def getHitCount: Long = hits.sum()
+  override def getMissCount: Long = misses.sum()
+  override def getEvictionCount: Long = evictions.sum()
+  override def getExpirationCount: Long = expirations.sum()
+}
@@ -0,0 +1,256 @@
+package csw.services.events
+
+import java.io.File
+
+import akka.actor.{Actor, ActorLogging, ActorRef, ActorRefFactory, ActorSystem, PoisonPill, Props, Stash, Terminated}
+import akka.util.ByteString
+import csw.services.events.EventService.EventMonitor
+import csw.util.config.ConfigSerializer.{readObj, writeObj}
+import csw.util.config.Configurations.ConfigData
+import csw.util.config.Events.{ObserveEvent, StatusEvent, SystemEvent}
+import csw.util.config._
+
+import scala.concurrent.duration._
+import scala.concurrent.{ExecutionContext, Future}
+import scala.util.control.NonFatal
+import scala.util.{Failure, Success, Try}
+
+object OffloadingEventService {
+
+  /**
+   * Config path of the dispatcher used for the blob store's hashing and file I/O
+   */
+  val dispatcherName = "csw.events.offload.dispatcher"
+
+  /**
+   * Returns an event service that offloads large items to a blob store, using the csw.events.offload
+   * settings in the config file
+   *
+   * @param es     the underlying event service
+   * @param system the actor system, used to access the config settings
+   */
+  def apply(es: EventService)(implicit system: ActorSystem): OffloadingEventService = {
+    val config = system.settings.config.getConfig("csw.events.offload")
+    val fileStore = new FileBlobStore(new File(config.getString("dir")), config.getBytes("max-size"),
+      config.getDuration("max-age", java.util.concurrent.TimeUnit.MILLISECONDS).millis,
+      Some(system.dispatchers.lookup(dispatcherName)))
+    val store = if (config.getBoolean("annex")) new AnnexBlobStore(fileStore) else fileStore
+    new OffloadingEventService(es, store, config.getBytes("threshold"))
+  }
+
+  /**
+   * The key of the item that replaces the offloaded items in the published event.
+   * Each value has the form "keyName:id", where id is the blob store id of the serialized item.
+   */
+  val blobRefsKey = StringKey("csw.blobRefs")
+
+  /**
+   * Sent to a subscriber actor instead of an event whose offloaded items could not be fetched from the blob store
+   * (for example, because they were deleted, or are in a file blob store on another host).
+   * Callbacks receive the event with the references instead (See isOffloaded()).
+   *
+   * @param event the event, with references to the offloaded items
+   * @param cause the reason the items could not be fetched
+   */
+  case class ResolveFailed(event: Event, cause: Throwable)
+
+  /**
+   * Returns an estimate of the serialized size of the item's values in bytes
+   * (only arrays, matrices and strings are counted, since other values are small)
+   */
+  def estimatedSize(item: Item[_]): Long = item.values.foldLeft(0L) { (size, value) =>
+    size + (value match {
+      case a: ByteArray    => a.data.length.toLong
+      case a: ShortArray   => a.data.length * 2L
+      case a: IntArray     => a.data.length * 4L
+      case a: FloatArray   => a.data.length * 4L
+      case a: LongArray    => a.data.length * 8L
+      case a: DoubleArray  => a.data.length * 8L
+      case m: ByteMatrix   => m.data.map(_.length.toLong).sum
+      case m: ShortMatrix  => m.data.map(_.length * 2L).sum
+      case m: IntMatrix    => m.data.map(_.length * 4L).sum
+      case m: FloatMatrix  => m.data.map(_.length * 4L).sum
+      case m: LongMatrix   => m.data.map(_.length * 8L).sum
+      case m: DoubleMatrix => m.data.map(_.length * 8L).sum
+      case s: String       => s.length * 2L
+      case _               => 8L
+    })
+  }
+
+  /**
+   * Returns true if some of the event's items were offloaded to a blob store
+   */
+  def isOffloaded(event: Event): Boolean = EventFilter.eventItems(event).exists(_.keyName == blobRefsKey.keyName)
+
+  /**
+   * Stores the items of the event that are larger than the threshold in the blob store and returns
+   * an event where they are replaced by references (or the original event, if no items are that large)
+   */
+  def offload(event: Event, store: BlobStore, threshold: Long)(implicit ec: ExecutionContext): Future[Event] = {
+    val (large, small) = EventFilter.eventItems(event).partition(estimatedSize(_) >= threshold)
+    if (large.isEmpty) Future.successful(event)
+    else {
+      val refs = large.toList.map { item =>
+        store.put(ByteString(writeObj(item))).map(id => s"${item.keyName}:$id")
+      }
+      Future.sequence(refs).map(r => withItems(event, small + blobRefsKey.set(r: _*)))
+    }
+  }
+
+  /**
+   * Returns the event with any offloaded items fetched from the blob store
+   */
+  def resolve(event: Event, store: BlobStore)(implicit ec: ExecutionContext): Future[Event] = {
+    val items = EventFilter.eventItems(event)
+    items.find(_.keyName == blobRefsKey.keyName) match {
+      case None => Future.successful(event)
+      case Some(refItem) =>
+        val fetched = refItem.values.toList.map { ref =>
+          val id = ref.toString.substring(ref.toString.lastIndexOf(':') + 1)
+          store.get(id).map(buf => readObj[Item[_]](new BlobStore.ByteBufferInputStream(buf)))
+        }
+        Future.sequence(fetched).map(f => withItems(event, (items - refItem) ++ f))
+    }
+  }
+
+  // Returns a copy of the event with the given items
+  private def withItems(event: Event, items: ConfigData): Event = event match {
+    case e: StatusEvent  => StatusEvent(e.info, items)
+    case e: ObserveEvent => ObserveEvent(e.info, items)
+    case e: SystemEvent  => SystemEvent(e.info, items)
+  }
+
+  // Value returned from the subscribe methods: Also stops the resolver actor
+  private case class OffloadingEventMonitor(monitor: EventMonitor, resolver: ActorRef) extends EventMonitor {
+    override def actorRef: ActorRef = monitor.actorRef
+
+    override def stop(): Unit = {
+      monitor.stop()
+      resolver ! PoisonPill
+    }
+
+    override def subscribe(prefixes: String*): Unit = monitor.subscribe(prefixes: _*)
+
+    override def unsubscribe(prefixes: String*): Unit = monitor.unsubscribe(prefixes: _*)
+  }
+
+  private object ResolverActor {
+    def props(subscriber: Option[ActorRef], callback: Option[Event => Unit], store: BlobStore): Props =
+      Props(new ResolverActor(subscriber, callback, store))
+
+    case class Resolved(result: Try[Event])
+  }
+
+  // Receives the subscribed events, fetches any offloaded items and passes the complete events on, in order
+  private class ResolverActor(subscriber: Option[ActorRef], callback: Option[Event => Unit], store: BlobStore)
+      extends Actor with Stash with ActorLogging {
+    import ResolverActor._
+    import context.dispatcher
+
+    subscriber.foreach(context.watch)
+
+    // The offloaded event being resolved
+    private var pending: Option[Event] = None
+
+    override def receive: Receive = idle
+
+    private def idle: Receive = {
+      case event: Event if isOffloaded(event) =>
+        pending = Some(event)
+        resolve(event, store).onComplete(result => self ! Resolved(result))
+        context.become(resolving)
+
+      case event: Event     => deliver(event)
+
+      case Terminated(_)    => context.stop(self)
+    }
+
+    private def resolving: Receive = {
+      case Resolved(Success(event)) =>
+        pending = None
+        deliver(event)
+        unstashAll()
+        context.become(idle)
+
+      case Resolved(Failure(ex)) =>
+        log.error(ex, "Failed to fetch offloaded event items")
+        failed(ex)
+        pending = None
+        unstashAll()
+        context.become(idle)
+
+      case Terminated(_) => context.stop(self)
+
+      case _             => stash()
+    }
+
+    // Tells the subscriber that the pending event could not be resolved
+    private def failed(ex: Throwable): Unit = pending.foreach(event => deliver(event, Some(ResolveFailed(event, ex))))
+
+    // Sends the message (by default, the event) to the subscriber actor, or calls the callback with the event
+    private def deliver(event: Event, msg: Option[Any] = None): Unit = {
+      subscriber.foreach(_ ! msg.getOrElse(event))
+      callback.foreach { f =>
+        try f(event) catch {
+          case NonFatal(ex) => log.error(ex, "Event callback failed")
+        }
+      }
+    }
+  }
+}
+
+/**
+ * An event service that keeps large payloads (such as images or big arrays) out of Redis.
+ * Items whose estimated size is at least the threshold are stored in a content addressed [[BlobStore]] and the
+ * published event carries references to them instead (in the [[OffloadingEventService.blobRefsKey]] item).
+ * Subscribers made through this class fetch the offloaded items when the event is delivered, so
+ * the Redis connections only carry small messages.
+ *
+ * Note that an offloaded event is published after its items are stored, so it may be
+ * received after smaller events for the same prefix that were published later.
+ * With a [[FileBlobStore]] (annex = off), subscribers must share the blob directory with the publisher:
+ * when the items can not be fetched, subscriber actors receive a [[OffloadingEventService.ResolveFailed]] message
+ * and callbacks receive the event with the references.
+ *
+ * @param es        the underlying event service
+ * @param store     where the large items are stored
+ * @param threshold items with an estimated size (in bytes) of at least this are offloaded
+ * @param system    used to create the actors that fetch the offloaded items for the subscribers
+ */
+class OffloadingEventService(val es: EventService, val store: BlobStore, val threshold: Long)(implicit system: ActorRefFactory)
+    extends EventService {
+  import OffloadingEventService._
+
+  override def publish(event: Event)(implicit ec: ExecutionContext): Future[Unit] =
+    offload(event, store, threshold).flatMap(es.publish)
+
+  override def subscribe(subscriber: ActorRef, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor = {
+    val resolver = _system.actorOf(ResolverActor.props(Some(subscriber), None, store))
+    OffloadingEventMonitor(es.subscribe(resolver, postLastEvents, prefixes: _*), resolver)
+  }
+
+  override def subscribe(callback: Event => Unit, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor = {
+    val resolver = _system.actorOf(ResolverActor.props(None, Some(callback), store))
+    OffloadingEventMonitor(es.subscribe(resolver, postLastEvents, prefixes: _*), resolver)
+  }
+
+  override def subscribeWithFilter(subscriber: ActorRef, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor = {
+    val resolver = _system.actorOf(ResolverActor.props(Some(subscriber), None, store))
+    OffloadingEventMonitor(es.subscribeWithFilter(resolver, filter, postLastEvents, prefixes: _*), resolver)
+  }
+
+  override def subscribeWithFilter(callback: Event => Unit, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor = {
+    val resolver = _system.actorOf(ResolverActor.props(None, Some(callback), store))
+    OffloadingEventMonitor(es.subscribeWithFilter(resolver, filter, postLastEvents, prefixes: _*), resolver)
+  }
+
+  override def get(prefix: String): Future[Option[Event]] = {
+    import system.dispatcher
+    es.get(prefix).flatMap {
+      case Some(event) => resolve(event, store).map(Some(_))
+      case None        => Future.successful(None)
+    }
+  }
+
+  override def metrics: EventServiceMetrics = es.metrics
+}
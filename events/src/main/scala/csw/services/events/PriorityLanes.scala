@@ -0,0 +1,82 @@
+package csw.services.events
+
+import akka.actor.ActorSystem
+import akka.dispatch.{PriorityGenerator, UnboundedStablePriorityMailbox}
+import com.typesafe.config.Config
+import csw.util.config.Events.{ObserveEvent, StatusEvent, SystemEvent}
+
+/**
+ * Keeps latency critical events (ObserveEvent and SystemEvent) from being delayed by bulky telemetry (StatusEvent):
+ *
+ *  - Publishing: high priority events have their own [[PublishQueue]], so they never wait behind queued telemetry,
+ *    and, with csw.events.priority-lanes.publisher-connection on, they are sent on a dedicated Redis connection.
+ *  - Delivery: with csw.events.priority-lanes.subscribers on, the event subscriber actors use a priority mailbox
+ *    ([[EventMonitorMailbox]]), so queued high priority events are processed before queued telemetry, and
+ *    callbacks for high priority events run on a separate dispatcher (csw.events.priority-lanes.dispatcher).
+ *
+ * Both settings are off by default: the publisher connection costs an extra Redis connection per service instance and
+ * with either one, events of different lanes are not ordered with respect to each other (Because of the separate
+ * publish queues, this is also true while the queues are backed up).
+ * The end to end latency of each lane is always recorded in the [[EventServiceMetrics]].
+ */
+object PriorityLanes {
+
+  /**
+   * The name of the lane for ObserveEvent and SystemEvent
+   */
+  val high = "high"
+
+  /**
+   * The name of the lane for all other events (telemetry)
+   */
+  val normal = "normal"
+
+  /**
+   * Config path of the mailbox used by the event subscriber actors
+   */
+  val mailboxName = "csw.events.priority-lanes.mailbox"
+
+  /**
+   * Config path of the dispatcher used to run the callbacks for high priority events
+   */
+  val dispatcherName = "csw.events.priority-lanes.dispatcher"
+
+  /**
+   * Returns true if the event should use the high priority lane
+   */
+  def isHighPriority(event: Event): Boolean = event match {
+    case _: ObserveEvent => true
+    case _: SystemEvent  => true
+    case _               => false
+  }
+
+  /**
+   * Returns the name of the lane for the given event
+   */
+  def laneFor(event: Event): String = if (isHighPriority(event)) high else normal
+
+  /**
+   * Returns true if high priority events should be published on a dedicated connection
+   */
+  def publisherConnectionEnabled(system: ActorSystem): Boolean =
+    system.settings.config.getBoolean("csw.events.priority-lanes.publisher-connection")
+
+  /**
+   * Returns true if the event subscribers should process and run the callbacks for high priority events first
+   */
+  def subscribersEnabled(system: ActorSystem): Boolean =
+    system.settings.config.getBoolean("csw.events.priority-lanes.subscribers")
+}
+
+/**
+ * A mailbox for event subscriber actors that delivers high priority events (See [[PriorityLanes]]) first,
+ * then control messages, then telemetry. Messages with the same priority are kept in order and none are dropped.
+ */
+class EventMonitorMailbox(settings: ActorSystem.Settings, config: Config) extends UnboundedStablePriorityMailbox(
+  PriorityGenerator {
+    case _: ObserveEvent => 0
+    case _: SystemEvent  => 0
+    case _: StatusEvent  => 2
+    case _               => 1
+  }
+)
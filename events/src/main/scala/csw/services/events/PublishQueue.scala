@@ -0,0 +1,267 @@
+package csw.services.events
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
+
+import akka.actor.ActorSystem
+import com.typesafe.scalalogging.Logger
+import org.slf4j.LoggerFactory
+
+import scala.concurrent.duration._
+import scala.concurrent.{ExecutionContext, Future, Promise}
+import scala.util.control.NonFatal
+
+object PublishQueue {
+
+  /**
+   * What to do when an event is published while the queue is full
+   */
+  sealed trait OverflowPolicy
+
+  object OverflowPolicy {
+
+    /**
+     * The publishing thread waits until there is space in the queue (or fails after the block timeout).
+     * Only use this from a thread that may block, not from an actor or a callback on a shared dispatcher.
+     */
+    case object Block extends OverflowPolicy
+
+    /**
+     * The event is queued and any older queued event with the same prefix is dropped
+     * (If the queue is full of other prefixes, the oldest queued event is dropped)
+     */
+    case object DropOldest extends OverflowPolicy
+
+    /**
+     * The publish fails immediately with a [[PublishQueueFullException]]
+     */
+    case object FailFast extends OverflowPolicy
+
+    /**
+     * Returns the policy with the given name: block, drop-oldest or fail-fast
+     */
+    def apply(name: String): OverflowPolicy = name.toLowerCase match {
+      case "block"       => Block
+      case "drop-oldest" => DropOldest
+      case "fail-fast"   => FailFast
+      case x             => throw new IllegalArgumentException(s"Invalid publish queue overflow policy: $x")
+    }
+  }
+
+  /**
+   * Thrown (in the returned future) when an event could not be published, since the publish queue was full
+   */
+  class PublishQueueFullException(message: String) extends RuntimeException(message)
+
+  /**
+   * Thrown (in the returned future) when a queued event was dropped in favor of a newer event (See [[OverflowPolicy.DropOldest]])
+   */
+  class EventDroppedException(prefix: String) extends RuntimeException(s"Event for $prefix was replaced by a newer event before it was published")
+
+  private val logger = Logger(LoggerFactory.getLogger(PublishQueue.getClass))
+
+  /**
+   * Creates a publish queue using the csw.events.publish-queue settings in the config file
+   *
+   * @param system    used to read the config
+   * @param telemetry if true, use the telemetry-overflow-policy setting (for services that only publish StatusEvents,
+   *                  where only the latest value per prefix matters), otherwise overflow-policy
+   */
+  def apply(system: ActorSystem, telemetry: Boolean = false): PublishQueue = {
+    val config = system.settings.config.getConfig("csw.events.publish-queue")
+    val policy = config.getString(if (telemetry) "telemetry-overflow-policy" else "overflow-policy")
+    new PublishQueue(config.getInt("capacity"), OverflowPolicy(policy),
+      FiniteDuration(config.getDuration("block-timeout", TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS))
+  }
+
+  /**
+   * Returns a separate queue, with the same capacity, for high priority events (See [[PriorityLanes]]), so that
+   * they do not wait behind queued telemetry. High priority events are never dropped: drop-oldest becomes fail-fast.
+   */
+  def highPriority(queue: PublishQueue): PublishQueue = {
+    val policy = if (queue.policy == OverflowPolicy.DropOldest) OverflowPolicy.FailFast else queue.policy
+    new PublishQueue(queue.capacity, policy, queue.blockTimeout)
+  }
+
+  /**
+   * Returns a queue that never overflows (used when no queue is configured)
+   */
+  def unbounded: PublishQueue = new PublishQueue(Int.MaxValue, OverflowPolicy.FailFast, Duration.Zero)
+
+  /**
+   * A snapshot of the state of a publish queue
+   *
+   * @param capacity       the max number of events waiting to be written to Redis
+   * @param overflowPolicy the name of the overflow policy
+   * @param depth          the number of events waiting to be written to Redis
+   * @param highWaterMark  the largest depth seen so far
+   * @param dropped        the number of queued events that were dropped in favor of newer events
+   * @param rejected       the number of events that were not published, since the queue was full
+   */
+  case class PublishQueueSnapshot(capacity: Int, overflowPolicy: String, depth: Int, highWaterMark: Int, dropped: Long, rejected: Long)
+
+  // An event waiting for space in the queue
+  private case class Pending(prefix: String, send: () => Future[Unit], promise: Promise[Unit])
+
+  // Frees queue space on the thread that completed the write, so that a busy (or blocked) publisher
+  // execution context can not keep the queue full
+  private object CallingThread extends ExecutionContext {
+    override def execute(runnable: Runnable): Unit = runnable.run()
+    override def reportFailure(cause: Throwable): Unit = logger.error("Publish queue callback failed", cause)
+  }
+}
+
+/**
+ * A bounded queue of the events that one service instance has published, but that Redis has not acknowledged yet.
+ * Without a bound, a stalled Redis server would cause the pending commands to accumulate until the JVM runs out of memory.
+ *
+ * Events are passed on to Redis as long as fewer than capacity events are outstanding. After that, the overflow
+ * policy decides whether the publishing thread waits, older events for the same prefix are dropped, or
+ * the publish fails. With the DropOldest policy, up to capacity more events (at most one per prefix) can
+ * wait to be sent, in the order they were published. In all cases the future returned by submit completes
+ * only once the event was written (or failed, if it was dropped or rejected).
+ *
+ * Note that the Block policy blocks the calling thread, so it should not be used from an actor or from
+ * the dispatcher that completes the Redis futures. By default (See reference.conf), the event service fails fast,
+ * since ObserveEvents and SystemEvents must not be dropped silently, and the telemetry service drops the oldest
+ * StatusEvent for the prefix, since only the latest value matters.
+ *
+ * @param capacity     the max number of events that are waiting to be written
+ * @param policy       what to do when the queue is full
+ * @param blockTimeout with the Block policy, how long to wait for space in the queue before failing
+ */
+class PublishQueue(val capacity: Int, val policy: PublishQueue.OverflowPolicy, val blockTimeout: FiniteDuration)
+    extends EventServiceMetrics.PublishQueueMXBean {
+  import PublishQueue._
+  import OverflowPolicy._
+
+  require(capacity > 0, "The publish queue capacity must be greater than 0")
+
+  // Number of events sent to Redis, but not acknowledged yet
+  private var inFlight = 0
+
+  // Events waiting to be sent, by prefix, oldest first (only used with the DropOldest policy)
+  private val waiting = new java.util.LinkedHashMap[String, Pending]()
+
+  private var highWater = 0
+  private val dropped = new LongAdder
+  private val rejected = new LongAdder
+
+  /**
+   * Sends an event to Redis, if there is space in the queue, otherwise applies the overflow policy
+   *
+   * @param prefix the event prefix
+   * @param send   sends the event to Redis (evaluated once there is space in the queue)
+   * @return a future that completes when the event was written, or failed if it was dropped or rejected
+   */
+  def submit(prefix: String)(send: => Future[Unit]): Future[Unit] = {
+    val pending = Pending(prefix, () => send, Promise[Unit]())
+    val sendNow = synchronized {
+      if (inFlight < capacity && waiting.isEmpty) {
+        inFlight += 1
+        updateHighWater()
+        true
+      } else policy match {
+        case FailFast =>
+          rejected.increment()
+          pending.promise.failure(new PublishQueueFullException(s"Publish queue is full ($capacity events): $prefix not published"))
+          false
+
+        case Block =>
+          val deadline = blockTimeout.fromNow
+          while (inFlight >= capacity && deadline.hasTimeLeft()) wait(math.max(1L, deadline.timeLeft.toMillis))
+          if (inFlight < capacity) {
+            inFlight += 1
+            updateHighWater()
+            true
+          } else {
+            rejected.increment()
+            pending.promise.failure(new PublishQueueFullException(s"Publish queue was full for $blockTimeout: $prefix not published"))
+            false
+          }
+
+        case DropOldest =>
+          // Remove first, so that the new event goes to the end of the queue
+          val replaced = Option(waiting.remove(prefix)).orElse {
+            if (waiting.size >= capacity) {
+              val it = waiting.values().iterator()
+              val eldest = it.next()
+              it.remove()
+              Some(eldest)
+            } else None
+          }
+          replaced.foreach { p =>
+            dropped.increment()
+            p.promise.failure(new EventDroppedException(p.prefix))
+          }
+          waiting.put(prefix, pending)
+          updateHighWater()
+          false
+      }
+    }
+    if (sendNow) start(pending)
+    pending.promise.future
+  }
+
+  // Sends the event and frees its space in the queue when Redis is done with it.
+  // Writes that complete immediately (for example, fail while the connection is down) are handled in the loop,
+  // so that draining many waiting events does not nest a call per event.
+  private def start(pending: Pending): Unit = {
+    var next = Option(pending)
+    while (next.isDefined) {
+      val p = next.get
+      val f = try p.send() catch {
+        case NonFatal(ex) => Future.failed(ex)
+      }
+      p.promise.completeWith(f)
+      if (f.isCompleted) next = release()
+      else {
+        f.onComplete(_ => release().foreach(start))(CallingThread)
+        next = None
+      }
+    }
+  }
+
+  // Frees a space in the queue and returns the next waiting event (which then has the space), if there is one
+  private def release(): Option[Pending] = {
+    synchronized {
+      inFlight -= 1
+      notifyAll()
+      if (waiting.isEmpty) None
+      else {
+        val it = waiting.values().iterator()
+        val p = it.next()
+        it.remove()
+        inFlight += 1
+        Some(p)
+      }
+    }
+  }
+
+  private def updateHighWater(): Unit = highWater = math.max(highWater, inFlight + waiting.size)
+
+  /**
+   * The number of events waiting to be written to Redis
+   */
+  def depth: Int = synchronized(inFlight + waiting.size)
+
+  /**
+   * Returns a snapshot of the current state of the queue
+   */
+  def snapshot(): PublishQueueSnapshot =
+    PublishQueueSnapshot(capacity, getOverflowPolicy, getDepth, getHighWaterMark, getDroppedCount, getRejectedCount)
+
+  override def getCapacity: Int = capacity
+  override def getOverflowPolicy: String = policy match {
+    case Block      => "block"
+    case DropOldest => "drop-oldest"
+    case FailFast   => "fail-fast"
+  }
+  override def getDepth: Int = depth
+  override def getHighWaterMark: Int = synchronized(highWater)
+  override def getDroppedCount: Long = dropped.sum()
+  override def getRejectedCount: Long = rejected.sum()
+  override def resetHighWaterMark(): Unit = synchronized {
+    highWater = inFlight + waiting.size
+  }
+}
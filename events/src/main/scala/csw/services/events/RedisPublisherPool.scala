@@ -0,0 +1,164 @@
+package csw.services.events
+
+import java.util.concurrent.atomic.{AtomicIntegerArray, LongAdder}
+
+import akka.actor.ActorSystem
+import redis.RedisClient
+
+import scala.collection.JavaConverters._
+import scala.concurrent.{ExecutionContext, Future}
+import scala.util.control.NonFatal
+import scala.util.{Failure, Success}
+
+object RedisPublisherPool {
+
+  /**
+   * Returns a pool containing only the given client (all prefixes are published on the same connection)
+   */
+  def apply(redisClient: RedisClient): RedisPublisherPool = new RedisPublisherPool(Vector(redisClient))
+
+  /**
+   * Returns a pool of connections to the Redis instance used by the given client.
+   * The given client is used as the first connection in the pool.
+   *
+   * @param redisClient  the main client for the Redis instance
+   * @param size         the number of connections in the pool (values less than 1 are treated as 1)
+   * @param priorityLane if true, an extra connection is added for high priority events (See [[PriorityLanes]])
+   */
+  def apply(redisClient: RedisClient, size: Int, priorityLane: Boolean = false)(implicit system: ActorSystem): RedisPublisherPool = {
+    val others = (1 until size + (if (priorityLane) 1 else 0)).map(_ => RedisClient(redisClient.host, redisClient.port))
+    new RedisPublisherPool(redisClient +: others.toVector, priorityLane)
+  }
+
+  /**
+   * Returns the configured publisher pool size (csw.events.publisher-pool.size)
+   */
+  def configuredSize(system: ActorSystem): Int = system.settings.config.getInt("csw.events.publisher-pool.size")
+
+  /**
+   * Returns the pool size to use, given a requested size, where 0 means use the configured size
+   */
+  private[events] def poolSize(requested: Int, system: ActorSystem): Int =
+    if (requested > 0) requested else configuredSize(system)
+
+  /**
+   * A snapshot of the state of a publisher pool
+   *
+   * @param host      the Redis host
+   * @param port      the Redis port
+   * @param size      the number of connections in the pool (including the priority lane connection)
+   * @param healthy   the number of connections whose last command completed successfully
+   * @param inFlight  the number of incomplete commands on each connection (the last one is the priority lane, if used)
+   * @param commands  the total number of publish commands sent
+   * @param failures  the number of publish commands that failed
+   * @param priorityLane true if the last connection is reserved for high priority events
+   */
+  case class PublisherPoolSnapshot(host: String, port: Int, size: Int, healthy: Int, inFlight: Seq[Int], commands: Long, failures: Long,
+                                   priorityLane: Boolean = false) {
+    /**
+     * The total number of incomplete commands on all connections
+     */
+    def totalInFlight: Int = inFlight.sum
+
+    /**
+     * Java API: The number of incomplete commands on each connection
+     */
+    def getInFlight: java.util.List[Integer] = inFlight.map(Int.box).asJava
+  }
+}
+
+/**
+ * A pool of connections to a single Redis instance, used to publish events.
+ *
+ * Each prefix is always published on the same connection, so the order of the events for a prefix is preserved,
+ * while different prefixes can be written in parallel on different connections.
+ * If priorityLane is true, the last connection is only used for high priority events (See [[PriorityLanes]]),
+ * so that they are not queued behind telemetry.
+ *
+ * @param clients      the connections in the pool (the first one is the service's main client)
+ * @param priorityLane if true, the last connection is reserved for high priority events
+ */
+class RedisPublisherPool private[events] (clients: IndexedSeq[RedisClient], priorityLane: Boolean = false)
+    extends EventServiceMetrics.PublisherPoolMXBean {
+  import RedisPublisherPool._
+
+  require(clients.size > (if (priorityLane) 1 else 0), "A publisher pool requires at least one connection per lane")
+
+  private val inFlight = new AtomicIntegerArray(clients.size)
+  private val healthy = new AtomicIntegerArray(Array.fill(clients.size)(1))
+  private val commands = new LongAdder
+  private val failures = new LongAdder
+
+  /**
+   * The number of connections in the pool
+   */
+  val size: Int = clients.size
+
+  // The number of connections used for normal events
+  private val normalSize = if (priorityLane) size - 1 else size
+
+  /**
+   * Returns the index of the connection used for the given prefix (for normal priority events)
+   */
+  def indexFor(prefix: String): Int = if (normalSize == 1) 0 else Math.floorMod(prefix.hashCode, normalSize)
+
+  /**
+   * Returns the index of the connection used for the given prefix and priority
+   */
+  def indexFor(prefix: String, highPriority: Boolean): Int = if (highPriority && priorityLane) size - 1 else indexFor(prefix)
+
+  /**
+   * Returns the connection used to publish events with the given prefix
+   */
+  def clientFor(prefix: String): RedisClient = clients(indexFor(prefix))
+
+  /**
+   * Runs the given publish command on the connection for the given prefix, keeping track of the
+   * number of incomplete commands and the health of the connection
+   *
+   * @param prefix       the event prefix
+   * @param highPriority if true, use the priority lane connection, if there is one
+   * @param f            sends the command(s) using the given client
+   * @return the result of f
+   */
+  def execute[T](prefix: String, highPriority: Boolean = false)(f: RedisClient => Future[T])(implicit ec: ExecutionContext): Future[T] = {
+    val i = indexFor(prefix, highPriority)
+    commands.increment()
+    inFlight.incrementAndGet(i)
+    val result = try f(clients(i)) catch {
+      case NonFatal(ex) => Future.failed(ex)
+    }
+    result.onComplete {
+      case Success(_) =>
+        inFlight.decrementAndGet(i)
+        healthy.set(i, 1)
+      case Failure(_) =>
+        inFlight.decrementAndGet(i)
+        healthy.set(i, 0)
+        failures.increment()
+    }
+    result
+  }
+
+  /**
+   * Returns a snapshot of the current state of the pool
+   */
+  def snapshot(): PublisherPoolSnapshot = {
+    PublisherPoolSnapshot(getHost, getPort, size, getHealthyConnections, (0 until size).map(inFlight.get),
+      getCommandCount, getFailureCount, priorityLane)
+  }
+
+  override def getHost: String = clients.head.host
+  override def getPort: Int = clients.head.port
+  override def getSize: Int = size
+  override def getHealthyConnections: Int = (0 until size).count(healthy.get(_) == 1)
+  override def getInFlightCommands: Int = (0 until size).map(inFlight.get).sum
+  override def getCommandCount: Long = commands.sum()
+  override def getFailureCount: Long = failures.sum()
+  override def getPriorityLane: Boolean = priorityLane
+
+  /**
+   * Stops the connections created by the pool (the main client is stopped by the service)
+   */
+  def close(): Unit = clients.tail.foreach(_.stop())
+}
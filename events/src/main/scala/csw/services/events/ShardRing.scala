@@ -0,0 +1,153 @@
+package csw.services.events
+
+import akka.actor.{Actor, ActorLogging, ActorRef, ActorRefFactory, Props, Terminated}
+
+import scala.util.hashing.MurmurHash3
+
+object ShardRing {
+  /**
+   * The default number of points on the hash ring for each shard
+   */
+  val defaultVirtualNodes = 160
+
+  /**
+   * Returns the name used to register the given shard of a sharded service with the location service.
+   * For example, shard 0 of the "Event Service" is registered as "Event Service-0".
+   *
+   * @param name  the logical name of the service
+   * @param index the index of the shard (0 to number of shards - 1)
+   */
+  def shardName(name: String, index: Int): String = s"$name-$index"
+
+  // Returns true if the given prefix is a wildcard subscription pattern (See EventSubscriber.subscribe)
+  private[events] def isPattern(prefix: String): Boolean = prefix.endsWith("*")
+}
+
+/**
+ * Maps event prefixes to a fixed list of shards using consistent hashing.
+ *
+ * The position of a shard on the ring depends only on its index in the list, so all clients using the
+ * same number of shards agree on where each prefix is stored, and adding a shard only moves about 1/N of the prefixes.
+ *
+ * @param shards       the shards (for example, one event service per Redis instance)
+ * @param bySubsystem  if true, only the subsystem part of the prefix (the part before the first '.') is hashed,
+ *                     so that all events for a subsystem are on the same shard
+ * @param virtualNodes the number of points on the ring for each shard (more points give a more even distribution)
+ */
+class ShardRing[T](val shards: IndexedSeq[T], val bySubsystem: Boolean = false, virtualNodes: Int = ShardRing.defaultVirtualNodes) {
+  import ShardRing._
+
+  require(shards.nonEmpty, "At least one shard is required")
+
+  // Maps a hash value to the index of the shard that owns the range ending with that value
+  private val ring: java.util.TreeMap[Integer, Integer] = {
+    val m = new java.util.TreeMap[Integer, Integer]()
+    for (i <- shards.indices; v <- 0 until virtualNodes) m.put(MurmurHash3.stringHash(s"shard-$i-$v"), i)
+    m
+  }
+
+  // Returns the part of the prefix that is hashed
+  private def shardKey(prefix: String): String =
+    if (bySubsystem) prefix.takeWhile(_ != '.').toLowerCase else prefix
+
+  /**
+   * Returns the index of the shard that owns the given (non-wildcard) prefix
+   */
+  def indexFor(prefix: String): Int = {
+    if (shards.size == 1) 0
+    else {
+      val entry = ring.ceilingEntry(MurmurHash3.stringHash(shardKey(prefix)))
+      (if (entry == null) ring.firstEntry() else entry).getValue
+    }
+  }
+
+  /**
+   * Returns the shard that owns the given (non-wildcard) prefix
+   */
+  def shardFor(prefix: String): T = shards(indexFor(prefix))
+
+  /**
+   * Returns the indexes of the shards that may hold events matching the given prefix.
+   * A wildcard prefix spans all shards, unless the shards are selected by subsystem and the
+   * pattern contains the complete subsystem name (for example: "tcs.*").
+   */
+  def indexesFor(prefix: String): Seq[Int] = {
+    if (!isPattern(prefix)) List(indexFor(prefix))
+    else {
+      val dot = prefix.indexOf('.')
+      val star = prefix.indexOf('*')
+      if (bySubsystem && dot >= 0 && dot < star) List(indexFor(prefix)) else shards.indices
+    }
+  }
+
+  /**
+   * Returns the given prefixes grouped by the index of the shard they belong to
+   * (wildcard prefixes may be included in more than one group)
+   */
+  def group(prefixes: Seq[String]): Map[Int, Seq[String]] =
+    prefixes.flatMap(p => indexesFor(p).map(_ -> p)).groupBy(_._1).map(p => p._1 -> p._2.map(_._2))
+}
+
+/**
+ * Manages the per shard subscriptions for the sharded event and telemetry services.
+ * A monitor for a shard is created as a child of this actor the first time a prefix maps to that shard,
+ * so stopping this actor stops the subscriptions on all shards.
+ */
+private[events] object ShardedMonitorActor {
+
+  /**
+   * The subscription to a single shard
+   */
+  trait ShardMonitor {
+    def subscribe(prefixes: Seq[String]): Unit
+
+    def unsubscribe(prefixes: Seq[String]): Unit
+  }
+
+  /**
+   * Used to create the Props for a ShardedMonitorActor
+   *
+   * @param ring       maps prefixes to shards
+   * @param subscriber the subscriber actor, if any (this actor stops when the subscriber terminates)
+   * @param newMonitor creates a new (empty) subscription to the given shard, using the given actor factory
+   */
+  def props(ring: ShardRing[_], subscriber: Option[ActorRef], newMonitor: (Int, ActorRefFactory) => ShardMonitor): Props =
+    Props(new ShardedMonitorActor(ring, subscriber, newMonitor))
+
+  // Message sent to subscribe to more prefixes (without the scope)
+  case class Subscribe(prefixes: String*)
+
+  // Message sent to unsubscribe to prefixes (without the scope)
+  case class Unsubscribe(prefixes: String*)
+}
+
+private class ShardedMonitorActor(
+    ring:       ShardRing[_],
+    subscriber: Option[ActorRef],
+    newMonitor: (Int, ActorRefFactory) => ShardedMonitorActor.ShardMonitor
+) extends Actor with ActorLogging {
+
+  import ShardedMonitorActor._
+
+  subscriber.foreach(context.watch)
+
+  private var monitors = Map[Int, ShardMonitor]()
+
+  private def monitor(index: Int): ShardMonitor = monitors.getOrElse(index, {
+    val m = newMonitor(index, context)
+    monitors += index -> m
+    m
+  })
+
+  def receive: Receive = {
+    // Stop if the subscriber terminates
+    case Terminated(_) =>
+      context.stop(self)
+
+    case s: Subscribe =>
+      ring.group(s.prefixes).foreach(p => monitor(p._1).subscribe(p._2))
+
+    case u: Unsubscribe =>
+      ring.group(u.prefixes).foreach(p => monitors.get(p._1).foreach(_.unsubscribe(p._2)))
+  }
+}
@@ -0,0 +1,164 @@
+package csw.services.events
+
+import akka.actor.{ActorRef, ActorRefFactory, ActorSystem, PoisonPill}
+import akka.util.Timeout
+import csw.services.events.EventService.EventMonitor
+import csw.services.events.ShardedMonitorActor.{ShardMonitor, Subscribe, Unsubscribe}
+import csw.services.loc.LocationService
+import csw.services.loc.LocationService.ResolvedTcpLocation
+import redis.RedisClient
+
+import scala.concurrent.{ExecutionContext, Future}
+
+/**
+ * Creates event service clients that distribute the event prefixes over several Redis instances.
+ *
+ * Since each Redis instance is single threaded, running one instance per core on the Redis host
+ * (and one shard per instance) lets the publish capacity scale with the number of cores.
+ * The shards of a sharded service named "Event Service" are registered with the location service
+ * as "Event Service-0", "Event Service-1", ... (See [[ShardRing.shardName]]).
+ */
+object ShardedEventService {
+
+  /**
+   * Looks up the shards of the Event Service with the Location Service and returns an EventService that uses them,
+   * using the number of shards given by the csw.events.shards settings in the config file.
+   * If there is only one shard, the Redis instance registered under the given name is used (no sharding).
+   *
+   * Note: Applications using the Location Service should call LocationService.initialize() once before
+   * accessing any Akka or Location Service methods.
+   *
+   * @param name the logical name of the event service (default: "Event Service")
+   * @return a new EventService instance
+   */
+  def apply(name: String = EventService.defaultName)(implicit system: ActorSystem, timeout: Timeout): Future[EventService] = {
+    val config = system.settings.config
+    val shardCount = config.getInt("csw.events.shards.count")
+    val bySubsystem = config.getBoolean("csw.events.shards.by-subsystem")
+    if (shardCount <= 1) EventService(name) else apply(name, shardCount, bySubsystem)
+  }
+
+  /**
+   * Looks up the given number of shards of the Event Service with the Location Service
+   * and returns an EventService that uses them.
+   *
+   * @param name        the logical name of the event service
+   * @param shardCount  the number of shards (Redis instances)
+   * @param bySubsystem if true, all events for a subsystem are stored on the same shard
+   * @return a new EventService instance
+   */
+  def apply(name: String, shardCount: Int, bySubsystem: Boolean)(implicit system: ActorSystem, timeout: Timeout): Future[EventService] = {
+    import system.dispatcher
+    val connections = (0 until shardCount).map(i => EventService.eventServiceConnection(ShardRing.shardName(name, i)))
+    LocationService.resolve(connections.toSet).map { locationsReady =>
+      val locations = locationsReady.locations.collect {
+        case loc: ResolvedTcpLocation => loc.connection -> (loc.host, loc.port)
+      }.toMap
+      get(connections.map(locations), bySubsystem)
+    }
+  }
+
+  /**
+   * Returns an EventService that distributes the event prefixes over the Redis instances at the given hosts and ports.
+   * All clients must list the shards in the same order.
+   *
+   * @param shards      the Redis host and port for each shard
+   * @param bySubsystem if true, all events for a subsystem are stored on the same shard
+   * @return a new EventService instance
+   */
+  def get(shards: Seq[(String, Int)], bySubsystem: Boolean = false)(implicit system: ActorSystem): EventService = {
+    val metrics = EventServiceMetrics(EventService.metricsName, system)
+    val poolSize = RedisPublisherPool.configuredSize(system)
+    val priorityLane = PriorityLanes.publisherConnectionEnabled(system)
+    val prioritySubscribers = PriorityLanes.subscribersEnabled(system)
+    val impls = shards.map { s =>
+      val redisClient = RedisClient(s._1, s._2)
+      EventServiceImpl(redisClient, EventService.defaultScope, metrics, Some(RedisPublisherPool(redisClient, poolSize, priorityLane)),
+        Some(PublishQueue(system)), prioritySubscribers)
+    }
+    new ShardedEventService(impls.toIndexedSeq, bySubsystem, EventService.defaultScope, metrics)
+  }
+
+  // Value returned from the subscribe method: The prefixes are routed to the shards by the monitor actor
+  private case class ShardedEventMonitor(actorRef: ActorRef, scope: String) extends EventMonitor {
+    private def unscopedKey(key: String) = key.stripPrefix(s"$scope:")
+
+    override def stop(): Unit = {
+      actorRef ! PoisonPill
+    }
+
+    override def subscribe(prefixes: String*): Unit = {
+      actorRef ! Subscribe(prefixes.map(unscopedKey): _*)
+    }
+
+    override def unsubscribe(prefixes: String*): Unit = {
+      actorRef ! Unsubscribe(prefixes.map(unscopedKey): _*)
+    }
+  }
+
+  // Adapts an event monitor for a single shard
+  private case class EventShardMonitor(monitor: EventMonitor) extends ShardMonitor {
+    override def subscribe(prefixes: Seq[String]): Unit = monitor.subscribe(prefixes: _*)
+
+    override def unsubscribe(prefixes: Seq[String]): Unit = monitor.unsubscribe(prefixes: _*)
+  }
+}
+
+/**
+ * An EventService that distributes the event prefixes over several Redis based event services using
+ * consistent hashing (See [[ShardRing]]).
+ * Events are published to the shard that owns the prefix. Subscriptions are made on the owning shard,
+ * and wildcard subscriptions are made on every shard that may hold matching events.
+ *
+ * @param shards      the event service for each shard
+ * @param bySubsystem if true, all events for a subsystem are stored on the same shard
+ * @param scope       the scope used by the shards to make the keys unique (for example: "event")
+ * @param metrics     the publish and subscribe metrics (shared by all shards)
+ */
+class ShardedEventService private[events] (private[events] val shards: IndexedSeq[EventService], bySubsystem: Boolean, scope: String,
+                                           val metrics: EventServiceMetrics) extends EventService {
+
+  import ShardedEventService._
+
+  private val ring = new ShardRing(shards, bySubsystem)
+
+  // Returns the index of the shard for the given prefix (which may include the scope)
+  private def indexFor(prefix: String): Int = ring.indexFor(prefix.stripPrefix(s"$scope:"))
+
+  override def publish(event: Event)(implicit ec: ExecutionContext): Future[Unit] =
+    ring.shardFor(event.prefix).publish(event)
+
+  override def get(prefix: String): Future[Option[Event]] = shards(indexFor(prefix)).get(prefix)
+
+  override def subscribe(subscriber: ActorRef, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor = {
+    val actorRef = _system.actorOf(ShardedMonitorActor.props(ring, Some(subscriber), (i, factory) =>
+      EventShardMonitor(shards(i).subscribe(subscriber, postLastEvents)(factory))))
+    val monitor = ShardedEventMonitor(actorRef, scope)
+    monitor.subscribe(prefixes: _*)
+    monitor
+  }
+
+  override def subscribe(callback: Event => Unit, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor = {
+    val actorRef = _system.actorOf(ShardedMonitorActor.props(ring, None, (i, factory) =>
+      EventShardMonitor(shards(i).subscribe(callback, postLastEvents)(factory))))
+    val monitor = ShardedEventMonitor(actorRef, scope)
+    monitor.subscribe(prefixes: _*)
+    monitor
+  }
+
+  override def subscribeWithFilter(subscriber: ActorRef, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor = {
+    val actorRef = _system.actorOf(ShardedMonitorActor.props(ring, Some(subscriber), (i, factory) =>
+      EventShardMonitor(shards(i).subscribeWithFilter(subscriber, filter, postLastEvents)(factory))))
+    val monitor = ShardedEventMonitor(actorRef, scope)
+    monitor.subscribe(prefixes: _*)
+    monitor
+  }
+
+  override def subscribeWithFilter(callback: Event => Unit, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): EventMonitor = {
+    val actorRef = _system.actorOf(ShardedMonitorActor.props(ring, None, (i, factory) =>
+      EventShardMonitor(shards(i).subscribeWithFilter(callback, filter, postLastEvents)(factory))))
+    val monitor = ShardedEventMonitor(actorRef, scope)
+    monitor.subscribe(prefixes: _*)
+    monitor
+  }
+}
@@ -0,0 +1,159 @@
+package csw.services.events
+
+import akka.actor.{ActorRef, ActorRefFactory, ActorSystem, PoisonPill}
+import akka.util.Timeout
+import csw.services.events.ShardedMonitorActor.{ShardMonitor, Subscribe, Unsubscribe}
+import csw.services.events.TelemetryService.TelemetryMonitor
+import csw.services.loc.LocationService
+import csw.services.loc.LocationService.ResolvedTcpLocation
+import csw.util.config.Events.StatusEvent
+import redis.RedisClient
+
+import scala.concurrent.{ExecutionContext, Future}
+
+/**
+ * Creates telemetry service clients that distribute the event prefixes over several Redis instances
+ * (See [[ShardedEventService]]).
+ */
+object ShardedTelemetryService {
+
+  /**
+   * Looks up the shards of the Telemetry Service with the Location Service and returns a TelemetryService that uses them,
+   * using the number of shards given by the csw.events.shards settings in the config file.
+   * If there is only one shard, the Redis instance registered under the given name is used (no sharding).
+   *
+   * @param name the logical name of the telemetry service (default: "Telemetry Service")
+   * @return a new TelemetryService instance
+   */
+  def apply(name: String = TelemetryService.defaultName)(implicit system: ActorSystem, timeout: Timeout): Future[TelemetryService] = {
+    val config = system.settings.config
+    val shardCount = config.getInt("csw.events.shards.count")
+    val bySubsystem = config.getBoolean("csw.events.shards.by-subsystem")
+    if (shardCount <= 1) TelemetryService(name) else apply(name, shardCount, bySubsystem)
+  }
+
+  /**
+   * Looks up the given number of shards of the Telemetry Service with the Location Service
+   * and returns a TelemetryService that uses them.
+   *
+   * @param name        the logical name of the telemetry service
+   * @param shardCount  the number of shards (Redis instances)
+   * @param bySubsystem if true, all events for a subsystem are stored on the same shard
+   * @return a new TelemetryService instance
+   */
+  def apply(name: String, shardCount: Int, bySubsystem: Boolean)(implicit system: ActorSystem, timeout: Timeout): Future[TelemetryService] = {
+    import system.dispatcher
+    val connections = (0 until shardCount).map(i => TelemetryService.telemetryServiceConnection(ShardRing.shardName(name, i)))
+    LocationService.resolve(connections.toSet).map { locationsReady =>
+      val locations = locationsReady.locations.collect {
+        case loc: ResolvedTcpLocation => loc.connection -> (loc.host, loc.port)
+      }.toMap
+      get(connections.map(locations), bySubsystem)
+    }
+  }
+
+  /**
+   * Returns a TelemetryService that distributes the event prefixes over the Redis instances at the given hosts and ports.
+   * All clients must list the shards in the same order.
+   *
+   * @param shards      the Redis host and port for each shard
+   * @param bySubsystem if true, all events for a subsystem are stored on the same shard
+   * @return a new TelemetryService instance
+   */
+  def get(shards: Seq[(String, Int)], bySubsystem: Boolean = false)(implicit system: ActorSystem): TelemetryService = {
+    val metrics = EventServiceMetrics(TelemetryService.metricsName, system)
+    val poolSize = RedisPublisherPool.configuredSize(system)
+    val impls = shards.map { s =>
+      val redisClient = RedisClient(s._1, s._2)
+      TelemetryServiceImpl(redisClient, TelemetryService.defaultScope, metrics, Some(RedisPublisherPool(redisClient, poolSize)),
+        Some(PublishQueue(system, telemetry = true)))
+    }
+    new ShardedTelemetryService(impls.toIndexedSeq, bySubsystem, TelemetryService.defaultScope, metrics)
+  }
+
+  // Value returned from the subscribe method: The prefixes are routed to the shards by the monitor actor
+  private case class ShardedTelemetryMonitor(actorRef: ActorRef, scope: String) extends TelemetryMonitor {
+    private def unscopedKey(key: String) = key.stripPrefix(s"$scope:")
+
+    override def stop(): Unit = {
+      actorRef ! PoisonPill
+    }
+
+    override def subscribe(prefixes: String*): Unit = {
+      actorRef ! Subscribe(prefixes.map(unscopedKey): _*)
+    }
+
+    override def unsubscribe(prefixes: String*): Unit = {
+      actorRef ! Unsubscribe(prefixes.map(unscopedKey): _*)
+    }
+  }
+
+  // Adapts a telemetry monitor for a single shard
+  private case class TelemetryShardMonitor(monitor: TelemetryMonitor) extends ShardMonitor {
+    override def subscribe(prefixes: Seq[String]): Unit = monitor.subscribe(prefixes: _*)
+
+    override def unsubscribe(prefixes: Seq[String]): Unit = monitor.unsubscribe(prefixes: _*)
+  }
+}
+
+/**
+ * A TelemetryService that distributes the event prefixes over several Redis based telemetry services using
+ * consistent hashing (See [[ShardRing]]).
+ *
+ * @param shards      the telemetry service for each shard
+ * @param bySubsystem if true, all events for a subsystem are stored on the same shard
+ * @param scope       the scope used by the shards to make the keys unique (for example: "telem")
+ * @param metrics     the publish and subscribe metrics (shared by all shards)
+ */
+class ShardedTelemetryService private[events] (private[events] val shards: IndexedSeq[TelemetryService], bySubsystem: Boolean, scope: String,
+                                               val metrics: EventServiceMetrics) extends TelemetryService {
+
+  import ShardedTelemetryService._
+
+  private val ring = new ShardRing(shards, bySubsystem)
+
+  // Returns the index of the shard for the given prefix (which may include the scope)
+  private def indexFor(prefix: String): Int = ring.indexFor(prefix.stripPrefix(s"$scope:"))
+
+  override def publish(status: StatusEvent, history: Int = 0)(implicit ec: ExecutionContext): Future[Unit] =
+    ring.shardFor(status.prefix).publish(status, history)
+
+  override def subscribe(subscriber: ActorRef, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor = {
+    val actorRef = _system.actorOf(ShardedMonitorActor.props(ring, Some(subscriber), (i, factory) =>
+      TelemetryShardMonitor(shards(i).subscribe(subscriber, postLastEvents)(factory))))
+    val monitor = ShardedTelemetryMonitor(actorRef, scope)
+    monitor.subscribe(prefixes: _*)
+    monitor
+  }
+
+  override def subscribe(callback: StatusEvent => Unit, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor = {
+    val actorRef = _system.actorOf(ShardedMonitorActor.props(ring, None, (i, factory) =>
+      TelemetryShardMonitor(shards(i).subscribe(callback, postLastEvents)(factory))))
+    val monitor = ShardedTelemetryMonitor(actorRef, scope)
+    monitor.subscribe(prefixes: _*)
+    monitor
+  }
+
+  override def subscribeWithFilter(subscriber: ActorRef, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor = {
+    val actorRef = _system.actorOf(ShardedMonitorActor.props(ring, Some(subscriber), (i, factory) =>
+      TelemetryShardMonitor(shards(i).subscribeWithFilter(subscriber, filter, postLastEvents)(factory))))
+    val monitor = ShardedTelemetryMonitor(actorRef, scope)
+    monitor.subscribe(prefixes: _*)
+    monitor
+  }
+
+  override def subscribeWithFilter(callback: StatusEvent => Unit, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor = {
+    val actorRef = _system.actorOf(ShardedMonitorActor.props(ring, None, (i, factory) =>
+      TelemetryShardMonitor(shards(i).subscribeWithFilter(callback, filter, postLastEvents)(factory))))
+    val monitor = ShardedTelemetryMonitor(actorRef, scope)
+    monitor.subscribe(prefixes: _*)
+    monitor
+  }
+
+  override def get(prefix: String): Future[Option[StatusEvent]] = shards(indexFor(prefix)).get(prefix)
+
+  override def getHistory(prefix: String, n: Int): Future[Seq[StatusEvent]] = shards(indexFor(prefix)).getHistory(prefix, n)
+
+  override def delete(prefixes: String*)(implicit ec: ExecutionContext): Future[Unit] =
+    Future.sequence(prefixes.groupBy(indexFor).map(p => shards(p._1).delete(p._2: _*))).map(_ => ())
+}
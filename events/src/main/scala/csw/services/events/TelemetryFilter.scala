@@ -0,0 +1,320 @@
+package csw.services.events
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
+
+import com.typesafe.config.Config
+import csw.util.config.Item
+import csw.util.config.Events.StatusEvent
+
+import scala.collection.JavaConverters._
+import scala.collection.concurrent.TrieMap
+import scala.concurrent.duration._
+
+object TelemetryFilter {
+
+  /**
+   * Creates a filter with the given policies
+   *
+   * @param policies      the filter settings for each prefix
+   * @param defaultPolicy if defined, the filter settings for prefixes that are not in policies
+   */
+  def apply(policies: Map[String, PrefixPolicy], defaultPolicy: Option[PrefixPolicy] = None): TelemetryFilter =
+    new TelemetryFilter(policies, defaultPolicy)
+
+  /**
+   * Determines when a new value of an item is different enough from the last published value to be published
+   */
+  sealed trait Deadband {
+    /**
+     * Returns true if the new value should be published
+     */
+    def changed(last: Item[_], current: Item[_]): Boolean
+  }
+
+  /**
+   * Numeric values are published when they differ from the last published value by more than delta.
+   * Other values are published when they change.
+   */
+  case class AbsoluteDeadband(delta: Double) extends Deadband {
+    override def changed(last: Item[_], current: Item[_]): Boolean =
+      numericChange(last, current)((l, c) => math.abs(c - l) > delta)
+  }
+
+  /**
+   * Numeric values are published when they differ from the last published value by more than the given
+   * fraction of the last published value. Other values are published when they change.
+   */
+  case class RelativeDeadband(fraction: Double) extends Deadband {
+    override def changed(last: Item[_], current: Item[_]): Boolean =
+      numericChange(last, current)((l, c) => if (l == 0.0) c != 0.0 else math.abs(c - l) > math.abs(l) * fraction)
+  }
+
+  /**
+   * Values are published whenever they change (used for discrete items, such as ChoiceItem, BooleanItem or StringItem)
+   */
+  case object ChangeOnly extends Deadband {
+    override def changed(last: Item[_], current: Item[_]): Boolean = last != current
+  }
+
+  /**
+   * Every new value is published
+   */
+  case object NoDeadband extends Deadband {
+    override def changed(last: Item[_], current: Item[_]): Boolean = true
+  }
+
+  // Compares the items element by element if all values are numeric, otherwise compares for equality
+  private def numericChange(last: Item[_], current: Item[_])(f: (Double, Double) => Boolean): Boolean = {
+    if (last.units != current.units || last.size != current.size) true
+    else {
+      val pairs = last.values.zip(current.values)
+      if (pairs.forall(p => p._1.isInstanceOf[Number] && p._2.isInstanceOf[Number]))
+        pairs.exists(p => f(p._1.asInstanceOf[Number].doubleValue(), p._2.asInstanceOf[Number].doubleValue()))
+      else last != current
+    }
+  }
+
+  /**
+   * The filter settings for one prefix
+   *
+   * @param deadbands       the deadband to use for the item with the given key name
+   * @param defaultDeadband the deadband for items not listed in deadbands
+   * @param minInterval     events are not published more often than this (Duration.Zero means no limit)
+   * @param maxSilence      if defined, an event is published when this time has passed since the last publish,
+   *                        even if no values changed (heartbeat). This is checked when the next event arrives:
+   *                        nothing is published for a source that stops sending events.
+   */
+  case class PrefixPolicy(
+      deadbands:       Map[String, Deadband]  = Map.empty,
+      defaultDeadband: Deadband               = ChangeOnly,
+      minInterval:     FiniteDuration         = Duration.Zero,
+      maxSilence:      Option[FiniteDuration] = None
+  ) {
+    /**
+     * Returns a copy with the given deadband for the item with the given key name
+     */
+    def withDeadband(keyName: String, deadband: Deadband): PrefixPolicy = copy(deadbands = deadbands + (keyName -> deadband))
+
+    // Returns true if any item differs enough from the last published event
+    private[events] def changed(last: StatusEvent, current: StatusEvent): Boolean = {
+      val lastItems = last.items.map(i => i.keyName -> i).toMap
+      current.items.size != lastItems.size || current.items.exists { item =>
+        lastItems.get(item.keyName) match {
+          case Some(lastItem) => deadbands.getOrElse(item.keyName, defaultDeadband).changed(lastItem, item)
+          case None           => true
+        }
+      }
+    }
+  }
+
+  /**
+   * Counts of the published and suppressed events for a prefix
+   *
+   * @param published  number of events published
+   * @param unchanged  number of events suppressed, since no value changed by more than the deadband
+   * @param throttled  number of events suppressed, since the minimum interval had not passed
+   * @param heartbeats number of events published only because the max silence interval had passed
+   */
+  case class FilterStats(published: Long, unchanged: Long, throttled: Long, heartbeats: Long) {
+    /**
+     * The total number of suppressed events
+     */
+    def suppressed: Long = unchanged + throttled
+  }
+
+  /**
+   * Creates a filter from a config, for example:
+   * {{{
+   * filters = [
+   *   {
+   *     prefix = tcs.mcs.position
+   *     min-interval = 100ms
+   *     max-silence = 5s
+   *     default = change-only    // or none (publish all), or a number (absolute deadband)
+   *     keys {
+   *       az.absolute = 0.001
+   *       el.relative = 0.0001
+   *     }
+   *   }
+   * ]
+   * }}}
+   * A filter with prefix "*" is used for all prefixes that are not listed.
+   *
+   * @param config a config containing a "filters" list
+   */
+  def apply(config: Config): TelemetryFilter = {
+    def deadband(c: Config): Deadband = {
+      if (c.hasPath("absolute")) AbsoluteDeadband(c.getDouble("absolute"))
+      else if (c.hasPath("relative")) RelativeDeadband(c.getDouble("relative"))
+      else if (c.hasPath("change-only") && c.getBoolean("change-only")) ChangeOnly
+      else NoDeadband
+    }
+
+    def duration(c: Config, path: String): Option[FiniteDuration] =
+      if (c.hasPath(path)) Some(FiniteDuration(c.getDuration(path, TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS)) else None
+
+    val policies = config.getConfigList("filters").asScala.map { c =>
+      val defaultDeadband = if (!c.hasPath("default")) ChangeOnly else c.getString("default") match {
+        case "change-only" => ChangeOnly
+        case "none"        => NoDeadband
+        case _             => AbsoluteDeadband(c.getDouble("default"))
+      }
+      val deadbands = if (!c.hasPath("keys")) Map.empty[String, Deadband] else {
+        val keys = c.getConfig("keys")
+        keys.root.keySet.asScala.map(k => k -> deadband(keys.getConfig(k))).toMap
+      }
+      c.getString("prefix") -> PrefixPolicy(deadbands, defaultDeadband, duration(c, "min-interval").getOrElse(Duration.Zero),
+        duration(c, "max-silence"))
+    }.toMap
+    TelemetryFilter(policies - "*", policies.get("*"))
+  }
+
+  // The state of the filter for a prefix
+  private class PrefixState {
+    var lastPublished: Option[StatusEvent] = None
+    var lastPublishNanos = 0L
+    // The event published before lastPublished (restored by rollback())
+    var previous: Option[StatusEvent] = None
+    var previousNanos = 0L
+    val published = new LongAdder
+    val unchanged = new LongAdder
+    val throttled = new LongAdder
+    val heartbeats = new LongAdder
+
+    def stats = FilterStats(published.sum(), unchanged.sum(), throttled.sum(), heartbeats.sum())
+  }
+}
+
+/**
+ * Decides which telemetry events need to be published, based on a per prefix deadband, minimum interval
+ * and heartbeat (max silence) settings. Events for prefixes without a policy are always published.
+ * Note that the heartbeat is checked when a new event is published: The first event after the max silence
+ * interval is published, even if unchanged. The filter does not publish anything on its own, so a
+ * heartbeat is not a guarantee that a source that stopped sending events is still alive.
+ *
+ * @param policies      the filter settings for each prefix
+ * @param defaultPolicy if defined, the filter settings for prefixes that are not in policies
+ */
+class TelemetryFilter(val policies: Map[String, TelemetryFilter.PrefixPolicy], val defaultPolicy: Option[TelemetryFilter.PrefixPolicy]) {
+  import TelemetryFilter._
+
+  private val states = TrieMap[String, PrefixState]()
+
+  private def state(prefix: String): PrefixState = states.getOrElse(prefix, {
+    val s = new PrefixState
+    states.putIfAbsent(prefix, s).getOrElse(s)
+  })
+
+  /**
+   * Returns a copy of this filter with the given policy for the given prefix (the state is not copied)
+   */
+  def withPolicy(prefix: String, policy: PrefixPolicy): TelemetryFilter = new TelemetryFilter(policies + (prefix -> policy), defaultPolicy)
+
+  /**
+   * Returns true if the event should be published, and if so, records it as the last published event for its prefix
+   * (Call rollback() if the publish then fails)
+   *
+   * @param event    the new event
+   * @param nanoTime the current time, as returned by System.nanoTime()
+   */
+  def accept(event: StatusEvent, nanoTime: Long = System.nanoTime()): Boolean = {
+    val result = check(event, nanoTime)
+    if (result) recordPublished(event, nanoTime)
+    result
+  }
+
+  /**
+   * Returns true if the event should be published, without recording it as the last published event
+   * (Suppressed events are counted in the stats)
+   *
+   * @param event    the new event
+   * @param nanoTime the current time, as returned by System.nanoTime()
+   */
+  def check(event: StatusEvent, nanoTime: Long = System.nanoTime()): Boolean = {
+    policies.get(event.prefix).orElse(defaultPolicy) match {
+      case None => true
+      case Some(policy) =>
+        val s = state(event.prefix)
+        s.synchronized {
+          val elapsed = nanoTime - s.lastPublishNanos
+          s.lastPublished match {
+            case None => true
+            case Some(_) if elapsed < policy.minInterval.toNanos =>
+              s.throttled.increment()
+              false
+            case Some(last) if policy.changed(last, event) => true
+            case Some(_) if policy.maxSilence.exists(elapsed >= _.toNanos) =>
+              s.heartbeats.increment()
+              true
+            case Some(_) =>
+              s.unchanged.increment()
+              false
+          }
+        }
+    }
+  }
+
+  /**
+   * Records that the event was published, so that the following events for its prefix are compared with it
+   *
+   * @param event    the published event
+   * @param nanoTime the time the event was accepted (by check()), as returned by System.nanoTime()
+   */
+  def recordPublished(event: StatusEvent, nanoTime: Long): Unit = {
+    if (policies.contains(event.prefix) || defaultPolicy.isDefined) {
+      val s = state(event.prefix)
+      s.synchronized {
+        s.published.increment()
+        // Publishes may complete out of order: keep the most recently accepted event
+        if (s.lastPublished.isEmpty || nanoTime - s.lastPublishNanos >= 0) {
+          s.previous = s.lastPublished
+          s.previousNanos = s.lastPublishNanos
+          s.lastPublished = Some(event)
+          s.lastPublishNanos = nanoTime
+        }
+      }
+    }
+  }
+
+  /**
+   * Undoes accept() or recordPublished() for an event whose publish failed: if no later event was recorded
+   * for its prefix, the following events are compared with the event published before it again
+   *
+   * @param event    the event that was not published
+   * @param nanoTime the time the event was accepted, as passed to accept() or recordPublished()
+   */
+  def rollback(event: StatusEvent, nanoTime: Long): Unit = {
+    states.get(event.prefix).foreach { s =>
+      s.synchronized {
+        s.published.decrement()
+        if (s.lastPublished.exists(_ eq event) && s.lastPublishNanos == nanoTime) {
+          s.lastPublished = s.previous
+          s.lastPublishNanos = s.previousNanos
+          s.previous = None
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the counts of published and suppressed events for each filtered prefix
+   */
+  def stats(): Map[String, FilterStats] = states.map(p => p._1 -> p._2.stats).toMap
+
+  /**
+   * Java API: Returns the counts of published and suppressed events for each filtered prefix
+   */
+  def getStats: java.util.Map[String, FilterStats] = stats().asJava
+
+  /**
+   * Forgets the last published events, so that the next event for each prefix is published
+   */
+  def reset(): Unit = states.clear()
+
+  /**
+   * Forgets the last published events for the given prefixes (for example, after they were deleted),
+   * so that the next event for each of them is published
+   */
+  def reset(prefixes: String*): Unit = prefixes.foreach(states.remove)
+}
@@ -12,7 +12,7 @@ import redis.{ByteStringFormatter, RedisClient}
 
 import scala.concurrent.duration.Duration
 import scala.concurrent.{Await, ExecutionContext, Future}
-import scala.util.Failure
+import scala.util.{Failure, Success}
 
 object TelemetryService {
   /**
@@ -25,6 +25,11 @@ object TelemetryService {
    */
   val defaultScope = "telem"
 
+  /**
+   * The name used for the telemetry service metrics (See [[EventServiceMetrics]])
+   */
+  val metricsName = "TelemetryService"
+
   /**
    * Returns the TelemetryService ComponentId for the given, or default name
    */
@@ -60,7 +65,7 @@ object TelemetryService {
     for {
       redisClient <- locateTelemetryService(name)
     } yield {
-      TelemetryServiceImpl(redisClient, defaultScope)
+      newTelemetryService(redisClient, 0)
     }
   }
 
@@ -77,13 +82,18 @@ object TelemetryService {
    * Returns an TelemetryService instance using the Redis instance at the given host and port,
    * using the default "127.0.0.1:6379 if not given.
    *
-   * @param host the Redis host name or IP address
-   * @param port the Redis port
+   * @param host     the Redis host name or IP address
+   * @param port     the Redis port
+   * @param poolSize the number of connections used to publish events (0 means use the csw.events.publisher-pool.size setting)
    * @return a new TelemetryService instance
    */
-  def get(host: String = "127.0.0.1", port: Int = 6379)(implicit system: ActorSystem): TelemetryService = {
-    val redisClient = RedisClient(host, port)
-    TelemetryServiceImpl(redisClient, defaultScope)
+  def get(host: String = "127.0.0.1", port: Int = 6379, poolSize: Int = 0)(implicit system: ActorSystem): TelemetryService =
+    newTelemetryService(RedisClient(host, port), poolSize)
+
+  // Returns a new TelemetryService that publishes using a pool of the given size (0 means use the configured size)
+  private def newTelemetryService(redisClient: RedisClient, poolSize: Int)(implicit system: ActorSystem): TelemetryService = {
+    val pool = RedisPublisherPool(redisClient, RedisPublisherPool.poolSize(poolSize, system))
+    TelemetryServiceImpl(redisClient, defaultScope, EventServiceMetrics(metricsName, system), Some(pool), Some(PublishQueue(system, telemetry = true)))
   }
 
   // Converts a callback that takes an Telemetry to one that takes a StatusEvent
@@ -179,6 +189,30 @@ trait TelemetryService {
    */
   def subscribe(callback: StatusEvent => Unit, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor
 
+  /**
+   * Subscribes an actor to events matching the given prefixes and filter (See [[EventFilter]]).
+   * Events that do not match the filter are dropped as soon as they are received from Redis.
+   *
+   * @param subscriber     an actor to receive StatusEvent messages
+   * @param filter         only events matching the filter are sent to the subscriber
+   * @param postLastEvents if true, the subscriber receives the last known values of any subscribed events (if they match)
+   * @param prefixes       one or more prefixes of events, may include wildcard
+   * @return an object containing an actorRef that can be used to subscribe and unsubscribe or stop the actor
+   */
+  def subscribeWithFilter(subscriber: ActorRef, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor
+
+  /**
+   * Subscribes a callback function to events matching the given prefixes and filter (See [[EventFilter]]).
+   * Events that do not match the filter are dropped as soon as they are received from Redis.
+   *
+   * @param callback       an callback which will be called with StatusEvent objects (in another thread)
+   * @param filter         only events matching the filter are passed to the callback
+   * @param postLastEvents if true, the callback receives the last known values of any subscribed events (if they match)
+   * @param prefixes       one or more prefixes of events, may include wildcard
+   * @return an object containing an actorRef that can be used to subscribe and unsubscribe or stop the actor
+   */
+  def subscribeWithFilter(callback: StatusEvent => Unit, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor
+
   /**
    * Creates an TelemetryMonitorActor and subscribes the given actor to it.
    * The return value can be used to stop the actor or subscribe and unsubscribe to events.
@@ -222,6 +256,12 @@ trait TelemetryService {
    * @return a future indicating if/when the operation has completed
    */
   def delete(prefix: String*)(implicit ec: ExecutionContext): Future[Unit]
+
+  /**
+   * Returns the publish and subscribe metrics for this telemetry service instance
+   * (Implementations that do not keep their own metrics return [[EventServiceMetrics.shared]])
+   */
+  def metrics: EventServiceMetrics = EventServiceMetrics.shared
 }
 
 object TelemetryServiceImpl {
@@ -253,9 +293,10 @@ object TelemetryServiceImpl {
       subscriber:       Option[ActorRef],
       callback:         Option[StatusEvent => Unit],
       telemetryService: TelemetryServiceImpl,
-      postLastEvents:   Boolean
+      postLastEvents:   Boolean,
+      filter:           Option[EventFilter]
     ): Props =
-      Props(classOf[TelemetryMonitorActor], subscriber, callback, telemetryService, postLastEvents)
+      Props(classOf[TelemetryMonitorActor], subscriber, callback, telemetryService, postLastEvents, filter)
 
     // Message sent to subscribe to more prefixes
     case class Subscribe(prefixes: String*)
@@ -269,7 +310,8 @@ object TelemetryServiceImpl {
       subscriber:       Option[ActorRef],
       callback:         Option[StatusEvent => Unit],
       telemetryService: TelemetryServiceImpl,
-      postLastEvents:   Boolean
+      postLastEvents:   Boolean,
+      filter:           Option[EventFilter]
   ) extends EventSubscriber(telemetryService.redisClient.host, telemetryService.redisClient.port) {
 
     import context.dispatcher
@@ -277,12 +319,17 @@ object TelemetryServiceImpl {
 
     subscriber.foreach(context.watch)
 
+    override protected def metrics: Option[EventServiceMetrics] = Some(telemetryService.metrics)
+
+    override protected def eventFilter: Option[EventFilter] = filter
+
     def receive: Receive = {
       // Stop if the subscriber terminates
       case Terminated(actorRef) =>
         context.stop(self)
 
       case event: StatusEvent =>
+        telemetryService.metrics(event.prefix).recordReceive(event)
         notifySubscribers(event)
 
       case s: Subscribe =>
@@ -291,7 +338,7 @@ object TelemetryServiceImpl {
           for {
             currentEvents <- Future.sequence(s.prefixes.map(telemetryService.get)).map(_.flatten)
           } {
-            currentEvents.foreach(notifySubscribers)
+            currentEvents.filter(e => filter.forall(_.accept(e))).foreach(notifySubscribers)
             subscribe(s.prefixes: _*)
           }
         } else {
@@ -323,23 +370,39 @@ object TelemetryServiceImpl {
  *
  * @param redisClient used to talk to Redis
  * @param scope       a string used to make the keys unique for this class (for example: "telem")
+ * @param metrics     used to record publish and subscribe metrics for this instance
+ * @param publisherPool optional pool of connections used to publish events (default: publish using redisClient)
+ * @param publishQueue optional bound on the number of events waiting to be written to Redis (default: no bound)
  */
-case class TelemetryServiceImpl(redisClient: RedisClient, scope: String) extends TelemetryService {
+case class TelemetryServiceImpl(redisClient: RedisClient, scope: String,
+                                metrics:       EventServiceMetrics        = EventServiceMetrics(TelemetryService.metricsName),
+                                publisherPool: Option[RedisPublisherPool] = None,
+                                publishQueue:  Option[PublishQueue]       = None)
+    extends TelemetryService {
 
   import TelemetryService._
   import TelemetryServiceImpl._
 
+  /**
+   * The connections used to publish events (each prefix is always published on the same connection)
+   */
+  val publishers: RedisPublisherPool = publisherPool.getOrElse(RedisPublisherPool(redisClient))
+  metrics.addPublisherPool(publishers)
+
+  /**
+   * The events waiting to be written to Redis
+   */
+  val queue: PublishQueue = publishQueue.getOrElse(PublishQueue.unbounded)
+  metrics.addPublishQueue(queue)
+
   // Implicit conversion between ByteString and StatusEvent, for the Redis API
   implicit val statusEventFormatter = new ByteStringFormatter[StatusEvent] {
     def serialize(e: StatusEvent): ByteString = {
       ByteString(write(e))
     }
 
-    def deserialize(bs: ByteString): StatusEvent = {
-      val ar = Array.ofDim[Byte](bs.length)
-      bs.asByteBuffer.get(ar)
-      read[StatusEvent](ar)
-    }
+    // Reads directly from the ByteString's buffers, since copying large events (such as images) to an array is expensive
+    def deserialize(bs: ByteString): StatusEvent = read[StatusEvent](bs.iterator.asInputStream)
   }
 
   private def scopedKey(key: String) = {
@@ -353,26 +416,44 @@ case class TelemetryServiceImpl(redisClient: RedisClient, scope: String) extends
     val bs = formatter.serialize(event)
     // only do this once
     val h = if (history >= 0) history else 0
-    // Use a transaction to send all commands at once
-    val redisTransaction = redisClient.transaction()
     val key = scopedKey(event.prefix)
-    redisTransaction.watch(key)
-    val f1 = redisTransaction.lpush(key, bs)
-    val f2 = redisTransaction.ltrim(key, 0, h + 1)
-    val f3 = redisTransaction.publish(key, bs)
-    val f4 = redisTransaction.exec()
-    Future.sequence(List(f1, f2, f3, f4)).map(_ => ())
+    val prefixMetrics = metrics(event.prefix)
+    prefixMetrics.recordPublish(bs.length)
+    val start = System.nanoTime()
+    val f = queue.submit(event.prefix) {
+      publishers.execute(event.prefix) { client =>
+        // Use a transaction to send all commands at once
+        val redisTransaction = client.transaction()
+        redisTransaction.watch(key)
+        val f1 = redisTransaction.lpush(key, bs)
+        val f2 = redisTransaction.ltrim(key, 0, h + 1)
+        val f3 = redisTransaction.publish(key, bs)
+        val f4 = redisTransaction.exec()
+        Future.sequence(List(f1, f2, f3, f4)).map(_ => ())
+      }
+    }
+    f.onComplete {
+      case Success(_) => prefixMetrics.recordRoundTrip(System.nanoTime() - start)
+      case Failure(_) => prefixMetrics.recordPublishFailed()
+    }
+    f
   }
 
-  override def subscribe(subscriber: ActorRef, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor = {
-    val actorRef = _system.actorOf(TelemetryMonitorActor.props(Some(subscriber), None, this, postLastEvents))
-    val monitor = TelemetryMonitorImpl(actorRef, scope)
-    monitor.subscribe(prefixes.map(scopedKey): _*)
-    monitor
-  }
+  override def subscribe(subscriber: ActorRef, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor =
+    newMonitor(Some(subscriber), None, None, postLastEvents, prefixes)
+
+  override def subscribe(callback: StatusEvent => Unit, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor =
+    newMonitor(None, Some(callback), None, postLastEvents, prefixes)
+
+  override def subscribeWithFilter(subscriber: ActorRef, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor =
+    newMonitor(Some(subscriber), None, Some(filter), postLastEvents, prefixes)
+
+  override def subscribeWithFilter(callback: StatusEvent => Unit, filter: EventFilter, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor =
+    newMonitor(None, Some(callback), Some(filter), postLastEvents, prefixes)
 
-  override def subscribe(callback: StatusEvent => Unit, postLastEvents: Boolean, prefixes: String*)(implicit _system: ActorRefFactory): TelemetryMonitor = {
-    val actorRef = _system.actorOf(TelemetryMonitorActor.props(None, Some(callback), this, postLastEvents))
+  private def newMonitor(subscriber: Option[ActorRef], callback: Option[StatusEvent => Unit], filter: Option[EventFilter],
+                         postLastEvents: Boolean, prefixes: Seq[String])(implicit _system: ActorRefFactory): TelemetryMonitor = {
+    val actorRef = _system.actorOf(TelemetryMonitorActor.props(subscriber, callback, this, postLastEvents, filter))
     val monitor = TelemetryMonitorImpl(actorRef, scope)
     monitor.subscribe(prefixes.map(scopedKey): _*)
     monitor
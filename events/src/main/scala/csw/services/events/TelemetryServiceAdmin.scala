@@ -34,6 +34,15 @@ object TelemetryServiceAdmin {
 
   def apply(telemetryService: TelemetryService)(implicit system: ActorRefFactory): TelemetryServiceAdmin =
     TelemetryServiceAdminImpl(telemetryService)
+
+  // Returns the Redis based services used by the given telemetry service (one for each shard)
+  private[events] def impls(telemetryService: TelemetryService): Seq[TelemetryServiceImpl] = telemetryService match {
+    case ts: TelemetryServiceImpl     => List(ts)
+    case ts: CachingTelemetryService  => impls(ts.ts)
+    case ts: FilteredTelemetryService => impls(ts.ts)
+    case ts: ShardedTelemetryService  => ts.shards.flatMap(impls)
+    case ts                           => throw new IllegalArgumentException(s"Unsupported telemetry service: ${ts.getClass.getName}")
+  }
 }
 
 /**
@@ -44,6 +53,14 @@ trait TelemetryServiceAdmin {
    * Shuts down the the database server (For use in test cases that started the database themselves)
    */
   def shutdown(): Future[Unit]
+
+  /**
+   * Scans the telemetry keys in Redis and reports the memory used per subsystem and prefix,
+   * including the length of each history list
+   *
+   * @param options limits the number of keys examined and sets the thresholds for warnings
+   */
+  def keyspaceReport(options: KeyspaceReport.Options = KeyspaceReport.Options()): Future[KeyspaceReport]
 }
 
 /**
@@ -56,12 +73,20 @@ private[events] case class TelemetryServiceAdminImpl(telemetryService: Telemetry
 
   import system.dispatcher
 
-  val redisClient = telemetryService.asInstanceOf[TelemetryServiceImpl].redisClient
+  // The Redis based services used by the telemetry service (one for each shard)
+  private val impls = TelemetryServiceAdmin.impls(telemetryService)
 
   override def shutdown(): Future[Unit] = {
-    val f = redisClient.shutdown()
-    redisClient.stop()
-    f.map(_ => ()).recover { case _ => () }
+    telemetryService.metrics.close()
+    Future.sequence(impls.map { ts =>
+      ts.publishers.close()
+      val f = ts.redisClient.shutdown()
+      ts.redisClient.stop()
+      f.map(_ => ()).recover { case _ => () }
+    }).map(_ => ())
   }
+
+  override def keyspaceReport(options: KeyspaceReport.Options): Future[KeyspaceReport] =
+    Future.sequence(impls.map(ts => KeyspaceReport(ts.redisClient, ts.scope, options))).map(KeyspaceReport.merge)
 }
 
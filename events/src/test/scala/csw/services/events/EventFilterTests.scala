@@ -0,0 +1,70 @@
+package csw.services.events
+
+import csw.util.config.Events.{StatusEvent, SystemEvent}
+import csw.util.config.{BooleanKey, Choice, ChoiceKey, DoubleKey, IntKey, StringKey}
+import org.scalatest.FunSuite
+
+/**
+ * Tests the subscriber side event filter expressions (does not require Redis)
+ */
+class EventFilterTests extends FunSuite {
+  private val prefix = "tcs.mcs.position"
+  private val az = DoubleKey("az")
+  private val demandAz = DoubleKey("demandAz")
+  private val count = IntKey("count")
+  private val tracking = BooleanKey("tracking")
+  private val name = StringKey("name")
+  private val mode = ChoiceKey("mode", Choice("slew"), Choice("track"))
+
+  private def event(azValue: Double, demandAzValue: Double, modeValue: String = "track") =
+    StatusEvent(prefix).madd(az.set(azValue), demandAz.set(demandAzValue), mode.set(Choice(modeValue)))
+
+  test("Test comparisons and boolean operators") {
+    val filter = EventFilter("abs(az - demandAz) > 0.5 || mode == 'slew'")
+    assert(!filter.accept(event(10.0, 10.2)))
+    assert(filter.accept(event(10.0, 10.6)))
+    assert(filter.accept(event(10.6, 10.0)))
+    assert(filter.accept(event(10.0, 10.0, "slew")))
+
+    assert(EventFilter("az >= 10 && !(az > 20)").accept(event(10.0, 0.0)))
+    assert(!EventFilter("az >= 10 && !(az > 20)").accept(event(21.0, 0.0)))
+    assert(EventFilter("az * 2 + 1 == 21").accept(event(10.0, 0.0)))
+    assert(EventFilter("-az < -5").accept(event(10.0, 0.0)))
+    assert(EventFilter("mode != \"slew\"").accept(event(10.0, 0.0)))
+  }
+
+  test("Test value types") {
+    val e = SystemEvent("wfos.test").madd(count.set(3), tracking.set(true), name.set("abc"))
+    assert(EventFilter("count == 3 && count < 3.5").accept(e))
+    assert(EventFilter("tracking").accept(e))
+    assert(EventFilter("tracking == true").accept(e))
+    assert(!EventFilter("!tracking").accept(e))
+    assert(EventFilter("name == 'abc' && name < 'abd'").accept(e))
+  }
+
+  test("Test missing items") {
+    val e = event(10.0, 10.0)
+    assert(!EventFilter("el > 0").accept(e))
+    assert(!EventFilter("el <= 0").accept(e))
+    assert(!EventFilter("abs(el) > 1").accept(e))
+    assert(EventFilter("!exists(el) && exists(az)").accept(e))
+  }
+
+  test("Test key names that are also keywords") {
+    val e = SystemEvent("wfos.test").madd(DoubleKey("abs").set(-2.0), BooleanKey("exists").set(true),
+      BooleanKey("true").set(false), DoubleKey("az-1").set(1.0))
+    assert(EventFilter("abs < 0 && abs(abs) == 2").accept(e))
+    assert(EventFilter("exists && exists(exists)").accept(e))
+    assert(EventFilter("`true` == false && exists(`true`)").accept(e))
+    assert(EventFilter("`az-1` == 1").accept(e))
+  }
+
+  test("Test syntax errors") {
+    for (expr <- List("", "az >", "(az > 1", "az > 'x", "az # 2", "exists()", "az > 1 az", "`az > 1", "``")) {
+      intercept[IllegalArgumentException] {
+        EventFilter(expr)
+      }
+    }
+    assert(EventFilter("az > 1.5e1").expression == "az > 1.5e1")
+  }
+}
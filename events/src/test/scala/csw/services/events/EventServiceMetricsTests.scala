@@ -0,0 +1,52 @@
+package csw.services.events
+
+import com.typesafe.scalalogging.LazyLogging
+import csw.util.config.Events.StatusEvent
+import org.scalatest.FunSuite
+
+/**
+ * Tests the metrics classes (does not require Redis)
+ */
+class EventServiceMetricsTests extends FunSuite with LazyLogging {
+
+  test("Test per prefix metrics snapshot") {
+    val metrics = EventServiceMetrics("TestService")
+    val prefix = "tcs.test.metrics"
+    val m = metrics(prefix)
+    assert(metrics(prefix) eq m)
+    m.recordPublish(100)
+    m.recordPublish(200)
+    m.recordRoundTrip(1000L)
+    m.recordQueued()
+    m.recordReceive(StatusEvent(prefix))
+    m.recordDropped()
+    m.recordFilterError()
+    m.recordPublishFailed()
+    m.recordPublishFailed()
+
+    val s = metrics.snapshot().prefixes(prefix)
+    assert(s.publishCount == 2)
+    assert(s.publishedBytes == 300)
+    assert(s.redisRoundTrip.count == 1)
+    assert(s.receiveCount == 1)
+    assert(s.latency.count == 1)
+    assert(s.queueDepth == 0)
+    assert(s.droppedCount == 1)
+    assert(s.filterErrorCount == 1)
+    assert(s.publishFailedCount == 2)
+  }
+
+  test("Test that the JMX attributes are read from one snapshot") {
+    val m = EventServiceMetrics("TestService")("tcs.test.jmx")
+    m.recordPublish(100)
+    assert(m.getPublishCount == 1)
+
+    // Values recorded after the first attribute was read show up in the next snapshot
+    m.recordPublish(100)
+    assert(m.getPublishCount == 1)
+    assert(m.getPublishedBytes == 100)
+
+    m.reset()
+    assert(m.getPublishCount == 0)
+  }
+}
@@ -5,11 +5,11 @@ import akka.testkit.{ImplicitSender, TestKit, TestProbe}
 import akka.util.Timeout
 import com.typesafe.scalalogging.LazyLogging
 import csw.services.loc.LocationService
-import csw.util.config.Events.SystemEvent
+import csw.util.config.Events.{ObserveEvent, StatusEvent, SystemEvent}
 import csw.util.config._
 import org.scalatest.{BeforeAndAfterAll, FunSuiteLike}
 
-import scala.concurrent.Await
+import scala.concurrent.{Await, Future}
 import scala.concurrent.duration._
 import scala.util.Try
 
@@ -95,4 +95,56 @@ class EventServiceTests
       monitor2.stop()
     }
   }
+
+  test("Test publishing with a pool of connections") {
+    val pooledEventService = EventService.get(poolSize = 4)
+    val prefixes = (1 to 8).map(i => s"tcs.pool$i")
+    val probe = TestProbe("pool")
+    val monitor = pooledEventService.subscribe(probe.ref, postLastEvents = false, prefixes: _*)
+    try {
+      Thread.sleep(500) // wait for actor to start
+      // Events for each prefix must be received in the order they were published
+      // (Uses StatusEvents, since ObserveEvents and SystemEvents are published on the priority lane connection)
+      val events = for (n <- 1 to 10; prefix <- prefixes) yield StatusEvent(prefix).add(infoValue.set(n))
+      Await.ready(Future.sequence(events.map(e => pooledEventService.publish(e))), 5.seconds)
+      val received = probe.receiveN(events.size, 5.seconds).collect { case e: StatusEvent => e }
+      for (prefix <- prefixes) {
+        assert(received.filter(_.prefix == prefix).map(_(infoValue).head) == (1 to 10))
+      }
+      val pool = pooledEventService.metrics.snapshot().publisherPools.head
+      val size = if (pool.priorityLane) 5 else 4
+      assert(pool.size == size)
+      assert(pool.healthy == size)
+      assert(pool.totalInFlight == 0)
+      assert(pool.commands == events.size)
+    } finally {
+      monitor.stop()
+    }
+  }
+
+  test("Test priority lanes") {
+    // Priority lanes are off by default
+    val redisClient = redis.RedisClient()
+    val eventService = EventServiceImpl(redisClient, EventService.defaultScope,
+      publisherPool = Some(RedisPublisherPool(redisClient, 1, priorityLane = true)), priorityLanes = true)
+    val prefix = "tcs.lanes"
+    val probe = TestProbe("lanes")
+    val monitor = eventService.subscribe(probe.ref, postLastEvents = false, prefix)
+    try {
+      Thread.sleep(500) // wait for actor to start
+      val telemetry = (1 to 100).map(n => StatusEvent(prefix).add(infoValue.set(n)))
+      val observe = ObserveEvent(prefix).add(infoValue.set(0))
+      Await.ready(Future.sequence(telemetry.map(e => eventService.publish(e)) :+ eventService.publish(observe)), 5.seconds)
+      val received = probe.receiveN(telemetry.size + 1, 5.seconds)
+      assert(received.collect { case e: ObserveEvent => e } == List(observe))
+      // Telemetry is still received in order
+      assert(received.collect { case e: StatusEvent => e(infoValue).head } == (1 to 100))
+      Thread.sleep(100) // the lane latency is recorded after the subscriber gets the event
+      val lanes = eventService.metrics.snapshot().lanes
+      assert(lanes(PriorityLanes.high).count == 1)
+      assert(lanes(PriorityLanes.normal).count == telemetry.size)
+    } finally {
+      monitor.stop()
+    }
+  }
 }
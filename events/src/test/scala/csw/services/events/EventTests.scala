@@ -30,5 +30,14 @@ class EventTests extends FunSuite with LazyLogging {
     import EventServiceImpl._
     assert(eventFormatter.deserialize(eventFormatter.serialize(statusEvent)) == statusEvent)
   }
+
+  test("Test deserializing an Event from a ByteString with several buffers") {
+    import EventTests._
+    import EventServiceImpl._
+    val bs = eventFormatter.serialize(statusEvent)
+    val fragmented = bs.grouped(64).map(b => akka.util.ByteString(b.toArray)).reduce(_ ++ _)
+    assert(fragmented.asByteBuffers.size > 1)
+    assert(eventFormatter.deserialize(fragmented) == statusEvent)
+  }
 }
 
@@ -0,0 +1,34 @@
+package csw.services.events
+
+import csw.services.events.KeyspaceReport.{Options, PrefixUsage}
+import org.scalatest.FunSuite
+
+/**
+ * Tests the summaries in the keyspace report (does not require Redis)
+ */
+class KeyspaceReportTests extends FunSuite {
+  private val options = Options(maxHistory = 100, maxValueBytes = 10000)
+  private val report = KeyspaceReport("telem", List(
+    PrefixUsage("tcs.mount.pos", "list", 200000, 1000, 300000),
+    PrefixUsage("tcs.mount.status", "list", 5000, 50, 8000),
+    PrefixUsage("wfos.blue.image", "list", 40000, 2, 41000)
+  ), sampled = false, options)
+
+  test("Test subsystem totals") {
+    assert(report.subsystems.map(_.subsystem) == List("tcs", "wfos"))
+    val tcs = report.subsystems.head
+    assert(tcs.keyCount == 2)
+    assert(tcs.listLength == 1050)
+    assert(tcs.estimatedMemory == 308000)
+    assert(report.estimatedMemory == 349000)
+  }
+
+  test("Test warnings") {
+    assert(report.untrimmedLists.map(_.prefix) == List("tcs.mount.pos"))
+    assert(report.oversizedValues.map(_.prefix) == List("wfos.blue.image"))
+    val text = report.format(maxPrefixes = 2)
+    assert(text.contains("tcs.mount.status"))
+    assert(!text.split("\n").exists(_.startsWith("wfos.blue.image")))
+    assert(text.contains("History for tcs.mount.pos has 1000 events"))
+  }
+}
@@ -0,0 +1,109 @@
+package csw.services.events
+
+import java.util.concurrent.{CountDownLatch, TimeUnit}
+
+import akka.actor.{Actor, ActorSystem, Props}
+import csw.util.config.DoubleKey
+import csw.util.config.Events.StatusEvent
+import org.scalatest.FunSuite
+
+import scala.concurrent.duration._
+
+/**
+ * Tests the last value cache (does not require Redis)
+ */
+class LastValueCacheTests extends FunSuite {
+  private val az = DoubleKey("az")
+
+  private def event(prefix: String, value: Double) = StatusEvent(prefix).add(az.set(value))
+
+  test("Test subscribed prefixes are cached") {
+    val cache = new LastValueCache(100, 1.minute)
+    assert(cache.addSubscription(List("tcs.mcs.position", "tcs.pk.*")) == List("tcs.mcs.position", "tcs.pk.*"))
+    assert(cache.addSubscription(List("telem:tcs.mcs.position")).isEmpty)
+
+    val position = event("tcs.mcs.position", 1.0)
+    val target = event("tcs.pk.target", 2.0)
+    cache.update(position)
+    cache.update(target)
+    cache.update(event("wfos.blue.filter", 3.0))
+    assert(cache.get("tcs.mcs.position").contains(position))
+    assert(cache.get("telem:tcs.pk.target").contains(target))
+    assert(cache.get("wfos.blue.filter").isEmpty)
+
+    // A value from Redis does not replace a newer value from the subscription
+    cache.refresh(event("tcs.mcs.position", 0.0))
+    assert(cache.get("tcs.mcs.position").contains(position))
+
+    // Still one subscriber left for tcs.mcs.position
+    assert(cache.removeSubscription(List("tcs.mcs.position")).isEmpty)
+    assert(cache.removeSubscription(List("tcs.mcs.position", "tcs.pk.*")) == List("tcs.mcs.position", "tcs.pk.*"))
+    assert(cache.getSize == 0)
+    assert(!cache.isSubscribed("tcs.pk.target"))
+
+    val stats = cache.snapshot()
+    assert(stats.hits == 3)
+    assert(stats.misses == 1)
+  }
+
+  test("Test TTL and size limit") {
+    val cache = new LastValueCache(2, 50.millis)
+    cache.addSubscription(List("tcs.*"))
+    cache.update(event("tcs.a", 1.0))
+    cache.update(event("tcs.b", 1.0))
+    assert(cache.get("tcs.a").isDefined)
+    cache.update(event("tcs.c", 1.0))
+    assert(cache.getSize == 2)
+    assert(cache.getEvictionCount == 1)
+    assert(cache.get("tcs.b").isEmpty) // least recently used
+
+    // Values received from a subscription expire if no newer value arrives within the TTL
+    Thread.sleep(100)
+    assert(cache.get("tcs.c").isEmpty)
+    assert(cache.getExpirationCount == 1)
+
+    // ... and so do values fetched from Redis
+    val d = event("tcs.d", 2.0)
+    cache.refresh(d)
+    assert(cache.get("tcs.d").contains(d))
+    Thread.sleep(100)
+    assert(cache.get("tcs.d").isEmpty)
+    assert(cache.getExpirationCount == 2)
+
+    // Each value received from a subscription restarts the TTL
+    cache.update(event("tcs.d", 3.0))
+    Thread.sleep(30)
+    val d2 = event("tcs.d", 4.0)
+    cache.update(d2)
+    Thread.sleep(30)
+    assert(cache.get("tcs.d").contains(d2))
+  }
+
+  test("Test an older event from a second subscription does not replace a newer one") {
+    val cache = new LastValueCache(100, 1.minute)
+    cache.addSubscription(List("tcs.*", "tcs.mcs.position"))
+    val older = event("tcs.mcs.position", 1.0)
+    Thread.sleep(2)
+    val newer = event("tcs.mcs.position", 2.0)
+    cache.update(newer)
+    cache.update(older)
+    assert(cache.get("tcs.mcs.position").contains(newer))
+    assert(cache.isSubscribed("telem:tcs.pk.target"))
+    assert(!cache.isSubscribed("wfos.blue.filter"))
+  }
+
+  test("Test that the subscription is released when the subscriber terminates") {
+    val system = ActorSystem("LastValueCacheTests")
+    try {
+      val subscriber = system.actorOf(Props(new Actor {
+        override def receive: Receive = Actor.emptyBehavior
+      }))
+      val released = new CountDownLatch(1)
+      system.actorOf(LastValueCache.watcherProps(List(subscriber), () => released.countDown()))
+      system.stop(subscriber)
+      assert(released.await(5, TimeUnit.SECONDS))
+    } finally {
+      system.terminate()
+    }
+  }
+}
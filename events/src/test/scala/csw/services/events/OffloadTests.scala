@@ -0,0 +1,69 @@
+package csw.services.events
+
+import java.nio.file.Files
+
+import akka.util.ByteString
+import csw.util.config.Events.ObserveEvent
+import csw.util.config.{DoubleMatrix, DoubleMatrixKey, IntKey}
+import org.scalatest.FunSuite
+
+import scala.concurrent.Await
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+
+/**
+ * Tests offloading large event items to a file blob store (does not require Redis)
+ */
+class OffloadTests extends FunSuite {
+  private val store = new FileBlobStore(Files.createTempDirectory("blobs").toFile)
+  private val imageKey = DoubleMatrixKey("image")
+  private val exposureKey = IntKey("exposure")
+
+  test("Test blob store") {
+    val data = ByteString("Hello blob store")
+    val id = Await.result(store.put(data), 5.seconds)
+    assert(id == BlobStore.sha1(data))
+    assert(store.contains(id))
+    // Storing the same data again returns the same id
+    assert(Await.result(store.put(data), 5.seconds) == id)
+    assert(ByteString(Await.result(store.get(id), 5.seconds)) == data)
+  }
+
+  test("Test offload and resolve") {
+    val image = DoubleMatrix(Array.fill(100, 100)(1.5))
+    val event = ObserveEvent("wfos.blue.camera").add(imageKey.set(image)).add(exposureKey.set(3))
+    assert(OffloadingEventService.estimatedSize(event(imageKey)) == 80000)
+
+    val offloaded = Await.result(OffloadingEventService.offload(event, store, 1000), 5.seconds)
+    assert(OffloadingEventService.isOffloaded(offloaded))
+    assert(!offloaded.asInstanceOf[ObserveEvent].exists(imageKey))
+    assert(offloaded.asInstanceOf[ObserveEvent].get(exposureKey).contains(exposureKey.set(3)))
+
+    val resolved = Await.result(OffloadingEventService.resolve(offloaded, store), 5.seconds)
+    assert(!OffloadingEventService.isOffloaded(resolved))
+    assert(resolved == event)
+
+    // Small events are not changed
+    val small = Await.result(OffloadingEventService.offload(event, store, 1000000), 5.seconds)
+    assert(small == event)
+  }
+
+  test("Test blob store eviction") {
+    val small = new FileBlobStore(Files.createTempDirectory("blobs").toFile, maxBytes = 25, evictionInterval = Duration.Zero)
+    val ids = (1 to 3).map { i =>
+      val id = Await.result(small.put(ByteString(s"blob number $i")), 5.seconds)
+      small.fileFor(id).setLastModified(System.currentTimeMillis() - (10 - i) * 1000L)
+      id
+    }
+    // Only the newest blob fits in 25 bytes
+    small.evict()
+    assert(!small.contains(ids(0)) && !small.contains(ids(1)))
+    assert(small.contains(ids(2)))
+
+    // An event whose blobs were deleted can not be resolved
+    val event = ObserveEvent("wfos.blue.camera").add(imageKey.set(DoubleMatrix(Array.fill(10, 10)(1.0))))
+    val offloaded = Await.result(OffloadingEventService.offload(event, small, 100), 5.seconds)
+    small.evict()
+    assert(Await.ready(OffloadingEventService.resolve(offloaded, small), 5.seconds).value.exists(_.isFailure))
+  }
+}
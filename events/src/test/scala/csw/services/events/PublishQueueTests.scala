@@ -0,0 +1,118 @@
+package csw.services.events
+
+import csw.services.events.PublishQueue.{EventDroppedException, OverflowPolicy, PublishQueueFullException}
+import org.scalatest.FunSuite
+import org.scalatest.concurrent.Eventually
+
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+import scala.concurrent.{Await, Future, Promise}
+
+/**
+ * Tests the bounded publish queue, using promises in place of a (stalled) Redis server
+ */
+class PublishQueueTests extends FunSuite with Eventually {
+
+  // Submits an event whose write to "Redis" completes when the returned promise is completed
+  private def submit(queue: PublishQueue, prefix: String): (Promise[Unit], Future[Unit]) = {
+    val write = Promise[Unit]()
+    (write, queue.submit(prefix)(write.future))
+  }
+
+  test("Test fail-fast policy") {
+    val queue = new PublishQueue(2, OverflowPolicy.FailFast, Duration.Zero)
+    val (w1, f1) = submit(queue, "tcs.a")
+    val (_, f2) = submit(queue, "tcs.b")
+    val (_, f3) = submit(queue, "tcs.c")
+    assert(queue.depth == 2)
+    intercept[PublishQueueFullException](Await.result(f3, 1.second))
+    assert(queue.getRejectedCount == 1)
+
+    // The future completes only when the event was written
+    assert(!f1.isCompleted)
+    w1.success(())
+    Await.result(f1, 1.second)
+    eventually(assert(queue.depth == 1))
+    assert(!f2.isCompleted)
+    assert(queue.getHighWaterMark == 2)
+  }
+
+  test("Test drop-oldest policy keeps the newest event per prefix") {
+    val queue = new PublishQueue(1, OverflowPolicy.DropOldest, Duration.Zero)
+    val (w1, f1) = submit(queue, "tcs.a")
+    val (_, f2) = submit(queue, "tcs.a")
+    val (_, f3) = submit(queue, "tcs.a")
+    intercept[EventDroppedException](Await.result(f2, 1.second))
+    assert(queue.getDroppedCount == 1)
+    assert(queue.depth == 2)
+
+    // The waiting events are also limited to the capacity, so the oldest one is dropped
+    val (_, f4) = submit(queue, "tcs.b")
+    intercept[EventDroppedException](Await.result(f3, 1.second))
+    assert(queue.getDroppedCount == 2)
+    assert(queue.depth == 2)
+
+    // When the first write completes, the waiting event is sent
+    w1.success(())
+    Await.result(f1, 1.second)
+    eventually(assert(queue.depth == 1))
+    assert(!f4.isCompleted)
+  }
+
+  test("Test that the space in the queue is freed by the thread that completed the write") {
+    val queue = new PublishQueue(1, OverflowPolicy.DropOldest, Duration.Zero)
+    val (w1, _) = submit(queue, "tcs.a")
+    val (w2, f2) = submit(queue, "tcs.b")
+    // No execution context is involved, so the waiting event is sent before success returns
+    w1.success(())
+    assert(queue.depth == 1)
+    w2.success(())
+    assert(queue.depth == 0)
+    Await.result(f2, 1.second)
+  }
+
+  test("Test draining many waiting events whose writes fail immediately") {
+    val n = 20000
+    val queue = new PublishQueue(n, OverflowPolicy.DropOldest, Duration.Zero)
+    val writes = (0 until n).map(i => submit(queue, s"tcs.a$i")._1)
+    // The queue is full, so these wait (one per prefix)
+    val failed = (0 until n).map(i => queue.submit(s"tcs.b$i")(Future.failed(new RuntimeException("Not connected"))))
+    assert(queue.depth == 2 * n)
+    // The waiting events are sent in a loop, not with one nested call per event
+    writes.head.success(())
+    assert(queue.depth == n - 1)
+    assert(failed.forall(_.value.exists(_.isFailure)))
+  }
+
+  test("Test that the high priority queue never drops events") {
+    val queue = new PublishQueue(1, OverflowPolicy.DropOldest, Duration.Zero)
+    val high = PublishQueue.highPriority(queue)
+    assert(high.capacity == 1)
+    assert(high.policy == OverflowPolicy.FailFast)
+    // The queues are independent: A full telemetry queue does not delay high priority events
+    submit(queue, "tcs.a")
+    val (w, f) = submit(high, "tcs.observe")
+    w.success(())
+    Await.result(f, 1.second)
+  }
+
+  test("Test block policy") {
+    val queue = new PublishQueue(1, OverflowPolicy.Block, 100.millis)
+    val (w1, f1) = submit(queue, "tcs.a")
+    // Times out, since the first write never completes
+    val (_, f2) = submit(queue, "tcs.b")
+    intercept[PublishQueueFullException](Await.result(f2, 1.second))
+    assert(queue.getRejectedCount == 1)
+
+    // Completes once there is space in the queue
+    Future {
+      Thread.sleep(20)
+      w1.success(())
+    }
+    val (w3, f3) = submit(queue, "tcs.c")
+    Await.result(f1, 1.second)
+    w3.success(())
+    Await.result(f3, 1.second)
+    eventually(assert(queue.depth == 0))
+  }
+}
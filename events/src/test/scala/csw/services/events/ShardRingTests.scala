@@ -0,0 +1,55 @@
+package csw.services.events
+
+import org.scalatest.FunSuite
+
+/**
+ * Tests the mapping of event prefixes to shards (does not require Redis)
+ */
+class ShardRingTests extends FunSuite {
+
+  private val prefixes = (1 to 10000).map(i => s"tcs.pk$i.status")
+
+  test("Test prefixes are distributed over all shards") {
+    val ring = new ShardRing((0 until 4).toIndexedSeq)
+    val counts = prefixes.groupBy(ring.shardFor).mapValues(_.size)
+    assert(counts.size == 4)
+    // Each shard should get roughly a quarter of the prefixes
+    counts.values.foreach(c => assert(c > 1500 && c < 3500))
+    // The mapping only depends on the number of shards
+    val ring2 = new ShardRing((0 until 4).map(i => s"shard$i"))
+    assert(prefixes.forall(p => ring2.indexFor(p) == ring.indexFor(p)))
+  }
+
+  test("Test adding a shard moves few prefixes") {
+    val ring4 = new ShardRing((0 until 4).toIndexedSeq)
+    val ring5 = new ShardRing((0 until 5).toIndexedSeq)
+    val moved = prefixes.filter(p => ring4.indexFor(p) != ring5.indexFor(p))
+    // About 1/5 of the prefixes should move, all of them to the new shard
+    assert(moved.size < prefixes.size * 0.3)
+    assert(moved.forall(ring5.indexFor(_) == 4))
+  }
+
+  test("Test wildcard routing") {
+    val ring = new ShardRing((0 until 4).toIndexedSeq)
+    assert(ring.indexesFor("tcs.pk1.status") == List(ring.indexFor("tcs.pk1.status")))
+    assert(ring.indexesFor("tcs.*") == (0 until 4))
+    assert(ring.indexesFor("*") == (0 until 4))
+
+    val bySubsystem = new ShardRing((0 until 4).toIndexedSeq, bySubsystem = true)
+    assert(prefixes.map(bySubsystem.indexFor).distinct.size == 1)
+    assert(bySubsystem.indexFor("TCS.x") == bySubsystem.indexFor("tcs.y"))
+    assert(bySubsystem.indexesFor("tcs.*") == List(bySubsystem.indexFor("tcs.pk1")))
+    assert(bySubsystem.indexesFor("tc*") == (0 until 4))
+
+    val groups = ring.group(List("tcs.pk1.status", "tcs.pk2.status", "mobie.*"))
+    assert(groups.size == 4)
+    assert(groups.values.forall(_.contains("mobie.*")))
+    assert(groups.values.flatten.count(_.startsWith("tcs.")) == 2)
+  }
+
+  test("Test a single shard") {
+    val ring = new ShardRing(IndexedSeq("only"))
+    assert(prefixes.forall(ring.shardFor(_) == "only"))
+    assert(ring.indexesFor("*") == (0 until 1))
+  }
+}
@@ -0,0 +1,128 @@
+package csw.services.events
+
+import com.typesafe.config.ConfigFactory
+import csw.services.events.TelemetryFilter._
+import csw.util.config.Events.StatusEvent
+import csw.util.config.{BooleanKey, Choice, ChoiceKey, DoubleKey}
+import org.scalatest.FunSuite
+
+import scala.concurrent.duration._
+
+/**
+ * Tests the publisher side telemetry filter (does not require Redis)
+ */
+class TelemetryFilterTests extends FunSuite {
+  private val prefix = "tcs.mcs.position"
+  private val az = DoubleKey("az")
+  private val el = DoubleKey("el")
+  private val tracking = BooleanKey("tracking")
+  private val mode = ChoiceKey("mode", Choice("slew"), Choice("track"))
+
+  private def event(azValue: Double, elValue: Double, trackingValue: Boolean = true, modeValue: String = "track") =
+    StatusEvent(prefix).madd(az.set(azValue), el.set(elValue), tracking.set(trackingValue), mode.set(Choice(modeValue)))
+
+  private val ms = 1000L * 1000L
+
+  test("Test deadbands and change only suppression") {
+    val policy = PrefixPolicy().withDeadband("az", AbsoluteDeadband(0.1)).withDeadband("el", RelativeDeadband(0.01))
+    val filter = TelemetryFilter(Map(prefix -> policy))
+    assert(filter.accept(event(10.0, 50.0), 0))
+    assert(!filter.accept(event(10.05, 50.0), 1 * ms))
+    assert(!filter.accept(event(10.09, 50.4), 2 * ms))
+    assert(filter.accept(event(10.11, 50.0), 3 * ms))
+    // Compared to the last published value, not the last sample
+    assert(!filter.accept(event(10.2, 50.0), 4 * ms))
+    assert(filter.accept(event(10.11, 50.6), 5 * ms))
+    assert(filter.accept(event(10.11, 50.6, trackingValue = false), 6 * ms))
+    assert(filter.accept(event(10.11, 50.6, trackingValue = false, modeValue = "slew"), 7 * ms))
+    assert(!filter.accept(event(10.11, 50.6, trackingValue = false, modeValue = "slew"), 8 * ms))
+    // Events for other prefixes are not filtered
+    assert(filter.accept(StatusEvent("tcs.other").add(az.set(1.0)), 9 * ms))
+    assert(filter.accept(StatusEvent("tcs.other").add(az.set(1.0)), 10 * ms))
+
+    val stats = filter.stats()(prefix)
+    assert(stats.published == 5)
+    assert(stats.unchanged == 4)
+    assert(stats.suppressed == 4)
+  }
+
+  test("Test min interval and heartbeat") {
+    val policy = PrefixPolicy(defaultDeadband = NoDeadband, minInterval = 10.millis)
+    val filter = TelemetryFilter(Map(prefix -> policy))
+    val published = (0 until 100).count(i => filter.accept(event(i, i), i * ms))
+    assert(published == 10)
+    assert(filter.stats()(prefix).throttled == 90)
+
+    val heartbeatFilter = TelemetryFilter(Map.empty, Some(PrefixPolicy(maxSilence = Some(1.second))))
+    val count = (0 until 300).count(i => heartbeatFilter.accept(event(1.0, 2.0), i * 10 * ms))
+    assert(count == 3)
+    assert(heartbeatFilter.stats()(prefix).heartbeats == 2)
+  }
+
+  test("Test that only published events are recorded") {
+    val filter = TelemetryFilter(Map(prefix -> PrefixPolicy()))
+
+    // A failed publish is not recorded, so the retry is not suppressed
+    assert(filter.check(event(10.0, 50.0), 0))
+    assert(filter.check(event(10.0, 50.0), 1 * ms))
+    filter.recordPublished(event(10.0, 50.0), 1 * ms)
+    assert(!filter.check(event(10.0, 50.0), 2 * ms))
+
+    // After a delete, the next event is published
+    filter.reset(prefix)
+    assert(filter.check(event(10.0, 50.0), 3 * ms))
+  }
+
+  test("Test rolling back a failed publish") {
+    val filter = TelemetryFilter(Map(prefix -> PrefixPolicy()))
+    val e1 = event(10.0, 50.0)
+    val e2 = event(11.0, 50.0)
+    assert(filter.accept(e1, 0))
+    assert(filter.accept(e2, 1 * ms))
+
+    // Events arriving while e2 is being published are compared with it
+    assert(!filter.accept(event(11.0, 50.0), 2 * ms))
+
+    // If its publish fails, they are compared with e1 again
+    filter.rollback(e2, 1 * ms)
+    assert(!filter.accept(event(10.0, 50.0), 3 * ms))
+    assert(filter.accept(event(11.0, 50.0), 4 * ms))
+
+    // A failed publish that was followed by a later one does not change the filter
+    filter.rollback(e1, 0)
+    assert(!filter.accept(event(11.0, 50.0), 5 * ms))
+
+    // Only the event accepted at 4ms counts as published
+    assert(filter.stats()(prefix).published == 1)
+  }
+
+  test("Test filter config") {
+    val config = ConfigFactory.parseString(
+      """
+        |filters = [
+        |  {
+        |    prefix = tcs.mcs.position
+        |    min-interval = 5ms
+        |    max-silence = 2s
+        |    keys {
+        |      az.absolute = 0.001
+        |      el.relative = 0.0001
+        |    }
+        |  }
+        |  {
+        |    prefix = "*"
+        |    default = none
+        |  }
+        |]
+      """.stripMargin
+    )
+    val filter = TelemetryFilter(config)
+    val policy = filter.policies(prefix)
+    assert(policy.minInterval == 5.millis)
+    assert(policy.maxSilence.contains(2.seconds))
+    assert(policy.deadbands("az") == AbsoluteDeadband(0.001))
+    assert(policy.deadbands("el") == RelativeDeadband(0.0001))
+    assert(policy.defaultDeadband == ChangeOnly)
+    assert(filter.defaultPolicy.map(_.defaultDeadband).contains(NoDeadband))
+  }
+}
@@ -9,6 +9,7 @@ import csw.services.loc.ComponentId;
 import csw.services.loc.Connection;
 import scala.Unit;
 
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -25,6 +26,14 @@ public interface IAlarmService {
    */
   CompletableFuture<Unit> setSeverity(AlarmKey alarmKey, SeverityLevel severity);
 
+  /**
+   * Sets and publishes the severity levels for the given alarms (using one bulk request)
+   *
+   * @param severities map from alarm key to the new value of the severity
+   * @return a future indicating when all operations have completed
+   */
+  CompletableFuture<Unit> setSeverities(Map<AlarmKey, SeverityLevel> severities);
+
 
   // --- Static factory methods to create an IAlarmService instance --
 
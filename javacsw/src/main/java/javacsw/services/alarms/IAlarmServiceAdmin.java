@@ -8,6 +8,7 @@ import scala.runtime.BoxedUnit;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -56,6 +57,14 @@ public interface IAlarmServiceAdmin {
    */
   CompletableFuture<AlarmModel.CurrentSeverity> getSeverity(AlarmKey alarmKey);
 
+  /**
+   * Gets the severity levels for the given alarms, using a single round trip to Redis
+   *
+   * @param alarmKeys the keys for the alarms
+   * @return a future map from alarm key to severity level, for each alarm that was found
+   */
+  CompletableFuture<Map<AlarmKey, AlarmModel.CurrentSeverity>> getSeverities(List<AlarmKey> alarmKeys);
+
   /**
    * Acknowledges the given alarm, if needed.
    *
@@ -124,4 +124,41 @@ public interface IConfigManager {
      * @return a list containing one ConfigFileHistory object for each version of path
      */
     CompletableFuture<List<ConfigFileHistory>> history(File path);
+
+    /**
+     * Sets the "default version" of the file with the given path.
+     * If this method is not called, the default version will always be the latest version.
+     * After calling this method, the version with the given Id will be the default.
+     *
+     * @param path the file path relative to the repository root
+     * @param id   an optional id used to specify a specific version
+     *             (by default the id of the latest version is used)
+     * @return a future indicating when the operation has completed
+     */
+    CompletableFuture<Unit> setDefault(File path, Optional<ConfigId> id);
+
+    /**
+     * Resets the "default version" of the file with the given path to be always the latest version.
+     *
+     * @param path the file path relative to the repository root
+     * @return a future indicating when the operation has completed
+     */
+    CompletableFuture<Unit> resetDefault(File path);
+
+    /**
+     * Gets and returns the default version of the file stored under the given path.
+     * If no default was set, this returns the latest version.
+     *
+     * @param path the file path relative to the repository root
+     * @return a future object that can be used to access the file's data, if found
+     */
+    CompletableFuture<Optional<IConfigData>> getDefault(File path);
+
+    /**
+     * Gets the latest versions of the files with the given paths (the requests are sent concurrently).
+     *
+     * @param paths the file paths relative to the repository root
+     * @return a future list of objects that can be used to access the files' data, if found, in the same order as paths
+     */
+    CompletableFuture<List<Optional<IConfigData>>> getAll(List<File> paths);
 }
\ No newline at end of file
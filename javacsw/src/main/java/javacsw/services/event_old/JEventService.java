@@ -3,8 +3,11 @@ package javacsw.services.event_old;
 import csw.services.event_old.EventService;
 import csw.services.event_old.EventServiceSettings;
 import csw.util.config.Events.EventServiceEvent;
+import scala.collection.JavaConverters;
 import scala.concurrent.duration.FiniteDuration;
 
+import java.util.List;
+
 /**
  * Java API for the publisher side of the (Hornetq based) Event Service.
  * See {@link JEventSubscriber} for the subscriber side.
@@ -30,6 +33,15 @@ public class JEventService {
         eventService.publish(event, expire);
     }
 
+    /**
+     * Publishes the given events, in order, using the same session.
+     * @param events the events to publish
+     * @param expire time to live for the events
+     */
+    public void publish(List<EventServiceEvent> events, FiniteDuration expire) {
+        eventService.publish(JavaConverters.asScalaBufferConverter(events).asScala(), expire);
+    }
+
     /**
      * Closes the connection to the server.
      */
@@ -5,6 +5,7 @@ import akka.actor.ActorRefFactory;
 import akka.actor.ActorSystem;
 import akka.util.Timeout;
 import csw.services.events.EventService;
+import csw.services.events.EventServiceMetrics;
 import csw.services.events.TelemetryService;
 import csw.services.events.TelemetryService$;
 import csw.util.config.Events.StatusEvent;
@@ -88,6 +89,15 @@ public interface IBlockingTelemetryService {
     void delete(String key);
 
 
+    /**
+     * Returns the publish and subscribe metrics for this telemetry service instance.
+     * Call snapshot() on the return value to get the current values for each prefix
+      * (Implementations that do not keep their own metrics return EventServiceMetrics.shared()).
+     */
+    default EventServiceMetrics metrics() {
+      return EventServiceMetrics.shared();
+    }
+
     // --- Static factory methods ---
 
     /**
@@ -116,4 +126,17 @@ public interface IBlockingTelemetryService {
     static IBlockingTelemetryService getTelemetryService(String host, int port, ActorSystem sys, Timeout timeout) {
         return new JBlockingTelemetryService(host, port, sys, timeout);
     }
+
+    /**
+     * Returns an ITelemetryService instance using the Redis instance at the given host and port.
+     * Events are published using a pool of connections, where each prefix is always published on the same connection.
+     *
+     * @param host     the Redis host name or IP address
+     * @param port     the Redis port
+     * @param poolSize the number of connections used to publish events
+     * @return a new ITelemetryService instance
+     */
+    static IBlockingTelemetryService getTelemetryService(String host, int port, int poolSize, ActorSystem sys, Timeout timeout) {
+        return new JBlockingTelemetryService(host, port, poolSize, sys, timeout);
+    }
 }
@@ -5,6 +5,8 @@ import akka.actor.ActorSystem;
 import akka.util.Timeout;
 import csw.services.events.EventService$;
 import csw.services.events.EventService.*;
+import csw.services.events.EventFilter;
+import csw.services.events.EventServiceMetrics;
 import csw.services.events.EventServiceSettings;
 import csw.services.loc.ComponentId;
 import csw.services.loc.Connection;
@@ -12,6 +14,8 @@ import csw.services.loc.LocationService;
 import csw.util.config.Events.EventServiceEvent;
 import scala.Unit;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -55,6 +59,30 @@ public interface IEventService {
    */
   CompletableFuture<Unit> publish(EventServiceEvent event);
 
+  /**
+   * Publishes the given events (the requests are sent without waiting for the previous ones to complete)
+   *
+   * @param events the events to publish
+   * @return a future indicating when all the events were published
+   */
+  CompletableFuture<Unit> publishAll(List<EventServiceEvent> events);
+
+  /**
+   * Gets the last published value for the given event prefix
+   *
+   * @param prefix the event prefix
+   * @return the future event, if found
+   */
+  CompletableFuture<Optional<EventServiceEvent>> get(String prefix);
+
+  /**
+   * Gets the last published values for the given event prefixes (the requests are sent concurrently)
+   *
+   * @param prefixes the event prefixes
+   * @return the future events, if found, in the same order as the prefixes
+   */
+  CompletableFuture<List<Optional<EventServiceEvent>>> getAll(List<String> prefixes);
+
   /**
    * API to handle an event from the event service
    */
@@ -82,6 +110,28 @@ public interface IEventService {
    */
   EventMonitor subscribe(EventHandler callback, boolean postLastEvents, String... prefixes);
 
+  /**
+   * Subscribes an actor to events matching the given prefixes and filter.
+   * Events that do not match the filter are dropped as soon as they are received.
+   *
+   * @param subscriber     an actor to receive Event messages
+   * @param filter         the filter (for example: EventFilter.apply("abs(az - demandAz) &gt; 0.5"))
+   * @param postLastEvents if true, the subscriber receives the last known values of any subscribed events (if they match)
+   * @param prefixes       one or more prefixes of events, may include wildcard
+   */
+  EventMonitor subscribeWithFilter(ActorRef subscriber, EventFilter filter, boolean postLastEvents, String... prefixes);
+
+  /**
+   * Subscribes a callback function to events matching the given prefixes and filter.
+   * Events that do not match the filter are dropped as soon as they are received.
+   *
+   * @param callback       an callback which will be called with Event objects (in another thread)
+   * @param filter         the filter (for example: EventFilter.apply("abs(az - demandAz) &gt; 0.5"))
+   * @param postLastEvents if true, the subscriber receives the last known values of any subscribed events (if they match)
+   * @param prefixes       one or more prefixes of events, may include wildcard
+   */
+  EventMonitor subscribeWithFilter(EventHandler callback, EventFilter filter, boolean postLastEvents, String... prefixes);
+
   /**
    * Creates an EventMonitorActor and subscribes the given actor to it.
    * The return value can be used to stop the actor or subscribe and unsubscribe to events.
@@ -107,6 +157,15 @@ public interface IEventService {
   }
 
 
+  /**
+   * Returns the publish and subscribe metrics for this event service instance.
+   * Call snapshot() on the return value to get the current values for each prefix
+   * (Implementations that do not keep their own metrics return EventServiceMetrics.shared()).
+   */
+  default EventServiceMetrics metrics() {
+    return EventServiceMetrics.shared();
+  }
+
   // --- Static factory methods ---
 
   /**
@@ -147,6 +206,19 @@ public interface IEventService {
     return new JEventService(host, port, sys);
   }
 
+  /**
+   * Returns an IEventService instance using the Redis instance at the given host and port.
+   * Events are published using a pool of connections, where each prefix is always published on the same connection.
+   *
+   * @param host     the Redis host name or IP address
+   * @param port     the Redis port
+   * @param poolSize the number of connections used to publish events
+   * @return a new IEventService instance
+   */
+  static IEventService getEventService(String host, int port, int poolSize, ActorSystem sys) {
+    return new JEventService(host, port, poolSize, sys);
+  }
+
   /**
    * @param system the actor system used to access the akka config file containing the kvs settings
    * @return an object containing the kvs settings
@@ -3,6 +3,8 @@ package javacsw.services.events;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.util.Timeout;
+import csw.services.events.EventFilter;
+import csw.services.events.EventServiceMetrics;
 import csw.services.events.TelemetryService$;
 import csw.services.events.TelemetryService.TelemetryMonitor;
 import csw.services.loc.ComponentId;
@@ -62,6 +64,14 @@ public interface ITelemetryService {
    */
   CompletableFuture<Unit> publish(StatusEvent status, int history);
 
+  /**
+   * Publishes the given status events (the requests are sent without waiting for the previous ones to complete)
+   *
+   * @param events the values to store
+   * @return a future indicating when all the events were published
+   */
+  CompletableFuture<Unit> publishAll(List<StatusEvent> events);
+
   /**
    * API to handle a telemetry event (StatusEvent) from the telemetry service
    */
@@ -89,6 +99,28 @@ public interface ITelemetryService {
    */
   TelemetryMonitor subscribe(TelemetryHandler callback, boolean postLastEvents, String... prefixes);
 
+  /**
+   * Subscribes an actor to telemetry events matching the given prefixes and filter.
+   * Events that do not match the filter are dropped as soon as they are received.
+   *
+   * @param subscriber     an actor to receive StatusEvent messages
+   * @param filter         the filter (for example: EventFilter.apply("mode == 'slew'"))
+   * @param postLastEvents if true, the subscriber receives the last known values of any subscribed events (if they match)
+   * @param prefixes       one or more prefixes of events, may include wildcard
+   */
+  TelemetryMonitor subscribeWithFilter(ActorRef subscriber, EventFilter filter, boolean postLastEvents, String... prefixes);
+
+  /**
+   * Subscribes a callback function to telemetry events matching the given prefixes and filter.
+   * Events that do not match the filter are dropped as soon as they are received.
+   *
+   * @param callback       an callback which will be called with StatusEvent objects (in another thread)
+   * @param filter         the filter (for example: EventFilter.apply("mode == 'slew'"))
+   * @param postLastEvents if true, the subscriber receives the last known values of any subscribed events (if they match)
+   * @param prefixes       one or more prefixes of events, may include wildcard
+   */
+  TelemetryMonitor subscribeWithFilter(TelemetryHandler callback, EventFilter filter, boolean postLastEvents, String... prefixes);
+
   /**
    * Creates an TelemetryMonitorActor and subscribes the given actor to it.
    * The return value can be used to stop the actor or subscribe and unsubscribe to events.
@@ -121,6 +153,14 @@ public interface ITelemetryService {
    */
   CompletableFuture<Optional<StatusEvent>> get(String prefix);
 
+  /**
+   * Gets the values for the given prefixes (the requests are sent concurrently)
+   *
+   * @param prefixes the prefixes of the status events
+   * @return the future status events, if found, in the same order as the prefixes
+   */
+  CompletableFuture<List<Optional<StatusEvent>>> getAll(List<String> prefixes);
+
   /**
    * Gets a list of the n most recent status event values for the given prefix
    *
@@ -137,6 +177,15 @@ public interface ITelemetryService {
    */
   CompletableFuture<Unit> delete(String key);
 
+  /**
+   * Returns the publish and subscribe metrics for this telemetry service instance.
+   * Call snapshot() on the return value to get the current values for each prefix
+   * (Implementations that do not keep their own metrics return EventServiceMetrics.shared()).
+   */
+  default EventServiceMetrics metrics() {
+    return EventServiceMetrics.shared();
+  }
+
   // --- Static factory methods ---
 
   /**
@@ -166,4 +215,17 @@ public interface ITelemetryService {
     return new JTelemetryService(host, port, sys);
   }
 
+  /**
+   * Returns an ITelemetryService instance using the Redis instance at the given host and port.
+   * Events are published using a pool of connections, where each prefix is always published on the same connection.
+   *
+   * @param host     the Redis host name or IP address
+   * @param port     the Redis port
+   * @param poolSize the number of connections used to publish events
+   * @return a new ITelemetryService instance
+   */
+  static ITelemetryService getTelemetryService(String host, int port, int poolSize, ActorSystem sys) {
+    return new JTelemetryService(host, port, poolSize, sys);
+  }
+
 }
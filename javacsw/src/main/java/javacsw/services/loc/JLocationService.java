@@ -9,6 +9,7 @@ import csw.services.loc.LocationService;
 import csw.services.loc.LocationService.*;
 import csw.services.loc.LocationTrackerWorker;
 
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import static scala.compat.java8.FutureConverters.*;
@@ -142,6 +143,17 @@ public class JLocationService {
         return toJava(JLocationServiceSup.resolve(connections, system, timeout)).toCompletableFuture();
     }
 
+    /**
+     * Registers the given services with the location service (the registrations are done concurrently).
+     *
+     * @param registrations the services to register
+     * @param system        the caller's actor system
+     * @return a future list of the registration results, in the same order as the registrations
+     */
+    public static CompletableFuture<List<RegistrationResult>> registerAll(List<Registration> registrations, ActorSystem system) {
+        return toJava(JLocationServiceSup.registerAll(registrations, system)).toCompletableFuture();
+    }
+
 
 
 }
@@ -157,6 +157,9 @@ case class JAlarmService(alarmService: AlarmService, system: ActorRefFactory) ex
   override def setSeverity(alarmKey: AlarmKey, severity: SeverityLevel): CompletableFuture[Unit] =
     alarmService.setSeverity(alarmKey, severity).toJava.toCompletableFuture
 
+  override def setSeverities(severities: java.util.Map[AlarmKey, SeverityLevel]): CompletableFuture[Unit] =
+    alarmService.setSeverities(severities.asScala.toMap).toJava.toCompletableFuture
+
   /**
    * Alternate constructor to use the Redis instance at the given host and port
    *
@@ -64,6 +64,10 @@ class JAlarmServiceAdmin(alarmService: IAlarmService, system: ActorRefFactory) e
   override def getSeverity(alarmKey: AlarmKey): CompletableFuture[CurrentSeverity] =
     alarmAdmin.getSeverity(alarmKey).toJava.toCompletableFuture
 
+  override def getSeverities(alarmKeys: util.List[AlarmKey]): CompletableFuture[util.Map[AlarmKey, CurrentSeverity]] = {
+    alarmAdmin.getSeverities(alarmKeys.asScala.toList).map(_.asJava).toJava.toCompletableFuture
+  }
+
   override def acknowledgeAlarm(alarmKey: AlarmKey): CompletableFuture[Unit] =
     alarmAdmin.acknowledgeAlarm(alarmKey).toJava.toCompletableFuture
 
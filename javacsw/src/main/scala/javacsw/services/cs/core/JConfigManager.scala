@@ -9,6 +9,7 @@ import akka.actor.ActorRefFactory
 import csw.services.cs.core.{ConfigFileHistory, _}
 
 import scala.collection.JavaConverters._
+import scala.concurrent.Future
 import scala.compat.java8.FutureConverters._
 import scala.compat.java8.OptionConverters._
 
@@ -58,6 +59,19 @@ class JConfigManager(manager: ConfigManager)(implicit context: ActorRefFactory)
 
   override def history(path: File): CompletableFuture[java.util.List[ConfigFileHistory]] =
     manager.history(path).map(_.asJava).toJava.toCompletableFuture
+
+  override def setDefault(path: File, id: Optional[ConfigId]): CompletableFuture[Unit] =
+    manager.setDefault(path, id.asScala).toJava.toCompletableFuture
+
+  override def resetDefault(path: File): CompletableFuture[Unit] =
+    manager.resetDefault(path).toJava.toCompletableFuture
+
+  override def getDefault(path: File): CompletableFuture[Optional[IConfigData]] =
+    manager.getDefault(path).map(_.map(JConfigData(_).asInstanceOf[IConfigData]).asJava).toJava.toCompletableFuture
+
+  override def getAll(paths: java.util.List[File]): CompletableFuture[java.util.List[Optional[IConfigData]]] =
+    Future.sequence(paths.asScala.toList.map(p => manager.get(p)))
+      .map(_.map(_.map(JConfigData(_).asInstanceOf[IConfigData]).asJava).asJava).toJava.toCompletableFuture
 }
 
 case class JConfigData(configData: ConfigData)(implicit context: ActorRefFactory) extends IConfigData {
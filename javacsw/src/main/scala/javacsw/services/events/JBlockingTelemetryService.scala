@@ -56,6 +56,19 @@ case class JBlockingTelemetryService(ts: BlockingTelemetryService, system: Actor
     this(BlockingTelemetryService(TelemetryService.get(host, port)(sys), timeout.duration), sys, timeout.duration)
   }
 
+  /**
+   * Returns a JTelemetryService instance using the Redis instance at the given host and port, with the given number of
+   * connections for publishing events
+   *
+   * @param host     the Redis host name or IP address
+   * @param port     the Redis port
+   * @param poolSize the number of connections used to publish events
+   * @return a new JTelemetryService instance
+   */
+  def this(host: String, port: Int, poolSize: Int, sys: ActorSystem, timeout: Timeout) {
+    this(BlockingTelemetryService(TelemetryService.get(host, port, poolSize)(sys), timeout.duration), sys, timeout.duration)
+  }
+
   def publish(status: StatusEvent): Unit = ts.publish(status)
 
   def publish(status: StatusEvent, history: Int): Unit = ts.publish(status, history)
@@ -69,4 +82,6 @@ case class JBlockingTelemetryService(ts: BlockingTelemetryService, system: Actor
   def getHistory(prefix: String, history: Int): java.util.List[StatusEvent] = ts.getHistory(prefix, history).asJava
 
   def delete(key: String): Unit = ts.delete(key)
+
+  def metrics(): EventServiceMetrics = ts.ts.metrics
 }
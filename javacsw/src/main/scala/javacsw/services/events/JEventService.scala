@@ -1,16 +1,20 @@
 package javacsw.services.events
 
+import java.util.Optional
 import java.util.concurrent.CompletableFuture
 import javacsw.services.events.IEventService.EventHandler
 
 import akka.actor.{ActorRef, ActorRefFactory, ActorSystem}
 import akka.util.Timeout
 import csw.services.events.EventService.EventMonitor
-import csw.services.events.{EventService, EventServiceSettings}
+import csw.services.events.{EventFilter, EventService, EventServiceMetrics, EventServiceSettings}
 import csw.services.loc.LocationService.ResolvedTcpLocation
 import csw.util.config.Events.EventServiceEvent
 
+import scala.collection.JavaConverters._
 import scala.compat.java8.FutureConverters._
+import scala.compat.java8.OptionConverters._
+import scala.concurrent.Future
 
 case object JEventService {
   /**
@@ -65,6 +69,19 @@ case class JEventService(eventService: EventService, system: ActorRefFactory)
     this(EventService.get(host, port)(sys), sys)
   }
 
+  /**
+   * Alternate constructor to use the Redis instance at the given host and port, with the given number of
+   * connections for publishing events
+   *
+   * @param host     the Redis host name or IP address
+   * @param port     the Redis port
+   * @param poolSize the number of connections used to publish events
+   * @return a new JEventService instance
+   */
+  def this(host: String, port: Int, poolSize: Int, sys: ActorSystem) {
+    this(EventService.get(host, port, poolSize)(sys), sys)
+  }
+
   /**
    * Alternate constructor that gets the redis host and port from the Akka system settings.
    *
@@ -78,9 +95,26 @@ case class JEventService(eventService: EventService, system: ActorRefFactory)
   override def publish(event: EventServiceEvent): CompletableFuture[Unit] =
     eventService.publish(event).toJava.toCompletableFuture
 
+  override def publishAll(events: java.util.List[EventServiceEvent]): CompletableFuture[Unit] =
+    Future.sequence(events.asScala.toList.map(e => eventService.publish(e))).map(_ => ()).toJava.toCompletableFuture
+
+  override def get(prefix: String): CompletableFuture[Optional[EventServiceEvent]] =
+    eventService.get(prefix).map(_.asJava).toJava.toCompletableFuture
+
+  override def getAll(prefixes: java.util.List[String]): CompletableFuture[java.util.List[Optional[EventServiceEvent]]] =
+    Future.sequence(prefixes.asScala.toList.map(eventService.get)).map(_.map(_.asJava).asJava).toJava.toCompletableFuture
+
   override def subscribe(subscriber: ActorRef, postLastEvents: Boolean, prefixes: String*): EventMonitor =
     eventService.subscribe(subscriber, postLastEvents, prefixes: _*)
 
   override def subscribe(callback: EventHandler, postLastEvents: Boolean, prefixes: String*): EventMonitor =
     eventService.subscribe(callback.handleEvent _, postLastEvents = true, prefixes: _*)
+
+  override def subscribeWithFilter(subscriber: ActorRef, filter: EventFilter, postLastEvents: Boolean, prefixes: String*): EventMonitor =
+    eventService.subscribeWithFilter(subscriber, filter, postLastEvents, prefixes: _*)
+
+  override def subscribeWithFilter(callback: EventHandler, filter: EventFilter, postLastEvents: Boolean, prefixes: String*): EventMonitor =
+    eventService.subscribeWithFilter(callback.handleEvent _, filter, postLastEvents, prefixes: _*)
+
+  override def metrics(): EventServiceMetrics = eventService.metrics
 }
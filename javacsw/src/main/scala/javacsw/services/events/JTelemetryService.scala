@@ -6,12 +6,13 @@ import java.util.concurrent.CompletableFuture
 import akka.actor.{ActorRef, ActorRefFactory, ActorSystem}
 import akka.util.Timeout
 import csw.services.events.TelemetryService.TelemetryMonitor
-import csw.services.events.TelemetryService
+import csw.services.events.{EventFilter, EventServiceMetrics, TelemetryService}
 import csw.util.config.Events._
 
 import scala.collection.JavaConverters._
 import scala.compat.java8.FutureConverters._
 import scala.compat.java8.OptionConverters._
+import scala.concurrent.Future
 
 case object JTelemetryService {
   /**
@@ -55,18 +56,43 @@ case class JTelemetryService(ts: TelemetryService, system: ActorRefFactory)
     this(TelemetryService.get(host, port)(sys), sys)
   }
 
+  /**
+   * Returns a JTelemetryService instance using the Redis instance at the given host and port, with the given number of
+   * connections for publishing events
+   *
+   * @param host     the Redis host name or IP address
+   * @param port     the Redis port
+   * @param poolSize the number of connections used to publish events
+   * @return a new JTelemetryService instance
+   */
+  def this(host: String, port: Int, poolSize: Int, sys: ActorSystem) {
+    this(TelemetryService.get(host, port, poolSize)(sys), sys)
+  }
+
   override def publish(status: StatusEvent): CompletableFuture[Unit] = ts.publish(status).toJava.toCompletableFuture
 
   override def publish(status: StatusEvent, history: Int = 0): CompletableFuture[Unit] = ts.publish(status, history).toJava.toCompletableFuture
 
+  override def publishAll(events: java.util.List[StatusEvent]): CompletableFuture[Unit] =
+    Future.sequence(events.asScala.toList.map(e => ts.publish(e))).map(_ => ()).toJava.toCompletableFuture
+
   override def subscribe(subscriber: ActorRef, postLastEvents: Boolean, prefixes: String*): TelemetryMonitor =
     ts.subscribe(subscriber, postLastEvents, prefixes: _*)
 
   override def subscribe(callback: ITelemetryService.TelemetryHandler, postLastEvents: Boolean, prefixes: String*): TelemetryMonitor =
     ts.subscribe(callback.handleEvent _, postLastEvents, prefixes: _*)
 
+  override def subscribeWithFilter(subscriber: ActorRef, filter: EventFilter, postLastEvents: Boolean, prefixes: String*): TelemetryMonitor =
+    ts.subscribeWithFilter(subscriber, filter, postLastEvents, prefixes: _*)
+
+  override def subscribeWithFilter(callback: ITelemetryService.TelemetryHandler, filter: EventFilter, postLastEvents: Boolean, prefixes: String*): TelemetryMonitor =
+    ts.subscribeWithFilter(callback.handleEvent _, filter, postLastEvents, prefixes: _*)
+
   override def get(prefix: String): CompletableFuture[Optional[StatusEvent]] = ts.get(prefix).map(_.asJava).toJava.toCompletableFuture
 
+  override def getAll(prefixes: java.util.List[String]): CompletableFuture[java.util.List[Optional[StatusEvent]]] =
+    Future.sequence(prefixes.asScala.toList.map(ts.get)).map(_.map(_.asJava).asJava).toJava.toCompletableFuture
+
   /**
    * Gets a list of the n most recent status event values for the given prefix
    * @param prefix the status event's prefix
@@ -80,4 +106,6 @@ case class JTelemetryService(ts: TelemetryService, system: ActorRefFactory)
    * @return a future indicating if/when the operation has completed
    */
   override def delete(prefix: String): CompletableFuture[Unit] = ts.delete(prefix).map(_ => ()).toJava.toCompletableFuture
+
+  override def metrics(): EventServiceMetrics = ts.metrics
 }
@@ -28,6 +28,18 @@ object JLocationServiceSup {
     LocationService.resolve(connections.asScala.toSet)(system, timeout)
   }
 
+  /**
+   * For Java API: Registers the given services with the location service (the registrations are done concurrently)
+   *
+   * @param registrations the services to register
+   * @param system        the caller's actor system
+   * @return a future list of the registration results, in the same order as the registrations
+   */
+  def registerAll(registrations: java.util.List[Registration], system: ActorSystem): Future[java.util.List[RegistrationResult]] = {
+    import system.dispatcher
+    Future.sequence(registrations.asScala.toList.map(LocationService.register(_)(system))).map(_.asJava)
+  }
+
   /**
    * For Java API: Used to create the RegistrationTracker actor
    *
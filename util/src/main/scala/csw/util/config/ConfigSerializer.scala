@@ -1,6 +1,6 @@
 package csw.util.config
 
-import java.io.{ByteArrayInputStream, ByteArrayOutputStream, ObjectInputStream, ObjectOutputStream}
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, InputStream, ObjectInputStream, ObjectOutputStream}
 
 import csw.util.config.StateVariable._
 import csw.util.config.Configurations._
@@ -18,10 +18,18 @@ object ConfigSerializer {
     def write(in: A): Array[Byte]
 
     def read(bytes: Array[Byte]): A
+
+    /**
+     * Reads the object directly from the given stream, for callers that hold the serialized data in
+     * some other form than a single byte array (avoids copying the data into a new array first)
+     */
+    def read(in: InputStream): A = readObj[A](in)
   }
 
   def read[A](bytes: Array[Byte])(implicit cl: ConfigSerializer[A]): A = cl.read(bytes)
 
+  def read[A](in: InputStream)(implicit cl: ConfigSerializer[A]): A = cl.read(in)
+
   def write[A](in: A)(implicit cl: ConfigSerializer[A]): Array[Byte] = cl.write(in)
 
   def writeObj[A](in: A): Array[Byte] = {
@@ -32,8 +40,10 @@ object ConfigSerializer {
     bos.toByteArray
   }
 
-  def readObj[A](bytes: Array[Byte]): A = {
-    val in = new ObjectInputStream(new ByteArrayInputStream(bytes))
+  def readObj[A](bytes: Array[Byte]): A = readObj[A](new ByteArrayInputStream(bytes))
+
+  def readObj[A](stream: InputStream): A = {
+    val in = new ObjectInputStream(stream)
     val obj = in.readObject()
     in.close()
     obj.asInstanceOf[A]
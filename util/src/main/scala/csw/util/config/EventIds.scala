@@ -0,0 +1,21 @@
+package csw.util.config
+
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Generates unique ids for events and commands without the cost of UUID.randomUUID(), which uses a
+ * shared SecureRandom and becomes a point of contention when many threads create events.
+ *
+ * Each id is a UUID formatted string made from a random per JVM value (generated once) and a counter,
+ * so ids are unique within the JVM and, with very high probability, between JVMs.
+ */
+object EventIds {
+  private val jvmId = UUID.randomUUID().getMostSignificantBits
+  private val counter = new AtomicLong(System.nanoTime())
+
+  /**
+   * Returns a new unique id
+   */
+  def next(): String = new UUID(jvmId, counter.getAndIncrement()).toString
+}
@@ -1,7 +1,6 @@
 package csw.util.config
 
-import java.time.{Clock, Instant}
-import java.util.UUID
+import java.time.Instant
 
 import scala.language.implicitConversions
 
@@ -11,7 +10,7 @@ import scala.language.implicitConversions
 object Events {
   import Configurations._
 
-  case class EventTime(time: Instant = Instant.now(Clock.systemUTC)) {
+  case class EventTime(time: Instant = EventClock.now()) {
     override def toString = time.toString
   }
 
@@ -33,9 +32,9 @@ object Events {
    * @param source the source subsystem and prefix for the component
    * @param eventTime time of the event
    * @param obsId optional observation id
-   * @param eventId automatically generated unique event id
+   * @param eventId automatically generated unique event id (See [[EventIds]])
    */
-  case class EventInfo(source: ConfigKey, eventTime: EventTime, obsId: Option[ObsId], eventId: String = UUID.randomUUID().toString) {
+  case class EventInfo(source: ConfigKey, eventTime: EventTime, obsId: Option[ObsId], eventId: String = EventIds.next()) {
     override def toString = s"$source: eId: $eventId, time: $eventTime, obsId: $obsId"
 
     override def equals(that: Any): Boolean = {
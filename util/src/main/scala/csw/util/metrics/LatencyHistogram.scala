@@ -0,0 +1,119 @@
+package csw.util.metrics
+
+import java.util.concurrent.atomic.{AtomicLong, AtomicLongArray, LongAdder}
+
+/**
+ * A lock free histogram with log-linear buckets (in the style of HdrHistogram), used to record
+ * latencies in nanoseconds. Values are kept with a relative precision of about 3% over the full range of Long.
+ * Recording is safe from any thread and does not allocate.
+ */
+class LatencyHistogram {
+  import LatencyHistogram._
+
+  private val counts = new AtomicLongArray(bucketCount)
+  private val sum = new LongAdder
+  private val maxValue = new AtomicLong
+
+  /**
+   * Records a single value (negative values, for example due to clock skew, are recorded as 0)
+   *
+   * @param value the value to record (normally in ns)
+   */
+  def record(value: Long): Unit = {
+    val v = if (value < 0) 0L else value
+    counts.incrementAndGet(bucketIndex(v))
+    sum.add(v)
+    var m = maxValue.get
+    while (v > m && !maxValue.compareAndSet(m, v)) m = maxValue.get
+  }
+
+  /**
+   * Returns an immutable copy of the current values
+   */
+  def snapshot(): HistogramSnapshot = {
+    val c = Array.tabulate(bucketCount)(counts.get)
+    new HistogramSnapshot(c, sum.sum(), maxValue.get)
+  }
+
+  /**
+   * Clears all recorded values
+   */
+  def reset(): Unit = {
+    for (i <- 0 until bucketCount) counts.set(i, 0L)
+    sum.reset()
+    maxValue.set(0L)
+  }
+}
+
+object LatencyHistogram {
+  // 64 sub-buckets per power of two gives a relative error of at most 1/32
+  private val subBucketBits = 6
+  private val subBucketCount = 1 << subBucketBits
+  private val subBucketHalf = subBucketCount >> 1
+
+  private[metrics] val bucketCount = subBucketCount + (64 - subBucketBits) * subBucketHalf
+
+  // Returns the index of the bucket holding the given (positive) value
+  private[metrics] def bucketIndex(v: Long): Int = {
+    if (v < subBucketCount) v.toInt
+    else {
+      val shift = 63 - java.lang.Long.numberOfLeadingZeros(v) - (subBucketBits - 1)
+      subBucketCount + (shift - 1) * subBucketHalf + ((v >>> shift).toInt - subBucketHalf)
+    }
+  }
+
+  // Returns the largest value that is recorded in the bucket with the given index
+  private[metrics] def highestEquivalentValue(index: Int): Long = {
+    if (index < subBucketCount) index
+    else {
+      val shift = (index - subBucketCount) / subBucketHalf + 1
+      val sub = (index - subBucketCount) % subBucketHalf + subBucketHalf
+      ((sub.toLong + 1) << shift) - 1
+    }
+  }
+}
+
+/**
+ * An immutable copy of the values recorded in a [[LatencyHistogram]]
+ *
+ * @param counts the count for each bucket
+ * @param sum    the sum of all recorded values
+ * @param max    the largest recorded value
+ */
+class HistogramSnapshot private[metrics] (counts: Array[Long], val sum: Long, val max: Long) {
+
+  /**
+   * The number of recorded values
+   */
+  val count: Long = counts.sum
+
+  /**
+   * The mean of the recorded values, or 0 if there are none
+   */
+  def mean: Double = if (count == 0) 0.0 else sum.toDouble / count
+
+  /**
+   * Returns the value at the given percentile (0 to 100), or 0 if no values were recorded
+   */
+  def percentile(p: Double): Long = {
+    if (count == 0) 0L
+    else {
+      val target = math.max(1L, math.ceil(p / 100.0 * count).toLong)
+      var total = 0L
+      var i = 0
+      while (i < counts.length && total < target) {
+        total += counts(i)
+        i += 1
+      }
+      math.min(LatencyHistogram.highestEquivalentValue(i - 1), max)
+    }
+  }
+
+  def p50: Long = percentile(50.0)
+
+  def p99: Long = percentile(99.0)
+
+  def p999: Long = percentile(99.9)
+
+  override def toString = s"count: $count, mean: ${mean.toLong}, p50: $p50, p99: $p99, p99.9: $p999, max: $max"
+}
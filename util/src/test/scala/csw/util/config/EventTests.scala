@@ -61,4 +61,26 @@ class EventTests extends FunSpec with Matchers {
     }
   }
 
+  describe("Check event ids and times") {
+    it("should generate unique, UUID formatted ids") {
+      val ids = (1 to 10000).map(_ => EventIds.next())
+      ids.distinct.size should equal(ids.size)
+      java.util.UUID.fromString(ids.head).toString should equal(ids.head)
+      SystemEvent(ck).eventId should not equal SystemEvent(ck).eventId
+    }
+
+    it("should allow using a coarse clock") {
+      EventClock.useCoarseClock(5)
+      try {
+        EventClock.resolutionMillis should equal(5)
+        val t1 = EventTime()
+        Thread.sleep(50)
+        EventTime().time.isAfter(t1.time) should be(true)
+      } finally {
+        EventClock.usePreciseClock()
+      }
+      EventClock.resolutionMillis should equal(0)
+    }
+  }
+
 }
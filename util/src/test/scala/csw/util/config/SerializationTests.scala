@@ -124,6 +124,21 @@ class SerializationTests extends FunSuite {
     assert(out1 == event)
   }
 
+  test("Event Java serialization from a ByteString") {
+    import ConfigSerializer._
+    val event = SystemEvent(fqn1prefix)
+      .add(ra.set("12:32:11"))
+      .add(epoch.set((0 until 10000).map(_.toDouble): _*))
+
+    // Split into several buffers, as when the bytes are received from Redis in more than one read
+    val bytes1 = write(event)
+    val bs = bytes1.grouped(1000).map(akka.util.ByteString(_)).reduce(_ ++ _)
+    assert(bs.asByteBuffers.size > 1)
+
+    val out1 = read[EventServiceEvent](bs.iterator.asInputStream)
+    assert(out1 == event)
+  }
+
   test("CurrentStates Java serialization") {
     import ConfigSerializer._
 
@@ -0,0 +1,34 @@
+package csw.util.metrics
+
+import com.typesafe.scalalogging.LazyLogging
+import org.scalatest.FunSuite
+
+/**
+ * Tests the latency histogram
+ */
+class LatencyHistogramTests extends FunSuite with LazyLogging {
+
+  test("Test latency histogram percentiles") {
+    val h = new LatencyHistogram
+    (1 to 1000).foreach(i => h.record(i * 1000L))
+    val s = h.snapshot()
+    logger.debug(s"Histogram: $s")
+    assert(s.count == 1000)
+    assert(s.max == 1000000L)
+    // Values have a relative precision of about 3%
+    assert(math.abs(s.p50 - 500000L) < 500000L * 0.04)
+    assert(math.abs(s.p99 - 990000L) < 990000L * 0.04)
+    assert(s.percentile(100.0) == s.max)
+    h.reset()
+    assert(h.snapshot().count == 0)
+  }
+
+  test("Test histogram bucket boundaries") {
+    for (v <- List(0L, 1L, 63L, 64L, 65L, 1000L, 123456789L, Long.MaxValue)) {
+      val i = LatencyHistogram.bucketIndex(v)
+      assert(i < LatencyHistogram.bucketCount)
+      assert(LatencyHistogram.highestEquivalentValue(i) >= v)
+      if (i > 0) assert(LatencyHistogram.highestEquivalentValue(i - 1) < v)
+    }
+  }
+}